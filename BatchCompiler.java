@@ -0,0 +1,105 @@
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/*
+  Compiles many source files on a fixed pool of worker threads.
+  Each file gets its own Compilation, so no state is shared between workers. Diagnostics are
+  printed grouped per file and always in input order, whatever order the workers finish in.
+*/
+public class BatchCompiler {
+
+  public static final String SOURCE_SUFFIX = ".decaf";
+
+  private int m_threads;
+  private CompilerOptions m_options;
+  private int m_fileCount;
+  private long m_tokenCount;
+  private int m_errorCount;
+  private long m_elapsedNanos;
+  private CompilerStats m_stats;
+
+  public BatchCompiler(int threads, CompilerOptions options) {
+    m_threads = Math.max(1, threads);
+    m_options = options;
+    if (options.isStats())
+      m_stats = new CompilerStats();
+  }
+
+  /* Expands the given paths into source files. Directories are searched recursively for *.decaf files, in name order */
+  public static List<String> collectSources(List<String> paths) {
+    List<String> files = new ArrayList<String>();
+    for (String path : paths)
+      collectSources(new File(path), files, true);
+    return files;
+  }
+
+  private static void collectSources(File file, List<String> files, boolean explicit) {
+    if (file.isDirectory()) {
+      File[] children = file.listFiles();
+      if (children == null)
+        return;
+      Arrays.sort(children);
+      for (File child : children)
+        collectSources(child, files, false);
+    }
+    else if (explicit || file.getName().endsWith(SOURCE_SUFFIX)) {
+      files.add(file.getPath());
+    }
+  }
+
+  /* Compiles all files and prints their diagnostics to out. Returns the total number of errors reported */
+  public int compile(List<String> files, PrintStream out) throws InterruptedException {
+    ExecutorService pool = Executors.newFixedThreadPool(m_threads);
+    long start = System.nanoTime();
+    try {
+      List<Future<Compilation>> results = new ArrayList<Future<Compilation>>();
+      for (final String file : files) {
+        results.add(pool.submit(new Callable<Compilation>() {
+          public Compilation call() throws IOException {
+            return new Compilation(file, m_options).run();
+          }
+        }));
+      }
+
+      // Wait for the results in input order, so the output does not depend on scheduling
+      for (int n = 0; n < results.size(); n++) {
+        String file = files.get(n);
+        try {
+          Compilation compilation = results.get(n).get();
+          m_tokenCount += compilation.getTokenCount();
+          m_errorCount += compilation.getErrorCount();
+          if (m_stats != null)
+            m_stats.add(compilation.getStats());
+          if (compilation.getErrorCount() > 0) {
+            out.println(file + ":");
+            out.print(compilation.getDiagnostics());
+          }
+        }
+        catch (ExecutionException e) {
+          m_errorCount++;
+          out.println(file + ": cannot compile: " + e.getCause());
+        }
+        m_fileCount++;
+      }
+    }
+    finally {
+      pool.shutdownNow();
+    }
+    m_elapsedNanos = System.nanoTime() - start;
+    out.flush();
+    return m_errorCount;
+  }
+
+  /* The phase times and counts of all files compiled, summed over the threads; null unless CompilerOptions.isStats() */
+  public CompilerStats getStats() {
+    return m_stats;
+  }
+
+  public void printReport(PrintStream out) {
+    double seconds = m_elapsedNanos / 1e9;
+    out.printf("Compiled %d files (%d tokens, %d errors) in %.3f s on %d threads: %.1f files/sec, %.0f tokens/sec%n",
+               m_fileCount, m_tokenCount, m_errorCount, seconds, m_threads,
+               m_fileCount / seconds, m_tokenCount / seconds);
+  }
+}
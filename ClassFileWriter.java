@@ -0,0 +1,334 @@
+import java.io.*;
+import java.util.*;
+
+/*
+  Writes a JVM class file: a constant pool, static fields and static methods with their bytecode.
+
+  Just what TacJvm needs. Classes are written as version 49 (Java 5), the last one the JVM still
+  verifies by inferring the types, so no StackMapTable frames have to be computed. Branches are
+  resolved when a method's code ends; their offsets are 16 bits, so a method's code is limited to
+  32 KB (the JVM allows 64 KB), and a longer one is refused with an IllegalStateException.
+*/
+public class ClassFileWriter {
+
+  // Opcodes used by TacJvm
+  public static final int ACONST_NULL = 0x01, ICONST_0 = 0x03, DCONST_0 = 0x0e, DCONST_1 = 0x0f;
+  public static final int BIPUSH = 0x10, SIPUSH = 0x11, LDC = 0x12, LDC_W = 0x13, LDC2_W = 0x14;
+  public static final int ILOAD = 0x15, DLOAD = 0x18, ALOAD = 0x19, ISTORE = 0x36, DSTORE = 0x39, ASTORE = 0x3a;
+  public static final int IALOAD = 0x2e, DALOAD = 0x31, IASTORE = 0x4f, DASTORE = 0x52;
+  public static final int POP = 0x57, POP2 = 0x58;
+  public static final int IADD = 0x60, DADD = 0x63, ISUB = 0x64, DSUB = 0x67, IMUL = 0x68, DMUL = 0x6b;
+  public static final int IDIV = 0x6c, DDIV = 0x6f, IREM = 0x70, DREM = 0x73, INEG = 0x74, DNEG = 0x77;
+  public static final int I2D = 0x87, D2I = 0x8e, DCMPL = 0x97, DCMPG = 0x98;
+  public static final int IFEQ = 0x99, IFNE = 0x9a, IFLT = 0x9b, IFGE = 0x9c, IFGT = 0x9d, IFLE = 0x9e;
+  public static final int IF_ICMPEQ = 0x9f, IF_ICMPNE = 0xa0, IF_ICMPLT = 0xa1, IF_ICMPGE = 0xa2, IF_ICMPGT = 0xa3, IF_ICMPLE = 0xa4;
+  public static final int GOTO = 0xa7;
+  public static final int IRETURN = 0xac, DRETURN = 0xaf, RETURN = 0xb1;
+  public static final int GETSTATIC = 0xb2, PUTSTATIC = 0xb3, INVOKESTATIC = 0xb8, NEWARRAY = 0xbc;
+  private static final int WIDE = 0xc4;
+
+  // Array types of NEWARRAY
+  public static final int T_DOUBLE = 7, T_INT = 10;
+
+  public static final int ACC_PUBLIC = 0x0001, ACC_PRIVATE = 0x0002, ACC_STATIC = 0x0008, ACC_FINAL = 0x0010, ACC_SUPER = 0x0020;
+
+  private static final int VERSION = 49;
+  private static final int MAX_BRANCH = Short.MAX_VALUE;
+
+  // Tags of constant pool entries
+  private static final int UTF8 = 1, INTEGER = 3, DOUBLE = 6, CLASS = 7, FIELD_REF = 9, METHOD_REF = 10, NAME_AND_TYPE = 12;
+
+  private String m_name;
+  private ByteArrayOutputStream m_pool = new ByteArrayOutputStream();
+  private DataOutputStream m_poolOut = new DataOutputStream(m_pool);
+  private Map<String, Integer> m_poolIndexes = new HashMap<String, Integer>();
+  private int m_poolCount = 1;
+  private ByteArrayOutputStream m_fields = new ByteArrayOutputStream();
+  private int m_fieldCount;
+  private ByteArrayOutputStream m_methods = new ByteArrayOutputStream();
+  private int m_methodCount;
+
+  /* A class extending java.lang.Object; name is internal, with '/' between packages */
+  public ClassFileWriter(String name) {
+    m_name = name;
+  }
+
+  public String getName() {
+    return m_name;
+  }
+
+  public void addField(int flags, String name, String descriptor) {
+    DataOutputStream out = new DataOutputStream(m_fields);
+    try {
+      out.writeShort(flags);
+      out.writeShort(utf8(name));
+      out.writeShort(utf8(descriptor));
+      out.writeShort(0);
+    }
+    catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    m_fieldCount++;
+  }
+
+  /* Starts a method; its code is added through the returned Code and ends with Code.end() */
+  public Code addMethod(int flags, String name, String descriptor) {
+    return new Code(flags, name, descriptor);
+  }
+
+  public byte[] toByteArray() {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(bytes);
+    try {
+      int thisClass = classRef(m_name);
+      int superClass = classRef("java/lang/Object");
+      out.writeInt(0xCAFEBABE);
+      out.writeShort(0);
+      out.writeShort(VERSION);
+      out.writeShort(m_poolCount);
+      m_pool.writeTo(out);
+      out.writeShort(ACC_PUBLIC | ACC_FINAL | ACC_SUPER);
+      out.writeShort(thisClass);
+      out.writeShort(superClass);
+      out.writeShort(0);
+      out.writeShort(m_fieldCount);
+      m_fields.writeTo(out);
+      out.writeShort(m_methodCount);
+      m_methods.writeTo(out);
+      out.writeShort(0);
+    }
+    catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    return bytes.toByteArray();
+  }
+
+  // *** Constant pool ***
+
+  private int constant(String key, int tag, int slots, Object first, Object second) {
+    Integer index = m_poolIndexes.get(key);
+    if (index != null)
+      return index;
+    try {
+      switch (tag) {
+        case UTF8:
+          m_poolOut.writeByte(tag);
+          m_poolOut.writeUTF((String) first);
+          break;
+        case INTEGER:
+          m_poolOut.writeByte(tag);
+          m_poolOut.writeInt((Integer) first);
+          break;
+        case DOUBLE:
+          m_poolOut.writeByte(tag);
+          m_poolOut.writeDouble((Double) first);
+          break;
+        case CLASS:
+          m_poolOut.writeByte(tag);
+          m_poolOut.writeShort((Integer) first);
+          break;
+        default:
+          m_poolOut.writeByte(tag);
+          m_poolOut.writeShort((Integer) first);
+          m_poolOut.writeShort((Integer) second);
+          break;
+      }
+    }
+    catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    index = m_poolCount;
+    m_poolCount += slots;
+    if (m_poolCount > 0xFFFF)
+      throw new IllegalStateException(m_name + ": constant pool too large");
+    m_poolIndexes.put(key, index);
+    return index;
+  }
+
+  private int utf8(String value) {
+    return constant("U" + value, UTF8, 1, value, null);
+  }
+
+  private int classRef(String name) {
+    int nameIndex = utf8(name);
+    return constant("C" + name, CLASS, 1, nameIndex, null);
+  }
+
+  private int nameAndType(String name, String descriptor) {
+    int nameIndex = utf8(name);
+    int descriptorIndex = utf8(descriptor);
+    return constant("N" + name + ' ' + descriptor, NAME_AND_TYPE, 1, nameIndex, descriptorIndex);
+  }
+
+  private int memberRef(int tag, String owner, String name, String descriptor) {
+    int classIndex = classRef(owner);
+    int nameAndTypeIndex = nameAndType(name, descriptor);
+    return constant((tag == FIELD_REF ? "F" : "M") + owner + '.' + name + ' ' + descriptor, tag, 1, classIndex, nameAndTypeIndex);
+  }
+
+  /* The bytecode of one method */
+  public class Code {
+    private int m_flags;
+    private String m_methodName;
+    private String m_descriptor;
+    private byte[] m_code = new byte[256];
+    private int m_size;
+
+    // Labels: position by label, -1 until placed; branches: { position of the opcode, label }
+    private int[] m_labels = new int[16];
+    private int m_labelCount;
+    private int[] m_branches = new int[32];
+    private int m_branchCount;
+
+    private Code(int flags, String name, String descriptor) {
+      m_flags = flags;
+      m_methodName = name;
+      m_descriptor = descriptor;
+    }
+
+    public int size() {
+      return m_size;
+    }
+
+    public void op(int opcode) {
+      put(opcode);
+    }
+
+    /* ILOAD, DLOAD, ALOAD, ISTORE, DSTORE or ASTORE of a local slot */
+    public void local(int opcode, int slot) {
+      if (slot > 0xFF) {
+        put(WIDE);
+        put(opcode);
+        put(slot >> 8);
+        put(slot);
+      }
+      else {
+        put(opcode);
+        put(slot);
+      }
+    }
+
+    public void pushInt(int value) {
+      if (value >= -1 && value <= 5)
+        put(ICONST_0 + value);
+      else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+        put(BIPUSH);
+        put(value);
+      }
+      else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+        put(SIPUSH);
+        put(value >> 8);
+        put(value);
+      }
+      else {
+        int index = constant("I" + value, INTEGER, 1, value, null);
+        if (index <= 0xFF) {
+          put(LDC);
+          put(index);
+        }
+        else {
+          put(LDC_W);
+          put(index >> 8);
+          put(index);
+        }
+      }
+    }
+
+    public void pushDouble(double value) {
+      if (Double.doubleToRawLongBits(value) == 0L)
+        put(DCONST_0);
+      else if (value == 1.0)
+        put(DCONST_1);
+      else {
+        int index = constant("D" + Double.doubleToRawLongBits(value), DOUBLE, 2, value, null);
+        put(LDC2_W);
+        put(index >> 8);
+        put(index);
+      }
+    }
+
+    /* GETSTATIC or PUTSTATIC */
+    public void field(int opcode, String owner, String name, String descriptor) {
+      int index = memberRef(FIELD_REF, owner, name, descriptor);
+      put(opcode);
+      put(index >> 8);
+      put(index);
+    }
+
+    public void invokeStatic(String owner, String name, String descriptor) {
+      int index = memberRef(METHOD_REF, owner, name, descriptor);
+      put(INVOKESTATIC);
+      put(index >> 8);
+      put(index);
+    }
+
+    public void newArray(int type) {
+      put(NEWARRAY);
+      put(type);
+    }
+
+    public int newLabel() {
+      if (m_labelCount == m_labels.length)
+        m_labels = Arrays.copyOf(m_labels, m_labelCount * 2);
+      m_labels[m_labelCount] = -1;
+      return m_labelCount++;
+    }
+
+    public void placeLabel(int label) {
+      m_labels[label] = m_size;
+    }
+
+    /* A GOTO or conditional branch to a label, placed before or after */
+    public void jump(int opcode, int label) {
+      if (m_branchCount + 2 > m_branches.length)
+        m_branches = Arrays.copyOf(m_branches, m_branches.length * 2);
+      m_branches[m_branchCount++] = m_size;
+      m_branches[m_branchCount++] = label;
+      put(opcode);
+      put(0);
+      put(0);
+    }
+
+    /* Resolves the branches and adds the method to the class */
+    public void end(int maxStack, int maxLocals) {
+      for (int k = 0; k < m_branchCount; k += 2) {
+        int at = m_branches[k];
+        int target = m_labels[m_branches[k + 1]];
+        if (target < 0)
+          throw new IllegalStateException(m_methodName + ": branch to a label never placed");
+        int offset = target - at;
+        if (offset > MAX_BRANCH || offset < -MAX_BRANCH - 1)
+          throw new IllegalStateException(m_methodName + ": method too large for the JVM (" + m_size + " bytes of code)");
+        m_code[at + 1] = (byte) (offset >> 8);
+        m_code[at + 2] = (byte) offset;
+      }
+      if (m_size > 0xFFFF)
+        throw new IllegalStateException(m_methodName + ": method too large for the JVM (" + m_size + " bytes of code)");
+      DataOutputStream out = new DataOutputStream(m_methods);
+      try {
+        out.writeShort(m_flags);
+        out.writeShort(utf8(m_methodName));
+        out.writeShort(utf8(m_descriptor));
+        out.writeShort(1);
+        out.writeShort(utf8("Code"));
+        out.writeInt(12 + m_size);
+        out.writeShort(maxStack);
+        out.writeShort(maxLocals);
+        out.writeInt(m_size);
+        out.write(m_code, 0, m_size);
+        out.writeShort(0);
+        out.writeShort(0);
+      }
+      catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+      m_methodCount++;
+    }
+
+    private void put(int value) {
+      if (m_size == m_code.length)
+        m_code = Arrays.copyOf(m_code, m_size * 2);
+      m_code[m_size++] = (byte) value;
+    }
+  }
+}
@@ -1,8 +1,114 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Stack;
+
 /**
  * Created by siddi on 05/11/14.
+ *
+ * Receives the quads the Parser generates and passes them on to a TacSink (an in-memory TacProgram,
+ * a TacTextWriter or a TacBinaryWriter); without a sink they are only counted.
+ *
+ * Quads can also be set aside: defer() redirects generate() into a fresh QuadrupleList until
+ * resume(), and generate(QuadrupleList) emits such a list later (the increment of a for loop is
+ * parsed before the body but runs after it).
  */
 public class CodeGenerator {
-    public static void generate(TacCode tc, SymbolTableEntry param1, SymbolTableEntry param2, SymbolTableEntry entry){
-        // stuff
-    };
+
+    private TacSink m_sink;
+    private int m_quadCount;
+    private Stack<QuadrupleList> m_deferred = new Stack<QuadrupleList>();
+    private SymbolTable m_symbolTable;
+    private CompilerStats m_stats;
+
+    public CodeGenerator() {
+        this(null);
+    }
+
+    public CodeGenerator(TacSink sink) {
+        m_sink = sink;
+    }
+
+    public void setSymbolTable(SymbolTable symbolTable) {
+        m_symbolTable = symbolTable;
+    }
+
+    /* Generating quads and ending methods (the sink's work, the Optimizer's included) is timed as the CODEGEN phase */
+    public void setStats(CompilerStats stats) {
+        m_stats = stats;
+    }
+
+    public void generate(TacCode tc, SymbolTableEntry param1, SymbolTableEntry param2, SymbolTableEntry entry) {
+        generate(tc.ordinal(), id(param1), id(param2), id(entry));
+    }
+
+    public void generate(QuadrupleList quads) {
+        for (int n = quads.first(); n >= 0; n = quads.next(n))
+            generate(quads.getCode(n), quads.getParam1(n), quads.getParam2(n), quads.getResult(n));
+    }
+
+    private void generate(int code, int param1, int param2, int result) {
+        if (!m_deferred.empty()) {
+            m_deferred.peek().add(code, param1, param2, result);
+            return;
+        }
+        m_quadCount++;
+        if (m_sink == null)
+            return;
+        if (m_stats != null)
+            m_stats.enter(CompilerStats.Phase.CODEGEN);
+        try {
+            m_sink.quad(code, param1, param2, result);
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        finally {
+            if (m_stats != null)
+                m_stats.exit();
+        }
+    }
+
+    /* Sends the following quads to a list of their own, until resume() */
+    public void defer() {
+        m_deferred.push(new QuadrupleList(m_symbolTable, 16));
+    }
+
+    /* Ends the latest defer() and returns the quads generated since */
+    public QuadrupleList resume() {
+        return m_deferred.pop();
+    }
+
+    public void endMethod() {
+        if (m_sink == null)
+            return;
+        if (m_stats != null)
+            m_stats.enter(CompilerStats.Phase.CODEGEN);
+        try {
+            m_sink.endMethod();
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        finally {
+            if (m_stats != null)
+                m_stats.exit();
+        }
+    }
+
+    public void close() throws IOException {
+        if (m_sink != null)
+            m_sink.close();
+    }
+
+    public TacSink getSink() {
+        return m_sink;
+    }
+
+    public int getQuadCount() {
+        return m_quadCount;
+    }
+
+    private static int id(SymbolTableEntry entry) {
+        return entry == null ? QuadrupleList.NONE : entry.getId();
+    }
 }
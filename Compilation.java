@@ -0,0 +1,286 @@
+import java.io.*;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+
+/*
+  One compilation of one source file.
+  Everything the compiler used to keep globally (symbol table, temp/label counters, error handler)
+  is created here and owned by this compilation only, so several compilations can run on different
+  threads at the same time. Diagnostics are either collected, so the caller decides when and in
+  what order they are shown, or printed to a stream the caller supplies.
+  The three-address code goes where CompilerOptions.getTacFormat() says, through the Optimizer
+  if CompilerOptions.isOptimize(). With a CompilationCache, a file compiled before with the same
+  options is not compiled again: its code and diagnostics come from the cache, unless it is traced
+  or its phases timed, which takes a compilation (the result still goes into the cache). With
+  CompilerOptions.isStats() the phases are timed and counted in a CompilerStats.
+  With CompilerOptions.getTraceEvents() the parser's steps are traced in a Tracer.
+  Each compilation is recorded as Flight Recorder events while a recording is on (see CompilerEvents).
+*/
+public class Compilation {
+
+  private String m_sourceFile;
+  private CompilerOptions m_options;
+  private ByteArrayOutputStream m_diagnostics;
+  private int m_tokenCount;
+  private int m_errorCount;
+  private int m_quadCount;
+  private TacProgram m_program;
+  private Optimizer m_optimizer;
+  private boolean m_cached;
+  private CompilerStats m_stats;
+
+  public Compilation(String sourceFile) {
+    this(sourceFile, new CompilerOptions());
+  }
+
+  public Compilation(String sourceFile, CompilerOptions options) {
+    m_sourceFile = sourceFile;
+    m_options = options;
+    m_diagnostics = new ByteArrayOutputStream();
+    if (options.isStats())
+      m_stats = new CompilerStats();
+  }
+
+  /* Compiles the file, keeping the diagnostics for getDiagnostics() */
+  public Compilation run() throws IOException {
+    PrintStream out = new PrintStream(m_diagnostics);
+    try {
+      return run(out);
+    }
+    finally {
+      out.flush();
+    }
+  }
+
+  /*
+    Compiles the file, printing diagnostics to the given stream as they are found; with a cache,
+    they are printed once the file is compiled, or come from the cache like the code.
+    Recorded as a decaf.CompileFile event (see CompilerEvents)
+  */
+  public Compilation run(PrintStream diagnostics) throws IOException {
+    CompilerEvents.CompileFile event = new CompilerEvents.CompileFile();
+    if (m_stats == null && event.isEnabled())
+      m_stats = new CompilerStats();
+    event.begin();
+    SymbolTable symbolTable = new SymbolTable();
+    runCached(diagnostics, symbolTable);
+    if (event.shouldCommit()) {
+      event.sourceFile = m_sourceFile;
+      event.cached = m_cached;
+      event.tokens = m_tokenCount;
+      event.errors = m_errorCount;
+      event.quads = m_quadCount;
+      event.symbols = symbolTable.size();
+      event.setPhases(m_stats);
+      event.commit();
+    }
+    return this;
+  }
+
+  private void runCached(PrintStream diagnostics, SymbolTable symbolTable) throws IOException {
+    CompilationCache cache = m_options.getCache();
+    if (cache == null) {
+      compile(diagnostics, symbolTable, null);
+      return;
+    }
+    // A replay has no parser steps to trace and no phases to time
+    boolean replayable = m_options.getTraceEvents() == 0 && !m_options.isStats();
+    CompilerEvents.CompilePhase phase = CompilerEvents.CompilePhase.begin("cache lookup", m_sourceFile);
+    String key = cache.key(m_sourceFile, m_options);
+    CompilationCache.Entry entry = replayable ? cache.get(key) : null;
+    phase.commit();
+    if (entry != null) {
+      replay(entry, diagnostics, symbolTable);
+      return;
+    }
+
+    CompilationCache.Writer writer = cache.put(key, openOutputSink(symbolTable), symbolTable);
+    ByteArrayOutputStream kept = new ByteArrayOutputStream();
+    PrintStream out = new PrintStream(kept);
+    boolean compiled = false;
+    try {
+      compile(out, symbolTable, writer);
+      compiled = true;
+    }
+    finally {
+      out.flush();
+      diagnostics.write(kept.toByteArray(), 0, kept.size());
+      if (!compiled)
+        writer.abort();
+    }
+    phase = CompilerEvents.CompilePhase.begin("cache commit", m_sourceFile);
+    writer.commit(kept.toByteArray(), m_errorCount, m_tokenCount, m_quadCount);
+    phase.commit();
+  }
+
+  /* The code goes to the cache writer, which passes it on to the output, if there is one */
+  private void compile(PrintStream diagnostics, SymbolTable symbolTable, CompilationCache.Writer cacheWriter) throws IOException {
+    CompilerEvents.CompilePhase phase = CompilerEvents.CompilePhase.begin("parse", m_sourceFile);
+    Lexer lexer = openLexer(symbolTable);
+    CodeGenerator codeGenerator = null;
+    try {
+      TacSink sink = cacheWriter != null ? cacheWriter : openOutputSink(symbolTable);
+      codeGenerator = new CodeGenerator(openTacSink(sink, symbolTable));
+      TokenBuffer tokens = new TokenBuffer(lexer, m_options.isPackedTokens());
+      if (m_stats != null) {
+        codeGenerator.setStats(m_stats);
+        tokens.setStats(m_stats);
+        m_stats.start();
+      }
+      if (m_options.getTraceEvents() > 0)
+        tokens.setTracer(new Tracer(m_options.getTraceEvents(), m_options.isTraceFile() ? null : System.out));
+      Parser parser = m_options.isTableDriven() ? new TableDrivenParser(tokens, m_sourceFile, diagnostics)
+                                                : new Parser(tokens, m_sourceFile, diagnostics, codeGenerator);
+      try {
+        parser.program();
+      }
+      finally {
+        if (tokens.getTracer() != null)
+          finishTrace(tokens.getTracer());
+      }
+      m_tokenCount = lexer.getTokenCount();
+      m_errorCount = parser.getErrorCount();
+      m_quadCount = codeGenerator.getQuadCount();
+      if (m_stats != null) {
+        m_stats.stop();
+        countResults(symbolTable);
+      }
+    }
+    catch (UncheckedIOException e) {
+      throw e.getCause();
+    }
+    finally {
+      lexer.yyclose();
+      phase.commit();
+      if (codeGenerator != null) {
+        phase = CompilerEvents.CompilePhase.begin("close output", m_sourceFile);
+        codeGenerator.close();
+        phase.commit();
+      }
+    }
+  }
+
+  /* Takes the result of an earlier compilation of the same bytes from the cache */
+  private void replay(CompilationCache.Entry entry, PrintStream diagnostics, SymbolTable symbolTable) throws IOException {
+    CompilerEvents.CompilePhase phase = CompilerEvents.CompilePhase.begin("cache replay", m_sourceFile);
+    TacSink sink = openOutputSink(symbolTable);
+    try {
+      entry.replay(sink, symbolTable);
+    }
+    finally {
+      if (sink != null)
+        sink.close();
+      phase.commit();
+    }
+    diagnostics.write(entry.getDiagnostics(), 0, entry.getDiagnostics().length);
+    m_tokenCount = entry.getTokenCount();
+    m_errorCount = entry.getErrorCount();
+    m_quadCount = entry.getQuadCount();
+    m_cached = true;
+    if (m_stats != null) {
+      m_stats.count(CompilerStats.Counter.FILES);
+      countResults(symbolTable);
+    }
+  }
+
+  /* Prints what is left of the trace, or writes all of it to name.trace for name.decaf */
+  private void finishTrace(Tracer tracer) throws IOException {
+    if (!m_options.isTraceFile()) {
+      tracer.print();
+      return;
+    }
+    OutputStream out = Channels.newOutputStream(openOutput(".trace"));
+    try {
+      tracer.write(out);
+    }
+    finally {
+      out.close();
+    }
+  }
+
+  private void countResults(SymbolTable symbolTable) {
+    m_stats.add(CompilerStats.Counter.TOKENS, m_tokenCount);
+    m_stats.add(CompilerStats.Counter.SYMBOLS, symbolTable.size());
+    m_stats.add(CompilerStats.Counter.QUADS, m_quadCount);
+    m_stats.add(CompilerStats.Counter.ERRORS, m_errorCount);
+  }
+
+  private TacSink openTacSink(TacSink sink, SymbolTable symbolTable) {
+    if (!m_options.isOptimize())
+      return sink;
+    m_optimizer = new Optimizer(sink, symbolTable);
+    return m_optimizer;
+  }
+
+  private TacSink openOutputSink(SymbolTable symbolTable) throws IOException {
+    switch (m_options.getTacFormat()) {
+      case MEMORY:
+        m_program = new TacProgram(symbolTable);
+        return m_program;
+      case TEXT:
+        return new TacTextWriter(openOutput(".tac"), true, symbolTable);
+      case BINARY:
+        return new TacBinaryWriter(openOutput(".tacb"), true, symbolTable);
+      default:
+        return null;
+    }
+  }
+
+  /* The source file name with its .decaf suffix replaced */
+  private FileChannel openOutput(String suffix) throws IOException {
+    String base = m_sourceFile.endsWith(BatchCompiler.SOURCE_SUFFIX)
+                  ? m_sourceFile.substring(0, m_sourceFile.length() - BatchCompiler.SOURCE_SUFFIX.length()) : m_sourceFile;
+    return FileChannel.open(Paths.get(base + suffix), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                            StandardOpenOption.TRUNCATE_EXISTING);
+  }
+
+  private Lexer openLexer(SymbolTable symbolTable) throws IOException {
+    if (m_options.isMappedInput())
+      return Lexer.mapFile(m_sourceFile, symbolTable);
+    return new Lexer(new FileReader(m_sourceFile), symbolTable);
+  }
+
+  public String getSourceFile() {
+    return m_sourceFile;
+  }
+
+  public String getDiagnostics() {
+    return m_diagnostics.toString();
+  }
+
+  public int getTokenCount() {
+    return m_tokenCount;
+  }
+
+  public int getErrorCount() {
+    return m_errorCount;
+  }
+
+  public int getQuadCount() {
+    return m_quadCount;
+  }
+
+  /* The generated code when the TAC format is MEMORY, null otherwise */
+  public TacProgram getProgram() {
+    return m_program;
+  }
+
+  /* True if the result was taken from CompilerOptions.getCache() instead of compiling */
+  public boolean isCached() {
+    return m_cached;
+  }
+
+  /*
+    The phase times and counts, null unless CompilerOptions.isStats(); a compilation recorded with
+    Flight Recorder times its phases for the CompileFile event but only hands them out if asked to
+  */
+  public CompilerStats getStats() {
+    return m_options.isStats() ? m_stats : null;
+  }
+
+  /* The optimizer when CompilerOptions.isOptimize() and the file was compiled, with its report; null otherwise */
+  public Optimizer getOptimizer() {
+    return m_optimizer;
+  }
+}
@@ -0,0 +1,340 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+  Results of earlier compilations kept on disk, so compiling a file again skips the lexer, parser,
+  code generator and optimizer.
+
+  An entry is keyed by the SHA-256 of the source bytes, of the options that change the result
+  (optimize, table-driven) and of VERSION, and holds what went to the TAC sink, in TacBinaryWriter's
+  format, then the diagnostics and a fixed-size trailer:
+    error count, token count, quad count, diagnostics length (ints), MAGIC
+  A hit maps the entry and replays its quads into the sink, with the symbols entered in a new table.
+
+  Several processes can share a directory. An entry is written to a temporary file of its own and
+  renamed to its key when complete, so a reader sees a whole entry or none; two processes compiling
+  the same file just write the same entry twice. A hit sets the entry's modification time, which
+  makes it the most recently used. Listing the directory after every write would cost more than the
+  compilation, so each process counts the size from its last listing plus its own entries; when that
+  goes over the limit, it lists the directory and deletes the least recently used entries down to
+  three quarters of the limit. The directory can thus exceed it by what other processes wrote since.
+  A file that disappears between listing and reading is a miss, and one that is damaged is deleted.
+*/
+public class CompilationCache {
+
+  public static final long DEFAULT_SIZE = 256L << 20;
+
+  private static final int MAGIC = 0x44434331;                   // "DCC1"
+  // Part of every key: bump it when the code generator, optimizer or diagnostics change their output,
+  // so entries written by an older compiler are not replayed
+  private static final int VERSION = 1;
+  private static final int TRAILER_SIZE = 5 * 4;
+  private static final String SUFFIX = ".dcc";
+  private static final String TEMP_SUFFIX = ".tmp";
+  // Temporary files this old were left by a process that died while writing
+  private static final long STALE_MILLIS = 60 * 60 * 1000;
+  // A Writer's buffer is on the heap: a batch opens one per file, faster than direct buffers are freed
+  private static final int WRITER_BUFFER_SIZE = 1 << 16;
+
+  private Path m_directory;
+  private long m_maxSize;
+  private AtomicLong m_hitCount = new AtomicLong();
+  private AtomicLong m_missCount = new AtomicLong();
+  // Bytes of entries at the last listing plus those this process wrote since; -1 before the first
+  private AtomicLong m_size = new AtomicLong(-1);
+
+  public CompilationCache(String directory) throws IOException {
+    this(directory, DEFAULT_SIZE);
+  }
+
+  /* maxSize: bytes of entries the directory may hold, checked after every new entry */
+  public CompilationCache(String directory, long maxSize) throws IOException {
+    m_directory = Files.createDirectories(Paths.get(directory));
+    m_maxSize = maxSize;
+  }
+
+  public Path getDirectory() {
+    return m_directory;
+  }
+
+  public long getMaxSize() {
+    return m_maxSize;
+  }
+
+  public long getHitCount() {
+    return m_hitCount.get();
+  }
+
+  public long getMissCount() {
+    return m_missCount.get();
+  }
+
+  /* The key of a source file compiled with the given options by this compiler: hex SHA-256 of its bytes, read mapped */
+  public String key(String sourceFile, CompilerOptions options) throws IOException {
+    MessageDigest digest;
+    try {
+      digest = MessageDigest.getInstance("SHA-256");
+    }
+    catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+    digest.update((byte) MAGIC);
+    digest.update(ByteBuffer.allocate(4).putInt(VERSION).array());
+    digest.update((byte) (options.isOptimize() ? 1 : 0));
+    digest.update((byte) (options.isTableDriven() ? 1 : 0));
+    try (FileChannel channel = FileChannel.open(Paths.get(sourceFile), StandardOpenOption.READ)) {
+      long size = channel.size();
+      if (size > 0)
+        digest.update(channel.map(FileChannel.MapMode.READ_ONLY, 0, size));
+    }
+    StringBuilder key = new StringBuilder(64);
+    for (byte b : digest.digest())
+      key.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+    return key.toString();
+  }
+
+  /* The entry for a key, or null if there is none */
+  public Entry get(String key) throws IOException {
+    Path path = m_directory.resolve(key + SUFFIX);
+    MappedByteBuffer bytes;
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      bytes = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+    }
+    catch (NoSuchFileException e) {
+      m_missCount.incrementAndGet();
+      return null;
+    }
+    Entry entry = Entry.read(bytes);
+    if (entry == null) {
+      Files.deleteIfExists(path);
+      m_missCount.incrementAndGet();
+      return null;
+    }
+    try {
+      Files.setLastModifiedTime(path, FileTime.fromMillis(System.currentTimeMillis()));
+    }
+    catch (NoSuchFileException e) {
+      // evicted by another process meanwhile; the mapping stays valid
+    }
+    m_hitCount.incrementAndGet();
+    return entry;
+  }
+
+  /*
+    Starts a new entry for a key. The returned sink passes everything on to next (which may be null)
+    and records it; Writer.commit() then adds the entry to the cache.
+  */
+  public Writer put(String key, TacSink next, SymbolTable symbolTable) throws IOException {
+    Path temp = Files.createTempFile(m_directory, key + '.', TEMP_SUFFIX);
+    return new Writer(key, temp, next, symbolTable);
+  }
+
+  /* Lists the directory and, if it holds more than getMaxSize() bytes, deletes the least recently used entries */
+  public synchronized void evict() throws IOException {
+    final Map<Path, Long> times = new HashMap<Path, Long>();
+    Map<Path, Long> sizes = new HashMap<Path, Long>();
+    long total = 0;
+    long now = System.currentTimeMillis();
+    try (DirectoryStream<Path> files = Files.newDirectoryStream(m_directory)) {
+      for (Path file : files) {
+        String name = file.getFileName().toString();
+        try {
+          long time = Files.getLastModifiedTime(file).toMillis();
+          if (name.endsWith(TEMP_SUFFIX) && now - time > STALE_MILLIS)
+            Files.deleteIfExists(file);
+          else if (name.endsWith(SUFFIX)) {
+            long size = Files.size(file);
+            times.put(file, time);
+            sizes.put(file, size);
+            total += size;
+          }
+        }
+        catch (NoSuchFileException e) {
+          // deleted by another process
+        }
+      }
+    }
+    if (total <= m_maxSize) {
+      m_size.set(total);
+      return;
+    }
+    long target = m_maxSize / 4 * 3;
+    List<Path> oldestFirst = new ArrayList<Path>(times.keySet());
+    Collections.sort(oldestFirst, new Comparator<Path>() {
+      public int compare(Path a, Path b) {
+        return Long.compare(times.get(a), times.get(b));
+      }
+    });
+    for (int n = 0; n < oldestFirst.size() && total > target; n++) {
+      Path file = oldestFirst.get(n);
+      Files.deleteIfExists(file);
+      total -= sizes.get(file);
+    }
+    m_size.set(total);
+  }
+
+  /* A cached compilation, read from a mapped file */
+  public static class Entry {
+    private ByteBuffer m_bytes;
+    private int m_tacEnd;
+    private byte[] m_diagnostics;
+    private int m_errorCount;
+    private int m_tokenCount;
+    private int m_quadCount;
+
+    /* null if the bytes are not a whole entry */
+    private static Entry read(ByteBuffer bytes) {
+      int size = bytes.limit();
+      if (size < TacBinaryWriter.MAGIC.length + 1 + TRAILER_SIZE || bytes.getInt(size - 4) != MAGIC)
+        return null;
+      Entry entry = new Entry();
+      entry.m_bytes = bytes;
+      int trailer = size - TRAILER_SIZE;
+      entry.m_errorCount = bytes.getInt(trailer);
+      entry.m_tokenCount = bytes.getInt(trailer + 4);
+      entry.m_quadCount = bytes.getInt(trailer + 8);
+      int diagnosticsLength = bytes.getInt(trailer + 12);
+      entry.m_tacEnd = trailer - diagnosticsLength;
+      if (diagnosticsLength < 0 || entry.m_tacEnd < TacBinaryWriter.MAGIC.length + 1)
+        return null;
+      entry.m_diagnostics = new byte[diagnosticsLength];
+      ByteBuffer diagnostics = bytes.duplicate();
+      diagnostics.position(entry.m_tacEnd);
+      diagnostics.get(entry.m_diagnostics);
+      return entry;
+    }
+
+    /* The diagnostics, as the compilation printed them */
+    public byte[] getDiagnostics() {
+      return m_diagnostics;
+    }
+
+    public int getErrorCount() {
+      return m_errorCount;
+    }
+
+    public int getTokenCount() {
+      return m_tokenCount;
+    }
+
+    public int getQuadCount() {
+      return m_quadCount;
+    }
+
+    /* Sends the quads to sink (which may be null), with their symbols entered in symbolTable; does not close it */
+    public void replay(TacSink sink, SymbolTable symbolTable) throws IOException {
+      ByteBuffer in = m_bytes.duplicate();
+      in.position(TacBinaryWriter.MAGIC.length + 1);
+      in.limit(m_tacEnd);
+      int[] ids = new int[256];
+      char[] chars = new char[64];
+      while (in.hasRemaining()) {
+        int tag = in.get() & 0xFF;
+        if (tag == TacBinaryWriter.SYMBOL) {
+          int id = varint(in);
+          int length = varint(in);
+          if (chars.length < length)
+            chars = new char[Math.max(length, chars.length * 2)];
+          for (int n = 0; n < length; n++)
+            chars[n] = (char) (in.get() & 0xFF);
+          if (id >= ids.length)
+            ids = Arrays.copyOf(ids, Math.max(id + 1, ids.length * 2));
+          ids[id] = symbolTable.intern(chars, 0, length);
+        }
+        else if (tag == TacBinaryWriter.END_METHOD) {
+          if (sink != null)
+            sink.endMethod();
+        }
+        else {
+          int param1 = varint(in) - 1;
+          int param2 = varint(in) - 1;
+          int result = varint(in) - 1;
+          if (sink != null)
+            sink.quad(tag, id(ids, param1), id(ids, param2), id(ids, result));
+        }
+      }
+    }
+
+    private static int id(int[] ids, int cached) {
+      return cached == QuadrupleList.NONE ? QuadrupleList.NONE : ids[cached];
+    }
+
+    private static int varint(ByteBuffer in) {
+      int value = 0;
+      int shift = 0;
+      int b;
+      do {
+        b = in.get();
+        value |= (b & 0x7F) << shift;
+        shift += 7;
+      } while ((b & 0x80) != 0);
+      return value;
+    }
+  }
+
+  /* Records a compilation into a temporary file, which commit() turns into an entry */
+  public class Writer implements TacSink {
+    private String m_key;
+    private Path m_temp;
+    private FileChannel m_channel;
+    private TacBinaryWriter m_tac;
+    private TacSink m_next;
+
+    private Writer(String key, Path temp, TacSink next, SymbolTable symbolTable) throws IOException {
+      m_key = key;
+      m_temp = temp;
+      m_next = next;
+      m_channel = FileChannel.open(temp, StandardOpenOption.WRITE);
+      m_tac = new TacBinaryWriter(m_channel, false, symbolTable, ByteBuffer.allocate(WRITER_BUFFER_SIZE));
+    }
+
+    public void quad(int code, int param1, int param2, int result) throws IOException {
+      m_tac.quad(code, param1, param2, result);
+      if (m_next != null)
+        m_next.quad(code, param1, param2, result);
+    }
+
+    public void endMethod() throws IOException {
+      m_tac.endMethod();
+      if (m_next != null)
+        m_next.endMethod();
+    }
+
+    /* Closes the sink passed on to; the entry is still to be committed or aborted */
+    public void close() throws IOException {
+      m_tac.close();
+      if (m_next != null)
+        m_next.close();
+    }
+
+    /* Adds the entry to the cache, then evicts entries if the cache has grown too large */
+    public void commit(byte[] diagnostics, int errorCount, int tokenCount, int quadCount) throws IOException {
+      m_tac.close();
+      ByteBuffer trailer = ByteBuffer.allocate(diagnostics.length + TRAILER_SIZE);
+      trailer.put(diagnostics);
+      trailer.putInt(errorCount).putInt(tokenCount).putInt(quadCount).putInt(diagnostics.length).putInt(MAGIC);
+      trailer.flip();
+      while (trailer.hasRemaining())
+        m_channel.write(trailer);
+      long size = m_channel.size();
+      m_channel.close();
+      Files.move(m_temp, m_directory.resolve(m_key + SUFFIX), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+      if (m_size.get() < 0 || m_size.addAndGet(size) > m_maxSize)
+        evict();
+    }
+
+    /* Drops the entry, after the compilation failed */
+    public void abort() throws IOException {
+      m_channel.close();
+      Files.deleteIfExists(m_temp);
+    }
+  }
+}
@@ -0,0 +1,196 @@
+import java.io.*;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.util.*;
+
+/*
+  The client side of CompilerDaemon: one connection, over which any number of requests are sent.
+
+  Usage: CompilerClient [--socket path] [-O] [--tac] [--repeat n] [--stats] [--shutdown] file ...
+    --socket path   the daemon's socket, CompilerDaemon.defaultSocket() by default
+    -O              optimize the three-address code
+    --tac           print the TAC listing of every file after its diagnostics
+    --repeat n      compile every file n times, printing its output once, to measure latency
+    --stats         print the daemon's latencies over all requests it has served
+    --shutdown      stop the daemon, after the files
+  The latencies seen by the client (the round trip) and by the daemon are printed to stderr. The exit
+  status is 1 if a file has errors or cannot be compiled.
+*/
+public class CompilerClient implements Closeable {
+
+  private SocketChannel m_channel;
+  private DataInputStream m_in;
+  private DataOutputStream m_out;
+
+  public CompilerClient(String socket) throws IOException {
+    m_channel = SocketChannel.open(StandardProtocolFamily.UNIX);
+    m_channel.connect(UnixDomainSocketAddress.of(socket));
+    m_in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(m_channel)));
+    m_out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(m_channel)));
+  }
+
+  /* Compiles a file, which the daemon reads; paths are resolved in the daemon's directory */
+  public Reply compile(String sourceFile, boolean optimize, boolean tac) throws IOException {
+    m_out.writeByte(CompilerDaemon.COMPILE);
+    m_out.writeByte((optimize ? CompilerDaemon.OPTIMIZE : 0) | (tac ? CompilerDaemon.TAC : 0));
+    m_out.writeUTF(sourceFile);
+    m_out.flush();
+    Reply reply = new Reply();
+    if (m_in.readByte() != CompilerDaemon.OK) {
+      reply.m_failure = m_in.readUTF();
+      return reply;
+    }
+    reply.m_errorCount = m_in.readInt();
+    reply.m_tokenCount = m_in.readInt();
+    reply.m_nanos = m_in.readLong();
+    reply.m_diagnostics = new byte[m_in.readInt()];
+    m_in.readFully(reply.m_diagnostics);
+    reply.m_tac = new byte[m_in.readInt()];
+    m_in.readFully(reply.m_tac);
+    return reply;
+  }
+
+  /* The daemon's latencies over all the requests it has served */
+  public String stats() throws IOException {
+    m_out.writeByte(CompilerDaemon.STATS);
+    m_out.flush();
+    return m_in.readUTF();
+  }
+
+  public void shutdown() throws IOException {
+    m_out.writeByte(CompilerDaemon.SHUTDOWN);
+    m_out.flush();
+    m_in.readByte();
+  }
+
+  public void close() throws IOException {
+    m_channel.close();
+  }
+
+  /* What the daemon sent back for one file */
+  public static class Reply {
+    private String m_failure;
+    private int m_errorCount;
+    private int m_tokenCount;
+    private long m_nanos;
+    private byte[] m_diagnostics = new byte[0];
+    private byte[] m_tac = new byte[0];
+
+    /* Why the file could not be compiled (it could not be read, say), null if it was */
+    public String getFailure() {
+      return m_failure;
+    }
+
+    public int getErrorCount() {
+      return m_errorCount;
+    }
+
+    public int getTokenCount() {
+      return m_tokenCount;
+    }
+
+    /* Time the daemon spent on the request */
+    public long getNanos() {
+      return m_nanos;
+    }
+
+    public byte[] getDiagnostics() {
+      return m_diagnostics;
+    }
+
+    /* The TAC listing, empty unless asked for */
+    public byte[] getTac() {
+      return m_tac;
+    }
+  }
+
+  public static void main(String[] args) throws IOException {
+    String socket = CompilerDaemon.defaultSocket();
+    boolean optimize = false;
+    boolean tac = false;
+    int repeat = 1;
+    boolean stats = false;
+    boolean shutdown = false;
+    List<String> files = new ArrayList<String>();
+    for (int n = 0; n < args.length; n++) {
+      if (args[n].equals("--socket") && n + 1 < args.length)
+        socket = args[++n];
+      else if (args[n].equals("-O"))
+        optimize = true;
+      else if (args[n].equals("--tac"))
+        tac = true;
+      else if (args[n].equals("--repeat") && n + 1 < args.length)
+        repeat = repeat(args[++n]);
+      else if (args[n].equals("--stats"))
+        stats = true;
+      else if (args[n].equals("--shutdown"))
+        shutdown = true;
+      else
+        files.add(new File(args[n]).getAbsolutePath());
+    }
+    if (files.isEmpty() && !stats && !shutdown)
+      usage();
+
+    boolean failed = false;
+    CompilerDaemon.Latencies roundTrips = new CompilerDaemon.Latencies();
+    CompilerDaemon.Latencies served = new CompilerDaemon.Latencies();
+    CompilerClient client = new CompilerClient(socket);
+    try {
+      for (String file : files) {
+        Reply reply = null;
+        for (int round = 0; round < repeat; round++) {
+          long start = System.nanoTime();
+          reply = client.compile(file, optimize, tac);
+          roundTrips.add(System.nanoTime() - start);
+          if (reply.getFailure() == null)
+            served.add(reply.getNanos());
+        }
+        if (reply.getFailure() != null) {
+          System.out.println(reply.getFailure());
+          failed = true;
+          continue;
+        }
+        if (files.size() > 1 && (reply.getErrorCount() > 0 || tac))
+          System.out.println(file + ":");
+        System.out.write(reply.getDiagnostics());
+        System.out.write(reply.getTac());
+        failed |= reply.getErrorCount() > 0;
+      }
+      System.out.flush();
+      if (!files.isEmpty()) {
+        System.err.println("round trip: " + roundTrips);
+        System.err.println("in daemon:  " + served);
+      }
+      if (stats)
+        System.err.println("daemon, all requests: " + client.stats());
+      if (shutdown)
+        client.shutdown();
+    }
+    finally {
+      client.close();
+    }
+    if (failed)
+      System.exit(1);
+  }
+
+  private static void usage() {
+    System.err.println("Usage: CompilerClient [--socket path] [-O] [--tac] [--repeat n] [--stats] [--shutdown] file ...");
+    System.exit(2);
+  }
+
+  /* The count of --repeat; anything but a number of at least 1 prints the usage */
+  private static int repeat(String arg) {
+    try {
+      int value = Integer.parseInt(arg);
+      if (value >= 1)
+        return value;
+    }
+    catch (NumberFormatException e) {
+    }
+    System.err.println("Not a valid number: " + arg);
+    usage();
+    return 1;
+  }
+}
@@ -0,0 +1,333 @@
+import java.io.*;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/*
+  A compiler that stays resident and compiles files on request over a Unix-domain socket, so a
+  compile does not pay for starting a JVM, initializing the lexer's tables and warming up the JIT.
+
+  Each connection is served by a thread of a pool and may carry any number of requests, one after
+  the other (CompilerClient is the client side). Every message starts with an operation byte:
+    COMPILE   flags (byte: OPTIMIZE, TAC), the path of the source file (UTF)
+              reply: OK, error count, token count, nanoseconds spent (long), then the diagnostics and
+              the TAC listing (if asked for) as byte arrays (int length, bytes); or FAILED, a message (UTF)
+    STATS     reply: a line of text (UTF) with the number of requests and their p50/p99/max latency
+    SHUTDOWN  reply: OK; the daemon stops accepting connections and removes its socket
+  Files are read by the daemon, so paths should be absolute or relative to its directory. Other
+  options (--mmap, --cache, ...) are those the daemon was started with.
+
+  An incremental daemon (setIncremental) keeps an IncrementalCompiler for each file it compiles, and
+  for each file with and without -O, so a file compiled again only has the methods that changed parsed and
+  optimized; the least recently compiled files are forgotten past MAX_INCREMENTAL_FILES. Diagnostics and
+  code are the same as a full compilation's. It compiles with the recursive-descent parser and
+  does not use the CompilationCache.
+*/
+public class CompilerDaemon {
+
+  public static final int COMPILE = 1, STATS = 2, SHUTDOWN = 3;
+  public static final int OPTIMIZE = 1, TAC = 2;
+  public static final int OK = 0, FAILED = 1;
+
+  // Compilations run on startup, so the first request finds the lexer and parser compiled by the JIT
+  private static final int WARM_UP_ROUNDS = 300;
+  private static final long WARM_UP_SEED = 1;
+  private static final long WARM_UP_SIZE = 8 << 10;
+  private static final int TAC_BUFFER_SIZE = 1 << 16;
+  public static final int MAX_INCREMENTAL_FILES = 64;
+
+  private Path m_socket;
+  private CompilerOptions m_options;
+  private int m_threads;
+  private ServerSocketChannel m_server;
+  private ExecutorService m_pool;
+  private Latencies m_latencies = new Latencies();
+  private volatile boolean m_stopping;
+  private boolean m_incremental;
+  // By source file and -O, the compiler that compiled it last, least recently used first
+  private Map<String, IncrementalCompiler> m_incrementalCompilers =
+    new LinkedHashMap<String, IncrementalCompiler>(16, 0.75f, true) {
+      protected boolean removeEldestEntry(Map.Entry<String, IncrementalCompiler> eldest) {
+        return size() > MAX_INCREMENTAL_FILES;
+      }
+    };
+
+  public CompilerDaemon(String socket, CompilerOptions options, int threads) {
+    m_socket = Paths.get(socket);
+    m_options = options;
+    m_threads = threads;
+  }
+
+  /* Where the daemon and its clients meet unless told otherwise: a socket per user in the temporary directory */
+  public static String defaultSocket() {
+    return Paths.get(System.getProperty("java.io.tmpdir"), "decaf-" + System.getProperty("user.name") + ".sock").toString();
+  }
+
+  /* Recompile only the methods of a file that changed since the daemon last compiled it; set before serve() */
+  public void setIncremental(boolean incremental) {
+    m_incremental = incremental;
+  }
+
+  public Latencies getLatencies() {
+    return m_latencies;
+  }
+
+  /* Warms up, then serves connections until a SHUTDOWN request or stop() */
+  public void serve() throws IOException {
+    warmUp();
+    Files.deleteIfExists(m_socket);
+    m_server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+    m_server.bind(UnixDomainSocketAddress.of(m_socket));
+    m_pool = Executors.newFixedThreadPool(m_threads);
+    try {
+      while (!m_stopping) {
+        final SocketChannel connection;
+        try {
+          connection = m_server.accept();
+        }
+        catch (IOException e) {
+          if (m_stopping)
+            break;
+          throw e;
+        }
+        m_pool.execute(new Runnable() {
+          public void run() {
+            serve(connection);
+          }
+        });
+      }
+    }
+    finally {
+      m_pool.shutdown();
+      m_server.close();
+      Files.deleteIfExists(m_socket);
+    }
+  }
+
+  /* Makes serve() return; connections being served finish their current request */
+  public void stop() throws IOException {
+    m_stopping = true;
+    if (m_server != null)
+      m_server.close();
+  }
+
+  private void serve(SocketChannel connection) {
+    try {
+      DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(connection)));
+      DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(connection)));
+      while (true) {
+        int operation = in.read();
+        if (operation < 0)
+          break;
+        switch (operation) {
+          case COMPILE:
+            int flags = in.readByte();
+            String sourceFile = in.readUTF();
+            compile(sourceFile, flags, out);
+            break;
+          case STATS:
+            out.writeUTF(m_latencies.toString());
+            break;
+          case SHUTDOWN:
+            out.writeByte(OK);
+            out.flush();
+            stop();
+            return;
+          default:
+            throw new IOException("unknown request " + operation);
+        }
+        out.flush();
+      }
+    }
+    catch (IOException e) {
+      if (!m_stopping)
+        System.err.println("CompilerDaemon: " + e);
+    }
+    finally {
+      try {
+        connection.close();
+      }
+      catch (IOException e) {
+        // nothing left to tell the client
+      }
+    }
+  }
+
+  private void compile(String sourceFile, int flags, DataOutputStream out) throws IOException {
+    long start = System.nanoTime();
+    int errorCount;
+    int tokenCount;
+    byte[] diagnostics;
+    byte[] tac = new byte[0];
+    try {
+      if (m_incremental) {
+        IncrementalCompiler compiler = incrementalCompiler(sourceFile, (flags & OPTIMIZE) != 0);
+        synchronized (compiler) {
+          compiler.compile(sourceFile);
+          if ((flags & TAC) != 0)
+            tac = listing(compiler.getProgram());
+          errorCount = compiler.getErrorCount();
+          tokenCount = compiler.getTokenCount();
+          diagnostics = compiler.getDiagnostics().getBytes();
+        }
+      }
+      else {
+        CompilerOptions options = requestOptions();
+        options.setCache(m_options.getCache());
+        options.setOptimize((flags & OPTIMIZE) != 0);
+        options.setTacFormat((flags & TAC) != 0 ? TacFormat.MEMORY : TacFormat.NONE);
+        Compilation compilation = new Compilation(sourceFile, options).run();
+        if (compilation.getProgram() != null)
+          tac = listing(compilation.getProgram());
+        errorCount = compilation.getErrorCount();
+        tokenCount = compilation.getTokenCount();
+        diagnostics = compilation.getDiagnostics().getBytes();
+      }
+    }
+    catch (IOException | RuntimeException | StackOverflowError e) {
+      // A file nested too deeply for the recursive parser is one failed request, as in a batch;
+      // an incremental compiler cut short may hold half of the file's methods, so it is dropped
+      if (m_incremental)
+        forgetIncrementalCompiler(sourceFile, (flags & OPTIMIZE) != 0);
+      out.writeByte(FAILED);
+      out.writeUTF(sourceFile + ": cannot compile: " + e);
+      return;
+    }
+    long nanos = System.nanoTime() - start;
+    m_latencies.add(nanos);
+    out.writeByte(OK);
+    out.writeInt(errorCount);
+    out.writeInt(tokenCount);
+    out.writeLong(nanos);
+    out.writeInt(diagnostics.length);
+    out.write(diagnostics);
+    out.writeInt(tac.length);
+    out.write(tac);
+  }
+
+  /* The compiler that keeps the file's methods from one request to the next, a new one for a file not seen lately */
+  private IncrementalCompiler incrementalCompiler(String sourceFile, boolean optimize) {
+    String key = incrementalKey(sourceFile, optimize);
+    synchronized (m_incrementalCompilers) {
+      IncrementalCompiler compiler = m_incrementalCompilers.get(key);
+      if (compiler == null) {
+        CompilerOptions options = requestOptions();
+        options.setOptimize(optimize);
+        compiler = new IncrementalCompiler(options);
+        m_incrementalCompilers.put(key, compiler);
+      }
+      return compiler;
+    }
+  }
+
+  private void forgetIncrementalCompiler(String sourceFile, boolean optimize) {
+    synchronized (m_incrementalCompilers) {
+      m_incrementalCompilers.remove(incrementalKey(sourceFile, optimize));
+    }
+  }
+
+  private static String incrementalKey(String sourceFile, boolean optimize) {
+    return (optimize ? "-O " : "") + sourceFile;
+  }
+
+  /* New options for one compilation, with the daemon's choice of lexer input, tokens and parser */
+  private CompilerOptions requestOptions() {
+    CompilerOptions options = new CompilerOptions();
+    options.setMappedInput(m_options.isMappedInput());
+    options.setPackedTokens(m_options.isPackedTokens());
+    options.setTableDriven(m_options.isTableDriven());
+    return options;
+  }
+
+  /* The program as TacTextWriter lists it */
+  private static byte[] listing(TacProgram program) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    TacTextWriter writer = new TacTextWriter(Channels.newChannel(bytes), true, program.getSymbolTable(),
+                                             ByteBuffer.allocate(TAC_BUFFER_SIZE));
+    program.writeTo(writer);
+    writer.close();
+    return bytes.toByteArray();
+  }
+
+  /* Compiles a generated program a few hundred times, with and without optimizing, to get the JIT going */
+  private void warmUp() throws IOException {
+    File file = File.createTempFile("warm-up", BatchCompiler.SOURCE_SUFFIX);
+    try {
+      new ProgramGenerator(WARM_UP_SEED).setSize(WARM_UP_SIZE).generate(file.getPath());
+      CompilerOptions options = requestOptions();
+      options.setTacFormat(TacFormat.MEMORY);
+      for (int round = 0; round < WARM_UP_ROUNDS; round++) {
+        options.setOptimize(round % 2 == 1);
+        listing(new Compilation(file.getPath(), options).run().getProgram());
+        if (m_incremental)
+          listing(new IncrementalCompiler(options).compile(file.getPath()).getProgram());
+      }
+    }
+    finally {
+      file.delete();
+    }
+  }
+
+  /*
+    Latencies of the requests served: the count and maximum of all of them, and percentiles of the
+    last SAMPLES, kept in a ring so a daemon that runs for months holds a fixed amount. Percentiles
+    sort a copy of the ring outside the lock, so requests being served do not wait for them
+  */
+  public static class Latencies {
+    public static final int SAMPLES = 4096;
+
+    private long[] m_nanos = new long[SAMPLES];
+    private long m_count;
+    private long m_max;
+
+    public synchronized void add(long nanos) {
+      m_nanos[(int) (m_count % SAMPLES)] = nanos;
+      m_count++;
+      m_max = Math.max(m_max, nanos);
+    }
+
+    public synchronized long getCount() {
+      return m_count;
+    }
+
+    public synchronized long getMax() {
+      return m_max;
+    }
+
+    /* The latency at a fraction (0.5 for the median) of the last samples sorted, 0 if there are none */
+    public long percentile(double fraction) {
+      return percentile(samples(), fraction);
+    }
+
+    private synchronized long[] samples() {
+      return Arrays.copyOf(m_nanos, (int) Math.min(m_count, SAMPLES));
+    }
+
+    private static long percentile(long[] sorted, double fraction) {
+      if (sorted.length == 0)
+        return 0;
+      Arrays.sort(sorted);
+      int rank = (int) Math.ceil(fraction * sorted.length) - 1;
+      return sorted[Math.max(0, Math.min(sorted.length - 1, rank))];
+    }
+
+    public String toString() {
+      long count;
+      long max;
+      long[] samples;
+      synchronized (this) {
+        count = m_count;
+        max = m_max;
+        samples = samples();
+      }
+      return String.format("%d requests, p50 %.3f ms, p99 %.3f ms, max %.3f ms", count, percentile(samples, 0.5) / 1e6,
+                           percentile(samples, 0.99) / 1e6, max / 1e6);
+    }
+  }
+}
@@ -0,0 +1,141 @@
+import jdk.jfr.*;
+
+/*
+  The compiler's Java Flight Recorder events, all in the "Decaf Compiler" category:
+
+    decaf.CompileFile       one per file compiled or replayed from the cache, with what it produced and
+                            the time of each CompilerStats phase (lex, parse, recover, diagnostics, codegen)
+    decaf.CompilePhase      the steps a file goes through one after the other: cache lookup, parse
+                            (lexing, recovery and code generation included), close output, cache replay, cache commit
+    decaf.ErrorRecovery     an error recovery episode, from the error to the point the parser goes on again,
+                            with the nonterminal recovered in and the tokens skipped
+    decaf.SymbolTableGrowth a symbol table array grown, with how long the copy took
+
+  Lexer and parser phases change every few tokens, far too often for an event each; they are timed by a
+  CompilerStats, which a compilation keeps whenever decaf.CompileFile is being recorded, and their times
+  are summed into the CompileFile event. When no recording is running the events are not committed,
+  and the compilation keeps no CompilerStats unless CompilerOptions.isStats().
+
+  Recording a batch run and reading it back:
+    java -XX:StartFlightRecording:filename=batch.jfr,settings=profile MyMain -j 8 dir
+    jfr summary batch.jfr
+    jfr print --events decaf.CompileFile,decaf.ErrorRecovery batch.jfr
+*/
+public class CompilerEvents {
+
+  private static final String CATEGORY = "Decaf Compiler";
+
+  @Name("decaf.CompileFile")
+  @Label("Compile File")
+  @Category(CATEGORY)
+  @Description("A source file compiled, or its result taken from the compilation cache")
+  @StackTrace(false)
+  static class CompileFile extends Event {
+    @Label("Source File")
+    String sourceFile;
+    @Label("Cached")
+    boolean cached;
+    @Label("Tokens")
+    int tokens;
+    @Label("Errors")
+    int errors;
+    @Label("Quadruples")
+    int quads;
+    @Label("Symbols")
+    int symbols;
+    @Label("Lexer")
+    @Timespan(Timespan.NANOSECONDS)
+    long lex;
+    @Label("Parser")
+    @Description("Time in the parser itself, the other phases it calls into excluded")
+    @Timespan(Timespan.NANOSECONDS)
+    long parse;
+    @Label("Error Recovery")
+    @Timespan(Timespan.NANOSECONDS)
+    long recover;
+    @Label("Diagnostics")
+    @Timespan(Timespan.NANOSECONDS)
+    long diagnostics;
+    @Label("Code Generation")
+    @Timespan(Timespan.NANOSECONDS)
+    long codegen;
+
+    /* Sets the phase times from a compilation's CompilerStats, if it kept one */
+    void setPhases(CompilerStats stats) {
+      if (stats == null)
+        return;
+      lex = stats.getNanos(CompilerStats.Phase.LEX);
+      parse = stats.getNanos(CompilerStats.Phase.PARSE);
+      recover = stats.getNanos(CompilerStats.Phase.RECOVER);
+      diagnostics = stats.getNanos(CompilerStats.Phase.DIAGNOSTICS);
+      codegen = stats.getNanos(CompilerStats.Phase.CODEGEN);
+    }
+  }
+
+  @Name("decaf.CompilePhase")
+  @Label("Compile Phase")
+  @Category(CATEGORY)
+  @Description("One step of compiling a file")
+  @StackTrace(false)
+  static class CompilePhase extends Event {
+    @Label("Source File")
+    String sourceFile;
+    @Label("Phase")
+    String phase;
+
+    /* A phase event with its clock started, to commit() when the phase is over */
+    static CompilePhase begin(String phase, String sourceFile) {
+      CompilePhase event = new CompilePhase();
+      event.phase = phase;
+      event.sourceFile = sourceFile;
+      event.begin();
+      return event;
+    }
+  }
+
+  @Name("decaf.ErrorRecovery")
+  @Label("Error Recovery")
+  @Category(CATEGORY)
+  @Description("A syntax error recovered from: skipping to a token that can follow the nonterminal, then leaving it")
+  @StackTrace(false)
+  static class ErrorRecovery extends Event {
+    @Label("Source File")
+    String sourceFile;
+    @Label("Nonterminal")
+    String nonTerminal;
+    @Label("Expected")
+    @Description("The token the parser expected, NONE if it found no alternative of the nonterminal")
+    String expected;
+    @Label("Line")
+    int line;
+    @Label("Tokens Skipped")
+    int tokensSkipped;
+  }
+
+  @Name("decaf.SymbolTableGrowth")
+  @Label("Symbol Table Growth")
+  @Category(CATEGORY)
+  @Description("A symbol table array copied into a larger one")
+  @StackTrace(false)
+  static class SymbolTableGrowth extends Event {
+    @Label("Array")
+    @Description("ids (the per-symbol arrays), arena (the lexeme characters) or slots (one stripe's hash slots)")
+    String array;
+    @Label("Symbols")
+    int symbols;
+    @Label("Old Capacity")
+    int oldCapacity;
+    @Label("New Capacity")
+    int newCapacity;
+
+    static SymbolTableGrowth begin(String array, int symbols, int oldCapacity, int newCapacity) {
+      SymbolTableGrowth event = new SymbolTableGrowth();
+      event.array = array;
+      event.symbols = symbols;
+      event.oldCapacity = oldCapacity;
+      event.newCapacity = newCapacity;
+      event.begin();
+      return event;
+    }
+  }
+}
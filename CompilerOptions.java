@@ -0,0 +1,96 @@
+/*
+  Switches that select how a compilation runs. One instance can be shared by all compilations of a batch.
+*/
+public class CompilerOptions {
+
+  private boolean m_mappedInput;
+  private boolean m_packedTokens;
+  private boolean m_tableDriven;
+  private TacFormat m_tacFormat = TacFormat.NONE;
+  private boolean m_optimize;
+  private CompilationCache m_cache;
+  private boolean m_stats;
+  private int m_traceEvents;
+  private boolean m_traceFile;
+
+  /* Scan the memory-mapped source bytes instead of reading through a java.io.Reader */
+  public boolean isMappedInput() {
+    return m_mappedInput;
+  }
+
+  public void setMappedInput(boolean mappedInput) {
+    m_mappedInput = mappedInput;
+  }
+
+  /* Let the lexer append tokens to the parser's TokenBuffer instead of allocating a Token each */
+  public boolean isPackedTokens() {
+    return m_packedTokens;
+  }
+
+  public void setPackedTokens(boolean packedTokens) {
+    m_packedTokens = packedTokens;
+  }
+
+  /* Parse with the table-driven LL(1) engine instead of the recursive-descent parser */
+  public boolean isTableDriven() {
+    return m_tableDriven;
+  }
+
+  public void setTableDriven(boolean tableDriven) {
+    m_tableDriven = tableDriven;
+  }
+
+  /* Where the generated three-address code goes */
+  public TacFormat getTacFormat() {
+    return m_tacFormat;
+  }
+
+  public void setTacFormat(TacFormat tacFormat) {
+    m_tacFormat = tacFormat;
+  }
+
+  /* Run the Optimizer's passes over every method before the code goes to its TacFormat */
+  public boolean isOptimize() {
+    return m_optimize;
+  }
+
+  public void setOptimize(boolean optimize) {
+    m_optimize = optimize;
+  }
+
+  /* Where results of earlier compilations are looked up and kept; null to always compile */
+  public CompilationCache getCache() {
+    return m_cache;
+  }
+
+  public void setCache(CompilationCache cache) {
+    m_cache = cache;
+  }
+
+  /* Time the phases of each compilation and count what they produce, see CompilerStats */
+  public boolean isStats() {
+    return m_stats;
+  }
+
+  public void setStats(boolean stats) {
+    m_stats = stats;
+  }
+
+  /* Trace the parser and error recovery, keeping the last traceEvents events in a Tracer; 0 not to trace */
+  public int getTraceEvents() {
+    return m_traceEvents;
+  }
+
+  public void setTraceEvents(int traceEvents) {
+    m_traceEvents = traceEvents;
+  }
+
+  /* Write the trace of name.decaf to name.trace when it is done, instead of printing it to System.out */
+  public boolean isTraceFile() {
+    return m_traceFile;
+  }
+
+  public void setTraceFile(boolean traceFile) {
+    m_traceFile = traceFile;
+  }
+}
@@ -0,0 +1,140 @@
+import java.io.PrintStream;
+import java.util.*;
+
+/*
+  Where a compilation spends its time, and how much it produces: per-phase times and counters.
+
+  The phases nest (the parser asks for a token, error recovery skips tokens, ...), so the compiler
+  calls enter() and exit() around each one and every nanosecond goes to the innermost phase only:
+  the phase times add up to the time of the whole parse. PARSE is what is left for the parser itself;
+  timing each nonterminal would cost more than the parser, so those are only counted on entry.
+
+  A compilation has a CompilerStats only if CompilerOptions.isStats(); everywhere else the field is
+  null and the instrumentation is one test of it. Not thread-safe: one per compilation, and add()
+  sums them up once they are done.
+*/
+public class CompilerStats {
+
+  public enum Phase {
+    PARSE, LEX, RECOVER, DIAGNOSTICS, CODEGEN
+  }
+
+  public enum Counter {
+    FILES, TOKENS, SYMBOLS, TEMPS, LABELS, QUADS, ERRORS, SKIPPED_TOKENS
+  }
+
+  private static final Phase[] PHASES = Phase.values();
+  private static final NonT[] NON_TS = NonT.values();
+  private static final int TOP_NON_TS = 10;
+
+  private long[] m_nanos = new long[PHASES.length];
+  private long[] m_counts = new long[Counter.values().length];
+  private long[] m_nonTEntries = new long[NON_TS.length];
+
+  // The phases entered and not yet exited, PARSE at the bottom, and when time was last attributed
+  private int[] m_stack = new int[8];
+  private int m_top = -1;
+  private long m_last;
+
+  /* Starts the clock for a compilation, in PARSE */
+  public void start() {
+    m_top = 0;
+    m_stack[0] = Phase.PARSE.ordinal();
+    m_last = System.nanoTime();
+    m_counts[Counter.FILES.ordinal()]++;
+  }
+
+  /* Stops the clock, giving the time since the last phase change to the phase left open (PARSE) */
+  public void stop() {
+    while (m_top >= 0)
+      exit();
+  }
+
+  public void enter(Phase phase) {
+    long now = System.nanoTime();
+    m_nanos[m_stack[m_top]] += now - m_last;
+    m_last = now;
+    m_stack[++m_top] = phase.ordinal();
+  }
+
+  public void exit() {
+    long now = System.nanoTime();
+    m_nanos[m_stack[m_top--]] += now - m_last;
+    m_last = now;
+  }
+
+  public void count(Counter counter) {
+    m_counts[counter.ordinal()]++;
+  }
+
+  public void add(Counter counter, long amount) {
+    m_counts[counter.ordinal()] += amount;
+  }
+
+  public void enterNonT(NonT nonT) {
+    m_nonTEntries[nonT.ordinal()]++;
+  }
+
+  /* Adds the times and counts of another compilation to these */
+  public void add(CompilerStats other) {
+    for (int n = 0; n < m_nanos.length; n++)
+      m_nanos[n] += other.m_nanos[n];
+    for (int n = 0; n < m_counts.length; n++)
+      m_counts[n] += other.m_counts[n];
+    for (int n = 0; n < m_nonTEntries.length; n++)
+      m_nonTEntries[n] += other.m_nonTEntries[n];
+  }
+
+  public long getNanos(Phase phase) {
+    return m_nanos[phase.ordinal()];
+  }
+
+  /* The time of all phases */
+  public long getTotalNanos() {
+    long total = 0;
+    for (long nanos : m_nanos)
+      total += nanos;
+    return total;
+  }
+
+  public long getCount(Counter counter) {
+    return m_counts[counter.ordinal()];
+  }
+
+  public long getNonTEntries(NonT nonT) {
+    return m_nonTEntries[nonT.ordinal()];
+  }
+
+  /* A table of the phases with their share of the time, the counters, and the nonterminals entered most */
+  public void print(PrintStream out) {
+    long total = Math.max(1, getTotalNanos());
+    long tokens = Math.max(1, getCount(Counter.TOKENS));
+    out.printf("%-12s %10s %7s %10s%n", "phase", "ms", "%", "ns/token");
+    for (Phase phase : PHASES)
+      printPhase(out, phase.name().toLowerCase(), m_nanos[phase.ordinal()], total, tokens);
+    printPhase(out, "total", total, total, tokens);
+
+    StringBuilder counters = new StringBuilder();
+    for (Counter counter : Counter.values())
+      counters.append(counters.length() > 0 ? ", " : "").append(counter.name().toLowerCase().replace('_', ' '))
+              .append(' ').append(m_counts[counter.ordinal()]);
+    out.println(counters);
+
+    Integer[] order = new Integer[NON_TS.length];
+    for (int n = 0; n < order.length; n++)
+      order[n] = n;
+    Arrays.sort(order, new Comparator<Integer>() {
+      public int compare(Integer a, Integer b) {
+        return Long.compare(m_nonTEntries[b], m_nonTEntries[a]);
+      }
+    });
+    StringBuilder entries = new StringBuilder("nonterminals entered most:");
+    for (int n = 0; n < TOP_NON_TS && m_nonTEntries[order[n]] > 0; n++)
+      entries.append(n > 0 ? ", " : " ").append(NON_TS[order[n]]).append(' ').append(m_nonTEntries[order[n]]);
+    out.println(entries);
+  }
+
+  private static void printPhase(PrintStream out, String name, long nanos, long total, long tokens) {
+    out.printf("%-12s %10.3f %6.1f%% %10.1f%n", name, nanos / 1e6, 100.0 * nanos / total, (double) nanos / tokens);
+  }
+}
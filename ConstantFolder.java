@@ -0,0 +1,357 @@
+import java.util.*;
+
+/*
+  Constant folding and propagation.
+
+  One forward walk over the method keeps the constant value of every scalar variable and temp
+  known at that point. Known operands are replaced by the constant; arithmetic, NOT, AND and OR on
+  constants become an ASSIGN of the result; a conditional jump on constants becomes a GOTO or
+  disappears. Afterwards temps no longer read anywhere lose their ASSIGNs and their VAR.
+
+  Values flow along jumps: the state at a LABEL is what all jumps to it and the fall through agree
+  on. A LABEL that is jumped to from further down (a loop head) starts with nothing known, so the
+  walk never has to go round twice. Code that cannot be reached is left alone. A CALL may change any
+  field, so it forgets all fields.
+
+  Folding computes what TacVM computes: int arithmetic wraps, an int/real mix is done in real,
+  a value is truncated when it is stored in an int. Division by zero and results that are not
+  finite are left to run time.
+*/
+public class ConstantFolder implements TacPass {
+
+  private QuadrupleList m_quads;
+  private TacSymbols m_symbols;
+
+  // Current state: the constant held by each symbol id (NONE if unknown), and the ids set since the last clear
+  private int[] m_values = newValues(256);
+  private int[] m_known = new int[64];
+  private int m_knownCount;
+  private boolean m_reachable;
+
+  // State at each label from the jumps to it seen so far: sorted (id, constant) pairs
+  private Map<Integer, int[]> m_pending = new HashMap<Integer, int[]>();
+  // Index of the last jump to each label
+  private Map<Integer, Integer> m_lastJump = new HashMap<Integer, Integer>();
+
+  public String getName() {
+    return "constants";
+  }
+
+  public void run(QuadrupleList quads, TacSymbols symbols) {
+    m_quads = quads;
+    m_symbols = symbols;
+    clear();
+    m_pending.clear();
+    m_lastJump.clear();
+
+    for (int n = quads.first(); n >= 0; n = quads.next(n)) {
+      TacCode code = quads.getTacCode(n);
+      if (code == TacCode.GOTO || TacSymbols.isConditionalJump(code))
+        m_lastJump.put(quads.getResult(n), n);
+    }
+
+    m_reachable = true;
+    for (int n = quads.first(); n >= 0; n = quads.next(n)) {
+      if (quads.getTacCode(n) == TacCode.LABEL) {
+        if (!TacSymbols.isMethodLabel(quads, n))
+          enterLabel(n);
+      }
+      else if (m_reachable)
+        visit(n);
+    }
+    Optimizer.removeUnusedTemps(quads, symbols);
+  }
+
+  private void enterLabel(int n) {
+    int label = m_quads.getResult(n);
+    Integer lastJump = m_lastJump.get(label);
+    int[] jumpedIn = m_pending.remove(label);
+    if (lastJump != null && lastJump > n) {
+      clear();
+      m_reachable = true;
+    }
+    else if (m_reachable) {
+      if (jumpedIn != null)
+        meet(jumpedIn);
+    }
+    else if (jumpedIn != null) {
+      restore(jumpedIn);
+      m_reachable = true;
+    }
+  }
+
+  private void visit(int n) {
+    TacCode code = m_quads.getTacCode(n);
+    substituteOperands(n, code);
+    int param1 = m_quads.getParam1(n);
+    int param2 = m_quads.getParam2(n);
+    int result = m_quads.getResult(n);
+
+    switch (code) {
+      case LT: case LE: case GT: case GE: case EQ: case NE:
+        if (m_symbols.isConstant(param1) && m_symbols.isConstant(param2)) {
+          if (compare(code, param1, param2)) {
+            m_quads.set(n, TacCode.GOTO.ordinal(), QuadrupleList.NONE, QuadrupleList.NONE, result);
+            jump(result);
+            m_reachable = false;
+          }
+          else
+            m_quads.remove(n);
+        }
+        else
+          jump(result);
+        break;
+      case GOTO:
+        jump(result);
+        m_reachable = false;
+        break;
+      case RETURN:
+        m_reachable = false;
+        break;
+      case ADD: case SUB: case MULT: case DIVIDE: case DIV: case MOD:
+      case AND: case OR: case UMINUS: case NOT:
+        int value = fold(code, param1, param2);
+        if (value != QuadrupleList.NONE) {
+          m_quads.set(n, TacCode.ASSIGN.ordinal(), value, QuadrupleList.NONE, result);
+          assign(result, value);
+        }
+        else
+          forget(result);
+        break;
+      case ASSIGN:
+        if (m_symbols.isConstant(param1))
+          assign(result, param1);
+        else
+          forget(result);
+        break;
+      case CALL:
+        forget(result);
+        forgetGlobals();
+        break;
+      case ARRAY_LOAD:
+        forget(result);
+        break;
+      default:
+        break;
+    }
+  }
+
+  /* Replaces the value operands whose constant is known */
+  private void substituteOperands(int n, TacCode code) {
+    switch (code) {
+      case ADD: case SUB: case MULT: case DIVIDE: case DIV: case MOD: case AND: case OR:
+      case LT: case LE: case GT: case GE: case EQ: case NE:
+      case ARRAY_STORE:
+        m_quads.setParam2(n, known(m_quads.getParam2(n)));
+        m_quads.setParam1(n, known(m_quads.getParam1(n)));
+        break;
+      case ARRAY_LOAD:
+        m_quads.setParam2(n, known(m_quads.getParam2(n)));
+        break;
+      case UMINUS: case NOT: case ASSIGN: case APARAM: case RETURN:
+        m_quads.setParam1(n, known(m_quads.getParam1(n)));
+        break;
+      default:
+        break;
+    }
+  }
+
+  private int known(int id) {
+    if (id < 0 || id >= m_values.length || m_values[id] == QuadrupleList.NONE)
+      return id;
+    return m_values[id];
+  }
+
+  /* The constant computed by a quad on constant operands, NONE if it cannot be folded */
+  private int fold(TacCode code, int param1, int param2) {
+    if (!m_symbols.isConstant(param1))
+      return QuadrupleList.NONE;
+    switch (code) {
+      case UMINUS:
+        return m_symbols.isRealConstant(param1) ? realResult(-m_symbols.realValue(param1))
+                                                : m_symbols.intConstant(-m_symbols.intValue(param1));
+      case NOT:
+        return m_symbols.intConstant(m_symbols.intValue(param1) == 0 ? 1 : 0);
+      default:
+        break;
+    }
+    if (!m_symbols.isConstant(param2))
+      return QuadrupleList.NONE;
+    if (code == TacCode.AND)
+      return m_symbols.intConstant(m_symbols.intValue(param1) != 0 && m_symbols.intValue(param2) != 0 ? 1 : 0);
+    if (code == TacCode.OR)
+      return m_symbols.intConstant(m_symbols.intValue(param1) != 0 || m_symbols.intValue(param2) != 0 ? 1 : 0);
+
+    if (m_symbols.isRealConstant(param1) || m_symbols.isRealConstant(param2)) {
+      double left = m_symbols.realValue(param1);
+      double right = m_symbols.realValue(param2);
+      switch (code) {
+        case ADD: return realResult(left + right);
+        case SUB: return realResult(left - right);
+        case MULT: return realResult(left * right);
+        case MOD: return realResult(left % right);
+        default: return realResult(left / right);
+      }
+    }
+    int left = m_symbols.intValue(param1);
+    int right = m_symbols.intValue(param2);
+    switch (code) {
+      case ADD: return m_symbols.intConstant(left + right);
+      case SUB: return m_symbols.intConstant(left - right);
+      case MULT: return m_symbols.intConstant(left * right);
+      default:
+        if (right == 0)
+          return QuadrupleList.NONE;
+        return m_symbols.intConstant(code == TacCode.MOD ? left % right : left / right);
+    }
+  }
+
+  private int realResult(double value) {
+    if (Double.isNaN(value) || Double.isInfinite(value))
+      return QuadrupleList.NONE;
+    return m_symbols.realConstant(value);
+  }
+
+  private boolean compare(TacCode code, int param1, int param2) {
+    if (m_symbols.isRealConstant(param1) || m_symbols.isRealConstant(param2)) {
+      double left = m_symbols.realValue(param1);
+      double right = m_symbols.realValue(param2);
+      switch (code) {
+        case LT: return left < right;
+        case LE: return left <= right;
+        case GT: return left > right;
+        case GE: return left >= right;
+        case EQ: return left == right;
+        default: return left != right;
+      }
+    }
+    int left = m_symbols.intValue(param1);
+    int right = m_symbols.intValue(param2);
+    switch (code) {
+      case LT: return left < right;
+      case LE: return left <= right;
+      case GT: return left > right;
+      case GE: return left >= right;
+      case EQ: return left == right;
+      default: return left != right;
+    }
+  }
+
+  /* The variable now holds the constant, converted to the variable's type */
+  private void assign(int variable, int constant) {
+    if (!m_symbols.isLocalScalar(variable) && !isGlobalScalar(variable))
+      return;
+    int kind = m_symbols.kind(variable);
+    if (kind == TacSymbols.INT && m_symbols.isRealConstant(constant))
+      constant = m_symbols.intConstant(m_symbols.intValue(constant));
+    else if (kind == TacSymbols.REAL && !m_symbols.isRealConstant(constant))
+      constant = m_symbols.realConstant(m_symbols.intValue(constant));
+    set(variable, constant);
+  }
+
+  private boolean isGlobalScalar(int id) {
+    int kind = m_symbols.kind(id);
+    return m_symbols.isGlobal(id) && (kind == TacSymbols.INT || kind == TacSymbols.REAL);
+  }
+
+  private static int[] newValues(int length) {
+    int[] values = new int[length];
+    Arrays.fill(values, QuadrupleList.NONE);
+    return values;
+  }
+
+  private void set(int id, int constant) {
+    if (id >= m_values.length) {
+      int length = m_values.length;
+      m_values = Arrays.copyOf(m_values, Math.max(id + 1, length * 2));
+      Arrays.fill(m_values, length, m_values.length, QuadrupleList.NONE);
+    }
+    if (m_values[id] == QuadrupleList.NONE) {
+      if (m_knownCount == m_known.length)
+        m_known = Arrays.copyOf(m_known, m_knownCount * 2);
+      m_known[m_knownCount++] = id;
+    }
+    m_values[id] = constant;
+  }
+
+  private void forget(int id) {
+    if (id >= 0 && id < m_values.length)
+      m_values[id] = QuadrupleList.NONE;
+  }
+
+  private void forgetGlobals() {
+    for (int k = 0; k < m_knownCount; k++)
+      if (!m_symbols.isLocal(m_known[k]))
+        m_values[m_known[k]] = QuadrupleList.NONE;
+  }
+
+  private void clear() {
+    for (int k = 0; k < m_knownCount; k++)
+      m_values[m_known[k]] = QuadrupleList.NONE;
+    m_knownCount = 0;
+  }
+
+  /* The current state as (id, constant) pairs sorted by id */
+  private int[] snapshot() {
+    int count = 0;
+    for (int k = 0; k < m_knownCount; k++)
+      if (m_values[m_known[k]] != QuadrupleList.NONE)
+        m_known[count++] = m_known[k];
+    Arrays.sort(m_known, 0, count);
+    // an id forgotten and set again is listed twice
+    int unique = 0;
+    for (int k = 0; k < count; k++)
+      if (unique == 0 || m_known[unique - 1] != m_known[k])
+        m_known[unique++] = m_known[k];
+    count = unique;
+    m_knownCount = count;
+    int[] pairs = new int[2 * count];
+    for (int k = 0; k < count; k++) {
+      pairs[2 * k] = m_known[k];
+      pairs[2 * k + 1] = m_values[m_known[k]];
+    }
+    return pairs;
+  }
+
+  private void restore(int[] pairs) {
+    clear();
+    for (int k = 0; k < pairs.length; k += 2)
+      set(pairs[k], pairs[k + 1]);
+  }
+
+  /* Keeps only what the current state and the given one agree on */
+  private void meet(int[] pairs) {
+    int[] current = snapshot();
+    clear();
+    int k = 0;
+    for (int j = 0; j < current.length; j += 2) {
+      while (k < pairs.length && pairs[k] < current[j])
+        k += 2;
+      if (k < pairs.length && pairs[k] == current[j] && pairs[k + 1] == current[j + 1])
+        set(current[j], current[j + 1]);
+    }
+  }
+
+  /* A jump takes the current state to its label */
+  private void jump(int label) {
+    int[] state = snapshot();
+    int[] pending = m_pending.get(label);
+    if (pending == null) {
+      m_pending.put(label, state);
+      return;
+    }
+    // Intersect the two sorted lists
+    int[] both = new int[Math.min(state.length, pending.length)];
+    int size = 0;
+    int k = 0;
+    for (int j = 0; j < state.length; j += 2) {
+      while (k < pending.length && pending[k] < state[j])
+        k += 2;
+      if (k < pending.length && pending[k] == state[j] && pending[k + 1] == state[j + 1]) {
+        both[size++] = state[j];
+        both[size++] = state[j + 1];
+      }
+    }
+    m_pending.put(label, Arrays.copyOf(both, size));
+  }
+}
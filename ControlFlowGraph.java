@@ -0,0 +1,489 @@
+import java.util.Arrays;
+
+/*
+  The basic blocks of one method's quads, the edges between them, the dominator tree and the
+  natural loops. Everything is kept in int arrays; edge lists are in compressed form (the
+  successors of block b are m_successors[m_successorStart[b] .. m_successorStart[b + 1])).
+
+  A block starts at the method's first quad, at every LABEL and after every jump or RETURN; it
+  falls through to the next block unless it ends in a GOTO or a RETURN, and a jump adds an edge to
+  the block of its LABEL. Block 0 is the entry. Blocks hold ranges of quad indexes, which include
+  quads marked removed if the list was not compacted.
+
+  Dominators are computed with the iterative algorithm of Cooper, Harvey and Kennedy ("A Simple,
+  Fast Dominance Algorithm") over the reverse postorder, which for the reducible graphs the Parser
+  generates settles in two or three passes. Blocks the entry does not reach have no dominator and
+  are in no loop. A back edge is an edge to a block that dominates its source; the natural loop of
+  a header is the header and every block that reaches one of its back edges without passing the
+  header. Building is linear in the number of quads and edges, except the dominator iteration.
+*/
+public class ControlFlowGraph {
+
+  private static final int NONE = -1;
+
+  private QuadrupleList m_quads;
+  private int m_blockCount;
+  private int[] m_blockStart;          // by block: index of its first quad
+  private int[] m_blockEnd;            // by block: index after its last quad
+  private int[] m_blockOf;             // by quad index: its block
+
+  private int[] m_successorStart;
+  private int[] m_successors;
+  private int[] m_predecessorStart;
+  private int[] m_predecessors;
+
+  private int[] m_order;               // reachable blocks in reverse postorder
+  private int m_reachableCount;
+  private int[] m_orderIndex;          // by block: position in m_order, NONE if unreachable
+
+  private int[] m_idom;                // by block: immediate dominator, the entry's is itself
+  private int[] m_domEnter;            // by block: preorder and postorder numbers in the dominator tree
+  private int[] m_domExit;
+
+  private int m_loopCount;
+  private int[] m_loopHeader;          // by loop
+  private int[] m_loopParent;          // by loop: the innermost loop around it, NONE if outermost
+  private int[] m_loopBlockStart;      // by loop: its blocks are m_loopBlocks[start .. start of the next loop)
+  private int[] m_loopBlocks;
+  private int[] m_innermostLoop;       // by block: innermost loop holding it, NONE if in none
+  private int[] m_loopDepth;           // by block
+
+  public ControlFlowGraph(QuadrupleList quads) {
+    m_quads = quads;
+    findBlocks();
+    findEdges();
+    orderBlocks();
+    findDominators();
+    numberDominatorTree();
+    findLoops();
+  }
+
+  // *** Blocks and edges ***
+
+  private static boolean isJump(TacCode code) {
+    return code == TacCode.GOTO || TacSymbols.isConditionalJump(code);
+  }
+
+  private static boolean endsBlock(TacCode code) {
+    return isJump(code) || code == TacCode.RETURN;
+  }
+
+  private void findBlocks() {
+    int size = m_quads.size();
+    m_blockOf = new int[size];
+    int[] starts = new int[16];
+    int count = 0;
+    boolean startNext = true;
+    for (int n = m_quads.first(); n >= 0; n = m_quads.next(n)) {
+      TacCode code = m_quads.getTacCode(n);
+      if (startNext || code == TacCode.LABEL && count > 0 && !isEmptyBlock(starts[count - 1], n)) {
+        if (count == starts.length)
+          starts = Arrays.copyOf(starts, count * 2);
+        starts[count++] = n;
+      }
+      startNext = endsBlock(code);
+    }
+    m_blockCount = count;
+    m_blockStart = Arrays.copyOf(starts, count);
+    m_blockEnd = new int[count];
+    for (int b = 0; b < count; b++) {
+      m_blockEnd[b] = b + 1 < count ? m_blockStart[b + 1] : size;
+      Arrays.fill(m_blockOf, m_blockStart[b], m_blockEnd[b], b);
+    }
+  }
+
+  /* True if the block starting at start holds only LABELs and declarations up to index: consecutive LABELs share a block */
+  private boolean isEmptyBlock(int start, int index) {
+    for (int n = start; n >= 0 && n < index; n = m_quads.next(n)) {
+      TacCode code = m_quads.getTacCode(n);
+      if (code != TacCode.LABEL && code != TacCode.VAR && code != TacCode.FPARAM || TacSymbols.isMethodLabel(m_quads, n))
+        return false;
+    }
+    return true;
+  }
+
+  private void findEdges() {
+    // Where each LABEL is, by label symbol
+    IntMap labels = new IntMap();
+    for (int n = m_quads.first(); n >= 0; n = m_quads.next(n))
+      if (m_quads.getTacCode(n) == TacCode.LABEL)
+        labels.put(m_quads.getResult(n), n);
+
+    // At most two successors per block: the jump target and the fall through
+    int[] targets = new int[2 * m_blockCount];
+    int[] successorCounts = new int[m_blockCount];
+    int[] predecessorCounts = new int[m_blockCount];
+    for (int b = 0; b < m_blockCount; b++) {
+      int last = lastQuad(b);
+      TacCode code = last < 0 ? TacCode.NOOP : m_quads.getTacCode(last);
+      int count = 0;
+      if (isJump(code)) {
+        int target = labels.get(m_quads.getResult(last));
+        if (target >= 0)
+          targets[2 * b + count++] = m_blockOf[target];
+      }
+      if (code != TacCode.GOTO && code != TacCode.RETURN && b + 1 < m_blockCount
+          && (count == 0 || targets[2 * b] != b + 1))
+        targets[2 * b + count++] = b + 1;
+      successorCounts[b] = count;
+      for (int k = 0; k < count; k++)
+        predecessorCounts[targets[2 * b + k]]++;
+    }
+
+    m_successorStart = prefixSums(successorCounts);
+    m_successors = new int[m_successorStart[m_blockCount]];
+    m_predecessorStart = prefixSums(predecessorCounts);
+    m_predecessors = new int[m_predecessorStart[m_blockCount]];
+    int[] fill = Arrays.copyOf(m_predecessorStart, m_blockCount);
+    for (int b = 0; b < m_blockCount; b++) {
+      for (int k = 0; k < successorCounts[b]; k++) {
+        int successor = targets[2 * b + k];
+        m_successors[m_successorStart[b] + k] = successor;
+        m_predecessors[fill[successor]++] = b;
+      }
+    }
+  }
+
+  private static int[] prefixSums(int[] counts) {
+    int[] starts = new int[counts.length + 1];
+    for (int k = 0; k < counts.length; k++)
+      starts[k + 1] = starts[k] + counts[k];
+    return starts;
+  }
+
+  /* Index of the last live quad of a block, NONE if it has none */
+  private int lastQuad(int block) {
+    int last = NONE;
+    for (int n = m_blockStart[block]; n >= 0 && n < m_blockEnd[block]; n = m_quads.next(n))
+      last = n;
+    return last;
+  }
+
+  // *** Reverse postorder, without recursion ***
+
+  private void orderBlocks() {
+    m_orderIndex = new int[m_blockCount];
+    Arrays.fill(m_orderIndex, NONE);
+    m_order = new int[m_blockCount];
+    if (m_blockCount == 0)
+      return;
+    int[] stack = new int[m_blockCount];
+    int[] nextEdge = new int[m_blockCount];
+    boolean[] visited = new boolean[m_blockCount];
+    int[] postorder = new int[m_blockCount];
+    int count = 0;
+    int top = 0;
+    stack[top++] = 0;
+    visited[0] = true;
+    nextEdge[0] = m_successorStart[0];
+    while (top > 0) {
+      int block = stack[top - 1];
+      if (nextEdge[block] < m_successorStart[block + 1]) {
+        int successor = m_successors[nextEdge[block]++];
+        if (!visited[successor]) {
+          visited[successor] = true;
+          nextEdge[successor] = m_successorStart[successor];
+          stack[top++] = successor;
+        }
+      }
+      else {
+        postorder[count++] = block;
+        top--;
+      }
+    }
+    m_reachableCount = count;
+    for (int k = 0; k < count; k++) {
+      m_order[k] = postorder[count - 1 - k];
+      m_orderIndex[m_order[k]] = k;
+    }
+  }
+
+  // *** Dominators ***
+
+  private void findDominators() {
+    m_idom = new int[m_blockCount];
+    Arrays.fill(m_idom, NONE);
+    if (m_blockCount == 0)
+      return;
+    m_idom[0] = 0;
+    boolean changed = true;
+    while (changed) {
+      changed = false;
+      for (int k = 1; k < m_reachableCount; k++) {
+        int block = m_order[k];
+        int idom = NONE;
+        for (int p = m_predecessorStart[block]; p < m_predecessorStart[block + 1]; p++) {
+          int predecessor = m_predecessors[p];
+          if (m_idom[predecessor] == NONE)
+            continue;
+          idom = idom == NONE ? predecessor : intersect(predecessor, idom);
+        }
+        if (m_idom[block] != idom) {
+          m_idom[block] = idom;
+          changed = true;
+        }
+      }
+    }
+  }
+
+  /* The nearest common dominator, walking up by reverse postorder position */
+  private int intersect(int first, int second) {
+    while (first != second) {
+      while (m_orderIndex[first] > m_orderIndex[second])
+        first = m_idom[first];
+      while (m_orderIndex[second] > m_orderIndex[first])
+        second = m_idom[second];
+    }
+    return first;
+  }
+
+  /* Numbers the dominator tree depth first, so dominance is a test of two intervals */
+  private void numberDominatorTree() {
+    m_domEnter = new int[m_blockCount];
+    m_domExit = new int[m_blockCount];
+    Arrays.fill(m_domEnter, NONE);
+    if (m_reachableCount == 0)
+      return;
+    int[] childCounts = new int[m_blockCount];
+    for (int b = 1; b < m_blockCount; b++)
+      if (m_idom[b] != NONE && m_idom[b] != b)
+        childCounts[m_idom[b]]++;
+    int[] childStart = prefixSums(childCounts);
+    int[] children = new int[childStart[m_blockCount]];
+    int[] fill = Arrays.copyOf(childStart, m_blockCount);
+    for (int b = 1; b < m_blockCount; b++)
+      if (m_idom[b] != NONE && m_idom[b] != b)
+        children[fill[m_idom[b]]++] = b;
+
+    int[] stack = new int[m_blockCount];
+    int[] nextChild = new int[m_blockCount];
+    int clock = 0;
+    int top = 0;
+    stack[top++] = 0;
+    m_domEnter[0] = clock++;
+    nextChild[0] = childStart[0];
+    while (top > 0) {
+      int block = stack[top - 1];
+      if (nextChild[block] < childStart[block + 1]) {
+        int child = children[nextChild[block]++];
+        m_domEnter[child] = clock++;
+        nextChild[child] = childStart[child];
+        stack[top++] = child;
+      }
+      else {
+        m_domExit[block] = clock++;
+        top--;
+      }
+    }
+  }
+
+  // *** Natural loops ***
+
+  private void findLoops() {
+    m_innermostLoop = new int[m_blockCount];
+    m_loopDepth = new int[m_blockCount];
+    Arrays.fill(m_innermostLoop, NONE);
+
+    // Headers in reverse postorder, so an outer loop comes before the loops nested in it
+    int[] headers = new int[m_blockCount];
+    int headerCount = 0;
+    for (int k = 0; k < m_reachableCount; k++) {
+      int block = m_order[k];
+      for (int p = m_predecessorStart[block]; p < m_predecessorStart[block + 1]; p++) {
+        if (dominates(block, m_predecessors[p])) {
+          headers[headerCount++] = block;
+          break;
+        }
+      }
+    }
+
+    m_loopHeader = Arrays.copyOf(headers, headerCount);
+    m_loopParent = new int[headerCount];
+    m_loopBlockStart = new int[headerCount + 1];
+    int[] blocks = new int[Math.max(16, m_blockCount)];
+    int blockCount = 0;
+    int[] mark = new int[m_blockCount];
+    Arrays.fill(mark, NONE);
+    int[] work = new int[m_blockCount];
+
+    for (int loop = 0; loop < headerCount; loop++) {
+      int header = m_loopHeader[loop];
+      m_loopParent[loop] = m_innermostLoop[header];
+      m_loopBlockStart[loop] = blockCount;
+      // Walk backwards from the back edges; the header stops the walk
+      mark[header] = loop;
+      int top = 0;
+      for (int p = m_predecessorStart[header]; p < m_predecessorStart[header + 1]; p++) {
+        int source = m_predecessors[p];
+        if (dominates(header, source) && mark[source] != loop) {
+          mark[source] = loop;
+          work[top++] = source;
+        }
+      }
+      if (blockCount + 1 > blocks.length)
+        blocks = Arrays.copyOf(blocks, blocks.length * 2);
+      blocks[blockCount++] = header;
+      while (top > 0) {
+        int block = work[--top];
+        if (blockCount == blocks.length)
+          blocks = Arrays.copyOf(blocks, blocks.length * 2);
+        blocks[blockCount++] = block;
+        for (int p = m_predecessorStart[block]; p < m_predecessorStart[block + 1]; p++) {
+          int predecessor = m_predecessors[p];
+          if (mark[predecessor] != loop && m_orderIndex[predecessor] != NONE) {
+            mark[predecessor] = loop;
+            work[top++] = predecessor;
+          }
+        }
+      }
+      // Outer loops were done first, so this is the innermost loop so far for all its blocks
+      for (int k = m_loopBlockStart[loop]; k < blockCount; k++) {
+        m_innermostLoop[blocks[k]] = loop;
+        m_loopDepth[blocks[k]]++;
+      }
+    }
+    m_loopBlockStart[headerCount] = blockCount;
+    m_loopBlocks = Arrays.copyOf(blocks, blockCount);
+    m_loopCount = headerCount;
+  }
+
+  // *** Queries ***
+
+  public QuadrupleList getQuads() {
+    return m_quads;
+  }
+
+  public int getBlockCount() {
+    return m_blockCount;
+  }
+
+  /* Index of the block's first quad */
+  public int getBlockStart(int block) {
+    return m_blockStart[block];
+  }
+
+  /* Index after the block's last quad */
+  public int getBlockEnd(int block) {
+    return m_blockEnd[block];
+  }
+
+  public int getBlockOf(int quad) {
+    return m_blockOf[quad];
+  }
+
+  public int getSuccessorCount(int block) {
+    return m_successorStart[block + 1] - m_successorStart[block];
+  }
+
+  public int getSuccessor(int block, int k) {
+    return m_successors[m_successorStart[block] + k];
+  }
+
+  public int getPredecessorCount(int block) {
+    return m_predecessorStart[block + 1] - m_predecessorStart[block];
+  }
+
+  public int getPredecessor(int block, int k) {
+    return m_predecessors[m_predecessorStart[block] + k];
+  }
+
+  public boolean isReachable(int block) {
+    return m_orderIndex[block] != NONE;
+  }
+
+  /* The blocks the entry reaches, in reverse postorder: every block comes after its dominators */
+  public int getReachableCount() {
+    return m_reachableCount;
+  }
+
+  public int getBlockInOrder(int k) {
+    return m_order[k];
+  }
+
+  /* The immediate dominator; the entry's is the entry, an unreachable block's is -1 */
+  public int getImmediateDominator(int block) {
+    return m_idom[block];
+  }
+
+  /* True if every path from the entry to b passes through a (a block dominates itself) */
+  public boolean dominates(int a, int b) {
+    if (m_domEnter[a] == NONE || m_domEnter[b] == NONE)
+      return false;
+    return m_domEnter[a] <= m_domEnter[b] && m_domExit[b] <= m_domExit[a];
+  }
+
+  public int getLoopCount() {
+    return m_loopCount;
+  }
+
+  public int getLoopHeader(int loop) {
+    return m_loopHeader[loop];
+  }
+
+  /* The innermost loop the loop is nested in, -1 for an outermost loop */
+  public int getLoopParent(int loop) {
+    return m_loopParent[loop];
+  }
+
+  public int getLoopSize(int loop) {
+    return m_loopBlockStart[loop + 1] - m_loopBlockStart[loop];
+  }
+
+  public int getLoopBlock(int loop, int k) {
+    return m_loopBlocks[m_loopBlockStart[loop] + k];
+  }
+
+  /* The innermost loop holding the block, -1 if none */
+  public int getInnermostLoop(int block) {
+    return m_innermostLoop[block];
+  }
+
+  /* Number of loops the block is in */
+  public int getLoopDepth(int block) {
+    return m_loopDepth[block];
+  }
+
+  /* Open addressing map from symbol id to quad index, for the labels */
+  private static class IntMap {
+    private int[] m_keys = new int[64];
+    private int[] m_values = new int[64];
+    private int m_count;
+
+    IntMap() {
+      Arrays.fill(m_keys, NONE);
+    }
+
+    void put(int key, int value) {
+      if ((m_count + 1) * 2 > m_keys.length)
+        grow();
+      int mask = m_keys.length - 1;
+      int slot = (key * 0x9E3779B9 >>> 7) & mask;
+      while (m_keys[slot] != NONE && m_keys[slot] != key)
+        slot = (slot + 1) & mask;
+      if (m_keys[slot] == NONE)
+        m_count++;
+      m_keys[slot] = key;
+      m_values[slot] = value;
+    }
+
+    int get(int key) {
+      int mask = m_keys.length - 1;
+      for (int slot = (key * 0x9E3779B9 >>> 7) & mask; m_keys[slot] != NONE; slot = (slot + 1) & mask)
+        if (m_keys[slot] == key)
+          return m_values[slot];
+      return NONE;
+    }
+
+    private void grow() {
+      int[] keys = m_keys;
+      int[] values = m_values;
+      m_keys = new int[keys.length * 2];
+      m_values = new int[keys.length * 2];
+      Arrays.fill(m_keys, NONE);
+      m_count = 0;
+      for (int k = 0; k < keys.length; k++)
+        if (keys[k] != NONE)
+          put(keys[k], values[k]);
+    }
+  }
+}
@@ -0,0 +1,337 @@
+import java.util.*;
+
+/*
+  Dead code elimination and jump threading.
+
+  Repeats, until nothing changes:
+  - a jump to a LABEL that is followed by a GOTO goes straight to where that GOTO goes
+  - a branch on a comparison's 0 or 1 (see Parser.relationalExpression) branches on the
+    comparison itself: "LT a b L1; ASSIGN 0 t; GOTO L2; LABEL L1; ASSIGN 1 t; LABEL L2;
+    EQ t 0 L3" becomes "LT a b L1; GOTO L3; LABEL L1" when nothing else reads t
+  - a jump to the LABEL right after it is dropped, and a conditional jump over a GOTO,
+    "LT a b L1; GOTO L2; LABEL L1", becomes "GE a b L2; LABEL L1" (ints only: a real
+    comparison with NaN is false both ways)
+  - quads no path from the method's start reaches are removed, declarations excepted
+  - a LABEL no jump refers to is removed
+  - a value computed into a local or temp that is never read is not computed; this repeats
+    through the operands it read. A division that may trap, an ARRAY_LOAD and a CALL stay.
+  and finally drops the VARs of temps nothing refers to any more.
+*/
+public class DeadCodeEliminator implements TacPass {
+
+  private static final int MAX_ROUNDS = 8;
+
+  private QuadrupleList m_quads;
+  private TacSymbols m_symbols;
+  private Map<Integer, Integer> m_labels = new HashMap<Integer, Integer>();
+
+  public String getName() {
+    return "dce";
+  }
+
+  public void run(QuadrupleList quads, TacSymbols symbols) {
+    m_quads = quads;
+    m_symbols = symbols;
+    for (int round = 0; round < MAX_ROUNDS; round++) {
+      findLabels();
+      boolean changed = threadJumps();
+      changed |= threadBooleanBranches();
+      changed |= removeUselessJumps();
+      changed |= removeUnreachable();
+      changed |= removeUnusedLabels();
+      changed |= removeDeadValues();
+      if (!changed)
+        break;
+    }
+    Optimizer.removeUnusedTemps(quads, symbols);
+  }
+
+  private void findLabels() {
+    m_labels.clear();
+    for (int n = m_quads.first(); n >= 0; n = m_quads.next(n))
+      if (m_quads.getTacCode(n) == TacCode.LABEL && !TacSymbols.isMethodLabel(m_quads, n))
+        m_labels.put(m_quads.getResult(n), n);
+  }
+
+  private static boolean isJump(TacCode code) {
+    return code == TacCode.GOTO || TacSymbols.isConditionalJump(code);
+  }
+
+  /* LABEL and VAR quads execute nothing, so jumps over them go nowhere */
+  private boolean isTransparent(int index) {
+    TacCode code = m_quads.getTacCode(index);
+    return code == TacCode.LABEL && !TacSymbols.isMethodLabel(m_quads, index) || code == TacCode.VAR;
+  }
+
+  /* The first quad from index on that executes something, -1 at the end */
+  private int nextExecuted(int index) {
+    while (index >= 0 && isTransparent(index))
+      index = m_quads.next(index);
+    return index;
+  }
+
+  /* Where a jump to label really goes: past every LABEL followed by a GOTO */
+  private int finalTarget(int label) {
+    for (int steps = 0; steps < m_labels.size(); steps++) {
+      Integer index = m_labels.get(label);
+      if (index == null)
+        return label;
+      int next = nextExecuted(index);
+      if (next < 0 || m_quads.getTacCode(next) != TacCode.GOTO || m_quads.getResult(next) == label)
+        return label;
+      label = m_quads.getResult(next);
+    }
+    return label;
+  }
+
+  private boolean threadJumps() {
+    boolean changed = false;
+    for (int n = m_quads.first(); n >= 0; n = m_quads.next(n)) {
+      if (!isJump(m_quads.getTacCode(n)))
+        continue;
+      int target = finalTarget(m_quads.getResult(n));
+      if (target != m_quads.getResult(n)) {
+        m_quads.setResult(n, target);
+        changed = true;
+      }
+    }
+    return changed;
+  }
+
+  /* Index of the quad before index, skipping VARs; -1 if there is none */
+  private int previousExecuted(int index) {
+    if (index < 0)
+      return -1;
+    int n = m_quads.previous(index);
+    while (n >= 0 && m_quads.getTacCode(n) == TacCode.VAR)
+      n = m_quads.previous(n);
+    return n;
+  }
+
+  private boolean isQuad(int n, TacCode code) {
+    return n >= 0 && m_quads.getTacCode(n) == code;
+  }
+
+  private boolean isConstant(int id, int value) {
+    return m_symbols.isConstant(id) && !m_symbols.isRealConstant(id) && m_symbols.intValue(id) == value;
+  }
+
+  /* Matches the quads Parser generates for a comparison whose result is only tested by a branch */
+  private boolean threadBooleanBranches() {
+    Map<Integer, Integer> reads = new HashMap<Integer, Integer>();
+    Map<Integer, Integer> jumps = new HashMap<Integer, Integer>();
+    for (int n = m_quads.first(); n >= 0; n = m_quads.next(n)) {
+      TacCode code = m_quads.getTacCode(n);
+      if (code == TacCode.VAR || code == TacCode.FPARAM || code == TacCode.LABEL)
+        continue;
+      count(reads, m_quads.getParam1(n), 1);
+      count(reads, m_quads.getParam2(n), 1);
+      if (isJump(code))
+        count(jumps, m_quads.getResult(n), 1);
+    }
+
+    boolean changed = false;
+    for (int n = m_quads.first(); n >= 0; n = m_quads.next(n)) {
+      TacCode code = m_quads.getTacCode(n);
+      int temp = m_quads.getParam1(n);
+      if (code != TacCode.EQ && code != TacCode.NE || !isConstant(m_quads.getParam2(n), 0)
+          || !m_symbols.isTemp(temp) || reads.get(temp) != 1)
+        continue;
+      int endLabel = previousExecuted(n);
+      int assignOne = previousExecuted(endLabel);
+      int trueLabel = previousExecuted(assignOne);
+      int jumpToEnd = previousExecuted(trueLabel);
+      int assignZero = previousExecuted(jumpToEnd);
+      int comparison = previousExecuted(assignZero);
+      if (!isQuad(endLabel, TacCode.LABEL) || !isQuad(assignOne, TacCode.ASSIGN) || !isQuad(trueLabel, TacCode.LABEL)
+          || !isQuad(jumpToEnd, TacCode.GOTO) || !isQuad(assignZero, TacCode.ASSIGN)
+          || comparison < 0 || !TacSymbols.isConditionalJump(m_quads.getTacCode(comparison)))
+        continue;
+      if (m_quads.getResult(assignOne) != temp || !isConstant(m_quads.getParam1(assignOne), 1)
+          || m_quads.getResult(assignZero) != temp || !isConstant(m_quads.getParam1(assignZero), 0)
+          || m_quads.getResult(jumpToEnd) != m_quads.getResult(endLabel) || jumps.get(m_quads.getResult(endLabel)) != 1
+          || m_quads.getResult(comparison) != m_quads.getResult(trueLabel) || jumps.get(m_quads.getResult(trueLabel)) != 1)
+        continue;
+
+      int target = m_quads.getResult(n);
+      if (code == TacCode.EQ) {
+        // jump when the comparison is false: that is the path through ASSIGN 0
+        m_quads.set(assignZero, TacCode.GOTO.ordinal(), QuadrupleList.NONE, QuadrupleList.NONE, target);
+        m_quads.remove(jumpToEnd);
+      }
+      else {
+        m_quads.setResult(comparison, target);
+        m_quads.remove(assignZero);
+        m_quads.remove(jumpToEnd);
+        m_quads.remove(trueLabel);
+      }
+      m_quads.remove(assignOne);
+      m_quads.remove(endLabel);
+      m_quads.remove(n);
+      changed = true;
+    }
+    return changed;
+  }
+
+  /* True if label is one of the LABELs between index and the next quad that executes something */
+  private boolean labelFollows(int index, int label) {
+    for (int n = m_quads.next(index); n >= 0 && isTransparent(n); n = m_quads.next(n))
+      if (m_quads.getTacCode(n) == TacCode.LABEL && m_quads.getResult(n) == label)
+        return true;
+    return false;
+  }
+
+  private boolean removeUselessJumps() {
+    boolean changed = false;
+    for (int n = m_quads.first(); n >= 0; n = m_quads.next(n)) {
+      TacCode code = m_quads.getTacCode(n);
+      if (!isJump(code))
+        continue;
+      if (labelFollows(n, m_quads.getResult(n))) {
+        m_quads.remove(n);
+        changed = true;
+        continue;
+      }
+      // a LABEL between the two would be a way into the GOTO that must stay
+      int next = m_quads.next(n);
+      while (next >= 0 && m_quads.getTacCode(next) == TacCode.VAR)
+        next = m_quads.next(next);
+      if (TacSymbols.isConditionalJump(code) && next >= 0 && m_quads.getTacCode(next) == TacCode.GOTO
+          && labelFollows(next, m_quads.getResult(n)) && isIntComparison(n)) {
+        m_quads.setCode(n, inverse(code).ordinal());
+        m_quads.setResult(n, m_quads.getResult(next));
+        m_quads.remove(next);
+        changed = true;
+      }
+    }
+    return changed;
+  }
+
+  private boolean isIntComparison(int n) {
+    return m_symbols.kind(m_quads.getParam1(n)) == TacSymbols.INT && m_symbols.kind(m_quads.getParam2(n)) == TacSymbols.INT;
+  }
+
+  private static TacCode inverse(TacCode code) {
+    switch (code) {
+      case LT: return TacCode.GE;
+      case LE: return TacCode.GT;
+      case GT: return TacCode.LE;
+      case GE: return TacCode.LT;
+      case EQ: return TacCode.NE;
+      default: return TacCode.EQ;
+    }
+  }
+
+  /* Walks from the method's start and from every label a reached jump goes to; removes what was not reached */
+  private boolean removeUnreachable() {
+    BitSet reached = new BitSet(m_quads.size());
+    Deque<Integer> starts = new ArrayDeque<Integer>();
+    if (m_quads.first() >= 0)
+      starts.push(m_quads.first());
+    while (!starts.isEmpty()) {
+      for (int n = starts.pop(); n >= 0 && !reached.get(n); n = m_quads.next(n)) {
+        reached.set(n);
+        TacCode code = m_quads.getTacCode(n);
+        if (isJump(code)) {
+          Integer target = m_labels.get(m_quads.getResult(n));
+          if (target != null && !reached.get(target))
+            starts.push(target);
+        }
+        if (code == TacCode.GOTO || code == TacCode.RETURN)
+          break;
+      }
+    }
+    boolean changed = false;
+    for (int n = m_quads.first(); n >= 0; n = m_quads.next(n)) {
+      TacCode code = m_quads.getTacCode(n);
+      if (!reached.get(n) && code != TacCode.VAR && code != TacCode.FPARAM) {
+        m_quads.remove(n);
+        changed = true;
+      }
+    }
+    return changed;
+  }
+
+  private boolean removeUnusedLabels() {
+    Set<Integer> used = new HashSet<Integer>();
+    for (int n = m_quads.first(); n >= 0; n = m_quads.next(n))
+      if (isJump(m_quads.getTacCode(n)))
+        used.add(m_quads.getResult(n));
+    boolean changed = false;
+    for (Map.Entry<Integer, Integer> label : m_labels.entrySet()) {
+      if (!used.contains(label.getKey()) && !m_quads.isRemoved(label.getValue())) {
+        m_quads.remove(label.getValue());
+        changed = true;
+      }
+    }
+    return changed;
+  }
+
+  /* Removes computations of locals nobody reads, and through them the computations they alone read */
+  private boolean removeDeadValues() {
+    Map<Integer, Integer> reads = new HashMap<Integer, Integer>();
+    Map<Integer, List<Integer>> definitions = new HashMap<Integer, List<Integer>>();
+    for (int n = m_quads.first(); n >= 0; n = m_quads.next(n)) {
+      TacCode code = m_quads.getTacCode(n);
+      if (code == TacCode.VAR || code == TacCode.FPARAM || code == TacCode.LABEL)
+        continue;
+      count(reads, m_quads.getParam1(n), 1);
+      count(reads, m_quads.getParam2(n), 1);
+      int result = m_quads.getResult(n);
+      if (TacSymbols.definesResult(code) && m_symbols.isLocalScalar(result)) {
+        List<Integer> list = definitions.get(result);
+        if (list == null)
+          definitions.put(result, list = new ArrayList<Integer>());
+        list.add(n);
+      }
+    }
+
+    boolean changed = false;
+    Deque<Integer> unread = new ArrayDeque<Integer>();
+    for (Integer variable : definitions.keySet())
+      if (!reads.containsKey(variable))
+        unread.push(variable);
+    while (!unread.isEmpty()) {
+      List<Integer> list = definitions.remove(unread.pop());
+      if (list == null)
+        continue;
+      for (int n : list) {
+        if (m_quads.isRemoved(n) || !isRemovable(n))
+          continue;
+        m_quads.remove(n);
+        changed = true;
+        for (int operand : new int[] { m_quads.getParam1(n), m_quads.getParam2(n) })
+          if (count(reads, operand, -1) == 0 && definitions.containsKey(operand))
+            unread.push(operand);
+      }
+    }
+    return changed;
+  }
+
+  private static int count(Map<Integer, Integer> counts, int id, int delta) {
+    if (id == QuadrupleList.NONE)
+      return -1;
+    Integer count = counts.get(id);
+    int value = (count == null ? 0 : count) + delta;
+    if (value <= 0)
+      counts.remove(id);
+    else
+      counts.put(id, value);
+    return Math.max(value, 0);
+  }
+
+  /* A quad whose only effect is its result: no call, no load that may fail, no int division that may trap */
+  private boolean isRemovable(int n) {
+    switch (m_quads.getTacCode(n)) {
+      case ASSIGN: case ADD: case SUB: case MULT: case UMINUS: case NOT: case AND: case OR:
+        return true;
+      case DIVIDE: case DIV: case MOD:
+        int divisor = m_quads.getParam2(n);
+        if (m_symbols.kind(m_quads.getParam1(n)) == TacSymbols.REAL || m_symbols.kind(divisor) == TacSymbols.REAL)
+          return true;
+        return m_symbols.isConstant(divisor) && m_symbols.intValue(divisor) != 0;
+      default:
+        return false;
+    }
+  }
+}
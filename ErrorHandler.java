@@ -4,18 +4,31 @@ import java.util.Stack;
 public class ErrorHandler {
 
   private String m_sourceFile;
-  private Lexer m_lexer;
-  private Token m_prev;
-  private Token m_current;
+  private SourceText m_source;
+  private PrintStream m_out;
+  private TokenBuffer m_tokens;
   private Stack<NonT> m_nonTStack;
   private Stack<NonT> m_recoveryStack;
   
   private boolean m_inRecovery;
   private NonT m_recoveryNonT;
+  private int m_errorCount;
+  private CompilerStats m_stats;
+  private Tracer m_tracer;
+  // The recovery episode under way, for Flight Recorder
+  private CompilerEvents.ErrorRecovery m_recoveryEvent;
 
-  public ErrorHandler(Lexer lexer, String sourceFile) {
-    m_lexer = lexer;
+  public ErrorHandler(TokenBuffer tokens, String sourceFile) {
+    this(tokens, sourceFile, System.out);
+  }
+
+  public ErrorHandler(TokenBuffer tokens, String sourceFile, PrintStream out) {
+    m_tokens = tokens;
     m_sourceFile = sourceFile;
+    m_source = new SourceText(sourceFile);
+    m_out = out;
+    m_stats = tokens.getStats();
+    m_tracer = tokens.getTracer();
     m_nonTStack = new Stack<NonT>();
     m_inRecovery = false;
   }
@@ -24,86 +37,104 @@ public class ErrorHandler {
     return m_inRecovery;
   }
 
-  public Token[] tokenMismatch(TokenCode expected, Token actual, Token prevToken) {
+  public int getErrorCount() {
+    return m_errorCount;
+  }
+
+  /* Tokens are passed and returned as indexes into the token buffer */
+  public int[] tokenMismatch(TokenCode expected, int actual, int prevToken) {
     if (m_inRecovery)
-      return new Token [] { actual, prevToken};  
+      return new int [] { actual, prevToken};  
     
     reportTokenMismatch(expected, actual, prevToken);
     return recover(actual, prevToken, expected);
   }
 
-  public Token [] noMatch(Token actual, Token prevToken) { 
+  public int [] noMatch(int actual, int prevToken) { 
     if (m_inRecovery)
-      return new Token [] { actual, prevToken};
+      return new int [] { actual, prevToken};
     
     reportNonTNotFound(m_recoveryNonT, actual, prevToken);
     return recover(actual, prevToken, TokenCode.NONE);
   }
 
-  protected Token[] recover(Token actual, Token prevToken, TokenCode expected) {
+  /* Timed as the RECOVER phase; the tokens it skips are counted */
+  protected int[] recover(int actual, int prevToken, TokenCode expected) {
+    if (m_stats == null)
+      return skipToSync(actual, prevToken, expected);
+    m_stats.enter(CompilerStats.Phase.RECOVER);
+    try {
+      return skipToSync(actual, prevToken, expected);
+    }
+    finally {
+      m_stats.exit();
+    }
+  }
+
+  private int[] skipToSync(int actual, int prevToken, TokenCode expected) {
     m_recoveryStack = new Stack<NonT>();
     m_recoveryNonT = m_nonTStack.peek();
     
     m_inRecovery = true;
+    beginRecoveryEvent(actual, expected);
 
     // First, deal with specific known cases
-    Token [] tokensRead = specificRecovery(m_recoveryNonT, actual, prevToken, expected);
+    int [] tokensRead = specificRecovery(m_recoveryNonT, actual, prevToken, expected);
 
     if (tokensRead != null)
       return tokensRead;
 
     // Get the sync tokens for the current nonterminal
-    TokenCode [] followTokens = NonT.followTokens(m_nonTStack.peek());
+    long followTokens = Grammar.follow(m_nonTStack.peek());
 
     // Read tokens until we find one of the sync symbols or EOF
     while(true) {
-      if (actual.getTokenCode() == TokenCode.EOF)
+      int actualCode = m_tokens.getCode(actual);
+      if (actualCode == TokenCode.EOF.ordinal())
         break;
-      boolean found = false;
-      for(int n=0;n<followTokens.length;n++) {
-        if (actual.getTokenCode() == followTokens[n]) {
-          found = true;
-          break;
-        }
-      }
-      if (found)
+      if ((followTokens >>> actualCode & 1) != 0)
         break;
       try {
         prevToken = actual;
-        actual = m_lexer.yylex();
-        trace("Read new token: " + actual.getTokenCode());
+        actual = m_tokens.next();
+        m_tokens.release(prevToken);
+        if (m_stats != null)
+          m_stats.count(CompilerStats.Counter.SKIPPED_TOKENS);
+        m_recoveryEvent.tokensSkipped++;
+        if (m_tracer != null)
+          m_tracer.record(Tracer.Kind.RECOVERY_READ, m_tokens.getCode(actual), actual);
       }
       catch (IOException e) {
-        System.out.println("IOException reading next token");
-        System.exit(1);
+        throw new UncheckedIOException(e);
       }
     }
 
-    return new Token [] { actual, prevToken};
+    return new int [] { actual, prevToken};
   }
 
-  protected Token [] specificRecovery(NonT nonT, Token actual, Token prevToken, TokenCode expected) {
-    if (nonT == NonT.STATEMENT && prevToken.getTokenCode() == TokenCode.INCDECOP) {
-      trace("Firing exception: missing ')' in for");
+  protected int [] specificRecovery(NonT nonT, int actual, int prevToken, TokenCode expected) {
+    if (nonT == NonT.STATEMENT && m_tokens.getTokenCode(prevToken) == TokenCode.INCDECOP) {
+      if (m_tracer != null)
+        m_tracer.record(Tracer.Kind.MISSING_PAREN_IN_FOR, 0, actual);
       m_inRecovery = false;
-      return new Token [] { actual, prevToken};
+      m_recoveryEvent.commit();
+      return new int [] { actual, prevToken};
     }
     return null;
   }
 
 
-  protected void reportTokenMismatch(TokenCode expected, Token actual, Token prevToken) {
-    Token errorToken = actual;
+  protected void reportTokenMismatch(TokenCode expected, int actual, int prevToken) {
+    int errorToken = actual;
     if (expected == TokenCode.SEMICOLON)
       errorToken = prevToken;
     if (!reportStaticMessages(errorToken))
       printErrorInfo("Expected " + TokenCode.getReportableString(expected), errorToken);
-    trace("PrevToken: " +  prevToken.getTokenCode() + ", currentToken: " + actual.getTokenCode());
-    trace("Inside " + m_nonTStack.peek());
+    traceError(actual, prevToken);
   }
 
-  protected void reportNonTNotFound(NonT expected, Token actual, Token prevToken) {
-    Token errorToken = actual;
+  protected void reportNonTNotFound(NonT expected, int actual, int prevToken) {
+    int errorToken = actual;
     if (!reportStaticMessages(errorToken)) {
       
       Stack<NonT> dupl = (Stack<NonT>)m_nonTStack.clone();
@@ -116,16 +147,15 @@ public class ErrorHandler {
         }
       }
     }
-    trace("PrevToken: " +  prevToken.getTokenCode() + ", currentToken: " + actual.getTokenCode());
-    trace("Inside " + m_nonTStack.peek());
+    traceError(actual, prevToken);
   }
 
-  protected boolean reportStaticMessages(Token errorToken) {
-    if (errorToken.getTokenCode() == TokenCode.ERR_ILL_CHAR) {
+  protected boolean reportStaticMessages(int errorToken) {
+    if (m_tokens.getTokenCode(errorToken) == TokenCode.ERR_ILL_CHAR) {
       printErrorInfo("Illegal character", errorToken);
       return true;
     }
-    else if (errorToken.getTokenCode() == TokenCode.ERR_LONG_ID) {
+    else if (m_tokens.getTokenCode(errorToken) == TokenCode.ERR_LONG_ID) {
       printErrorInfo("Identifier too long", errorToken);
       return true;
     }
@@ -135,24 +165,31 @@ public class ErrorHandler {
   public void stopNonT() {
     if (m_inRecovery) {
       if (m_recoveryStack.empty()) {
-        trace("** Continueing after " + m_nonTStack.peek() + " after recovery");     
+        if (m_tracer != null)
+          m_tracer.record(Tracer.Kind.RESUME, m_nonTStack.peek().ordinal(), -1);
         m_inRecovery = false;
+        m_recoveryEvent.commit();
         m_nonTStack.pop();
       }
       else {
-        trace("** Stopping " + m_recoveryStack.peek() + " (RECOVERY)");
+        if (m_tracer != null)
+          m_tracer.record(Tracer.Kind.STOP_RECOVERY, m_recoveryStack.peek().ordinal(), -1);
         m_recoveryStack.pop();
       }
 
     }
     else {
-      trace("** Stopping " + m_nonTStack.peek());
+      if (m_tracer != null)
+        m_tracer.record(Tracer.Kind.STOP, m_nonTStack.peek().ordinal(), -1);
       m_nonTStack.pop();
     }
   }
 
   public void startNonT(NonT nonT) {
-    trace("** Starting " + nonT + (m_inRecovery ? " (RECOVERY)" : ""));
+    if (m_stats != null)
+      m_stats.enterNonT(nonT);
+    if (m_tracer != null)
+      m_tracer.record(m_inRecovery ? Tracer.Kind.START_RECOVERY : Tracer.Kind.START, nonT.ordinal(), -1);
     if (m_inRecovery) {
       m_recoveryStack.push(nonT);
     }
@@ -163,48 +200,68 @@ public class ErrorHandler {
 
   
 
-  protected void printErrorInfo(String errorMessage, Token errorToken) {
-    String srcLine = getLineFromSource(errorToken.getLineNum());
-    String lineNumString = String.valueOf(errorToken.getLineNum());
+  /* Starts the decaf.ErrorRecovery event committed when the parser leaves recovery */
+  private void beginRecoveryEvent(int actual, TokenCode expected) {
+    m_recoveryEvent = new CompilerEvents.ErrorRecovery();
+    if (m_recoveryEvent.isEnabled()) {
+      m_recoveryEvent.sourceFile = m_sourceFile;
+      m_recoveryEvent.nonTerminal = m_recoveryNonT.name();
+      m_recoveryEvent.expected = expected.name();
+      m_recoveryEvent.line = m_tokens.getLineNum(actual);
+    }
+    m_recoveryEvent.begin();
+  }
+
+  /* Timed as the DIAGNOSTICS phase, looking up the source line included */
+  protected void printErrorInfo(String errorMessage, int errorToken) {
+    if (m_stats == null) {
+      writeErrorInfo(errorMessage, errorToken);
+      return;
+    }
+    m_stats.enter(CompilerStats.Phase.DIAGNOSTICS);
+    try {
+      writeErrorInfo(errorMessage, errorToken);
+    }
+    finally {
+      m_stats.exit();
+    }
+  }
+
+  private void writeErrorInfo(String errorMessage, int errorToken) {
+    // The steps that led to the error are printed before it, as they were when traced as text
+    if (m_tracer != null)
+      m_tracer.print();
+    String srcLine = getLineFromSource(m_tokens.getLineNum(errorToken));
+    String lineNumString = String.valueOf(m_tokens.getLineNum(errorToken));
     while (lineNumString.length() < 3)
       lineNumString = " " + lineNumString;
 
-    System.out.println (lineNumString + ": " + srcLine);
-    System.out.print("     ");
-    for(int n=0;n<errorToken.getColumnNum();n++)
-      System.out.print(" ");
-    System.out.print("^ ");
-    System.out.println(errorMessage);
-    trace(" inside " + m_nonTStack.peek());
+    m_errorCount++;
+    m_out.println (lineNumString + ": " + srcLine);
+    m_out.print("     ");
+    for(int n=0;n<m_tokens.getColumnNum(errorToken);n++)
+      m_out.print(" ");
+    m_out.print("^ ");
+    m_out.println(errorMessage);
+    if (m_tracer != null)
+      m_tracer.record(Tracer.Kind.ERROR_INSIDE, m_nonTStack.peek().ordinal(), errorToken);
   }
 
   protected String getLineFromSource(int lineNum) {
-    FileInputStream fis = null;
-    BufferedReader br = null;
     try {
-      fis = new FileInputStream(m_sourceFile);
-      br = new BufferedReader(new InputStreamReader(fis/*, Charset.forName("UTF-8")*/));
-      for(int n=1;n<lineNum;n++) {
-        br.readLine();
-      }
-      return br.readLine();
+      return m_source.getLine(lineNum);
     }
     catch (IOException e) {
-      System.out.println("IOException reading sourcefile");
-      System.exit(1);
-      return null; 
-    }
-    finally {
-      if (br != null) {
-        try { br.close(); } catch (java.io.IOException e) {}
-      }
-      br = null;
-      fis = null;
+      throw new UncheckedIOException(e);
     }
   }
 
-  protected void trace(String msg) {
-    if (MyMain.TRACE)
-      System.out.println(msg);
+  /* Traces the tokens around a syntax error and the nonterminal it is in, then prints them after its diagnostic */
+  protected void traceError(int actual, int prevToken) {
+    if (m_tracer == null)
+      return;
+    m_tracer.record(Tracer.Kind.TOKENS, m_tokens.getTraceCode(prevToken), m_tokens.getCode(actual), 0, actual);
+    m_tracer.record(Tracer.Kind.INSIDE, m_nonTStack.peek().ordinal(), actual);
+    m_tracer.print();
   }
 }
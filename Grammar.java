@@ -0,0 +1,211 @@
+import java.util.*;
+
+/*
+  The Decaf grammar as the Parser implements it, written down as data.
+
+  FIRST and FOLLOW of every nonterminal are computed from the productions once, when the class is
+  loaded, and stored as bit masks over TokenCode ordinals (TokenCode has fewer than 64 values), so
+  "is this token in the set" is a single shift and AND:  (set >>> tokenCode.ordinal() & 1) != 0
+
+  A production's right hand side is a list of TokenCode (terminals) and NonT (nonterminals);
+  an empty right hand side is an epsilon production.
+*/
+public class Grammar {
+
+  private static final List<NonT> s_lhs = new ArrayList<NonT>();
+  private static final List<Enum<?> []> s_rhs = new ArrayList<Enum<?> []>();
+
+  private static final long [] s_first = new long[NonT.values().length];
+  private static final long [] s_follow = new long[NonT.values().length];
+  private static final boolean [] s_nullable = new boolean[NonT.values().length];
+
+  static {
+    rule(NonT.PROGRAM, TokenCode.CLASS, TokenCode.IDENTIFIER, TokenCode.LBRACE, NonT.VARIABLE_DECLARATIONS, NonT.METHOD_DECLARATIONS, TokenCode.RBRACE);
+
+    // FOLLOW holds RBRACE: in a method body the declarations may be followed by an empty STATEMENT_LIST
+    rule(NonT.VARIABLE_DECLARATIONS, NonT.TYPE, NonT.VARIABLE_LIST, TokenCode.SEMICOLON, NonT.VARIABLE_DECLARATIONS);
+    rule(NonT.VARIABLE_DECLARATIONS);
+    rule(NonT.TYPE, TokenCode.INT);
+    rule(NonT.TYPE, TokenCode.REAL);
+    rule(NonT.VARIABLE_LIST, NonT.VARIABLE, NonT.VARIABLE_LIST_2);
+    rule(NonT.VARIABLE_LIST_2, TokenCode.COMMA, NonT.VARIABLE, NonT.VARIABLE_LIST_2);
+    rule(NonT.VARIABLE_LIST_2);
+    rule(NonT.VARIABLE, TokenCode.IDENTIFIER, NonT.VARIABLE2);
+    rule(NonT.VARIABLE2, TokenCode.LBRACKET, TokenCode.NUMBER, TokenCode.RBRACKET);
+    rule(NonT.VARIABLE2);
+
+    rule(NonT.METHOD_DECLARATIONS, NonT.METHOD_DECLARATION, NonT.MORE_METHOD_DECLARATIONS);
+    rule(NonT.MORE_METHOD_DECLARATIONS, NonT.METHOD_DECLARATION, NonT.MORE_METHOD_DECLARATIONS);
+    rule(NonT.MORE_METHOD_DECLARATIONS);
+    rule(NonT.METHOD_DECLARATION, TokenCode.STATIC, NonT.METHOD_RETURN_TYPE, TokenCode.IDENTIFIER, TokenCode.LPAREN, NonT.PARAMETERS, TokenCode.RPAREN,
+         TokenCode.LBRACE, NonT.VARIABLE_DECLARATIONS, NonT.STATEMENT_LIST, TokenCode.RBRACE);
+    rule(NonT.METHOD_RETURN_TYPE, TokenCode.VOID);
+    rule(NonT.METHOD_RETURN_TYPE, NonT.TYPE);
+    rule(NonT.PARAMETERS, NonT.PARAMETER_LIST);
+    rule(NonT.PARAMETERS);
+    rule(NonT.PARAMETER_LIST, NonT.TYPE, TokenCode.IDENTIFIER, NonT.PARAMETER_LIST2);
+    rule(NonT.PARAMETER_LIST2, TokenCode.COMMA, NonT.TYPE, TokenCode.IDENTIFIER, NonT.PARAMETER_LIST2);
+    rule(NonT.PARAMETER_LIST2);
+
+    rule(NonT.STATEMENT_LIST, NonT.STATEMENT, NonT.STATEMENT_LIST);
+    rule(NonT.STATEMENT_LIST);
+    rule(NonT.ID_STARTING_STATEMENT, TokenCode.IDENTIFIER, NonT.REST_OF_ID_STARTING_STATEMENT, TokenCode.SEMICOLON);
+    rule(NonT.REST_OF_ID_STARTING_STATEMENT, TokenCode.LPAREN, NonT.EXPRESSION_LIST, TokenCode.RPAREN);
+    rule(NonT.REST_OF_ID_STARTING_STATEMENT, TokenCode.INCDECOP);
+    rule(NonT.REST_OF_ID_STARTING_STATEMENT, TokenCode.ASSIGNOP, NonT.EXPRESSION);
+    rule(NonT.REST_OF_ID_STARTING_STATEMENT, TokenCode.LBRACKET, NonT.EXPRESSION, TokenCode.RBRACKET, TokenCode.ASSIGNOP, NonT.EXPRESSION);
+    rule(NonT.STATEMENT, NonT.ID_STARTING_STATEMENT);
+    rule(NonT.STATEMENT, TokenCode.IF, TokenCode.LPAREN, NonT.EXPRESSION, TokenCode.RPAREN, NonT.STATEMENT_BLOCK, NonT.OPTIONAL_ELSE);
+    rule(NonT.STATEMENT, TokenCode.FOR, TokenCode.LPAREN, NonT.VARIABLE_LOC, TokenCode.ASSIGNOP, NonT.EXPRESSION, TokenCode.SEMICOLON,
+         NonT.EXPRESSION, TokenCode.SEMICOLON, NonT.VARIABLE_LOC, TokenCode.INCDECOP, TokenCode.RPAREN, NonT.STATEMENT_BLOCK);
+    rule(NonT.STATEMENT, TokenCode.RETURN, NonT.OPTIONAL_EXPRESSION, TokenCode.SEMICOLON);
+    rule(NonT.STATEMENT, TokenCode.BREAK, TokenCode.SEMICOLON);
+    rule(NonT.STATEMENT, TokenCode.CONTINUE, TokenCode.SEMICOLON);
+    rule(NonT.STATEMENT, NonT.STATEMENT_BLOCK);
+    rule(NonT.OPTIONAL_EXPRESSION, NonT.EXPRESSION);
+    rule(NonT.OPTIONAL_EXPRESSION);
+    rule(NonT.STATEMENT_BLOCK, TokenCode.LBRACE, NonT.STATEMENT_LIST, TokenCode.RBRACE);
+    rule(NonT.OPTIONAL_ELSE, TokenCode.ELSE, NonT.STATEMENT_BLOCK);
+    rule(NonT.OPTIONAL_ELSE);
+
+    rule(NonT.EXPRESSION_LIST, NonT.EXPRESSION, NonT.MORE_EXPRESSIONS);
+    rule(NonT.EXPRESSION_LIST);
+    rule(NonT.MORE_EXPRESSIONS, TokenCode.COMMA, NonT.EXPRESSION, NonT.MORE_EXPRESSIONS);
+    rule(NonT.MORE_EXPRESSIONS);
+    rule(NonT.EXPRESSION, NonT.SIMPLE_EXPRESSION, NonT.EXPRESSION2);
+    rule(NonT.EXPRESSION2, TokenCode.RELOP, NonT.SIMPLE_EXPRESSION);
+    rule(NonT.EXPRESSION2);
+    rule(NonT.SIMPLE_EXPRESSION, NonT.SIGN, NonT.TERM, NonT.SIMPLE_EXPRESSION2);
+    rule(NonT.SIMPLE_EXPRESSION, NonT.TERM, NonT.SIMPLE_EXPRESSION2);
+    rule(NonT.SIMPLE_EXPRESSION2, TokenCode.ADDOP, NonT.TERM);
+    rule(NonT.SIMPLE_EXPRESSION2);
+    rule(NonT.TERM, NonT.FACTOR, NonT.TERM2);
+    rule(NonT.TERM2, TokenCode.MULOP, NonT.FACTOR);
+    rule(NonT.TERM2);
+    rule(NonT.ID_STARTING_FACTOR, TokenCode.IDENTIFIER, NonT.REST_OF_ID_STARTING_FACTOR);
+    rule(NonT.REST_OF_ID_STARTING_FACTOR, TokenCode.LPAREN, NonT.EXPRESSION_LIST, TokenCode.RPAREN);
+    rule(NonT.REST_OF_ID_STARTING_FACTOR, TokenCode.LBRACKET, NonT.EXPRESSION, TokenCode.RBRACKET);
+    rule(NonT.REST_OF_ID_STARTING_FACTOR);
+    rule(NonT.FACTOR, NonT.ID_STARTING_FACTOR);
+    rule(NonT.FACTOR, TokenCode.NUMBER);
+    rule(NonT.FACTOR, TokenCode.LPAREN, NonT.EXPRESSION, TokenCode.RPAREN);
+    rule(NonT.FACTOR, TokenCode.NOT, NonT.FACTOR);
+    rule(NonT.VARIABLE_LOC, TokenCode.IDENTIFIER, NonT.VARIABLE_LOC_REST);
+    rule(NonT.VARIABLE_LOC_REST, TokenCode.LBRACKET, NonT.EXPRESSION, TokenCode.RBRACKET);
+    rule(NonT.VARIABLE_LOC_REST);
+    rule(NonT.SIGN, TokenCode.ADDOP);
+
+    computeFirst();
+    computeFollow(NonT.PROGRAM);
+  }
+
+  private static void rule(NonT lhs, Enum<?> ... rhs) {
+    s_lhs.add(lhs);
+    s_rhs.add(rhs);
+  }
+
+  /* FIRST(nonT) as a bit mask over TokenCode ordinals */
+  public static long first(NonT nonT) {
+    return s_first[nonT.ordinal()];
+  }
+
+  /* FOLLOW(nonT) as a bit mask over TokenCode ordinals */
+  public static long follow(NonT nonT) {
+    return s_follow[nonT.ordinal()];
+  }
+
+  public static boolean isNullable(NonT nonT) {
+    return s_nullable[nonT.ordinal()];
+  }
+
+  public static boolean contains(long set, TokenCode tokenCode) {
+    return (set >>> tokenCode.ordinal() & 1) != 0;
+  }
+
+  public static long setOf(TokenCode ... tokenCodes) {
+    long set = 0;
+    for (TokenCode tokenCode : tokenCodes)
+      set |= 1L << tokenCode.ordinal();
+    return set;
+  }
+
+  /* The token codes in a set, in TokenCode order */
+  public static TokenCode [] members(long set) {
+    List<TokenCode> members = new ArrayList<TokenCode>();
+    for (TokenCode tokenCode : TokenCode.values())
+      if (contains(set, tokenCode))
+        members.add(tokenCode);
+    return members.toArray(new TokenCode[members.size()]);
+  }
+
+  public static int productionCount() {
+    return s_lhs.size();
+  }
+
+  public static NonT lhs(int production) {
+    return s_lhs.get(production);
+  }
+
+  public static Enum<?> [] rhs(int production) {
+    return s_rhs.get(production);
+  }
+
+  /* FIRST of the symbols rhs[from ..] of a production; nullable[0] tells whether they can all derive epsilon */
+  public static long firstOfSequence(Enum<?> [] rhs, int from, boolean [] nullable) {
+    long set = 0;
+    for (int n = from; n < rhs.length; n++) {
+      if (rhs[n] instanceof TokenCode) {
+        nullable[0] = false;
+        return set | 1L << rhs[n].ordinal();
+      }
+      set |= s_first[rhs[n].ordinal()];
+      if (!s_nullable[rhs[n].ordinal()]) {
+        nullable[0] = false;
+        return set;
+      }
+    }
+    nullable[0] = true;
+    return set;
+  }
+
+  private static void computeFirst() {
+    boolean [] nullable = new boolean[1];
+    boolean changed = true;
+    while (changed) {
+      changed = false;
+      for (int p = 0; p < s_lhs.size(); p++) {
+        int lhs = s_lhs.get(p).ordinal();
+        long first = s_first[lhs] | firstOfSequence(s_rhs.get(p), 0, nullable);
+        if (first != s_first[lhs] || (nullable[0] && !s_nullable[lhs])) {
+          s_first[lhs] = first;
+          s_nullable[lhs] |= nullable[0];
+          changed = true;
+        }
+      }
+    }
+  }
+
+  private static void computeFollow(NonT start) {
+    boolean [] nullable = new boolean[1];
+    s_follow[start.ordinal()] = 1L << TokenCode.EOF.ordinal();
+    boolean changed = true;
+    while (changed) {
+      changed = false;
+      for (int p = 0; p < s_lhs.size(); p++) {
+        Enum<?> [] rhs = s_rhs.get(p);
+        for (int n = 0; n < rhs.length; n++) {
+          if (!(rhs[n] instanceof NonT))
+            continue;
+          long follow = firstOfSequence(rhs, n + 1, nullable);
+          if (nullable[0])
+            follow |= s_follow[s_lhs.get(p).ordinal()];
+          int symbol = rhs[n].ordinal();
+          if ((s_follow[symbol] | follow) != s_follow[symbol]) {
+            s_follow[symbol] |= follow;
+            changed = true;
+          }
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,273 @@
+import java.io.*;
+import java.util.*;
+
+/*
+  Compiles the same source file again and again, parsing and optimizing only the methods that
+  changed since the last time.
+
+  Every compilation lexes the whole file and cuts the tokens into the class header (up to the first
+  method), one span per method declaration, and the closing brace. Each span is keyed by a hash of
+  its tokens (code, operator and symbol), so editing whitespace or comments changes nothing. A span
+  whose key was seen in the last compilation reuses the code generated for it then; the others are
+  parsed on their own (Parser.classHeader, Parser.singleMethod), and optimized when the options say
+  so. A method's code depends on nothing but its tokens, since temps and labels are numbered per
+  method; optimized code also depends on the fields, so then the header's hash is part of the key.
+
+  The symbol table is kept from one compilation to the next, so the symbol ids in the reused code
+  stay valid. It only grows, and is started afresh (with an empty cache) when it has grown well
+  past what the file needs.
+
+  A file that does not have the shape of a class with methods, or that has errors, is compiled as a
+  whole, the way Compilation does it, so its diagnostics are exactly the usual ones: error recovery
+  may run from one method into the next. The code is produced in memory, as a TacProgram.
+*/
+public class IncrementalCompiler {
+
+  private static final long HEADER = 0x68656164L;
+
+  private CompilerOptions m_options;
+  private SymbolTable m_symbolTable;
+  private int m_symbolLimit;
+  // The code of every span of the last compilation, by key
+  private Map<Long, QuadrupleList> m_cache = new HashMap<Long, QuadrupleList>();
+
+  private TacProgram m_program;
+  private String m_diagnostics = "";
+  private int m_errorCount;
+  private int m_tokenCount;
+  private int m_reusedCount;
+  private int m_compiledCount;
+  private boolean m_whole;
+
+  public IncrementalCompiler() {
+    this(new CompilerOptions());
+  }
+
+  /* Only the optimize and mapped input options are used; the code is always kept in memory */
+  public IncrementalCompiler(CompilerOptions options) {
+    m_options = options;
+  }
+
+  public IncrementalCompiler compile(String sourceFile) throws IOException {
+    if (m_symbolTable == null || m_symbolTable.size() > m_symbolLimit) {
+      m_symbolTable = new SymbolTable();
+      m_cache.clear();
+    }
+    m_diagnostics = "";
+    m_errorCount = 0;
+    m_reusedCount = 0;
+    m_compiledCount = 0;
+    m_whole = false;
+
+    TokenBuffer tokens = lex(sourceFile);
+    m_tokenCount = tokens.size();
+    int[] spans = split(tokens);
+    if (spans == null || !compileSpans(sourceFile, tokens, spans))
+      compileWhole(sourceFile, tokens);
+    m_symbolLimit = Math.max(m_symbolLimit, 2 * m_symbolTable.size() + 4096);
+    return this;
+  }
+
+  /* All the tokens of the file, kept in one buffer */
+  private TokenBuffer lex(String sourceFile) throws IOException {
+    Lexer lexer = m_options.isMappedInput() ? Lexer.mapFile(sourceFile, m_symbolTable)
+                                            : new Lexer(new FileReader(sourceFile), m_symbolTable);
+    TokenBuffer tokens = new TokenBuffer(lexer, true);
+    try {
+      while (tokens.getTokenCode(tokens.next()) != TokenCode.EOF)
+        ;
+    }
+    finally {
+      lexer.yyclose();
+    }
+    return tokens;
+  }
+
+  /*
+    Where the spans start: the header at 0, then each method at its STATIC, then the closing brace
+    of the class; null if the tokens are not "class name { fields methods }" with balanced braces.
+  */
+  private static int[] split(TokenBuffer tokens) {
+    int count = tokens.size() - 1;
+    if (count < 3 || tokens.getTokenCode(0) != TokenCode.CLASS)
+      return null;
+    int[] spans = new int[16];
+    int spanCount = 1;
+    int depth = 0;
+    int index = 0;
+    while (index < count && !(depth == 1 && tokens.getTokenCode(index) == TokenCode.STATIC))
+      depth += braceDepth(tokens.getTokenCode(index++));
+    if (index == count)
+      return null;
+    while (tokens.getTokenCode(index) == TokenCode.STATIC) {
+      if (spanCount == spans.length)
+        spans = Arrays.copyOf(spans, spanCount * 2);
+      spans[spanCount++] = index;
+      boolean body = false;
+      do {
+        TokenCode code = tokens.getTokenCode(index++);
+        depth += braceDepth(code);
+        body |= code == TokenCode.LBRACE;
+      } while (index < count && (!body || depth > 1));
+      if (index == count)
+        return null;
+    }
+    if (index != count - 1 || tokens.getTokenCode(index) != TokenCode.RBRACE || depth != 1)
+      return null;
+    spans = Arrays.copyOf(spans, spanCount + 1);
+    spans[spanCount] = index;
+    return spans;
+  }
+
+  private static int braceDepth(TokenCode code) {
+    return code == TokenCode.LBRACE ? 1 : code == TokenCode.RBRACE ? -1 : 0;
+  }
+
+  /* Hash of the tokens [from, to): what they are, not where */
+  private static long hash(TokenBuffer tokens, int from, int to) {
+    long hash = 0xCBF29CE484222325L ^ (to - from);
+    for (int index = from; index < to; index++) {
+      hash = (hash ^ tokens.getCode(index)) * 0x100000001B3L;
+      hash = (hash ^ tokens.getOpType(index).ordinal()) * 0x100000001B3L;
+      hash = (hash ^ tokens.getSymbolId(index)) * 0x100000001B3L;
+    }
+    return mix(hash);
+  }
+
+  private static long mix(long value) {
+    value = (value ^ (value >>> 33)) * 0xFF51AFD7ED558CCDL;
+    value = (value ^ (value >>> 33)) * 0xC4CEB9FE1A85EC53L;
+    return value ^ (value >>> 33);
+  }
+
+  /* Reuses or compiles every span; false if one has errors and the file has to be compiled as a whole */
+  private boolean compileSpans(String sourceFile, TokenBuffer tokens, int[] spans) {
+    Map<Long, QuadrupleList> used = new HashMap<Long, QuadrupleList>();
+    ByteArrayOutputStream diagnostics = new ByteArrayOutputStream();
+    PrintStream out = new PrintStream(diagnostics);
+
+    long headerKey = hash(tokens, 0, spans[1]) ^ HEADER;
+    QuadrupleList globals = m_cache.get(headerKey);
+    if (globals == null) {
+      TacProgram header = new TacProgram(m_symbolTable);
+      Parser parser = new Parser(new TokenBuffer(tokens, 0, spans[1]), sourceFile, out, new CodeGenerator(header));
+      try {
+        parser.classHeader();
+      }
+      catch (RuntimeException e) {
+        return false;
+      }
+      if (parser.getErrorCount() > 0)
+        return false;
+      globals = header.getGlobals();
+      m_compiledCount++;
+    }
+    else
+      m_reusedCount++;
+    used.put(headerKey, globals);
+
+    // Methods to compile go through one Optimizer, which learns the fields first
+    TacProgram compiled = null;
+    TacSink sink = null;
+    TacProgram program = new TacProgram(m_symbolTable);
+    program.add(globals);
+    for (int k = 1; k + 1 < spans.length; k++) {
+      long key = hash(tokens, spans[k], spans[k + 1]);
+      if (m_options.isOptimize())
+        key = mix(key ^ headerKey);
+      QuadrupleList method = used.get(key);
+      if (method == null)
+        method = m_cache.get(key);
+      if (method != null)
+        m_reusedCount++;
+      else {
+        if (sink == null) {
+          compiled = new TacProgram(m_symbolTable);
+          sink = compiled;
+          if (m_options.isOptimize()) {
+            sink = new Optimizer(compiled, m_symbolTable);
+            replay(globals, sink);
+          }
+          else
+            compiled.add(globals);
+        }
+        Parser parser = new Parser(new TokenBuffer(tokens, spans[k], spans[k + 1]), sourceFile, out, new CodeGenerator(sink));
+        try {
+          parser.singleMethod();
+        }
+        catch (RuntimeException e) {
+          // recovering from an error may look outside the span; the file is compiled again as a whole
+          return false;
+        }
+        if (parser.getErrorCount() > 0)
+          return false;
+        List<QuadrupleList> methods = compiled.getMethods();
+        method = methods.get(methods.size() - 1);
+        m_compiledCount++;
+      }
+      used.put(key, method);
+      program.add(method);
+    }
+    m_program = program;
+    m_cache = used;
+    return true;
+  }
+
+  private static void replay(QuadrupleList unit, TacSink sink) {
+    try {
+      for (int n = unit.first(); n >= 0; n = unit.next(n))
+        sink.quad(unit.getCode(n), unit.getParam1(n), unit.getParam2(n), unit.getResult(n));
+      sink.endMethod();
+    }
+    catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /* Compiles all the tokens with one parser, as Compilation does; nothing is cached */
+  private void compileWhole(String sourceFile, TokenBuffer tokens) throws IOException {
+    m_whole = true;
+    ByteArrayOutputStream diagnostics = new ByteArrayOutputStream();
+    PrintStream out = new PrintStream(diagnostics);
+    TacProgram program = new TacProgram(m_symbolTable);
+    CodeGenerator codeGenerator = new CodeGenerator(m_options.isOptimize() ? new Optimizer(program, m_symbolTable) : program);
+    Parser parser = new Parser(new TokenBuffer(tokens, 0, tokens.size() - 1), sourceFile, out, codeGenerator);
+    parser.program();
+    codeGenerator.close();
+    out.flush();
+    m_program = program;
+    m_diagnostics = diagnostics.toString();
+    m_errorCount = parser.getErrorCount();
+    m_cache.clear();
+  }
+
+  public TacProgram getProgram() {
+    return m_program;
+  }
+
+  public String getDiagnostics() {
+    return m_diagnostics;
+  }
+
+  public int getErrorCount() {
+    return m_errorCount;
+  }
+
+  public int getTokenCount() {
+    return m_tokenCount;
+  }
+
+  /* Spans of the last compilation whose code was reused, and those compiled, the header included */
+  public int getReusedCount() {
+    return m_reusedCount;
+  }
+
+  public int getCompiledCount() {
+    return m_compiledCount;
+  }
+
+  /* True if the last compilation had to compile the file as a whole */
+  public boolean isWhole() {
+    return m_whole;
+  }
+}
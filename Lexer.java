@@ -1,4 +1,4 @@
-/* The following code was generated by JFlex 1.6.0 */
+/* Generated by JFlex 1.6.0 from lexical.flex, maintained by hand since (see the class comment) */
 
 /* 
   Reference implementation of a Lexical Analyser for Decaf
@@ -12,7 +12,10 @@
 /**
  * This class is a scanner generated by 
  * <a href="http://www.jflex.de/">JFlex</a> 1.6.0
- * from the specification file <tt>lexical.flex</tt>
+ * from the specification file <tt>lexical.flex</tt>.
+ * It is no longer generated: the symbol table interning, the memory-mapped
+ * input, the packed tokens and the ASCII character class table were written
+ * into it by hand, and running JFlex again would drop them. Changes go here.
  */
 class Lexer {
 
@@ -36,20 +39,32 @@ class Lexer {
   };
 
   /** 
-   * Translates characters to character classes
+   * Character classes of the 128 ASCII characters, precomputed from the
+   * packed map JFlex generates. Decaf has no tokens outside ASCII, so every
+   * other character is in class ZZ_CMAP_OTHER; the full map of 0x110000
+   * chars no longer has to be unpacked each time the class is loaded.
    */
-  private static final String ZZ_CMAP_PACKED = 
-    "\11\0\2\47\2\0\1\47\22\0\1\47\1\10\3\0\1\15\1\16"+
-    "\1\0\1\43\1\44\1\13\1\5\1\46\1\6\1\3\1\14\12\2"+
-    "\1\0\1\45\1\11\1\7\1\11\2\0\4\1\1\4\25\1\1\41"+
-    "\1\0\1\42\1\0\1\1\1\0\1\21\1\35\1\17\1\26\1\30"+
-    "\1\27\2\1\1\25\1\1\1\36\1\20\1\1\1\34\1\24\2\1"+
-    "\1\31\1\22\1\32\1\33\1\23\4\1\1\37\1\12\1\40\uffff\0\uffff\0\uffff\0\uffff\0\uffff\0\uffff\0\uffff\0\uffff\0\uffff\0\uffff\0\uffff\0\uffff\0\uffff\0\uffff\0\uffff\0\uffff\0\uff92\0";
+  private static final byte [] ZZ_CMAP_ASCII = {
+     0,  0,  0,  0,  0,  0,  0,  0,  0, 39, 39,  0,  0, 39,  0,  0,
+     0,  0,  0,  0,  0,  0,  0,  0,  0,  0,  0,  0,  0,  0,  0,  0,
+    39,  8,  0,  0,  0, 13, 14,  0, 35, 36, 11,  5, 38,  6,  3, 12,
+     2,  2,  2,  2,  2,  2,  2,  2,  2,  2,  0, 37,  9,  7,  9,  0,
+     0,  1,  1,  1,  1,  4,  1,  1,  1,  1,  1,  1,  1,  1,  1,  1,
+     1,  1,  1,  1,  1,  1,  1,  1,  1,  1,  1, 33,  0, 34,  0,  1,
+     0, 17, 29, 15, 22, 24, 23,  1,  1, 21,  1, 30, 16,  1, 28, 20,
+     1,  1, 25, 18, 26, 27, 19,  1,  1,  1,  1, 31, 10, 32,  0,  0
+  };
+
+  /** 
+   * Character class of every character from 128 up
+   */
+  private static final int ZZ_CMAP_OTHER = 0;
 
   /** 
-   * Translates characters to character classes
+   * Character classes of the 256 Latin-1 characters, for scanning mapped
+   * input byte by byte
    */
-  private static final char [] ZZ_CMAP = zzUnpackCMap(ZZ_CMAP_PACKED);
+  private static final byte [] ZZ_CMAP_LATIN1 = zzLatin1CMap();
 
   /** 
    * Translates DFA states to action switch labels.
@@ -237,6 +252,9 @@ class Lexer {
   /** the input device */
   private java.io.Reader zzReader;
 
+  /** the mapped input, scanned as Latin-1 bytes instead of zzBuffer when set */
+  private java.nio.ByteBuffer zzBytes;
+
   /** the current state of the DFA */
   private int zzState;
 
@@ -292,59 +310,90 @@ class Lexer {
   private int zzFinalHighSurrogate = 0;
 
   /* user code: */
-  private SymbolTableEntry createOrInsertSymTabEntry() {
-    SymbolTableEntry symTabEntry = SymbolTable.lookup(yytext());
-    if (symTabEntry == null)
-      symTabEntry = SymbolTable.insert(yytext());
-    return symTabEntry;
+  private SymbolTable m_symbolTable;
+  private int m_tokenCount;
+
+  /* When set, yylex(TokenBuffer) is running: tokens go into this buffer and no Token is allocated */
+  private TokenBuffer m_tokens;
+  private static final Token PACKED_TOKEN = Token.createRaw(TokenCode.NONE);
+
+  public SymbolTable getSymbolTable() {
+    return m_symbolTable;
+  }
+
+  public int getTokenCount() {
+    return m_tokenCount;
+  }
+
+  /**
+   * Scans the next token and appends it to the given buffer instead of
+   * returning a Token object.
+   *
+   * @return      the index of the token in the buffer
+   * @exception   java.io.IOException  if any I/O-Error occurs
+   */
+  public int yylex(TokenBuffer tokens) throws java.io.IOException {
+    m_tokens = tokens;
+    yylex();
+    m_tokens = null;
+    return tokens.size() - 1;
+  }
+
+  private char[] m_latin1Text = new char[64];
+
+  /* Interns the matched text straight from the scan buffer, no String is created */
+  private int createOrInsertSymTabId() {
+    int length = zzMarkedPos - zzStartRead;
+    if (zzBytes == null)
+      return m_symbolTable.intern(zzBuffer, zzStartRead, length);
+    if (length > m_latin1Text.length)
+      m_latin1Text = new char[Math.max(length, m_latin1Text.length * 2)];
+    for (int n = 0; n < length; n++)
+      m_latin1Text[n] = (char) (zzBytes.get(zzStartRead + n) & 0xFF);
+    return m_symbolTable.intern(m_latin1Text, 0, length);
   } 
 
-  private Token createRawToken(TokenCode tcode) {
-    Token retVal = Token.createRaw(tcode);
+  private Token placeToken(TokenCode tcode, DataType dtype, OpType opType, int symbol) {
+    m_tokenCount++;
+    if (m_tokens != null) {
+      m_tokens.append(tcode, dtype, opType, symbol, yychar, yyline, yycolumn);
+      return PACKED_TOKEN;
+    }
+    Token retVal = new Token(tcode, dtype, opType, symbol < 0 ? null : m_symbolTable.getEntry(symbol));
     retVal.setLineColumn(yyline, yycolumn);
     return retVal;
   }
 
-  private Token createRealToken(SymbolTableEntry entry) {
-    Token retVal = Token.createReal(entry);
-    retVal.setLineColumn(yyline, yycolumn);
-    return retVal;
+  private Token createRawToken(TokenCode tcode) {
+    return placeToken(tcode, DataType.NONE, OpType.NONE, -1);
   }
 
-  private Token createIntToken(SymbolTableEntry entry) {
-    Token retVal = Token.createInt(entry);
-    retVal.setLineColumn(yyline, yycolumn);
-    return retVal;
+  private Token createRealToken(int symbol) {
+    return placeToken(TokenCode.NUMBER, DataType.REAL, OpType.NONE, symbol);
   }
 
-  private Token createIdToken(SymbolTableEntry entry) {
-    Token retVal = Token.createId(entry);
-    retVal.setLineColumn(yyline, yycolumn);
-    return retVal;
+  private Token createIntToken(int symbol) {
+    return placeToken(TokenCode.NUMBER, DataType.INT, OpType.NONE, symbol);
+  }
+
+  private Token createIdToken(int symbol) {
+    return placeToken(TokenCode.IDENTIFIER, DataType.ID, OpType.NONE, symbol);
   }
 
   private Token createOpToken(TokenCode tcode, OpType opType) {
-    Token retVal = Token.createOp(tcode, opType);
-    retVal.setLineColumn(yyline, yycolumn);
-    return retVal;
+    return placeToken(tcode, DataType.OP, opType, -1);
   }
 
   private Token createRelOpToken(String str) {
-    Token retVal = Token.createRelOp(str);
-    retVal.setLineColumn(yyline, yycolumn);
-    return retVal;
+    return createOpToken(TokenCode.RELOP, Token.relOpType(str));
   }
 
   private Token createMulOpToken(String str) {
-    Token retVal = Token.createMulOp(str);
-    retVal.setLineColumn(yyline, yycolumn);
-    return retVal;
+    return createOpToken(TokenCode.MULOP, Token.mulOpType(str));
   }
 
   private Token createAddOpToken(String str) {
-    Token retVal = Token.createAddOp(str);
-    retVal.setLineColumn(yyline, yycolumn);
-    return retVal;
+    return createOpToken(TokenCode.ADDOP, Token.addOpType(str));
   }
 
 
@@ -354,25 +403,60 @@ class Lexer {
    * @param   in  the java.io.Reader to read input from.
    */
   Lexer(java.io.Reader in) {
+    this(in, new SymbolTable());
+  }
+
+  /**
+   * Creates a new scanner that enters identifiers and numbers into
+   * the given symbol table.
+   *
+   * @param   in           the java.io.Reader to read input from.
+   * @param   symbolTable  the symbol table owned by this compilation.
+   */
+  Lexer(java.io.Reader in, SymbolTable symbolTable) {
     this.zzReader = in;
+    this.m_symbolTable = symbolTable;
   }
 
+  /**
+   * Creates a new scanner over bytes that are already in memory. Each byte
+   * is one Latin-1 character; the DFA runs directly over the buffer, so no
+   * Reader, decoding or zzBuffer copying is involved.
+   *
+   * @param   in           the input, scanned from position 0 to its limit.
+   * @param   symbolTable  the symbol table owned by this compilation.
+   */
+  Lexer(java.nio.ByteBuffer in, SymbolTable symbolTable) {
+    this.zzBytes = in;
+    this.zzEndRead = in.limit();
+    this.m_symbolTable = symbolTable;
+  }
 
-  /** 
-   * Unpacks the compressed character translation table.
+  /**
+   * Creates a scanner over the memory-mapped contents of a file.
    *
-   * @param packed   the packed character translation table
-   * @return         the unpacked character translation table
+   * @param   fileName     the source file.
+   * @param   symbolTable  the symbol table owned by this compilation.
+   * @exception   java.io.IOException  if the file cannot be mapped
    */
-  private static char [] zzUnpackCMap(String packed) {
-    char [] map = new char[0x110000];
-    int i = 0;  /* index in packed string  */
-    int j = 0;  /* index in unpacked array */
-    while (i < 152) {
-      int  count = packed.charAt(i++);
-      char value = packed.charAt(i++);
-      do map[j++] = value; while (--count > 0);
+  static Lexer mapFile(String fileName, SymbolTable symbolTable) throws java.io.IOException {
+    java.nio.channels.FileChannel channel = java.nio.channels.FileChannel.open(
+        java.nio.file.Paths.get(fileName), java.nio.file.StandardOpenOption.READ);
+    try {
+      if (channel.size() > Integer.MAX_VALUE)
+        throw new java.io.IOException(fileName + " is too large for mapped input");
+      return new Lexer(channel.map(java.nio.channels.FileChannel.MapMode.READ_ONLY, 0, channel.size()), symbolTable);
+    }
+    finally {
+      channel.close();
     }
+  }
+
+
+  private static byte [] zzLatin1CMap() {
+    byte [] map = new byte[256];
+    for (int c = 0; c < map.length; c++)
+      map[c] = c < ZZ_CMAP_ASCII.length ? ZZ_CMAP_ASCII[c] : ZZ_CMAP_OTHER;
     return map;
   }
 
@@ -464,6 +548,7 @@ class Lexer {
    */
   public final void yyreset(java.io.Reader reader) {
     zzReader = reader;
+    zzBytes = null;
     zzAtBOL  = true;
     zzAtEOF  = false;
     zzEOFDone = false;
@@ -499,6 +584,11 @@ class Lexer {
    * Returns the text matched by the current regular expression.
    */
   public final String yytext() {
+    if (zzBytes != null) {
+      byte [] text = new byte[zzMarkedPos-zzStartRead];
+      zzBytes.get(zzStartRead, text);
+      return new String( text, java.nio.charset.StandardCharsets.ISO_8859_1 );
+    }
     return new String( zzBuffer, zzStartRead, zzMarkedPos-zzStartRead );
   }
 
@@ -515,6 +605,8 @@ class Lexer {
    * @return the character at position pos
    */
   public final char yycharat(int pos) {
+    if (zzBytes != null)
+      return (char) (zzBytes.get(zzStartRead+pos) & 0xFF);
     return zzBuffer[zzStartRead+pos];
   }
 
@@ -578,6 +670,9 @@ class Lexer {
    * @exception   java.io.IOException  if any I/O-Error occurs
    */
   public Token yylex() throws java.io.IOException {
+    if (zzBytes != null)
+      return zzLexBytes();
+
     int zzInput;
     int zzAction;
 
@@ -586,7 +681,7 @@ class Lexer {
     int zzMarkedPosL;
     int zzEndReadL = zzEndRead;
     char [] zzBufferL = zzBuffer;
-    char [] zzCMapL = ZZ_CMAP;
+    byte [] zzCMapL = ZZ_CMAP_ASCII;
 
     int [] zzTransL = ZZ_TRANS;
     int [] zzRowMapL = ZZ_ROWMAP;
@@ -595,6 +690,8 @@ class Lexer {
     while (true) {
       zzMarkedPosL = zzMarkedPos;
 
+      yychar+= zzMarkedPosL-zzStartRead;
+
       boolean zzR = false;
       int zzCh;
       int zzCharCount;
@@ -694,7 +791,8 @@ class Lexer {
               zzCurrentPosL += Character.charCount(zzInput);
             }
           }
-          int zzNext = zzTransL[ zzRowMapL[zzState] + zzCMapL[zzInput] ];
+          int zzClass = zzInput < 128 ? zzCMapL[zzInput] : ZZ_CMAP_OTHER;
+          int zzNext = zzTransL[ zzRowMapL[zzState] + zzClass ];
           if (zzNext == -1) break zzForAction;
           zzState = zzNext;
 
@@ -711,147 +809,258 @@ class Lexer {
       // store back cached position
       zzMarkedPos = zzMarkedPosL;
 
-      switch (zzAction < 0 ? zzAction : ZZ_ACTION[zzAction]) {
-        case 1: 
-          { Token retVal = new Token(TokenCode.ERR_ILL_CHAR);
-                  retVal.setLineColumn(yyline, yycolumn);
-                  return retVal;
-          }
-        case 32: break;
-        case 2: 
-          { if (yytext().length() <= 32)
-        						return createIdToken(createOrInsertSymTabEntry());
-        					else 
-        						return createRawToken(TokenCode.ERR_LONG_ID);
-          }
-        case 33: break;
-        case 3: 
-          { return createIntToken(createOrInsertSymTabEntry());
-          }
-        case 34: break;
-        case 4: 
-          { return createAddOpToken(yytext());
-          }
-        case 35: break;
-        case 5: 
-          { return createOpToken(TokenCode.ASSIGNOP, OpType.ASSIGN);
-          }
-        case 36: break;
-        case 6: 
-          { return createRawToken(TokenCode.NOT);
-          }
-        case 37: break;
-        case 7: 
-          { return createRelOpToken(yytext());
-          }
-        case 38: break;
-        case 8: 
-          { return createMulOpToken(yytext());
-          }
-        case 39: break;
-        case 9: 
-          { return createRawToken(TokenCode.LBRACE);
-          }
-        case 40: break;
-        case 10: 
-          { return createRawToken(TokenCode.RBRACE);
-          }
-        case 41: break;
-        case 11: 
-          { return createRawToken(TokenCode.LBRACKET);
-          }
-        case 42: break;
-        case 12: 
-          { return createRawToken(TokenCode.RBRACKET);
-          }
-        case 43: break;
-        case 13: 
-          { return createRawToken(TokenCode.LPAREN);
-          }
-        case 44: break;
-        case 14: 
-          { return createRawToken(TokenCode.RPAREN);
-          }
-        case 45: break;
-        case 15: 
-          { return createRawToken(TokenCode.SEMICOLON);
-          }
-        case 46: break;
-        case 16: 
-          { return createRawToken(TokenCode.COMMA);
-          }
-        case 47: break;
-        case 17: 
-          { /* Ignore whitespace */
-          }
-        case 48: break;
-        case 18: 
-          { OpType op = yytext().equals("++") ? OpType.INC : OpType.DEC;
-                  return createOpToken(TokenCode.INCDECOP, op);
-          }
-        case 49: break;
-        case 19: 
-          { return createRawToken(TokenCode.IF);
-          }
-        case 50: break;
-        case 20: 
-          { return createRealToken(createOrInsertSymTabEntry());
-          }
-        case 51: break;
-        case 21: 
-          { return createRawToken(TokenCode.INT);
-          }
-        case 52: break;
-        case 22: 
-          { return createRawToken(TokenCode.FOR);
-          }
-        case 53: break;
-        case 23: 
-          { /* Ignore comments   */
-          }
-        case 54: break;
-        case 24: 
-          { return createRawToken(TokenCode.VOID);
-          }
-        case 55: break;
-        case 25: 
-          { return createRawToken(TokenCode.ELSE);
-          }
-        case 56: break;
-        case 26: 
-          { return createRawToken(TokenCode.REAL);
-          }
-        case 57: break;
-        case 27: 
-          { return createRawToken(TokenCode.CLASS);
-          }
-        case 58: break;
-        case 28: 
-          { return createRawToken(TokenCode.BREAK);
-          }
-        case 59: break;
-        case 29: 
-          { return createRawToken(TokenCode.STATIC);
-          }
-        case 60: break;
-        case 30: 
-          { return createRawToken(TokenCode.RETURN);
-          }
-        case 61: break;
-        case 31: 
-          { return createRawToken(TokenCode.CONTINUE);
-          }
-        case 62: break;
-        default: 
-          if (zzInput == YYEOF && zzStartRead == zzCurrentPos) {
-            zzAtEOF = true;
-              {   return createRawToken(TokenCode.EOF);
+      Token zzToken = zzDoAction(zzAction, zzInput);
+      if (zzToken != null)
+        return zzToken;
+    }
+  }
+
+  /**
+   * Runs the action of the rule that matched, shared by the Reader and
+   * the mapped input paths.
+   *
+   * @return the token for the match, or <code>null</code> if the rule
+   *         skips the text (whitespace, comments) and scanning continues
+   */
+  private Token zzDoAction(int zzAction, int zzInput) {
+    switch (zzAction < 0 ? zzAction : ZZ_ACTION[zzAction]) {
+      case 1: 
+        { return createRawToken(TokenCode.ERR_ILL_CHAR);
+        }
+      case 32: break;
+      case 2: 
+        { if (yylength() <= 32)
+      						return createIdToken(createOrInsertSymTabId());
+      					else 
+      						return createRawToken(TokenCode.ERR_LONG_ID);
+        }
+      case 33: break;
+      case 3: 
+        { return createIntToken(createOrInsertSymTabId());
+        }
+      case 34: break;
+      case 4: 
+        { return createAddOpToken(yytext());
+        }
+      case 35: break;
+      case 5: 
+        { return createOpToken(TokenCode.ASSIGNOP, OpType.ASSIGN);
+        }
+      case 36: break;
+      case 6: 
+        { return createRawToken(TokenCode.NOT);
+        }
+      case 37: break;
+      case 7: 
+        { return createRelOpToken(yytext());
+        }
+      case 38: break;
+      case 8: 
+        { return createMulOpToken(yytext());
+        }
+      case 39: break;
+      case 9: 
+        { return createRawToken(TokenCode.LBRACE);
+        }
+      case 40: break;
+      case 10: 
+        { return createRawToken(TokenCode.RBRACE);
+        }
+      case 41: break;
+      case 11: 
+        { return createRawToken(TokenCode.LBRACKET);
+        }
+      case 42: break;
+      case 12: 
+        { return createRawToken(TokenCode.RBRACKET);
+        }
+      case 43: break;
+      case 13: 
+        { return createRawToken(TokenCode.LPAREN);
+        }
+      case 44: break;
+      case 14: 
+        { return createRawToken(TokenCode.RPAREN);
+        }
+      case 45: break;
+      case 15: 
+        { return createRawToken(TokenCode.SEMICOLON);
+        }
+      case 46: break;
+      case 16: 
+        { return createRawToken(TokenCode.COMMA);
+        }
+      case 47: break;
+      case 17: 
+        { /* Ignore whitespace */
+        }
+      case 48: break;
+      case 18: 
+        { OpType op = yytext().equals("++") ? OpType.INC : OpType.DEC;
+                return createOpToken(TokenCode.INCDECOP, op);
+        }
+      case 49: break;
+      case 19: 
+        { return createRawToken(TokenCode.IF);
+        }
+      case 50: break;
+      case 20: 
+        { return createRealToken(createOrInsertSymTabId());
+        }
+      case 51: break;
+      case 21: 
+        { return createRawToken(TokenCode.INT);
+        }
+      case 52: break;
+      case 22: 
+        { return createRawToken(TokenCode.FOR);
+        }
+      case 53: break;
+      case 23: 
+        { /* Ignore comments   */
+        }
+      case 54: break;
+      case 24: 
+        { return createRawToken(TokenCode.VOID);
+        }
+      case 55: break;
+      case 25: 
+        { return createRawToken(TokenCode.ELSE);
+        }
+      case 56: break;
+      case 26: 
+        { return createRawToken(TokenCode.REAL);
+        }
+      case 57: break;
+      case 27: 
+        { return createRawToken(TokenCode.CLASS);
+        }
+      case 58: break;
+      case 28: 
+        { return createRawToken(TokenCode.BREAK);
+        }
+      case 59: break;
+      case 29: 
+        { return createRawToken(TokenCode.STATIC);
+        }
+      case 60: break;
+      case 30: 
+        { return createRawToken(TokenCode.RETURN);
+        }
+      case 61: break;
+      case 31: 
+        { return createRawToken(TokenCode.CONTINUE);
+        }
+      case 62: break;
+      default: 
+        if (zzInput == YYEOF && zzStartRead == zzCurrentPos) {
+          zzAtEOF = true;
+            {   return createRawToken(TokenCode.EOF);
  }
-          } 
+        } 
+        else {
+          zzScanError(ZZ_NO_MATCH);
+        }
+    }
+    return null;
+  }
+
+
+
+  /**
+   * yylex() for mapped input: the same DFA and actions, driven directly
+   * over the bytes with the Latin-1 character class table. The whole input
+   * is in memory, so there is no refilling and no end-of-buffer handling
+   * other than end of input.
+   *
+   * @return      the next token
+   */
+  private Token zzLexBytes() {
+    java.nio.ByteBuffer zzBytesL = zzBytes;
+    int zzEndReadL = zzEndRead;
+    byte [] zzCMapL = ZZ_CMAP_LATIN1;
+
+    int [] zzTransL = ZZ_TRANS;
+    int [] zzRowMapL = ZZ_ROWMAP;
+    int [] zzAttrL = ZZ_ATTRIBUTE;
+
+    while (true) {
+      int zzMarkedPosL = zzMarkedPos;
+
+      yychar+= zzMarkedPosL-zzStartRead;
+
+      boolean zzR = false;
+      for (int zzPos = zzStartRead; zzPos < zzMarkedPosL; zzPos++) {
+        switch (zzBytesL.get(zzPos) & 0xFF) {
+        case '\u000B':
+        case '\u000C':
+        case '\u0085':
+          yyline++;
+          yycolumn = 0;
+          zzR = false;
+          break;
+        case '\r':
+          yyline++;
+          yycolumn = 0;
+          zzR = true;
+          break;
+        case '\n':
+          if (zzR)
+            zzR = false;
           else {
-            zzScanError(ZZ_NO_MATCH);
+            yyline++;
+            yycolumn = 0;
           }
+          break;
+        default:
+          zzR = false;
+          yycolumn++;
+        }
       }
+
+      // if the text ended in '\r' and a '\n' follows, the line was counted one too early
+      if (zzR && zzMarkedPosL < zzEndReadL && zzBytesL.get(zzMarkedPosL) == '\n')
+        yyline--;
+
+      int zzAction = -1;
+      int zzInput;
+      int zzCurrentPosL = zzCurrentPos = zzStartRead = zzMarkedPosL;
+
+      zzState = ZZ_LEXSTATE[zzLexicalState];
+
+      // set up zzAction for empty match case:
+      int zzAttributes = zzAttrL[zzState];
+      if ( (zzAttributes & 1) == 1 ) {
+        zzAction = zzState;
+      }
+
+      while (true) {
+        if (zzCurrentPosL < zzEndReadL)
+          zzInput = zzBytesL.get(zzCurrentPosL++) & 0xFF;
+        else {
+          // remember where input ran out, as zzRefill does for the Reader path
+          zzCurrentPos = zzCurrentPosL;
+          zzInput = YYEOF;
+          break;
+        }
+        int zzNext = zzTransL[ zzRowMapL[zzState] + zzCMapL[zzInput] ];
+        if (zzNext == -1) break;
+        zzState = zzNext;
+
+        zzAttributes = zzAttrL[zzState];
+        if ( (zzAttributes & 1) == 1 ) {
+          zzAction = zzState;
+          zzMarkedPosL = zzCurrentPosL;
+          if ( (zzAttributes & 8) == 8 ) break;
+        }
+      }
+
+      // store back cached position
+      zzMarkedPos = zzMarkedPosL;
+
+      Token zzToken = zzDoAction(zzAction, zzInput);
+      if (zzToken != null)
+        return zzToken;
     }
   }
 
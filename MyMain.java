@@ -1,12 +1,212 @@
 import java.io.*;
+import java.util.*;
 
 public class MyMain {
-  public static final boolean TRACE = false;
 
-  public static void main(String [] args) throws IOException {
-    Lexer lexer = new Lexer(new FileReader(args[0]));
-    Parser parser = new Parser(lexer, args[0]);
-    parser.program();
-    
+  /*
+    Usage: MyMain [options] file
+           MyMain [options] [-j threads] file|directory ...
+           MyMain --daemon [--socket path] [options] [-j threads]
+    A single file is compiled as before. Several files, directories or -j switch to batch mode.
+    Options:
+      --mmap            scan the memory-mapped source bytes instead of reading through a Reader
+      --packed-tokens   keep tokens in primitive arrays instead of one Token object each
+      --ll1             parse with the table-driven LL(1) engine (no recursion, so any nesting depth;
+                        checks syntax only, no code is generated, so not with --tac, --run, -O or --daemon)
+      --tac text|binary write the three-address code of name.decaf to name.tac (listing) or name.tacb
+      --run             compile a single file and run its main() on the TacVM
+      --jvm             with --run, run main() as JVM bytecode (see TacJvm) instead
+      -O                optimize the three-address code
+      --opt-report      optimize and print how many quads each pass removed from each method
+      --stats           print the time spent in each phase (lexer, parser, error recovery, diagnostics,
+                        code generation) and what was produced, summed over all files (see CompilerStats)
+      --trace events    trace the parser and error recovery, keeping the last events, up to 4194304 (see Tracer);
+                        they are printed to stdout at each syntax error and when a file is done
+      --trace-file      with --trace, write the trace of name.decaf to name.trace instead, for java Tracer to print
+      --cache dir       reuse the code and diagnostics of files compiled before, kept in dir (see CompilationCache);
+                        with --stats or --trace every file is compiled, and --opt-report only covers those compiled
+      --cache-size MB   the most the cache directory may hold, 256 MB by default
+      --daemon          stay resident and compile the files CompilerClient sends (see CompilerDaemon),
+                        with the options given here; -j sets the number of requests served at once
+      --socket path     the daemon's socket, CompilerDaemon.defaultSocket() by default
+      --incremental     with --daemon, keep the methods of every file compiled and recompile only those that
+                        changed when it is sent again (see IncrementalCompiler); not with --cache
+    Any run can be recorded with Flight Recorder, java -XX:StartFlightRecording:filename=run.jfr MyMain ...;
+    the compiler's own events are described in CompilerEvents.
+  */
+  public static void main(String [] args) throws IOException, InterruptedException {
+    int threads = Runtime.getRuntime().availableProcessors();
+    boolean batch = false;
+    boolean run = false;
+    boolean jvm = false;
+    boolean optimizationReport = false;
+    String cacheDirectory = null;
+    long cacheSize = CompilationCache.DEFAULT_SIZE;
+    boolean daemon = false;
+    boolean incremental = false;
+    String socket = null;
+    CompilerOptions options = new CompilerOptions();
+    List<String> paths = new ArrayList<String>();
+    for (int n = 0; n < args.length; n++) {
+      if (args[n].equals("-j") && n + 1 < args.length) {
+        threads = (int) number(args[++n], 1);
+        batch = true;
+      }
+      else if (args[n].equals("--mmap"))
+        options.setMappedInput(true);
+      else if (args[n].equals("--packed-tokens"))
+        options.setPackedTokens(true);
+      else if (args[n].equals("--ll1"))
+        options.setTableDriven(true);
+      else if (args[n].equals("--tac") && n + 1 < args.length)
+        options.setTacFormat(args[++n].equals("binary") ? TacFormat.BINARY : TacFormat.TEXT);
+      else if (args[n].equals("--run"))
+        run = true;
+      else if (args[n].equals("--jvm"))
+        jvm = true;
+      else if (args[n].equals("-O"))
+        options.setOptimize(true);
+      else if (args[n].equals("--opt-report")) {
+        options.setOptimize(true);
+        optimizationReport = true;
+      }
+      else if (args[n].equals("--stats"))
+        options.setStats(true);
+      else if (args[n].equals("--trace") && n + 1 < args.length)
+        options.setTraceEvents((int) number(args[++n], 1, Tracer.MAX_CAPACITY));
+      else if (args[n].equals("--trace-file"))
+        options.setTraceFile(true);
+      else if (args[n].equals("--cache") && n + 1 < args.length)
+        cacheDirectory = args[++n];
+      else if (args[n].equals("--cache-size") && n + 1 < args.length)
+        cacheSize = number(args[++n], 1) << 20;
+      else if (args[n].equals("--daemon"))
+        daemon = true;
+      else if (args[n].equals("--incremental"))
+        incremental = true;
+      else if (args[n].equals("--socket") && n + 1 < args.length)
+        socket = args[++n];
+      else
+        paths.add(args[n]);
+    }
+    if (cacheDirectory != null)
+      options.setCache(new CompilationCache(cacheDirectory, cacheSize));
+    if (options.isTableDriven() && (options.getTacFormat() != TacFormat.NONE || run || options.isOptimize() || daemon))
+      usage();
+    if (incremental && (!daemon || cacheDirectory != null))
+      usage();
+    if (daemon) {
+      // resolved only here: CompilerDaemon and the socket classes take tens of ms to load
+      if (socket == null)
+        socket = CompilerDaemon.defaultSocket();
+      System.err.println("Compiler daemon starting on " + socket);
+      CompilerDaemon compilerDaemon = new CompilerDaemon(socket, options, threads);
+      compilerDaemon.setIncremental(incremental);
+      compilerDaemon.serve();
+      return;
+    }
+    if (paths.isEmpty())
+      usage();
+
+    if (run && !batch && paths.size() == 1) {
+      options.setTacFormat(TacFormat.MEMORY);
+      Compilation compilation = new Compilation(paths.get(0), options).run(System.out);
+      if (optimizationReport && compilation.getOptimizer() != null)
+        compilation.getOptimizer().printReport(System.err);
+      if (compilation.getStats() != null)
+        compilation.getStats().print(System.err);
+      if (compilation.getErrorCount() > 0)
+        System.exit(1);
+      if (jvm)
+        runMainOnJvm(compilation.getProgram());
+      else
+        runMain(compilation.getProgram());
+    }
+    else if (!batch && paths.size() == 1 && !new File(paths.get(0)).isDirectory()) {
+      Compilation compilation = new Compilation(paths.get(0), options).run(System.out);
+      if (optimizationReport && compilation.getOptimizer() != null)
+        compilation.getOptimizer().printReport(System.err);
+      if (compilation.getStats() != null)
+        compilation.getStats().print(System.err);
+    }
+    else {
+      BatchCompiler compiler = new BatchCompiler(threads, options);
+      compiler.compile(BatchCompiler.collectSources(paths), System.out);
+      compiler.printReport(System.err);
+      if (compiler.getStats() != null)
+        compiler.getStats().print(System.err);
+      if (options.getCache() != null)
+        System.err.printf("Cache: %d hits, %d misses%n", options.getCache().getHitCount(), options.getCache().getMissCount());
+    }
+  }
+
+  private static void usage() {
+    System.err.println("Usage: MyMain [--mmap] [--packed-tokens] [--ll1] [--tac text|binary] [--run [--jvm]] [-O] [--opt-report] [--stats] [--trace events [--trace-file]] [--cache dir [--cache-size MB]] [-j threads] file|directory ...\n"
+                       + "       MyMain --daemon [--socket path] [--incremental] [--mmap] [--packed-tokens] [--cache dir [--cache-size MB]] [-j threads]");
+    System.exit(2);
+  }
+
+  /* The value of a numeric option; anything that is not a number of at least min prints the usage */
+  private static long number(String arg, long min) {
+    return number(arg, min, Integer.MAX_VALUE);
+  }
+
+  /* The value of a numeric option; anything that is not a number from min to max prints the usage */
+  private static long number(String arg, long min, long max) {
+    try {
+      long value = Long.parseLong(arg);
+      if (value >= min && value <= max)
+        return value;
+    }
+    catch (NumberFormatException e) {
+    }
+    System.err.println("Not a valid number: " + arg);
+    usage();
+    return min;
+  }
+
+  /* Runs main() of a compiled program and reports its result, the instructions executed and their rate */
+  private static void runMain(TacProgram program) {
+    TacVM vm = new TacVM(program);
+    long start = System.nanoTime();
+    Number result;
+    try {
+      result = vm.run("main");
+    }
+    catch (ArithmeticException | ArrayIndexOutOfBoundsException e) {
+      runtimeError(e);
+      return;
+    }
+    long nanos = System.nanoTime() - start;
+    System.out.println("main() = " + result);
+    System.err.printf("%d instructions (%d loaded) in %.1f ms, %.1f M instructions/s%n", vm.getExecutedCount(),
+                      vm.getInstructionCount(), nanos / 1e6, vm.getExecutedCount() * 1e3 / nanos);
+  }
+
+  /* Runs main() of a compiled program as bytecode and reports its result and the time taken to compile and run it */
+  private static void runMainOnJvm(TacProgram program) {
+    long start = System.nanoTime();
+    TacJvm jvm = new TacJvm(program);
+    long loaded = System.nanoTime();
+    Number result;
+    try {
+      result = jvm.run("main");
+    }
+    catch (ArithmeticException | ArrayIndexOutOfBoundsException e) {
+      runtimeError(e);
+      return;
+    }
+    long end = System.nanoTime();
+    System.out.println("main() = " + result);
+    System.err.printf("class of %d bytes defined in %.1f ms, run in %.1f ms%n", jvm.getClassSize(), (loaded - start) / 1e6, (end - loaded) / 1e6);
+  }
+
+  /* A division by zero or an index out of bounds in the program ends the run with one line, not a Java stack trace */
+  private static void runtimeError(RuntimeException e) {
+    if (e instanceof ArithmeticException)
+      System.err.println("Runtime error: integer division by zero");
+    else
+      System.err.println("Runtime error: array index out of bounds: " + e.getMessage());
+    System.exit(1);
   }
-}
\ No newline at end of file
+}
@@ -0,0 +1,165 @@
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.*;
+
+/*
+  A TacSink that optimizes the code on its way to another sink: it collects the quads of a method,
+  runs the passes over them when the method ends, and hands the result on. The class's field
+  declarations (the first unit, see TacSink) are passed on unchanged and tell the passes which
+  symbols are fields.
+
+  It records for every method how many quads each pass removed, see printReport().
+*/
+public class Optimizer implements TacSink {
+
+  private TacSink m_sink;
+  private TacSymbols m_symbols;
+  private List<TacPass> m_passes;
+  private QuadrupleList m_current;
+  private boolean m_globalsSeen;
+
+  // One row per method: the method's name, its quad count before the passes, then the quads each pass removed
+  private List<String> m_methodNames = new ArrayList<String>();
+  private List<int[]> m_removed = new ArrayList<int[]>();
+
+  /* The passes run by -O, in order */
+  public static List<TacPass> standardPasses() {
+    List<TacPass> passes = new ArrayList<TacPass>();
+    passes.add(new ConstantFolder());
+    passes.add(new ValueNumbering());
+    passes.add(new DeadCodeEliminator());
+    passes.add(new TempAllocator());
+    return passes;
+  }
+
+  public Optimizer(TacSink sink, SymbolTable symbolTable) {
+    this(sink, symbolTable, standardPasses());
+  }
+
+  /* sink may be null when only the report is wanted */
+  public Optimizer(TacSink sink, SymbolTable symbolTable, List<TacPass> passes) {
+    m_sink = sink;
+    m_symbols = new TacSymbols(symbolTable);
+    m_passes = passes;
+    m_current = new QuadrupleList(symbolTable);
+  }
+
+  public void quad(int code, int param1, int param2, int result) {
+    m_current.add(code, param1, param2, result);
+  }
+
+  public void endMethod() throws IOException {
+    if (!m_globalsSeen) {
+      m_globalsSeen = true;
+      m_symbols.declareGlobals(m_current);
+    }
+    else if (m_current.size() > 0)
+      optimize(m_current);
+    forward(m_current);
+    m_current = new QuadrupleList(m_symbols.getSymbolTable());
+  }
+
+  public void close() throws IOException {
+    if (m_current.size() > 0)
+      endMethod();
+    if (m_sink != null)
+      m_sink.close();
+  }
+
+  /* Runs the passes over one method */
+  public void optimize(QuadrupleList method) {
+    m_symbols.declareMethod(method);
+    int[] removed = new int[1 + m_passes.size()];
+    removed[0] = method.liveCount();
+    for (int k = 0; k < m_passes.size(); k++) {
+      int before = method.liveCount();
+      m_passes.get(k).run(method, m_symbols);
+      method.compact();
+      removed[k + 1] = before - method.liveCount();
+    }
+    int first = method.first();
+    m_methodNames.add(first >= 0 && TacSymbols.isMethodLabel(method, first) ? m_symbols.getLexeme(method.getResult(first)) : "?");
+    m_removed.add(removed);
+  }
+
+  private void forward(QuadrupleList quads) throws IOException {
+    if (m_sink == null)
+      return;
+    for (int n = quads.first(); n >= 0; n = quads.next(n))
+      m_sink.quad(quads.getCode(n), quads.getParam1(n), quads.getParam2(n), quads.getResult(n));
+    m_sink.endMethod();
+  }
+
+  /*
+    Removes the ASSIGNs to temps that no quad reads, and the VARs of the temps left without any quad
+    computing them. Passes that replace uses of a temp call this to drop what they made useless.
+  */
+  public static void removeUnusedTemps(QuadrupleList quads, TacSymbols symbols) {
+    Set<Integer> read = new HashSet<Integer>();
+    for (int n = quads.first(); n >= 0; n = quads.next(n)) {
+      TacCode code = quads.getTacCode(n);
+      if (code == TacCode.VAR || code == TacCode.FPARAM || code == TacCode.LABEL)
+        continue;
+      read.add(quads.getParam1(n));
+      read.add(quads.getParam2(n));
+      if (!TacSymbols.definesResult(code))
+        read.add(quads.getResult(n));
+    }
+    Set<Integer> kept = new HashSet<Integer>();
+    for (int n = quads.first(); n >= 0; n = quads.next(n)) {
+      int result = quads.getResult(n);
+      if (!symbols.isTemp(result) || read.contains(result))
+        continue;
+      TacCode code = quads.getTacCode(n);
+      if (code == TacCode.ASSIGN)
+        quads.remove(n);
+      else if (code != TacCode.VAR)
+        kept.add(result);
+    }
+    for (int n = quads.first(); n >= 0; n = quads.next(n)) {
+      int result = quads.getResult(n);
+      if (quads.getTacCode(n) == TacCode.VAR && symbols.isTemp(result) && !read.contains(result) && !kept.contains(result))
+        quads.remove(n);
+    }
+  }
+
+  public TacSink getSink() {
+    return m_sink;
+  }
+
+  /* Quads removed by all passes from all methods */
+  public int getRemovedCount() {
+    int count = 0;
+    for (int[] removed : m_removed)
+      for (int k = 1; k < removed.length; k++)
+        count += removed[k];
+    return count;
+  }
+
+  /* A table of the quads each pass removed from each method */
+  public void printReport(PrintStream out) {
+    StringBuilder header = new StringBuilder(String.format("%-24s %8s", "method", "quads"));
+    for (TacPass pass : m_passes)
+      header.append(String.format(" %10s", pass.getName()));
+    header.append(String.format(" %8s", "left"));
+    out.println(header);
+    int[] totals = new int[1 + m_passes.size()];
+    for (int m = 0; m < m_removed.size(); m++) {
+      printRow(out, m_methodNames.get(m), m_removed.get(m));
+      for (int k = 0; k < totals.length; k++)
+        totals[k] += m_removed.get(m)[k];
+    }
+    printRow(out, "total", totals);
+  }
+
+  private static void printRow(PrintStream out, String name, int[] removed) {
+    StringBuilder row = new StringBuilder(String.format("%-24s %8d", name, removed[0]));
+    int left = removed[0];
+    for (int k = 1; k < removed.length; k++) {
+      row.append(String.format(" %10d", removed[k]));
+      left -= removed[k];
+    }
+    row.append(String.format(" %8d", left));
+    out.println(row);
+  }
+}
@@ -1,57 +1,113 @@
 import java.io.*;
+import java.util.*;
 
 public class Parser {
 
-  private Lexer m_lexer;
-  private Token m_current;
-  private Token m_prev;
+  private TokenBuffer m_tokens;
+  private int m_current = -1;
+  private int m_prev = -1;
   private ErrorHandler m_errorHandler;
+  private SymbolTable m_symbolTable;
   private int tempCounter = 0;
   private int labelCounter = 0;
-//  private SymbolTable m_symbolTable = new SymbolTable();
-//
-//  public SymbolTable getSymbolTable(){
-//      return this.m_symbolTable;
-//  }
+  private CompilerStats m_stats;
+  private Tracer m_tracer;
+
+  private CodeGenerator m_codeGenerator;
+  private SymbolTableEntry m_zero;
+  private SymbolTableEntry m_one;
+  private SymbolTableEntry m_intType;
+  private SymbolTableEntry m_realType;
+  private SymbolTableEntry m_voidType;
+  // Where break and continue jump to, for the loops being parsed
+  private Stack<SymbolTableEntry> m_breakLabels = new Stack<SymbolTableEntry>();
+  private Stack<SymbolTableEntry> m_continueLabels = new Stack<SymbolTableEntry>();
+
+  private static final long FIRST_OF_TYPE = Grammar.first(NonT.TYPE);
+  private static final long FIRST_OF_METHOD_DECLARATION = Grammar.first(NonT.METHOD_DECLARATION);
+  private static final long FIRST_OF_PARAMETER_LIST = Grammar.first(NonT.PARAMETER_LIST);
+  private static final long FIRST_OF_STATEMENT = Grammar.first(NonT.STATEMENT);
+  private static final long FIRST_OF_EXPRESSION = Grammar.first(NonT.EXPRESSION);
+  private static final long FIRST_OF_SIGN = Grammar.first(NonT.SIGN);
+
+  public SymbolTable getSymbolTable(){
+      return this.m_symbolTable;
+  }
+
+  public int getErrorCount() {
+    return m_errorHandler.getErrorCount();
+  }
+
+  protected ErrorHandler getErrorHandler() {
+    return m_errorHandler;
+  }
 
   public int incTemp() {
     tempCounter++;
+    if (m_stats != null)
+      m_stats.count(CompilerStats.Counter.TEMPS);
     return tempCounter;
   }
 
   public int incLabel() {
       labelCounter++;
+      if (m_stats != null)
+        m_stats.count(CompilerStats.Counter.LABELS);
       return labelCounter;
   }
 
   public Parser(Lexer lexer, String sourceFile) {
-    CodeGenerator codegen = new CodeGenerator();
+    this(new TokenBuffer(lexer, false), sourceFile, System.out);
+  }
+
+  /*
+    Tokens are read through the given buffer (packed or not) and diagnostics are written to the given stream,
+    so each compilation of a batch can keep its own
+  */
+  public Parser(TokenBuffer tokens, String sourceFile, PrintStream diagnostics) {
+    this(tokens, sourceFile, diagnostics, new CodeGenerator());
+  }
+
+  /* The generated three-address code goes to the given CodeGenerator */
+  public Parser(TokenBuffer tokens, String sourceFile, PrintStream diagnostics, CodeGenerator codegen) {
       // initializing symbol table
-    SymbolTable.insert("0");
-    SymbolTable.insert("1");
-    m_errorHandler = new ErrorHandler(lexer, sourceFile);
-    m_lexer = lexer;
+    m_symbolTable = tokens.getLexer().getSymbolTable();
+    m_zero = m_symbolTable.insert("0");
+    m_one = m_symbolTable.insert("1");
+    m_intType = m_symbolTable.insert("int");
+    m_realType = m_symbolTable.insert("real");
+    m_voidType = m_symbolTable.insert("void");
+    m_codeGenerator = codegen;
+    m_codeGenerator.setSymbolTable(m_symbolTable);
+    m_errorHandler = new ErrorHandler(tokens, sourceFile, diagnostics);
+    m_tokens = tokens;
+    m_stats = tokens.getStats();
+    m_tracer = tokens.getTracer();
     readNextToken();    
   }
 
 
   protected SymbolTableEntry newTemp(){
-      // generates next temporary name (t1, t2, ...)
-      SymbolTableEntry newTemp = new SymbolTableEntry("t" + incTemp());
-      SymbolTable.insert(newTemp.toString());
-      CodeGenerator.generate(TacCode.VAR, null, null, newTemp);
+      // generates next temporary name ($t1, $t2, ...); '$' is no identifier character, so no variable has it
+      SymbolTableEntry newTemp = m_symbolTable.insert("$t" + incTemp());
+      m_codeGenerator.generate(TacCode.VAR, null, null, newTemp);
 
       return newTemp;
   }
 
-  public void newLabel(){
-      // lab1, lab2, ...
-      SymbolTableEntry newLabel = new SymbolTableEntry("lab" + incLabel());
-      SymbolTable.insert(newLabel.toString());
-
-      CodeGenerator.generate(TacCode.LABEL, null, null, newLabel);
+  public SymbolTableEntry newLabel(){
+      // $L1, $L2, ...; the LABEL quad is generated where the label is placed
+      return m_symbolTable.insert("$L" + incLabel());
     }
 
+  protected void placeLabel(SymbolTableEntry label) {
+      m_codeGenerator.generate(TacCode.LABEL, null, null, label);
+  }
+
+  protected CodeGenerator getCodeGenerator() {
+    return m_codeGenerator;
+  }
+
 
   /*
     Reads the next token.
@@ -63,38 +119,51 @@ public class Parser {
       // We simply use current tokens until the Error handler exits the recovery mode
       if (!m_errorHandler.inRecovery()) {
         m_prev = m_current;
-        m_current = m_lexer.yylex();
-        trace("++ Next token read: " + m_current.getTokenCode());
-        if (MyMain.TRACE)
-          if (m_prev != null && m_prev.getLineNum() != m_current.getLineNum())
-            System.out.println("Line " + m_current.getLineNum());
+        m_current = m_tokens.next();
+        m_tokens.release(m_prev);
+        if (m_tracer != null) {
+          m_tracer.record(Tracer.Kind.NEXT_TOKEN, m_tokens.getCode(m_current), m_current);
+          if (m_prev >= 0 && m_tokens.getLineNum(m_prev) != m_tokens.getLineNum(m_current))
+            m_tracer.record(Tracer.Kind.LINE, 0, m_tokens.getLineNum(m_current));
+        }
       }
-      else
-          trace("++ Next token skipped because of recovery: Still: " + m_current.getTokenCode());
+      else if (m_tracer != null)
+          m_tracer.record(Tracer.Kind.TOKEN_KEPT, m_tokens.getCode(m_current), m_current);
       // System.out.println(m_current.getTokenCode() + String.valueOf(m_current.getLineNum()) + ", col: " + String.valueOf(m_current.getColumnNum()));
     }
-    catch(IOException e) {
-      System.out.println("IOException reading next token");
-      System.exit(1);
+    catch (IOException e) {
+      throw new UncheckedIOException(e);
     }
   }
 
-  /* Returns the next token of the input, without actually reading it */
-  protected Token lookahead() {
+  /* Returns the index in the token buffer of the next token of the input, without actually reading it */
+  protected int lookahead() {
     return m_current;
   }
 
+  /* Returns the TokenCode ordinal of the lookahead token */
+  protected int lookaheadCode() {
+    return m_tokens.getCode(m_current);
+  }
+
+  /* Returns the symbol table entry of the lookahead token if it has the given tokencode, null otherwise */
+  protected SymbolTableEntry lookaheadEntry(TokenCode tokenCode) {
+    return lookaheadIs(tokenCode) ? m_tokens.getSymTabEntry(m_current) : null;
+  }
+
+  /* Returns the OpType of the lookahead token */
+  protected OpType lookaheadOpType() {
+    return m_tokens.getOpType(m_current);
+  }
+
   /* Returns true if the lookahead token has the given tokencode */
   protected boolean lookaheadIs(TokenCode tokenCode) {
-    return m_current.getTokenCode() == tokenCode;
+    return m_tokens.getTokenCode(m_current) == tokenCode;
   }
 
-  /* Returns true if the lookahed token is included in the given array of token codes */
-  protected boolean lookaheadIn(TokenCode[] tokenCodes) {
-    for(int n=0;n<tokenCodes.length;n++)
-      if (tokenCodes[n] == m_current.getTokenCode())
-        return true;
-    return false;
+  /* Returns true if the lookahed token is included in the given set of token codes (a bit mask, see Grammar) */
+  protected boolean lookaheadIn(long tokenCodes) {
+    return (tokenCodes >>> m_tokens.getCode(m_current) & 1) != 0;
   }
 
   /* Returns true if the lookahed token is in the FIRST of EXPRESSION.
@@ -102,9 +171,9 @@ public class Parser {
      (by checking the OpType of the token)
    */
   protected boolean lookaheadIsFirstOfExpression() {
-    if (!lookaheadIn(NonT.firstOf(NonT.EXPRESSION)))
+    if (!lookaheadIn(FIRST_OF_EXPRESSION))
       return false;
-    if (lookaheadIs(TokenCode.ADDOP) && lookahead().getOpType() != OpType.PLUS && lookahead().getOpType() != OpType.MINUS)
+    if (lookaheadIs(TokenCode.ADDOP) && m_tokens.getOpType(lookahead()) != OpType.PLUS && m_tokens.getOpType(lookahead()) != OpType.MINUS)
       return false;
     else
       return true;
@@ -114,7 +183,7 @@ public class Parser {
   Return true if the lookahed is the first of sign (actually if the lexeme for the token was '+' or '-')
   */
   protected boolean lookaheadIsFirstOfSign() {
-    return (lookaheadIs(TokenCode.ADDOP) && (lookahead().getOpType() == OpType.PLUS || lookahead().getOpType() == OpType.MINUS));
+    return (lookaheadIs(TokenCode.ADDOP) && (m_tokens.getOpType(lookahead()) == OpType.PLUS || m_tokens.getOpType(lookahead()) == OpType.MINUS));
   }
 
   /*
@@ -125,15 +194,18 @@ public class Parser {
   If the ErrorHandler is in the recovery state, it will suppress the error (not report it).
   */
   protected void match(TokenCode tokenCode) {
-    if (m_current.getTokenCode() != tokenCode)
+    if (m_tokens.getTokenCode(m_current) != tokenCode)
     {
-      Token[] tokens = m_errorHandler.tokenMismatch(tokenCode, m_current, m_prev);
+      int[] tokens = m_errorHandler.tokenMismatch(tokenCode, m_current, m_prev);
       m_current = tokens[0];
       m_prev = tokens[1];
-      trace("  failed match for " + tokenCode + ". current: " + m_current.getTokenCode() + ", prev: " + m_prev.getTokenCode());
+      if (m_tracer != null)
+        m_tracer.record(Tracer.Kind.MATCH_FAILED, tokenCode.ordinal(), m_tokens.getCode(m_current),
+                        m_tokens.getTraceCode(m_prev), m_current);
     }
     else {
-      trace("  Matched " + tokenCode);
+      if (m_tracer != null)
+        m_tracer.record(Tracer.Kind.MATCHED, tokenCode.ordinal(), m_current);
       readNextToken();
     }
   }
@@ -143,13 +215,15 @@ public class Parser {
   Behaviour is the same as match except that we have no specific token to match against.
   */
   protected void noMatch() {
-    Token[] tokens = m_errorHandler.noMatch(m_current, m_prev);
+    int[] tokens = m_errorHandler.noMatch(m_current, m_prev);
     m_current = tokens[0];
     m_prev = tokens[1];
   }
 
 
   // *** Start of nonTerminal functions ***
+  // Expression methods return the symbol table entry (variable, constant or temp) that holds the
+  // value they computed, or null after a syntax error.
   
   protected void program() {
     m_errorHandler.startNonT(NonT.PROGRAM);
@@ -157,58 +231,95 @@ public class Parser {
     match(TokenCode.IDENTIFIER);
     match(TokenCode.LBRACE);
     variableDeclarations();
+    // The fields are handed to the sink as a unit of their own, ahead of the methods
+    m_codeGenerator.endMethod();
     methodDeclarations();
     match(TokenCode.RBRACE);
     m_errorHandler.stopNonT();
   }
 
+  /*
+    The start of program() up to the methods, with the input ending where they would start: what
+    IncrementalCompiler compiles of the class besides its methods
+  */
+  public void classHeader() {
+    m_errorHandler.startNonT(NonT.PROGRAM);
+    match(TokenCode.CLASS);
+    match(TokenCode.IDENTIFIER);
+    match(TokenCode.LBRACE);
+    variableDeclarations();
+    m_codeGenerator.endMethod();
+    match(TokenCode.EOF);
+    m_errorHandler.stopNonT();
+  }
+
+  /* A single method declaration making up the whole input, for IncrementalCompiler */
+  public void singleMethod() {
+    m_errorHandler.startNonT(NonT.PROGRAM);
+    methodDeclaration();
+    match(TokenCode.EOF);
+    m_errorHandler.stopNonT();
+  }
+
   protected void variableDeclarations() {
     m_errorHandler.startNonT(NonT.VARIABLE_DECLARATIONS);
-    if (lookaheadIn(NonT.firstOf(NonT.TYPE))) {
-      type();
-      variableList();
+    if (lookaheadIn(FIRST_OF_TYPE)) {
+      SymbolTableEntry type = type();
+      variableList(type);
       match(TokenCode.SEMICOLON);
       variableDeclarations();
     }
     m_errorHandler.stopNonT();
   }
 
-  protected void type() {
+  protected SymbolTableEntry type() {
+    SymbolTableEntry type = null;
     m_errorHandler.startNonT(NonT.TYPE);
-    if (lookaheadIs(TokenCode.INT))
+    if (lookaheadIs(TokenCode.INT)) {
       match(TokenCode.INT);
-    else if (lookaheadIs(TokenCode.REAL))
+      type = m_intType;
+    }
+    else if (lookaheadIs(TokenCode.REAL)) {
       match(TokenCode.REAL);
+      type = m_realType;
+    }
     else // TODO: Add error context, i.e. type
       noMatch();
     m_errorHandler.stopNonT(); 
+    return type;
   }
 
-  protected void variableList() {
+  protected void variableList(SymbolTableEntry type) {
     m_errorHandler.startNonT(NonT.VARIABLE_LIST);
-    variable();
-    variableList2();
+    variable(type);
+    variableList2(type);
     m_errorHandler.stopNonT();
   }
 
-  protected void variableList2() {
+  protected void variableList2(SymbolTableEntry type) {
     m_errorHandler.startNonT(NonT.VARIABLE_LIST_2);
     if (lookaheadIs(TokenCode.COMMA)) {
       match(TokenCode.COMMA);
-      variable();
-      variableList2();
+      variable(type);
+      variableList2(type);
     }
     m_errorHandler.stopNonT();
   }
 
-  protected void variable() {
+  /* VAR size type name, where size is the array size (or unused) */
+  protected void variable(SymbolTableEntry type) {
     m_errorHandler.startNonT(NonT.VARIABLE);
+    SymbolTableEntry name = lookaheadEntry(TokenCode.IDENTIFIER);
+    SymbolTableEntry size = null;
     match(TokenCode.IDENTIFIER);
     if (lookaheadIs(TokenCode.LBRACKET)) {
       match(TokenCode.LBRACKET);
+      size = lookaheadEntry(TokenCode.NUMBER);
       match(TokenCode.NUMBER);
       match(TokenCode.RBRACKET);
     }
+    if (name != null)
+      m_codeGenerator.generate(TacCode.VAR, size, type, name);
     m_errorHandler.stopNonT();
   }
     
@@ -221,18 +332,26 @@ public class Parser {
 
   protected void moreMethodDeclarations() {
     m_errorHandler.startNonT(NonT.MORE_METHOD_DECLARATIONS);
-    if (lookaheadIn(NonT.firstOf(NonT.METHOD_DECLARATION))) {
+    if (lookaheadIn(FIRST_OF_METHOD_DECLARATION)) {
       methodDeclaration();
       moreMethodDeclarations();
     }
     m_errorHandler.stopNonT();
   }
 
+  /* LABEL - returnType name, the parameters and locals, the body, and a RETURN in case the body falls off the end */
   protected void methodDeclaration() {
     m_errorHandler.startNonT(NonT.METHOD_DECLARATION);
+    // temps and labels are local to the method, so every method names its own from $t1 and $L1: the
+    // symbol table holds as many as the largest method needs, and a method's code does not depend
+    // on the methods before it (see IncrementalCompiler)
+    tempCounter = 0;
+    labelCounter = 0;
     match(TokenCode.STATIC);
-    methodReturnType();
+    SymbolTableEntry returnType = methodReturnType();
+    SymbolTableEntry name = lookaheadEntry(TokenCode.IDENTIFIER);
     match(TokenCode.IDENTIFIER);
+    m_codeGenerator.generate(TacCode.LABEL, null, returnType, name);
     match(TokenCode.LPAREN);
     parameters();
     match(TokenCode.RPAREN);
@@ -240,30 +359,40 @@ public class Parser {
     variableDeclarations();
     statementList();
     match(TokenCode.RBRACE);
+    m_codeGenerator.generate(TacCode.RETURN, null, null, null);
+    m_codeGenerator.endMethod();
     m_errorHandler.stopNonT();
   }
 
-  protected void methodReturnType() {
+  protected SymbolTableEntry methodReturnType() {
+    SymbolTableEntry type;
     m_errorHandler.startNonT(NonT.METHOD_RETURN_TYPE);
-    if (lookaheadIs(TokenCode.VOID)) 
+    if (lookaheadIs(TokenCode.VOID)) {
       match(TokenCode.VOID);
+      type = m_voidType;
+    }
     else
-      type();
+      type = type();
     m_errorHandler.stopNonT();
+    return type;
   }
 
   protected void parameters() {
     m_errorHandler.startNonT(NonT.PARAMETERS);
-    if (lookaheadIn(NonT.firstOf(NonT.PARAMETER_LIST))) {
+    if (lookaheadIn(FIRST_OF_PARAMETER_LIST)) {
       parameterList();
     }
     m_errorHandler.stopNonT();
   }
 
+  /* FPARAM - type name for each parameter */
   protected void parameterList() {
     m_errorHandler.startNonT(NonT.PARAMETER_LIST);
-    type();
+    SymbolTableEntry type = type();
+    SymbolTableEntry name = lookaheadEntry(TokenCode.IDENTIFIER);
     match(TokenCode.IDENTIFIER);
+    if (name != null)
+      m_codeGenerator.generate(TacCode.FPARAM, null, type, name);
     parameterList2();
     m_errorHandler.stopNonT();
   }
@@ -272,8 +401,11 @@ public class Parser {
     m_errorHandler.startNonT(NonT.PARAMETER_LIST2);
     if (lookaheadIs(TokenCode.COMMA) && !m_errorHandler.inRecovery()) {
       match(TokenCode.COMMA);
-      type();
+      SymbolTableEntry type = type();
+      SymbolTableEntry name = lookaheadEntry(TokenCode.IDENTIFIER);
       match(TokenCode.IDENTIFIER);
+      if (name != null)
+        m_codeGenerator.generate(TacCode.FPARAM, null, type, name);
       parameterList2();
     }
     m_errorHandler.stopNonT();
@@ -281,7 +413,7 @@ public class Parser {
 
   protected void statementList() {
     m_errorHandler.startNonT(NonT.STATEMENT_LIST);
-    if (lookaheadIn(NonT.firstOf(NonT.STATEMENT))  && !m_errorHandler.inRecovery()) {
+    if (lookaheadIn(FIRST_OF_STATEMENT)  && !m_errorHandler.inRecovery()) {
       statement();
       statementList();
     }
@@ -290,92 +422,132 @@ public class Parser {
 
   protected void idStartingStatement() {
     m_errorHandler.startNonT(NonT.ID_STARTING_STATEMENT);
+    SymbolTableEntry name = lookaheadEntry(TokenCode.IDENTIFIER);
     match(TokenCode.IDENTIFIER);
-    restOfIdStartingStatement();
+    restOfIdStartingStatement(name);
     match(TokenCode.SEMICOLON);
     m_errorHandler.stopNonT();
   }
 
-  protected void restOfIdStartingStatement() {
+  protected void restOfIdStartingStatement(SymbolTableEntry name) {
     m_errorHandler.startNonT(NonT.REST_OF_ID_STARTING_STATEMENT);
     if (lookaheadIs(TokenCode.LPAREN)) {
       match(TokenCode.LPAREN);
-      expressionList();
+      List<SymbolTableEntry> arguments = expressionList();
       match(TokenCode.RPAREN);
+      call(name, arguments, null);
     }
     else if (lookaheadIs(TokenCode.INCDECOP)) {
+      OpType op = lookaheadOpType();
       match(TokenCode.INCDECOP);
+      m_codeGenerator.generate(op == OpType.INC ? TacCode.ADD : TacCode.SUB, name, m_one, name);
     }
     else if (lookaheadIs(TokenCode.ASSIGNOP)) {
       match(TokenCode.ASSIGNOP);
-      expression();
+      SymbolTableEntry value = expression();
+      m_codeGenerator.generate(TacCode.ASSIGN, value, null, name);
     }
     else if (lookaheadIs(TokenCode.LBRACKET)) {
       match(TokenCode.LBRACKET);
-      expression();
+      SymbolTableEntry index = expression();
       match(TokenCode.RBRACKET);
       match(TokenCode.ASSIGNOP);
-      expression();  
+      SymbolTableEntry value = expression();  
+      m_codeGenerator.generate(TacCode.ARRAY_STORE, value, index, name);
     }
     else // TODO: Add error context, i.e. idStartingStatement
       noMatch();
     m_errorHandler.stopNonT();
   }
 
+  /*
+    if:   EQ cond 0 else, then-block, GOTO end, LABEL else, else-block, LABEL end
+    for:  init, LABEL test, EQ cond 0 end, body, LABEL next, increment, GOTO test, LABEL end
+  */
   protected void statement() {
     boolean noMatch = false;
     m_errorHandler.startNonT(NonT.STATEMENT);
     if (lookaheadIs(TokenCode.IDENTIFIER)) 
     {
-      trace("idStartingStmt");
+      traceStatement();
       idStartingStatement();
     }
     else if (lookaheadIs(TokenCode.IF)) {
-      trace("if");
+      traceStatement();
       match(TokenCode.IF);
       match(TokenCode.LPAREN);
-      expression();
+      SymbolTableEntry condition = expression();
       match(TokenCode.RPAREN);
+      SymbolTableEntry elseLabel = newLabel();
+      SymbolTableEntry endLabel = newLabel();
+      m_codeGenerator.generate(TacCode.EQ, condition, m_zero, elseLabel);
       statementBlock();
+      m_codeGenerator.generate(TacCode.GOTO, null, null, endLabel);
+      placeLabel(elseLabel);
       optionalElse();
+      placeLabel(endLabel);
     }
     else if (lookaheadIs(TokenCode.FOR)) {
-      trace("for");
+      traceStatement();
       match(TokenCode.FOR);
       match(TokenCode.LPAREN);
-      variableLoc();
+      SymbolTableEntry[] variable = variableLoc();
       match(TokenCode.ASSIGNOP);
-      expression();
+      store(variable, expression());
       match(TokenCode.SEMICOLON);
-      expression();
+      SymbolTableEntry testLabel = newLabel();
+      SymbolTableEntry nextLabel = newLabel();
+      SymbolTableEntry endLabel = newLabel();
+      placeLabel(testLabel);
+      SymbolTableEntry condition = expression();
+      m_codeGenerator.generate(TacCode.EQ, condition, m_zero, endLabel);
       match(TokenCode.SEMICOLON);
-      variableLoc();
+      // The increment is parsed now but runs after the body
+      m_codeGenerator.defer();
+      SymbolTableEntry[] counter = variableLoc();
+      OpType op = lookaheadOpType();
       match(TokenCode.INCDECOP);  
+      SymbolTableEntry value = load(counter);
+      store(counter, arithmetic(op == OpType.INC ? TacCode.ADD : TacCode.SUB, value, m_one));
+      QuadrupleList increment = m_codeGenerator.resume();
       match(TokenCode.RPAREN);
+      m_breakLabels.push(endLabel);
+      m_continueLabels.push(nextLabel);
       statementBlock();
+      m_breakLabels.pop();
+      m_continueLabels.pop();
+      placeLabel(nextLabel);
+      m_codeGenerator.generate(increment);
+      m_codeGenerator.generate(TacCode.GOTO, null, null, testLabel);
+      placeLabel(endLabel);
     }
     else if (lookaheadIs(TokenCode.RETURN)) {
-      trace("return");
+      traceStatement();
       match(TokenCode.RETURN);
-      optionalExpression();
+      SymbolTableEntry value = optionalExpression();
       match(TokenCode.SEMICOLON);
+      m_codeGenerator.generate(TacCode.RETURN, value, null, null);
     }
     else if (lookaheadIs(TokenCode.BREAK)) {
-      trace("break");
+      traceStatement();
       match(TokenCode.BREAK);
       match(TokenCode.SEMICOLON);
+      if (!m_breakLabels.empty())
+        m_codeGenerator.generate(TacCode.GOTO, null, null, m_breakLabels.peek());
     }
     else if (lookaheadIs(TokenCode.CONTINUE)) {
-      trace("continue");
+      traceStatement();
       match(TokenCode.CONTINUE);
       match(TokenCode.SEMICOLON);
+      if (!m_continueLabels.empty())
+        m_codeGenerator.generate(TacCode.GOTO, null, null, m_continueLabels.peek());
     }
     else if (lookaheadIs(TokenCode.RBRACE)) {
-      trace("block");
+      traceStatement();
       statementBlock();
     }
     else {// TODO: Add error context, i.e. statement
-      trace("noMatch");
+      traceStatement();
       noMatch = true;
       m_errorHandler.stopNonT();
       noMatch();
@@ -384,12 +556,14 @@ public class Parser {
       m_errorHandler.stopNonT();
   }
 
-  protected void optionalExpression() {
+  protected SymbolTableEntry optionalExpression() {
+    SymbolTableEntry value = null;
     m_errorHandler.startNonT(NonT.OPTIONAL_EXPRESSION);
     if (lookaheadIsFirstOfExpression()) {
-      expression();
+      value = expression();
     }
     m_errorHandler.stopNonT();
+    return value;
   }
 
   protected void statementBlock() {
@@ -409,145 +583,268 @@ public class Parser {
     m_errorHandler.stopNonT();
   }
 
-  protected void expressionList() {
+  /* The arguments are all evaluated before the call passes them, so calls inside arguments cannot interleave */
+  protected List<SymbolTableEntry> expressionList() {
+    List<SymbolTableEntry> arguments = new ArrayList<SymbolTableEntry>();
     m_errorHandler.startNonT(NonT.EXPRESSION_LIST);
     if (lookaheadIsFirstOfExpression()) {
-      expression();
-      moreExpressions();
+      arguments.add(expression());
+      moreExpressions(arguments);
     }
     m_errorHandler.stopNonT();
+    return arguments;
   }
 
-  protected void moreExpressions() {
+  protected void moreExpressions(List<SymbolTableEntry> arguments) {
     m_errorHandler.startNonT(NonT.MORE_EXPRESSIONS);
     if (lookaheadIs(TokenCode.COMMA) && !m_errorHandler.inRecovery()) {
       match(TokenCode.COMMA);
-      expression();
-      moreExpressions();
+      arguments.add(expression());
+      moreExpressions(arguments);
     }
     m_errorHandler.stopNonT();
   }
 
-  protected void expression() {
+  protected SymbolTableEntry expression() {
     m_errorHandler.startNonT(NonT.EXPRESSION);
-    simpleExpression();
-    expression2();
+    SymbolTableEntry value = simpleExpression();
+    value = expression2(value);
     m_errorHandler.stopNonT();
+    return value;
   }
 
-  protected void expression2() {
+  /* A comparison yields 1 or 0: rel left right true, ASSIGN 0, GOTO end, LABEL true, ASSIGN 1, LABEL end */
+  protected SymbolTableEntry expression2(SymbolTableEntry left) {
+    SymbolTableEntry value = left;
     m_errorHandler.startNonT(NonT.EXPRESSION2);
     if (lookaheadIs(TokenCode.RELOP)) {
+      OpType op = lookaheadOpType();
       match(TokenCode.RELOP);
-      simpleExpression();
+      SymbolTableEntry right = simpleExpression();
+      value = newTemp();
+      SymbolTableEntry trueLabel = newLabel();
+      SymbolTableEntry endLabel = newLabel();
+      m_codeGenerator.generate(relationalCode(op), left, right, trueLabel);
+      m_codeGenerator.generate(TacCode.ASSIGN, m_zero, null, value);
+      m_codeGenerator.generate(TacCode.GOTO, null, null, endLabel);
+      placeLabel(trueLabel);
+      m_codeGenerator.generate(TacCode.ASSIGN, m_one, null, value);
+      placeLabel(endLabel);
     }
     m_errorHandler.stopNonT();
+    return value;
   }
 
-  protected void simpleExpression() {
+  protected SymbolTableEntry simpleExpression() {
+    boolean negate = false;
     m_errorHandler.startNonT(NonT.SIMPLE_EXPRESSION);
-    if (lookaheadIn(NonT.firstOf(NonT.SIGN)))
-      sign();
-    term();
-    simpleExpression2();
+    if (lookaheadIn(FIRST_OF_SIGN))
+      negate = sign();
+    SymbolTableEntry value = term();
+    if (negate) {
+      SymbolTableEntry negated = newTemp();
+      m_codeGenerator.generate(TacCode.UMINUS, value, null, negated);
+      value = negated;
+    }
+    value = simpleExpression2(value);
     m_errorHandler.stopNonT();
+    return value;
   }
 
-  protected void simpleExpression2() {
+  protected SymbolTableEntry simpleExpression2(SymbolTableEntry left) {
+    SymbolTableEntry value = left;
     m_errorHandler.startNonT(NonT.SIMPLE_EXPRESSION2);
     if (lookaheadIs(TokenCode.ADDOP)) {
+      OpType op = lookaheadOpType();
       match(TokenCode.ADDOP);
-      term();
+      SymbolTableEntry right = term();
+      value = arithmetic(op == OpType.PLUS ? TacCode.ADD : op == OpType.MINUS ? TacCode.SUB : TacCode.OR, left, right);
     }
     m_errorHandler.stopNonT();
+    return value;
   }
   
-  protected void term() {
+  protected SymbolTableEntry term() {
     m_errorHandler.startNonT(NonT.TERM);
-    factor();
-    term2();
+    SymbolTableEntry value = factor();
+    value = term2(value);
     m_errorHandler.stopNonT();
+    return value;
   }
 
-  protected void term2() {
+  protected SymbolTableEntry term2(SymbolTableEntry left) {
+    SymbolTableEntry value = left;
     m_errorHandler.startNonT(NonT.TERM2);
     if (lookaheadIs(TokenCode.MULOP)) {
+      OpType op = lookaheadOpType();
       match(TokenCode.MULOP);
-      factor();
+      SymbolTableEntry right = factor();
+      value = arithmetic(multiplicativeCode(op), left, right);
     }
     m_errorHandler.stopNonT();
+    return value;
   }
 
-  protected void idStartingFactor() {
+  protected SymbolTableEntry idStartingFactor() {
     m_errorHandler.startNonT(NonT.ID_STARTING_FACTOR);
+    SymbolTableEntry name = lookaheadEntry(TokenCode.IDENTIFIER);
     match(TokenCode.IDENTIFIER);
-    restOfIdStartingFactor();
+    SymbolTableEntry value = restOfIdStartingFactor(name);
     m_errorHandler.stopNonT();
+    return value;
   }
 
-  protected void restOfIdStartingFactor() {
+  protected SymbolTableEntry restOfIdStartingFactor(SymbolTableEntry name) {
+    SymbolTableEntry value = name;
     m_errorHandler.startNonT(NonT.REST_OF_ID_STARTING_FACTOR);
     if (lookaheadIs(TokenCode.LPAREN)) {
       match(TokenCode.LPAREN);
-      expressionList();
+      List<SymbolTableEntry> arguments = expressionList();
       match(TokenCode.RPAREN);
+      value = newTemp();
+      call(name, arguments, value);
     }
     else if (lookaheadIs(TokenCode.LBRACKET)) {
       match(TokenCode.LBRACKET);
-      expression();
+      SymbolTableEntry index = expression();
       match(TokenCode.RBRACKET);  
+      value = newTemp();
+      m_codeGenerator.generate(TacCode.ARRAY_LOAD, name, index, value);
     }
     m_errorHandler.stopNonT();
+    return value;
   }
 
-  protected void factor() {
+  protected SymbolTableEntry factor() {
+    SymbolTableEntry value = null;
     m_errorHandler.startNonT(NonT.FACTOR);
     if (lookaheadIs(TokenCode.IDENTIFIER))
-      idStartingFactor();
-    else if (lookaheadIs(TokenCode.NUMBER))
+      value = idStartingFactor();
+    else if (lookaheadIs(TokenCode.NUMBER)) {
+      value = lookaheadEntry(TokenCode.NUMBER);
       match(TokenCode.NUMBER);
+    }
     else if (lookaheadIs(TokenCode.LPAREN)) {
       match(TokenCode.LPAREN);
-      expression();
+      value = expression();
       match(TokenCode.RPAREN);
     }
     else if (lookaheadIs(TokenCode.NOT)) {
       match(TokenCode.NOT);
-      factor();
+      SymbolTableEntry operand = factor();
+      value = newTemp();
+      m_codeGenerator.generate(TacCode.NOT, operand, null, value);
     }
     else // TODO: Add error context, i.e. factor
       noMatch();
     m_errorHandler.stopNonT();
+    return value;
   }
 
-  protected void variableLoc() {
+  /* Returns { name, index }, index null for a plain variable */
+  protected SymbolTableEntry[] variableLoc() {
     m_errorHandler.startNonT(NonT.VARIABLE_LOC);
+    SymbolTableEntry name = lookaheadEntry(TokenCode.IDENTIFIER);
     match(TokenCode.IDENTIFIER);
-    variableLocRest();
+    SymbolTableEntry index = variableLocRest();
     m_errorHandler.stopNonT();
+    return new SymbolTableEntry[] { name, index };
   }
 
-  protected void variableLocRest() {
+  protected SymbolTableEntry variableLocRest() {
+    SymbolTableEntry index = null;
     m_errorHandler.startNonT(NonT.VARIABLE_LOC_REST);
     if (lookaheadIs(TokenCode.LBRACKET)) {
       match(TokenCode.LBRACKET);
-      expression();
+      index = expression();
       match(TokenCode.RBRACKET);
     }
     m_errorHandler.stopNonT();
+    return index;
   }
 
-  protected void sign() {
+  /* Returns true for '-' */
+  protected boolean sign() {
+    boolean minus = false;
     m_errorHandler.startNonT(NonT.SIGN);
-    if (lookaheadIsFirstOfSign()) 
+    if (lookaheadIsFirstOfSign()) {
+      minus = lookaheadOpType() == OpType.MINUS;
       match(TokenCode.ADDOP);  
+    }
     else // TODO: Add error context, i.e. sign
       noMatch();
     m_errorHandler.stopNonT();
+    return minus;
+  }
+
+  // *** Code generation helpers ***
+
+  /* APARAM for each argument, then CALL name - result (result unused for a call statement) */
+  protected void call(SymbolTableEntry name, List<SymbolTableEntry> arguments, SymbolTableEntry result) {
+    for (SymbolTableEntry argument : arguments)
+      m_codeGenerator.generate(TacCode.APARAM, argument, null, null);
+    m_codeGenerator.generate(TacCode.CALL, name, null, result);
+  }
+
+  protected SymbolTableEntry arithmetic(TacCode tacCode, SymbolTableEntry left, SymbolTableEntry right) {
+    SymbolTableEntry result = newTemp();
+    m_codeGenerator.generate(tacCode, left, right, result);
+    return result;
+  }
+
+  /* The value at a location from variableLoc() */
+  protected SymbolTableEntry load(SymbolTableEntry[] location) {
+    if (location[1] == null)
+      return location[0];
+    SymbolTableEntry value = newTemp();
+    m_codeGenerator.generate(TacCode.ARRAY_LOAD, location[0], location[1], value);
+    return value;
+  }
+
+  protected void store(SymbolTableEntry[] location, SymbolTableEntry value) {
+    if (location[1] == null)
+      m_codeGenerator.generate(TacCode.ASSIGN, value, null, location[0]);
+    else
+      m_codeGenerator.generate(TacCode.ARRAY_STORE, value, location[1], location[0]);
+  }
+
+  protected static TacCode relationalCode(OpType op) {
+    switch (op) {
+      case LT:
+        return TacCode.LT;
+      case LTE:
+        return TacCode.LE;
+      case GT:
+        return TacCode.GT;
+      case GTE:
+        return TacCode.GE;
+      case NOT_EQUAL:
+        return TacCode.NE;
+      default:
+        return TacCode.EQ;
+    }
+  }
+
+  protected static TacCode multiplicativeCode(OpType op) {
+    switch (op) {
+      case DIV:
+        return TacCode.DIVIDE;
+      case MOD:
+        return TacCode.MOD;
+      case AND:
+        return TacCode.AND;
+      default:
+        return TacCode.MULT;
+    }
+  }
+
+  /* Traces the statement alternative taken, which the lookahead tells */
+  protected void traceStatement() {
+    if (m_tracer != null)
+      m_tracer.record(Tracer.Kind.STATEMENT, m_tokens.getCode(m_current), m_current);
   }
 
-  protected void trace(String msg) {
-    if (MyMain.TRACE)
-      System.out.println(msg);
+  protected Tracer getTracer() {
+    return m_tracer;
   }
 }
\ No newline at end of file
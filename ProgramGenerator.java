@@ -0,0 +1,627 @@
+import java.io.*;
+
+/*
+  Generates Decaf programs of any size for benchmarks and stress tests: one class with fields and
+  static methods, following the productions of Parser (and Grammar): int and real scalars and arrays,
+  nested if/else and for blocks with break and continue, calls, and expressions with every operator,
+  parentheses, signs and '!'.
+
+  The output is a function of the settings alone: every choice comes from a SplitMix64 generator
+  seeded with the seed, and nothing depends on the platform, the locale or the JVM, so the same
+  seed and settings give the same bytes. The program is written as it is generated, through a small
+  byte buffer, so files of many gigabytes take no more memory than small ones.
+
+  Settings:
+    size         bytes to write, at least; the class is closed after the method that reaches it
+    depth        how deeply if/for blocks nest, and expressions in parentheses, calls and indexes
+    identifiers  the number of distinct variable names (fields, parameters, locals); every name has
+                 one type throughout, int or real, scalar or array. Methods are named m0, m1, ...
+    errorRate    the fraction of statements written with a syntax error in them instead (an operand,
+                 a ';', a ')' or a ']' missing, or one operand too many)
+    statements   the number of statements at the top level of each method, 2 to 7 if 0; with size 0
+                 the program has a single method, which grows with it
+
+  Usage: ProgramGenerator [--seed n] [--size n[K|M|G]] [--depth n] [--identifiers n] [--error-rate r] [--statements n] [file]
+  The program goes to the file, or to stdout; what was written is summed up on stderr. The recursive
+  parser needs a large stack (-Xss) for programs with many methods or statements.
+*/
+public class ProgramGenerator {
+
+  private static final String[] PREFIXES = { "count", "index", "sum", "value", "total", "x", "scale", "limit" };
+  private static final String[] RELOPS = { "==", "!=", "<", ">", "<=", ">=" };
+  private static final String[] ADDOPS = { "+", "-", "||" };
+  private static final String[] MULOPS = { "*", "/", "%", "&&" };
+  private static final int FIELDS = 8;
+  private static final int MAX_LOCALS = 6;
+  private static final int MAX_PARAMETERS = 3;
+  private static final int CALL_WINDOW = 32;
+  private static final int BUFFER_SIZE = 1 << 16;
+
+  private long m_seed;
+  private long m_size = 1 << 20;
+  private int m_depth = 3;
+  private int m_identifiers = 64;
+  private double m_errorRate;
+  private int m_statements;
+
+  private long m_state;
+  private OutputStream m_out;
+  private byte[] m_buffer = new byte[BUFFER_SIZE];
+  private int m_used;
+  private long m_written;
+
+  private int[] m_scalars;
+  private int m_scalarCount;
+  private int[] m_scope = new int[FIELDS + MAX_PARAMETERS + MAX_LOCALS];
+  private int m_scopeSize;
+  private int m_method;
+  private boolean m_inLoop;
+
+  private long m_methodCount;
+  private long m_statementCount;
+  private long m_errorCount;
+
+  public ProgramGenerator(long seed) {
+    m_seed = seed;
+  }
+
+  public ProgramGenerator setSize(long size) {
+    m_size = size;
+    return this;
+  }
+
+  public ProgramGenerator setDepth(int depth) {
+    m_depth = Math.max(0, depth);
+    return this;
+  }
+
+  public ProgramGenerator setIdentifiers(int identifiers) {
+    m_identifiers = Math.max(1, identifiers);
+    return this;
+  }
+
+  public ProgramGenerator setErrorRate(double errorRate) {
+    m_errorRate = errorRate;
+    return this;
+  }
+
+  public ProgramGenerator setStatements(int statements) {
+    m_statements = Math.max(0, statements);
+    return this;
+  }
+
+  public long getWritten() {
+    return m_written;
+  }
+
+  public long getMethodCount() {
+    return m_methodCount;
+  }
+
+  public long getStatementCount() {
+    return m_statementCount;
+  }
+
+  /* Statements written with a syntax error */
+  public long getErrorCount() {
+    return m_errorCount;
+  }
+
+  /* Writes one program to the stream (which is flushed, not closed); can be called again for the same program */
+  public ProgramGenerator generate(OutputStream out) throws IOException {
+    m_out = out;
+    m_state = m_seed;
+    m_used = 0;
+    m_written = 0;
+    m_methodCount = 0;
+    m_statementCount = 0;
+    m_errorCount = 0;
+    m_scalars = new int[m_identifiers];
+    m_scalarCount = 0;
+    for (int id = 0; id < m_identifiers; id++)
+      if (!isArray(id))
+        m_scalars[m_scalarCount++] = id;
+
+    put("class Program").putNumber(m_seed & Long.MAX_VALUE).put(" {\n");
+    m_scopeSize = 0;
+    for (int id = 0; id < Math.min(FIELDS, m_identifiers); id++)
+      m_scope[m_scopeSize++] = id;
+    declarations(m_scope, m_scopeSize, 1, 100);
+    for (m_method = 0; m_written + m_used < m_size || m_method == 0; m_method++)
+      method();
+    put("}\n");
+    flush();
+    m_out.flush();
+    return this;
+  }
+
+  /* Writes the program to a file */
+  public ProgramGenerator generate(String path) throws IOException {
+    OutputStream out = new FileOutputStream(path);
+    try {
+      return generate(out);
+    }
+    finally {
+      out.close();
+    }
+  }
+
+  // *** The productions ***
+
+  /* type name, name[size], ...; one declaration for the int and one for the real variables */
+  private void declarations(int[] ids, int count, int level, int arraySize) throws IOException {
+    for (int real = 0; real < 2; real++) {
+      boolean first = true;
+      for (int n = 0; n < count; n++) {
+        if (isReal(ids[n]) != (real == 1))
+          continue;
+        if (first)
+          indent(level).put(real == 1 ? "real " : "int ");
+        else
+          put(", ");
+        first = false;
+        name(ids[n]);
+        if (isArray(ids[n]))
+          put('[').putNumber(arraySize).put(']');
+      }
+      if (!first)
+        put(";\n");
+    }
+  }
+
+  private void method() throws IOException {
+    int fields = Math.min(FIELDS, m_identifiers);
+    m_scopeSize = fields;
+    int parameters = parameterCount(m_method);
+    put("  static ").put(returnType(m_method)).put(" m").putNumber(m_method).put('(');
+    for (int n = 0; n < parameters; n++) {
+      int id = m_scalars[pickNew(m_scalars, m_scalarCount, fields)];
+      m_scope[m_scopeSize++] = id;
+      put(n > 0 ? ", " : "").put(isReal(id) ? "real " : "int ");
+      name(id);
+    }
+    put(") {\n");
+    int localsStart = m_scopeSize;
+    int locals = below(Math.min(MAX_LOCALS, m_identifiers) + 1);
+    for (int n = 0; n < locals; n++) {
+      int id = pickNew(null, m_identifiers, fields);
+      if (id >= 0)
+        m_scope[m_scopeSize++] = id;
+    }
+    int[] declared = new int[m_scopeSize - localsStart];
+    System.arraycopy(m_scope, localsStart, declared, 0, declared.length);
+    declarations(declared, declared.length, 2, 16);
+
+    m_inLoop = false;
+    int statements = m_statements > 0 ? m_statements : 2 + below(6);
+    for (int n = 0; n < statements; n++)
+      statement(2);
+    if (!returnType(m_method).equals("void")) {
+      indent(2).put("return ");
+      expression(0);
+      put(";\n");
+      m_statementCount++;
+    }
+    put("  }\n");
+    m_methodCount++;
+  }
+
+  private void statement(int level) throws IOException {
+    m_statementCount++;
+    if (m_errorRate > 0 && chance(m_errorRate)) {
+      faultyStatement(level);
+      return;
+    }
+    int nesting = level - 2;
+    int kind = below(nesting < m_depth ? 10 : 7);
+    switch (kind) {
+      case 0: case 1: case 2:
+        assignment(level);
+        break;
+      case 3:
+        indent(level).name(anyScalar()).put(chance(0.5) ? "++;\n" : "--;\n");
+        break;
+      case 4:
+        indent(level);
+        call(0);
+        put(";\n");
+        break;
+      case 5:
+        if (m_inLoop && chance(0.5))
+          indent(level).put(chance(0.5) ? "break;\n" : "continue;\n");
+        else
+          assignment(level);
+        break;
+      case 6:
+        if (!returnType(m_method).equals("void") && chance(0.2)) {
+          indent(level).put("return ");
+          expression(0);
+          put(";\n");
+        }
+        else
+          assignment(level);
+        break;
+      case 7: case 8:
+        indent(level).put("if (");
+        condition(0);
+        put(") ");
+        block(level);
+        if (chance(0.4)) {
+          put(" else ");
+          block(level);
+        }
+        put('\n');
+        break;
+      default:
+        int counter = anyIntScalar();
+        if (counter < 0) {
+          assignment(level);
+          break;
+        }
+        indent(level).put("for (").name(counter).put(" = ");
+        expression(0);
+        put("; ").name(counter).put(' ').put(RELOPS[2 + below(4)]).put(' ');
+        simpleExpression(0);
+        put("; ").name(counter).put(chance(0.8) ? "++) " : "--) ");
+        boolean inLoop = m_inLoop;
+        m_inLoop = true;
+        block(level);
+        m_inLoop = inLoop;
+        put('\n');
+        break;
+    }
+  }
+
+  /* { statements }, without the newline after it */
+  private void block(int level) throws IOException {
+    put("{\n");
+    int statements = 1 + below(4);
+    for (int n = 0; n < statements; n++)
+      statement(level + 1);
+    indent(level).put('}');
+  }
+
+  private void assignment(int level) throws IOException {
+    int id = anyName();
+    indent(level).name(id);
+    if (isArray(id)) {
+      put('[');
+      expression(1);
+      put(']');
+    }
+    put(" = ");
+    expression(0);
+    put(";\n");
+  }
+
+  /* An assignment with one of the errors ErrorHandler recovers from in the statement itself */
+  private void faultyStatement(int level) throws IOException {
+    m_errorCount++;
+    int id = anyScalar();
+    indent(level).name(id).put(" = ");
+    switch (below(5)) {
+      case 0:
+        factor(1);
+        put(' ').put(ADDOPS[below(ADDOPS.length)]).put(" ;\n");
+        break;
+      case 1:
+        simpleExpression(1);
+        put('\n');
+        break;
+      case 2:
+        put('(');
+        simpleExpression(1);
+        put(";\n");
+        break;
+      case 3:
+        number();
+        put(' ');
+        number();
+        put(";\n");
+        break;
+      default:
+        int array = anyArray();
+        if (array < 0) {
+          put('(');
+          simpleExpression(1);
+          put(";\n");
+          break;
+        }
+        name(array).put('[');
+        simpleExpression(1);
+        put(";\n");
+        break;
+    }
+  }
+
+  /* An expression with a comparison, mostly */
+  private void condition(int level) throws IOException {
+    simpleExpression(level);
+    if (chance(0.85)) {
+      put(' ').put(RELOPS[below(RELOPS.length)]).put(' ');
+      simpleExpression(level);
+    }
+  }
+
+  private void expression(int level) throws IOException {
+    simpleExpression(level);
+    if (chance(0.1)) {
+      put(' ').put(RELOPS[below(RELOPS.length)]).put(' ');
+      simpleExpression(level);
+    }
+  }
+
+  /* [sign] term [addop term] */
+  private void simpleExpression(int level) throws IOException {
+    if (chance(0.05))
+      put(chance(0.5) ? "-" : "+");
+    term(level);
+    if (chance(0.4)) {
+      put(' ').put(ADDOPS[below(ADDOPS.length)]).put(' ');
+      term(level);
+    }
+  }
+
+  private void term(int level) throws IOException {
+    factor(level);
+    if (chance(0.3)) {
+      put(' ').put(MULOPS[below(MULOPS.length)]).put(' ');
+      factor(level);
+    }
+  }
+
+  /* Deeper levels are ever less likely, and only names and numbers below the depth */
+  private void factor(int level) throws IOException {
+    boolean nest = level < m_depth && chance(0.5 / (level + 1));
+    int kind = nest ? below(4) : 4 + below(3);
+    switch (kind) {
+      case 0:
+        put('(');
+        expression(level + 1);
+        put(')');
+        break;
+      case 1:
+        int array = anyArray();
+        if (array < 0) {
+          put('(');
+          expression(level + 1);
+          put(')');
+          break;
+        }
+        name(array).put('[');
+        expression(level + 1);
+        put(']');
+        break;
+      case 2:
+        call(level + 1);
+        break;
+      case 3:
+        put('!');
+        factor(level + 1);
+        break;
+      case 4: case 5:
+        name(anyScalar());
+        break;
+      default:
+        number();
+        break;
+    }
+  }
+
+  /* mK(arguments), K a method declared before this one (or this one) */
+  private void call(int level) throws IOException {
+    int callee = m_method - below(Math.min(m_method, CALL_WINDOW) + 1);
+    put('m').putNumber(callee).put('(');
+    int arguments = parameterCount(callee);
+    for (int n = 0; n < arguments; n++) {
+      if (n > 0)
+        put(", ");
+      if (level < m_depth)
+        expression(level);
+      else
+        factor(level);
+    }
+    put(')');
+  }
+
+  /* An int like 42 or a real like 3.25 or 1.5E-2 */
+  private void number() throws IOException {
+    int kind = below(4);
+    if (kind < 2)
+      putNumber(below(kind == 0 ? 10 : 1000));
+    else {
+      putNumber(below(100)).put('.').putNumber(below(100));
+      if (kind == 3)
+        put('E').put(chance(0.5) ? "-" : "").putNumber(1 + below(9));
+    }
+  }
+
+  // *** Names and their types ***
+
+  private ProgramGenerator name(int id) throws IOException {
+    return put(PREFIXES[id % PREFIXES.length]).putNumber(id / PREFIXES.length);
+  }
+
+  /* Every fourth name is an array, every other one real: the same for fields, parameters and locals */
+  private static boolean isArray(int id) {
+    return id % 4 == 3;
+  }
+
+  private static boolean isReal(int id) {
+    return id % 2 == 1;
+  }
+
+  /* The return type and number of parameters of method k, so a call can be written without the method's declaration at hand */
+  private String returnType(int method) {
+    int kind = (int) (mix(m_seed ^ 0x5DEECE66DL * (method + 1)) >>> 62);
+    return kind == 0 ? "void" : kind == 1 ? "real" : "int";
+  }
+
+  private int parameterCount(int method) {
+    int limit = Math.min(MAX_PARAMETERS, m_scalarCount);
+    return (int) ((mix(m_seed + 0x2545F4914F6CDD1DL * (method + 1)) >>> 33) % (limit + 1));
+  }
+
+  /* An index into ids[0 .. count) (or into 0 .. count with no ids) not in the scope after the fields, -1 if there is none close by */
+  private int pickNew(int[] ids, int count, int fields) {
+    for (int attempt = 0; attempt < 8; attempt++) {
+      int index = below(count);
+      int id = ids != null ? ids[index] : index;
+      boolean taken = false;
+      for (int n = fields; n < m_scopeSize && !taken; n++)
+        taken = m_scope[n] == id;
+      if (!taken)
+        return index;
+    }
+    return ids != null ? 0 : -1;
+  }
+
+  private int anyName() {
+    return m_scope[below(m_scopeSize)];
+  }
+
+  /* A scalar in scope; the first field is one */
+  private int anyScalar() {
+    for (int attempt = 0; attempt < 4; attempt++) {
+      int id = m_scope[below(m_scopeSize)];
+      if (!isArray(id))
+        return id;
+    }
+    return 0;
+  }
+
+  private int anyIntScalar() {
+    for (int attempt = 0; attempt < 4; attempt++) {
+      int id = m_scope[below(m_scopeSize)];
+      if (!isArray(id) && !isReal(id))
+        return id;
+    }
+    return -1;
+  }
+
+  private int anyArray() {
+    for (int attempt = 0; attempt < 4; attempt++) {
+      int id = m_scope[below(m_scopeSize)];
+      if (isArray(id))
+        return id;
+    }
+    return -1;
+  }
+
+  // *** Random numbers: SplitMix64, fully specified, so the output never changes for a seed ***
+
+  private long next() {
+    m_state += 0x9E3779B97F4A7C15L;
+    return mix(m_state);
+  }
+
+  private static long mix(long z) {
+    z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+    z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+    return z ^ (z >>> 31);
+  }
+
+  /* 0 .. bound - 1 */
+  private int below(int bound) {
+    return (int) ((next() >>> 33) % bound);
+  }
+
+  private boolean chance(double probability) {
+    return (next() >>> 11) * 0x1.0p-53 < probability;
+  }
+
+  // *** Output ***
+
+  private ProgramGenerator indent(int level) throws IOException {
+    for (int n = 0; n < level; n++)
+      put("  ");
+    return this;
+  }
+
+  private ProgramGenerator put(String text) throws IOException {
+    int length = text.length();
+    if (m_used + length > m_buffer.length)
+      flush();
+    for (int n = 0; n < length; n++)
+      m_buffer[m_used++] = (byte) text.charAt(n);
+    return this;
+  }
+
+  private ProgramGenerator put(char c) throws IOException {
+    if (m_used == m_buffer.length)
+      flush();
+    m_buffer[m_used++] = (byte) c;
+    return this;
+  }
+
+  private ProgramGenerator putNumber(long value) throws IOException {
+    if (m_used + 20 > m_buffer.length)
+      flush();
+    int start = m_used;
+    do {
+      m_buffer[m_used++] = (byte) ('0' + value % 10);
+      value /= 10;
+    } while (value > 0);
+    for (int low = start, high = m_used - 1; low < high; low++, high--) {
+      byte c = m_buffer[low];
+      m_buffer[low] = m_buffer[high];
+      m_buffer[high] = c;
+    }
+    return this;
+  }
+
+  private void flush() throws IOException {
+    m_out.write(m_buffer, 0, m_used);
+    m_written += m_used;
+    m_used = 0;
+  }
+
+  /* A size like 4096, 64K, 10M or 2G */
+  public static long parseSize(String size) {
+    char unit = Character.toUpperCase(size.charAt(size.length() - 1));
+    int shift = unit == 'K' ? 10 : unit == 'M' ? 20 : unit == 'G' ? 30 : 0;
+    return Long.parseLong(shift == 0 ? size : size.substring(0, size.length() - 1)) << shift;
+  }
+
+  public static void main(String[] args) throws IOException {
+    long seed = 1;
+    long size = 1 << 20;
+    int depth = 3;
+    int identifiers = 64;
+    double errorRate = 0;
+    int statements = 0;
+    String file = null;
+    for (int n = 0; n < args.length; n++) {
+      if (args[n].equals("--seed") && n + 1 < args.length)
+        seed = Long.parseLong(args[++n]);
+      else if (args[n].equals("--size") && n + 1 < args.length)
+        size = parseSize(args[++n]);
+      else if (args[n].equals("--depth") && n + 1 < args.length)
+        depth = Integer.parseInt(args[++n]);
+      else if (args[n].equals("--identifiers") && n + 1 < args.length)
+        identifiers = Integer.parseInt(args[++n]);
+      else if (args[n].equals("--error-rate") && n + 1 < args.length)
+        errorRate = Double.parseDouble(args[++n]);
+      else if (args[n].equals("--statements") && n + 1 < args.length)
+        statements = Integer.parseInt(args[++n]);
+      else if (file == null && !args[n].startsWith("--"))
+        file = args[n];
+      else {
+        System.err.println("Usage: ProgramGenerator [--seed n] [--size n[K|M|G]] [--depth n] [--identifiers n] [--error-rate r] [--statements n] [file]");
+        System.exit(2);
+      }
+    }
+
+    ProgramGenerator generator = new ProgramGenerator(seed).setSize(size).setDepth(depth).setIdentifiers(identifiers)
+                                 .setErrorRate(errorRate).setStatements(statements);
+    long start = System.nanoTime();
+    if (file != null)
+      generator.generate(file);
+    else
+      generator.generate(System.out);
+    double seconds = (System.nanoTime() - start) / 1e9;
+    System.err.printf("%d bytes, %d methods, %d statements, %d with an error, in %.1f s (%.0f MB/s)%n",
+                      generator.getWritten(), generator.getMethodCount(), generator.getStatementCount(),
+                      generator.getErrorCount(), seconds, generator.getWritten() / seconds / (1 << 20));
+  }
+}
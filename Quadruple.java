@@ -2,9 +2,36 @@
  * Created by siddi on 05/11/14.
  */
 public class Quadruple {
-    // Holds the data for
-    // TODO add TacCode
+    // One three-address instruction: result := param1 op param2. Unused operands are null.
+    TacCode tacCode;
     SymbolTableEntry param1;
     SymbolTableEntry param2;
     SymbolTableEntry result;
+
+    public Quadruple(TacCode tacCode, SymbolTableEntry param1, SymbolTableEntry param2, SymbolTableEntry result) {
+        this.tacCode = tacCode;
+        this.param1 = param1;
+        this.param2 = param2;
+        this.result = result;
+    }
+
+    public TacCode getTacCode() {
+        return tacCode;
+    }
+
+    public SymbolTableEntry getParam1() {
+        return param1;
+    }
+
+    public SymbolTableEntry getParam2() {
+        return param2;
+    }
+
+    public SymbolTableEntry getResult() {
+        return result;
+    }
+
+    public String toString() {
+        return tacCode + " " + param1 + " " + param2 + " " + result;
+    }
 }
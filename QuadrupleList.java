@@ -1,8 +1,278 @@
-import java.util.List;
+import java.util.Arrays;
 
 /**
  * Created by siddi on 05/11/14.
+ *
+ * Three-address code kept in parallel int arrays instead of one Quadruple object per instruction:
+ * the TacCode ordinal, the symbol table ids of both operands and the id of the result (NONE where
+ * an operand is not used). Quads are addressed by index; get(index) builds a Quadruple on demand.
+ *
+ * Optimization passes change the list in place without shifting it: remove(index) only marks a quad,
+ * insert(index, ...) queues a quad to go in front of index, and compact() applies all of them in one
+ * linear pass. Until then indexes stay stable, and first()/next(index) step over removed quads.
  */
 public class QuadrupleList {
-    List<Quadruple> quadrupleList;
+
+    /* Operand id of an unused operand */
+    public static final int NONE = -1;
+
+    /* Opcode of a quad marked removed */
+    private static final int REMOVED = -1;
+    private static final TacCode[] TAC_CODES = TacCode.values();
+    private static final int INITIAL_CAPACITY = 256;
+
+    private SymbolTable m_symbolTable;
+
+    private int[] m_codes;
+    private int[] m_params1;
+    private int[] m_params2;
+    private int[] m_results;
+    private int m_size;
+    private int m_removed;
+
+    /* Quads queued by insert(), with the index each goes in front of */
+    private QuadrupleList m_inserted;
+    private int[] m_insertPositions;
+
+    public QuadrupleList(SymbolTable symbolTable) {
+        this(symbolTable, INITIAL_CAPACITY);
+    }
+
+    public QuadrupleList(SymbolTable symbolTable, int capacity) {
+        m_symbolTable = symbolTable;
+        capacity = Math.max(1, capacity);
+        m_codes = new int[capacity];
+        m_params1 = new int[capacity];
+        m_params2 = new int[capacity];
+        m_results = new int[capacity];
+    }
+
+    public SymbolTable getSymbolTable() {
+        return m_symbolTable;
+    }
+
+    public int add(TacCode tacCode, SymbolTableEntry param1, SymbolTableEntry param2, SymbolTableEntry result) {
+        return add(tacCode.ordinal(), id(param1), id(param2), id(result));
+    }
+
+    /* Appends a quad and returns its index */
+    public int add(int code, int param1, int param2, int result) {
+        if (m_size == m_codes.length)
+            grow(m_size + 1);
+        int index = m_size++;
+        m_codes[index] = code;
+        m_params1[index] = param1;
+        m_params2[index] = param2;
+        m_results[index] = result;
+        return index;
+    }
+
+    /* Appends the live quads of another list over the same symbol table */
+    public void addAll(QuadrupleList quads) {
+        for (int n = quads.first(); n >= 0; n = quads.next(n))
+            add(quads.m_codes[n], quads.m_params1[n], quads.m_params2[n], quads.m_results[n]);
+    }
+
+    /* Number of slots, including quads marked removed until the next compact() */
+    public int size() {
+        return m_size;
+    }
+
+    /* Number of quads not marked removed, including pending insertions */
+    public int liveCount() {
+        return m_size - m_removed + (m_inserted == null ? 0 : m_inserted.m_size);
+    }
+
+    public void clear() {
+        m_size = 0;
+        m_removed = 0;
+        m_inserted = null;
+    }
+
+    /* Index of the first live quad, -1 if there is none */
+    public int first() {
+        return next(-1);
+    }
+
+    /* Index of the first live quad after index, -1 if there is none */
+    public int next(int index) {
+        for (int n = index + 1; n < m_size; n++)
+            if (m_codes[n] != REMOVED)
+                return n;
+        return -1;
+    }
+
+    /* Index of the last live quad before index, -1 if there is none */
+    public int previous(int index) {
+        for (int n = index - 1; n >= 0; n--)
+            if (m_codes[n] != REMOVED)
+                return n;
+        return -1;
+    }
+
+    public boolean isRemoved(int index) {
+        return m_codes[index] == REMOVED;
+    }
+
+    /* The TacCode ordinal at index */
+    public int getCode(int index) {
+        return m_codes[index];
+    }
+
+    public TacCode getTacCode(int index) {
+        return TAC_CODES[m_codes[index]];
+    }
+
+    public int getParam1(int index) {
+        return m_params1[index];
+    }
+
+    public int getParam2(int index) {
+        return m_params2[index];
+    }
+
+    public int getResult(int index) {
+        return m_results[index];
+    }
+
+    public Quadruple get(int index) {
+        return new Quadruple(getTacCode(index), entry(m_params1[index]), entry(m_params2[index]), entry(m_results[index]));
+    }
+
+    public void set(int index, int code, int param1, int param2, int result) {
+        setCode(index, code);
+        m_params1[index] = param1;
+        m_params2[index] = param2;
+        m_results[index] = result;
+    }
+
+    /* Keeps the count of removed quads right when a removed slot is reused or the code written is REMOVED */
+    public void setCode(int index, int code) {
+        if (m_codes[index] == REMOVED)
+            m_removed--;
+        if (code == REMOVED)
+            m_removed++;
+        m_codes[index] = code;
+    }
+
+    public void setParam1(int index, int param1) {
+        m_params1[index] = param1;
+    }
+
+    public void setParam2(int index, int param2) {
+        m_params2[index] = param2;
+    }
+
+    public void setResult(int index, int result) {
+        m_results[index] = result;
+    }
+
+    /* Marks the quad at index removed; it keeps its slot until compact() */
+    public void remove(int index) {
+        if (m_codes[index] != REMOVED) {
+            m_codes[index] = REMOVED;
+            m_removed++;
+        }
+    }
+
+    /*
+     * Queues a quad to go in front of the quad at index (index == size() appends). It becomes visible
+     * at the next compact(); quads queued for the same index keep the order they were queued in.
+     */
+    public void insert(int index, int code, int param1, int param2, int result) {
+        if (index < 0 || index > m_size)
+            throw new IndexOutOfBoundsException("Insert position " + index + ", size " + m_size);
+        if (m_inserted == null) {
+            m_inserted = new QuadrupleList(m_symbolTable, 16);
+            m_insertPositions = new int[16];
+        }
+        int n = m_inserted.add(code, param1, param2, result);
+        if (n == m_insertPositions.length)
+            m_insertPositions = Arrays.copyOf(m_insertPositions, n * 2);
+        m_insertPositions[n] = index;
+    }
+
+    /* Drops the removed quads and puts the queued ones in place; afterwards every index is live */
+    public void compact() {
+        if (m_removed == 0 && m_inserted == null)
+            return;
+        int inserted = m_inserted == null ? 0 : m_inserted.m_size;
+
+        // Bucket the insertions by position (counting sort, so equal positions stay in order)
+        int[] order = null;
+        int[] starts = null;
+        if (inserted > 0) {
+            starts = new int[m_size + 2];
+            for (int k = 0; k < inserted; k++)
+                starts[m_insertPositions[k] + 1]++;
+            for (int n = 0; n <= m_size; n++)
+                starts[n + 1] += starts[n];
+            order = new int[inserted];
+            int[] fill = Arrays.copyOf(starts, m_size + 1);
+            for (int k = 0; k < inserted; k++)
+                order[fill[m_insertPositions[k]]++] = k;
+        }
+
+        int capacity = Math.max(INITIAL_CAPACITY, m_size - m_removed + inserted);
+        int[] codes = new int[capacity];
+        int[] params1 = new int[capacity];
+        int[] params2 = new int[capacity];
+        int[] results = new int[capacity];
+        int size = 0;
+        for (int n = 0; n <= m_size; n++) {
+            if (inserted > 0) {
+                for (int k = starts[n]; k < starts[n + 1]; k++) {
+                    int q = order[k];
+                    codes[size] = m_inserted.m_codes[q];
+                    params1[size] = m_inserted.m_params1[q];
+                    params2[size] = m_inserted.m_params2[q];
+                    results[size] = m_inserted.m_results[q];
+                    size++;
+                }
+            }
+            if (n < m_size && m_codes[n] != REMOVED) {
+                codes[size] = m_codes[n];
+                params1[size] = m_params1[n];
+                params2[size] = m_params2[n];
+                results[size] = m_results[n];
+                size++;
+            }
+        }
+        m_codes = codes;
+        m_params1 = params1;
+        m_params2 = params2;
+        m_results = results;
+        m_size = size;
+        m_removed = 0;
+        m_inserted = null;
+        m_insertPositions = null;
+    }
+
+    /* Bytes held by the arrays (capacity, not just the quads in use) */
+    public long footprint() {
+        long bytes = 4L * 16 + 16L * m_codes.length;
+        if (m_inserted != null)
+            bytes += m_inserted.footprint() + 16 + 4L * m_insertPositions.length;
+        return bytes;
+    }
+
+    public double bytesPerQuad() {
+        return (double) footprint() / Math.max(1, liveCount());
+    }
+
+    public SymbolTableEntry entry(int id) {
+        return id == NONE ? null : m_symbolTable.getEntry(id);
+    }
+
+    private static int id(SymbolTableEntry entry) {
+        return entry == null ? NONE : entry.getId();
+    }
+
+    private void grow(int minCapacity) {
+        int capacity = Math.max(minCapacity, m_codes.length * 2);
+        m_codes = Arrays.copyOf(m_codes, capacity);
+        m_params1 = Arrays.copyOf(m_params1, capacity);
+        m_params2 = Arrays.copyOf(m_params2, capacity);
+        m_results = Arrays.copyOf(m_results, capacity);
+    }
 }
@@ -0,0 +1,80 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.*;
+import java.util.Arrays;
+
+/*
+  The source file of a compilation, memory-mapped once, with an index of where each line starts.
+  Diagnostics use it to print the offending line: any line is sliced out in O(1) instead of
+  re-reading the file from the top for every error. Nothing is mapped or indexed until the first
+  line is asked for, so compiles without errors do not pay for it.
+  Lines end at '\n', '\r' or "\r\n", the same as BufferedReader.readLine.
+*/
+public class SourceText {
+
+  private String m_fileName;
+  private ByteBuffer m_bytes;
+  private int[] m_lineStarts;
+  private int m_lineCount;
+
+  public SourceText(String fileName) {
+    m_fileName = fileName;
+  }
+
+  /* Returns the text of line lineNum (1-based) without its terminator, or null if the file has fewer lines */
+  public String getLine(int lineNum) throws IOException {
+    if (m_lineStarts == null)
+      index();
+    if (lineNum < 1 || lineNum > m_lineCount)
+      return null;
+
+    int start = m_lineStarts[lineNum - 1];
+    int end = lineNum < m_lineCount ? m_lineStarts[lineNum] : m_bytes.limit();
+    if (end > start && m_bytes.get(end - 1) == '\n')
+      end--;
+    if (end > start && m_bytes.get(end - 1) == '\r')
+      end--;
+
+    byte[] line = new byte[end - start];
+    m_bytes.get(start, line);
+    return new String(line, Charset.defaultCharset());
+  }
+
+  public int getLineCount() throws IOException {
+    if (m_lineStarts == null)
+      index();
+    return m_lineCount;
+  }
+
+  private void index() throws IOException {
+    FileChannel channel = FileChannel.open(Paths.get(m_fileName), StandardOpenOption.READ);
+    try {
+      m_bytes = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+    }
+    finally {
+      channel.close();
+    }
+
+    int size = m_bytes.limit();
+    int[] starts = new int[1024];
+    int count = 0;
+    if (size > 0)
+      starts[count++] = 0;
+    for (int n = 0; n < size; n++) {
+      byte b = m_bytes.get(n);
+      if (b != '\n' && b != '\r')
+        continue;
+      if (b == '\r' && n + 1 < size && m_bytes.get(n + 1) == '\n')
+        n++;
+      if (n + 1 < size) {
+        if (count == starts.length)
+          starts = Arrays.copyOf(starts, count * 2);
+        starts[count++] = n + 1;
+      }
+    }
+    m_lineStarts = starts;
+    m_lineCount = count;
+  }
+}
@@ -1,25 +1,209 @@
-import java.util.*;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
 
+/*
+  Symbol table backed by an open-addressing intern table.
+
+  Every distinct lexeme gets a dense int id (0, 1, 2, ... in insertion order). The characters of all
+  lexemes are kept in one char arena and the hash table itself only holds ints, so entering a symbol
+  costs no String, no entry object and no Hashtable node. SymbolTableEntry is just a view of an id.
+
+  Lookups never lock. The table is split into STRIPES sub-tables chosen by hash; an insert locks only
+  its own stripe while probing, and the arena for the few instructions it takes to append the lexeme.
+  A slot is published (release store) only after the lexeme is in the arena, so a reader that finds
+  an id can always read its lexeme.
+
+  Every time an array is grown a decaf.SymbolTableGrowth event is recorded (see CompilerEvents).
+*/
 public class SymbolTable {
-  private static Hashtable<String, SymbolTableEntry> s_lookupList = new Hashtable<String, SymbolTableEntry>();
-  private static ArrayList<SymbolTableEntry> s_seqList = new ArrayList<SymbolTableEntry>();
+  private static final int STRIPE_BITS = 4;
+  private static final int STRIPES = 1 << STRIPE_BITS;
+  private static final int STRIPE_MASK = STRIPES - 1;
+  private static final int INITIAL_SLOTS = 64;
+  private static final int INITIAL_IDS = 256;
+
+  private static final VarHandle SLOT = MethodHandles.arrayElementVarHandle(int[].class);
+
+  private static final class Stripe {
+    /* id + 1 of the symbol in each slot, 0 for an empty slot */
+    volatile int[] m_slots = new int[INITIAL_SLOTS];
+    int m_count;
+  }
+
+  private final Stripe[] m_stripes = new Stripe[STRIPES];
+  private final Object m_arenaLock = new Object();
+
+  private volatile char[] m_arena = new char[INITIAL_IDS * 8];
+  private volatile int[] m_starts = new int[INITIAL_IDS];
+  private volatile int[] m_lengths = new int[INITIAL_IDS];
+  private volatile int[] m_hashes = new int[INITIAL_IDS];
+  private int m_arenaTop;
+  private volatile int m_size;
+
+  public SymbolTable() {
+    for (int n = 0; n < STRIPES; n++)
+      m_stripes[n] = new Stripe();
+  }
+
+  public SymbolTableEntry lookup(String lexeme) {
+    char[] chars = lexeme.toCharArray();
+    int id = lookupId(chars, 0, chars.length);
+    return id < 0 ? null : getEntry(id);
+  }
+
+  public SymbolTableEntry insert(String lexeme) {
+    char[] chars = lexeme.toCharArray();
+    return getEntry(intern(chars, 0, chars.length));
+  }
+
+  /* Returns the id of the lexeme buf[offset .. offset+length), or -1 if it is not in the table */
+  public int lookupId(char[] buf, int offset, int length) {
+    return find(hash(buf, offset, length), buf, offset, length);
+  }
+
+  /* Returns the id of the lexeme buf[offset .. offset+length), entering it first if needed */
+  public int intern(char[] buf, int offset, int length) {
+    int hash = hash(buf, offset, length);
+    int id = find(hash, buf, offset, length);
+    if (id >= 0)
+      return id;
+
+    Stripe stripe = m_stripes[hash & STRIPE_MASK];
+    synchronized (stripe) {
+      // Probe again under the lock, another thread may have entered it in the meantime
+      int[] slots = stripe.m_slots;
+      int mask = slots.length - 1;
+      int slot = (hash >>> STRIPE_BITS) & mask;
+      int value;
+      while ((value = slots[slot]) != 0) {
+        if (matches(value - 1, hash, buf, offset, length))
+          return value - 1;
+        slot = (slot + 1) & mask;
+      }
+
+      id = append(hash, buf, offset, length);
+      stripe.m_count++;
+      if (stripe.m_count * 4 > slots.length * 3) {
+        CompilerEvents.SymbolTableGrowth event = CompilerEvents.SymbolTableGrowth.begin("slots", id + 1, slots.length, slots.length * 2);
+        stripe.m_slots = rehash(slots, slots.length * 2, id);
+        event.commit();
+      }
+      else
+        SLOT.setRelease(slots, slot, id + 1);
+    }
+    return id;
+  }
+
+  public int size() {
+    return m_size;
+  }
+
+  public SymbolTableEntry getEntry(int idx) {
+    if (idx < 0 || idx >= m_size)
+      throw new IndexOutOfBoundsException("No symbol with id " + idx);
+    return new SymbolTableEntry(this, idx);
+  }
+
+  public String getLexeme(int id) {
+    int[] starts = m_starts;
+    int[] lengths = m_lengths;
+    return new String(m_arena, starts[id], lengths[id]);
+  }
+
+  /* Bytes held by the table's arrays, for comparing memory use */
+  public long footprint() {
+    long bytes = m_arena.length * 2L + (m_starts.length + m_lengths.length + m_hashes.length) * 4L;
+    for (Stripe stripe : m_stripes)
+      bytes += stripe.m_slots.length * 4L;
+    return bytes;
+  }
+
+  private int find(int hash, char[] buf, int offset, int length) {
+    int[] slots = m_stripes[hash & STRIPE_MASK].m_slots;
+    int mask = slots.length - 1;
+    int slot = (hash >>> STRIPE_BITS) & mask;
+    while (true) {
+      int value = (int) SLOT.getAcquire(slots, slot);
+      if (value == 0)
+        return -1;
+      if (matches(value - 1, hash, buf, offset, length))
+        return value - 1;
+      slot = (slot + 1) & mask;
+    }
+  }
+
+  private boolean matches(int id, int hash, char[] buf, int offset, int length) {
+    if (m_hashes[id] != hash || m_lengths[id] != length)
+      return false;
+    char[] arena = m_arena;
+    int start = m_starts[id];
+    for (int n = 0; n < length; n++)
+      if (arena[start + n] != buf[offset + n])
+        return false;
+    return true;
+  }
 
-  public static SymbolTableEntry lookup(String lexeme) {
-    return s_lookupList.get(lexeme);
+  private int append(int hash, char[] buf, int offset, int length) {
+    synchronized (m_arenaLock) {
+      int id = m_size;
+      if (id == m_starts.length) {
+        int capacity = id * 2;
+        CompilerEvents.SymbolTableGrowth event = CompilerEvents.SymbolTableGrowth.begin("ids", id, id, capacity);
+        m_starts = Arrays.copyOf(m_starts, capacity);
+        m_lengths = Arrays.copyOf(m_lengths, capacity);
+        m_hashes = Arrays.copyOf(m_hashes, capacity);
+        event.commit();
+      }
+      char[] arena = m_arena;
+      if (m_arenaTop + length > arena.length) {
+        int capacity = Math.max(arena.length * 2, m_arenaTop + length);
+        CompilerEvents.SymbolTableGrowth event = CompilerEvents.SymbolTableGrowth.begin("arena", id, arena.length, capacity);
+        m_arena = arena = Arrays.copyOf(arena, capacity);
+        event.commit();
+      }
+      System.arraycopy(buf, offset, arena, m_arenaTop, length);
+      m_starts[id] = m_arenaTop;
+      m_lengths[id] = length;
+      m_hashes[id] = hash;
+      m_arenaTop += length;
+      m_size = id + 1;
+      return id;
+    }
   }
 
-  public static SymbolTableEntry insert(String lexeme) {
-    SymbolTableEntry symTabEntry = new SymbolTableEntry(lexeme);
-    s_lookupList.put(lexeme, symTabEntry);
-    s_seqList.add(symTabEntry);
-    return symTabEntry;
+  /*
+    Builds a larger slot array holding the stripe's symbols plus the new id.
+    Called with the stripe locked; readers still probing the old array see a consistent table.
+  */
+  private int[] rehash(int[] slots, int capacity, int newId) {
+    int[] grown = new int[capacity];
+    int mask = capacity - 1;
+    int[] hashes = m_hashes;
+    for (int n = 0; n < slots.length; n++) {
+      int value = slots[n];
+      if (value != 0)
+        place(grown, mask, hashes[value - 1], value);
+    }
+    place(grown, mask, hashes[newId], newId + 1);
+    return grown;
   }
 
-  public static int size() {
-    return s_seqList.size();
+  private static void place(int[] slots, int mask, int hash, int value) {
+    int slot = (hash >>> STRIPE_BITS) & mask;
+    while (slots[slot] != 0)
+      slot = (slot + 1) & mask;
+    slots[slot] = value;
   }
 
-  public static SymbolTableEntry getEntry(int idx) {
-    return s_seqList.get(idx);
+  private static int hash(char[] buf, int offset, int length) {
+    int h = 0;
+    for (int n = 0; n < length; n++)
+      h = 31 * h + buf[offset + n];
+    // Spread the bits, the low ones pick the stripe and the next ones the slot
+    h ^= h >>> 16;
+    h *= 0x85ebca6b;
+    h ^= h >>> 13;
+    return h;
   }
-}
\ No newline at end of file
+}
@@ -1,11 +1,36 @@
+/*
+  A view of one symbol in a SymbolTable. The table only stores ids and characters;
+  an entry is the id plus the table it belongs to.
+*/
 public class SymbolTableEntry {
-  private String m_lexeme;
+  private SymbolTable m_table;
+  private int m_id;
 
-  public SymbolTableEntry(String lexeme) {
-    m_lexeme = lexeme;
+  public SymbolTableEntry(SymbolTable table, int id) {
+    m_table = table;
+    m_id = id;
+  }
+
+  public int getId() {
+    return m_id;
   }
 
   public String getLexeme() {
-    return m_lexeme;
+    return m_table.getLexeme(m_id);
+  }
+
+  public boolean equals(Object other) {
+    if (!(other instanceof SymbolTableEntry))
+      return false;
+    SymbolTableEntry entry = (SymbolTableEntry) other;
+    return entry.m_table == m_table && entry.m_id == m_id;
+  }
+
+  public int hashCode() {
+    return m_id;
+  }
+
+  public String toString() {
+    return getLexeme();
   }
-}
\ No newline at end of file
+}
@@ -0,0 +1,195 @@
+import java.io.*;
+import java.util.*;
+
+/*
+  An LL(1) engine for the Decaf grammar: a parse table generated from Grammar, driven with an explicit
+  int stack instead of one Java method per nonterminal, so nesting depth is bounded by the heap and not
+  by the thread stack.
+
+  It makes the same moves as the recursive-descent Parser, so it reports the same errors and recovers
+  the same way: the ErrorHandler is told about every nonterminal started and stopped in the same order,
+  every terminal goes through Parser.match and every failed prediction through Parser.noMatch.
+  Where the hand-written parser departs from the plain grammar the table follows the parser (see the
+  static initializer). It only checks syntax: no three-address code is generated.
+
+  Stack entries are (symbol << 2 | kind): a terminal to match, a nonterminal to expand, or the end of a
+  nonterminal, where stopNonT is due.
+*/
+public class TableDrivenParser extends Parser {
+
+  private static final int TERMINAL = 0;
+  private static final int EXPAND = 1;
+  private static final int STOP = 2;
+
+  private static final int NO_MATCH = -1;
+
+  private static final TokenCode[] TOKEN_CODES = TokenCode.values();
+  private static final NonT[] NON_TERMINALS = NonT.values();
+
+  /* One column per TokenCode, and an extra one for an ADDOP that is not '+' or '-' (i.e. '||') */
+  private static final int ADDOP_NOT_SIGN = TOKEN_CODES.length;
+  private static final int COLUMNS = TOKEN_CODES.length + 1;
+
+  /* s_table[nonT * COLUMNS + column] is the production to expand, or NO_MATCH */
+  private static final int[] s_table = new int[NON_TERMINALS.length * COLUMNS];
+  private static final int[] s_default = new int[NON_TERMINALS.length];
+  private static final int[][] s_pushes = new int[Grammar.productionCount()][];
+
+  /* Nonterminals the parser has no method for (nothing is reported to the ErrorHandler) */
+  private static final boolean[] s_silent = new boolean[NON_TERMINALS.length];
+  /* Lists that end as soon as the ErrorHandler is in recovery */
+  private static final boolean[] s_emptyInRecovery = new boolean[NON_TERMINALS.length];
+
+  static {
+    // Parser.variable() parses the optional [size] itself
+    s_silent[NonT.VARIABLE2.ordinal()] = true;
+
+    s_emptyInRecovery[NonT.PARAMETER_LIST2.ordinal()] = true;
+    s_emptyInRecovery[NonT.STATEMENT_LIST.ordinal()] = true;
+    s_emptyInRecovery[NonT.MORE_EXPRESSIONS.ordinal()] = true;
+
+    buildTable();
+
+    // methodReturnType() parses a type unless it sees void
+    setDefault(NonT.METHOD_RETURN_TYPE, production(NonT.METHOD_RETURN_TYPE, NonT.TYPE));
+    // simpleExpression() parses a term unless it sees a sign
+    setDefault(NonT.SIMPLE_EXPRESSION, production(NonT.SIMPLE_EXPRESSION, NonT.TERM));
+    // statement() starts a block on '}', not on '{'
+    setEntry(NonT.STATEMENT, TokenCode.RBRACE.ordinal(), production(NonT.STATEMENT, NonT.STATEMENT_BLOCK));
+    setEntry(NonT.STATEMENT, TokenCode.LBRACE.ordinal(), NO_MATCH);
+    // sign(), optionalExpression() and expressionList() only take '+' and '-' of the ADDOPs
+    setEntry(NonT.SIGN, ADDOP_NOT_SIGN, NO_MATCH);
+    setEntry(NonT.OPTIONAL_EXPRESSION, ADDOP_NOT_SIGN, s_default[NonT.OPTIONAL_EXPRESSION.ordinal()]);
+    setEntry(NonT.EXPRESSION_LIST, ADDOP_NOT_SIGN, s_default[NonT.EXPRESSION_LIST.ordinal()]);
+  }
+
+  /*
+    Fills the table from the FIRST sets of the productions. A nonterminal with a single production
+    always expands it, one with an epsilon production expands that on any other token, and any
+    other nonterminal reports noMatch.
+  */
+  private static void buildTable() {
+    boolean[] nullable = new boolean[1];
+    int[] productions = new int[NON_TERMINALS.length];
+    Arrays.fill(s_default, NO_MATCH);
+    for (int p = 0; p < Grammar.productionCount(); p++) {
+      int lhs = Grammar.lhs(p).ordinal();
+      productions[lhs]++;
+      Grammar.firstOfSequence(Grammar.rhs(p), 0, nullable);
+      if (nullable[0])
+        s_default[lhs] = p;
+      s_pushes[p] = pushes(p);
+    }
+    for (int p = 0; p < Grammar.productionCount(); p++) {
+      int lhs = Grammar.lhs(p).ordinal();
+      if (productions[lhs] == 1)
+        s_default[lhs] = p;
+    }
+    for (int nonT = 0; nonT < NON_TERMINALS.length; nonT++)
+      Arrays.fill(s_table, nonT * COLUMNS, (nonT + 1) * COLUMNS, s_default[nonT]);
+
+    for (int p = 0; p < Grammar.productionCount(); p++) {
+      int lhs = Grammar.lhs(p).ordinal();
+      if (productions[lhs] == 1)
+        continue;
+      long first = Grammar.firstOfSequence(Grammar.rhs(p), 0, nullable);
+      for (TokenCode tokenCode : Grammar.members(first)) {
+        int entry = s_table[lhs * COLUMNS + tokenCode.ordinal()];
+        if (entry != s_default[lhs] && entry != p)
+          throw new IllegalStateException("Grammar is not LL(1): " + Grammar.lhs(p) + " on " + tokenCode);
+        setEntry(Grammar.lhs(p), tokenCode.ordinal(), p);
+        if (tokenCode == TokenCode.ADDOP)
+          setEntry(Grammar.lhs(p), ADDOP_NOT_SIGN, p);
+      }
+    }
+  }
+
+  /* The stack entries for a production, in push order: the end marker, then the right hand side reversed */
+  private static int[] pushes(int production) {
+    NonT lhs = Grammar.lhs(production);
+    Enum<?>[] rhs = Grammar.rhs(production);
+    int[] pushes = new int[rhs.length + (s_silent[lhs.ordinal()] ? 0 : 1)];
+    int n = 0;
+    if (!s_silent[lhs.ordinal()])
+      pushes[n++] = lhs.ordinal() << 2 | STOP;
+    for (int k = rhs.length - 1; k >= 0; k--)
+      pushes[n++] = rhs[k].ordinal() << 2 | (rhs[k] instanceof TokenCode ? TERMINAL : EXPAND);
+    return pushes;
+  }
+
+  /* The production of lhs whose right hand side starts with the given symbol */
+  private static int production(NonT lhs, Enum<?> first) {
+    for (int p = 0; p < Grammar.productionCount(); p++)
+      if (Grammar.lhs(p) == lhs && Grammar.rhs(p).length > 0 && Grammar.rhs(p)[0] == first)
+        return p;
+    throw new IllegalArgumentException(lhs + " has no production starting with " + first);
+  }
+
+  private static void setEntry(NonT nonT, int column, int production) {
+    s_table[nonT.ordinal() * COLUMNS + column] = production;
+  }
+
+  private static void setDefault(NonT nonT, int production) {
+    int previous = s_default[nonT.ordinal()];
+    for (int column = 0; column < COLUMNS; column++)
+      if (s_table[nonT.ordinal() * COLUMNS + column] == previous)
+        setEntry(nonT, column, production);
+    s_default[nonT.ordinal()] = production;
+  }
+
+  public TableDrivenParser(TokenBuffer tokens, String sourceFile, PrintStream diagnostics) {
+    super(tokens, sourceFile, diagnostics);
+  }
+
+  protected void program() {
+    ErrorHandler errorHandler = getErrorHandler();
+    int[] stack = new int[256];
+    int top = 0;
+    stack[top++] = NonT.PROGRAM.ordinal() << 2 | EXPAND;
+
+    while (top > 0) {
+      int entry = stack[--top];
+      int symbol = entry >>> 2;
+      switch (entry & 3) {
+        case TERMINAL:
+          match(TOKEN_CODES[symbol]);
+          break;
+        case STOP:
+          errorHandler.stopNonT();
+          break;
+        default:
+          if (!s_silent[symbol])
+            errorHandler.startNonT(NON_TERMINALS[symbol]);
+          int production = predict(symbol, errorHandler);
+          if (symbol == NonT.STATEMENT.ordinal())
+            traceStatement();
+          if (production == NO_MATCH) {
+            // statement() leaves the nonterminal before it lets the ErrorHandler recover
+            if (symbol == NonT.STATEMENT.ordinal()) {
+              errorHandler.stopNonT();
+              noMatch();
+            }
+            else {
+              noMatch();
+              errorHandler.stopNonT();
+            }
+            break;
+          }
+          int[] pushes = s_pushes[production];
+          if (top + pushes.length > stack.length)
+            stack = Arrays.copyOf(stack, Math.max(stack.length * 2, top + pushes.length));
+          System.arraycopy(pushes, 0, stack, top, pushes.length);
+          top += pushes.length;
+      }
+    }
+  }
+
+  private int predict(int nonT, ErrorHandler errorHandler) {
+    if (s_emptyInRecovery[nonT] && errorHandler.inRecovery())
+      return s_default[nonT];
+    int column = lookaheadCode();
+    if (column == TokenCode.ADDOP.ordinal() && !lookaheadIsFirstOfSign())
+      column = ADDOP_NOT_SIGN;
+    return s_table[nonT * COLUMNS + column];
+  }
+}
@@ -0,0 +1,79 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.BitSet;
+
+/*
+  Writes quads as a compact binary stream.
+
+  The stream starts with the magic bytes "DTAC" and a version byte, followed by records, each
+  starting with a tag byte:
+    0 .. TacCode count-1   a quad with that TacCode, then param1, param2 and result
+    SYMBOL                 a symbol: its id, the length of its lexeme and the lexeme's bytes
+    END_METHOD             the end of the field declarations or of a method
+  Ids and lengths are unsigned varints (7 bits per byte, low bits first); operands are written as
+  id + 1 so that an unused operand is 0. Every symbol is written once, before the first quad using it,
+  so the stream can be read back without the compiler's symbol table.
+*/
+public class TacBinaryWriter extends TacChannelWriter {
+
+  public static final byte[] MAGIC = { 'D', 'T', 'A', 'C' };
+  public static final int VERSION = 1;
+  public static final int SYMBOL = 0xFE;
+  public static final int END_METHOD = 0xFF;
+
+  /* Longest varint of an int */
+  private static final int VARINT_SIZE = 5;
+
+  private BitSet m_written = new BitSet();
+
+  public TacBinaryWriter(WritableByteChannel channel, boolean closeChannel, SymbolTable symbolTable) throws IOException {
+    super(channel, closeChannel, symbolTable);
+    m_buffer.put(MAGIC);
+    m_buffer.put((byte) VERSION);
+  }
+
+  public TacBinaryWriter(WritableByteChannel channel, boolean closeChannel, SymbolTable symbolTable, ByteBuffer buffer) throws IOException {
+    super(channel, closeChannel, symbolTable, buffer);
+    m_buffer.put(MAGIC);
+    m_buffer.put((byte) VERSION);
+  }
+
+  public void quad(int code, int param1, int param2, int result) throws IOException {
+    symbol(param1);
+    symbol(param2);
+    symbol(result);
+    reserve(1 + 3 * VARINT_SIZE);
+    m_buffer.put((byte) code);
+    varint(param1 + 1);
+    varint(param2 + 1);
+    varint(result + 1);
+  }
+
+  public void endMethod() throws IOException {
+    reserve(1);
+    m_buffer.put((byte) END_METHOD);
+    super.endMethod();
+  }
+
+  private void symbol(int id) throws IOException {
+    if (id == QuadrupleList.NONE || m_written.get(id))
+      return;
+    m_written.set(id);
+    String lexeme = m_symbolTable.getLexeme(id);
+    reserve(1 + 2 * VARINT_SIZE + lexeme.length());
+    m_buffer.put((byte) SYMBOL);
+    varint(id);
+    varint(lexeme.length());
+    for (int n = 0; n < lexeme.length(); n++)
+      m_buffer.put((byte) lexeme.charAt(n));
+  }
+
+  private void varint(int value) {
+    while ((value & ~0x7F) != 0) {
+      m_buffer.put((byte) (value & 0x7F | 0x80));
+      value >>>= 7;
+    }
+    m_buffer.put((byte) value);
+  }
+}
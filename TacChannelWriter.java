@@ -0,0 +1,56 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+/*
+  Base of the TacSinks that write to a channel. Output is collected in one large buffer and written
+  when a method ends or the buffer fills up, so a huge program costs a write per method rather than
+  per quad or line, and nothing more than the buffer is held in memory.
+*/
+public abstract class TacChannelWriter implements TacSink {
+
+  public static final int BUFFER_SIZE = 1 << 20;
+
+  private WritableByteChannel m_channel;
+  private boolean m_closeChannel;
+  protected ByteBuffer m_buffer;
+  protected SymbolTable m_symbolTable;
+
+  /* closeChannel: whether close() closes the channel too (not wanted for System.out) */
+  protected TacChannelWriter(WritableByteChannel channel, boolean closeChannel, SymbolTable symbolTable) {
+    this(channel, closeChannel, symbolTable, ByteBuffer.allocateDirect(BUFFER_SIZE));
+  }
+
+  /* With a buffer of the caller's, for writers too many or too short-lived for a direct buffer each */
+  protected TacChannelWriter(WritableByteChannel channel, boolean closeChannel, SymbolTable symbolTable, ByteBuffer buffer) {
+    m_channel = channel;
+    m_closeChannel = closeChannel;
+    m_symbolTable = symbolTable;
+    m_buffer = buffer;
+  }
+
+  /* Makes room for at least bytes more bytes in the buffer */
+  protected void reserve(int bytes) throws IOException {
+    if (m_buffer.remaining() < bytes)
+      flush();
+    if (m_buffer.remaining() < bytes)
+      throw new IOException("Record of " + bytes + " bytes does not fit the output buffer");
+  }
+
+  public void flush() throws IOException {
+    m_buffer.flip();
+    while (m_buffer.hasRemaining())
+      m_channel.write(m_buffer);
+    m_buffer.clear();
+  }
+
+  public void endMethod() throws IOException {
+    flush();
+  }
+
+  public void close() throws IOException {
+    flush();
+    if (m_closeChannel)
+      m_channel.close();
+  }
+}
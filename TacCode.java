@@ -8,5 +8,6 @@ public enum TacCode {
         LT, LE, GT, GE, EQ, NE,
         GOTO, CALL,
         APARAM, FPARAM,
-        VAR, RETURN, NOOP
+        VAR, RETURN, NOOP,
+        ARRAY_LOAD, ARRAY_STORE
 }
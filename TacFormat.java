@@ -0,0 +1,9 @@
+/*
+  What a compilation does with the three-address code it generates.
+*/
+public enum TacFormat {
+  NONE,     // only counted
+  MEMORY,   // kept as a TacProgram, see Compilation.getProgram()
+  TEXT,     // quad listing written to name.tac for name.decaf
+  BINARY    // binary stream written to name.tacb, see TacBinaryWriter
+}
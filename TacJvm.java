@@ -0,0 +1,657 @@
+import java.lang.invoke.*;
+import java.util.*;
+
+/*
+  Runs three-address code as JVM bytecode: every method of the program becomes a static method of
+  one class, written by ClassFileWriter and defined as a hidden class, so it runs at the speed the
+  JIT gives it, where TacVM interprets.
+
+  Globals are static fields of the class, named as in the source; global arrays are created by its
+  static initializer. Locals, parameters and temps are JVM locals, int or double, and local arrays
+  are created on entry. Everything else follows TacVM: temps get the type of the first quad that
+  computes them, operands are converted to the type an operation needs, a CALL's arguments are
+  converted to the callee's parameter types, and a method without a RETURN at its end returns 0.
+  Since the class is defined once, the values of the globals carry over from run to run.
+*/
+public class TacJvm {
+
+  private static final String CLASS_NAME = "DecafProgram";
+
+  // Kinds of variables
+  private static final int INT = 0, REAL = 1, INT_ARRAY = 2, REAL_ARRAY = 3;
+
+  private static final String[] DESCRIPTORS = { "I", "D", "[I", "[D" };
+
+  private SymbolTable m_symbolTable;
+  private ClassFileWriter m_writer = new ClassFileWriter(CLASS_NAME);
+  private int m_classSize;
+  private MethodHandles.Lookup m_lookup;
+
+  // Globals: { kind, array size } by symbol id, the field having the symbol's name
+  private Map<Integer, int[]> m_globals = new LinkedHashMap<Integer, int[]>();
+  private Map<Integer, Method> m_methodsBySymbol = new HashMap<Integer, Method>();
+
+  /* What compiling a call needs to know about a method */
+  private static class Method {
+    String m_name;
+    int m_returnKind = -1;      // INT, REAL or -1 for void
+    int[] m_paramKinds;
+
+    String descriptor() {
+      StringBuilder descriptor = new StringBuilder("(");
+      for (int kind : m_paramKinds)
+        descriptor.append(DESCRIPTORS[kind]);
+      return descriptor.append(')').append(m_returnKind < 0 ? "V" : DESCRIPTORS[m_returnKind]).toString();
+    }
+
+    MethodType type() {
+      Class<?>[] params = new Class<?>[m_paramKinds.length];
+      for (int k = 0; k < params.length; k++)
+        params[k] = m_paramKinds[k] == REAL ? double.class : int.class;
+      return MethodType.methodType(m_returnKind == INT ? int.class : m_returnKind == REAL ? double.class : void.class, params);
+    }
+  }
+
+  public TacJvm(QuadrupleList quads) {
+    m_symbolTable = quads.getSymbolTable();
+    byte[] bytes = compile(quads);
+    m_classSize = bytes.length;
+    try {
+      m_lookup = MethodHandles.lookup().defineHiddenClass(bytes, true);
+    }
+    catch (IllegalAccessException e) {
+      throw new IllegalStateException("Cannot define the compiled class", e);
+    }
+  }
+
+  public TacJvm(TacProgram program) {
+    this(program.toQuadrupleList());
+  }
+
+  /* Size in bytes of the class file the program was compiled into */
+  public int getClassSize() {
+    return m_classSize;
+  }
+
+  public boolean hasMethod(String name) {
+    SymbolTableEntry entry = m_symbolTable.lookup(name);
+    return entry != null && m_methodsBySymbol.containsKey(entry.getId());
+  }
+
+  // *** Compiling ***
+
+  private byte[] compile(QuadrupleList quads) {
+    // Methods start at a LABEL that carries a return type, everything before the first is globals
+    List<int[]> ranges = new ArrayList<int[]>();
+    int globalsEnd = -1;
+    for (int n = quads.first(); n >= 0; n = quads.next(n)) {
+      if (TacSymbols.isMethodLabel(quads, n)) {
+        if (!ranges.isEmpty())
+          ranges.get(ranges.size() - 1)[1] = n;
+        else
+          globalsEnd = n;
+        ranges.add(new int[] { n, quads.size() });
+      }
+    }
+    if (globalsEnd < 0)
+      globalsEnd = quads.size();
+
+    compileGlobals(quads, globalsEnd);
+    for (int[] range : ranges) {
+      Method method = new Method();
+      int label = range[0];
+      method.m_name = m_symbolTable.getLexeme(quads.getResult(label));
+      method.m_returnKind = typeKind(quads.getParam2(label), -1);
+      // the FPARAMs follow the LABEL; calls need their types before the callee is compiled
+      List<Integer> paramKinds = new ArrayList<Integer>();
+      for (int n = quads.next(label); n >= 0 && n < range[1] && quads.getTacCode(n) == TacCode.FPARAM; n = quads.next(n))
+        paramKinds.add(typeKind(quads.getParam2(n), INT));
+      method.m_paramKinds = new int[paramKinds.size()];
+      for (int k = 0; k < method.m_paramKinds.length; k++)
+        method.m_paramKinds[k] = paramKinds.get(k);
+      m_methodsBySymbol.put(quads.getResult(label), method);
+    }
+    for (int[] range : ranges)
+      new MethodCompiler(m_methodsBySymbol.get(quads.getResult(range[0])), quads, range[0], range[1]).compile();
+    return m_writer.toByteArray();
+  }
+
+  /* A static field for every global; the static initializer creates the arrays */
+  private void compileGlobals(QuadrupleList quads, int end) {
+    for (int n = quads.first(); n >= 0 && n < end; n = quads.next(n)) {
+      if (quads.getTacCode(n) != TacCode.VAR || m_globals.containsKey(quads.getResult(n)))
+        continue;
+      int kind = typeKind(quads.getParam2(n), INT);
+      int size = 0;
+      if (quads.getParam1(n) != QuadrupleList.NONE) {
+        size = Integer.parseInt(m_symbolTable.getLexeme(quads.getParam1(n)));
+        kind = kind == INT ? INT_ARRAY : REAL_ARRAY;
+      }
+      m_globals.put(quads.getResult(n), new int[] { kind, size });
+      m_writer.addField(ClassFileWriter.ACC_STATIC, m_symbolTable.getLexeme(quads.getResult(n)), DESCRIPTORS[kind]);
+    }
+
+    ClassFileWriter.Code code = m_writer.addMethod(ClassFileWriter.ACC_STATIC, "<clinit>", "()V");
+    for (Map.Entry<Integer, int[]> global : m_globals.entrySet()) {
+      int kind = global.getValue()[0];
+      if (kind < INT_ARRAY)
+        continue;
+      code.pushInt(global.getValue()[1]);
+      code.newArray(kind == INT_ARRAY ? ClassFileWriter.T_INT : ClassFileWriter.T_DOUBLE);
+      code.field(ClassFileWriter.PUTSTATIC, CLASS_NAME, m_symbolTable.getLexeme(global.getKey()), DESCRIPTORS[kind]);
+    }
+    code.op(ClassFileWriter.RETURN);
+    code.end(1, 0);
+  }
+
+  /* INT or REAL for the type symbol "int" or "real", otherwise the given default */
+  private int typeKind(int typeSymbol, int otherwise) {
+    if (typeSymbol == QuadrupleList.NONE)
+      return otherwise;
+    String type = m_symbolTable.getLexeme(typeSymbol);
+    if (type.equals("int"))
+      return INT;
+    if (type.equals("real"))
+      return REAL;
+    return otherwise;
+  }
+
+  private static boolean isRealLiteral(String lexeme) {
+    return lexeme.indexOf('.') >= 0 || lexeme.indexOf('E') >= 0 || lexeme.indexOf('e') >= 0;
+  }
+
+  /* Translates the quads of one method into the bytecode of a static method */
+  private class MethodCompiler {
+    private Method m_method;
+    private QuadrupleList m_quads;
+    private int m_from, m_to;
+    private ClassFileWriter.Code m_code;
+
+    // Locals, parameters and temps: { kind, JVM local slot, array size } by symbol id
+    private Map<Integer, int[]> m_locals = new LinkedHashMap<Integer, int[]>();
+    private int m_slots;
+    private int m_paramSlots;
+    private int m_maxArguments;
+
+    private Map<Integer, Integer> m_labels = new HashMap<Integer, Integer>();
+    private List<Integer> m_params = new ArrayList<Integer>();
+
+    MethodCompiler(Method method, QuadrupleList quads, int from, int to) {
+      m_method = method;
+      m_quads = quads;
+      m_from = from;
+      m_to = to;
+    }
+
+    void compile() {
+      declare();
+      m_code = m_writer.addMethod(ClassFileWriter.ACC_STATIC, m_method.m_name, m_method.descriptor());
+      // Locals start as 0, 0.0 or a new array, as on the TacVM; the verifier wants them set before they are read
+      for (int[] local : m_locals.values()) {
+        if (local[1] < m_paramSlots)
+          continue;
+        switch (local[0]) {
+          case INT:
+            m_code.pushInt(0);
+            m_code.local(ClassFileWriter.ISTORE, local[1]);
+            break;
+          case REAL:
+            m_code.pushDouble(0.0);
+            m_code.local(ClassFileWriter.DSTORE, local[1]);
+            break;
+          default:
+            m_code.pushInt(local[2]);
+            m_code.newArray(local[0] == INT_ARRAY ? ClassFileWriter.T_INT : ClassFileWriter.T_DOUBLE);
+            m_code.local(ClassFileWriter.ASTORE, local[1]);
+            break;
+        }
+      }
+
+      for (int n = m_quads.next(m_from); n >= 0 && n < m_to; n = m_quads.next(n))
+        translate(n);
+      returnZero();
+      // an array store of a converted real needs four slots; a call two per argument
+      m_code.end(Math.max(6, 2 * m_maxArguments + 2), Math.max(m_slots, 1));
+    }
+
+    /* Slots for the parameters first, in order, then for the VARs; a temp takes the type of the first quad computing it */
+    private void declare() {
+      Set<Integer> temps = new HashSet<Integer>();
+      for (int n = m_quads.next(m_from); n >= 0 && n < m_to && m_quads.getTacCode(n) == TacCode.FPARAM; n = m_quads.next(n))
+        local(m_quads.getResult(n), typeKind(m_quads.getParam2(n), INT), 0);
+      m_paramSlots = m_slots;
+      for (int n = m_quads.next(m_from); n >= 0 && n < m_to; n = m_quads.next(n)) {
+        TacCode code = m_quads.getTacCode(n);
+        int result = m_quads.getResult(n);
+        if (code == TacCode.FPARAM)
+          continue;
+        if (code == TacCode.VAR) {
+          if (m_quads.getParam2(n) == QuadrupleList.NONE)
+            temps.add(result);
+          else if (m_quads.getParam1(n) == QuadrupleList.NONE)
+            local(result, typeKind(m_quads.getParam2(n), INT), 0);
+          else
+            local(result, typeKind(m_quads.getParam2(n), INT) == INT ? INT_ARRAY : REAL_ARRAY,
+                  Integer.parseInt(m_symbolTable.getLexeme(m_quads.getParam1(n))));
+        }
+        else if (result != QuadrupleList.NONE && temps.contains(result) && !m_locals.containsKey(result))
+          local(result, resultKind(n), 0);
+      }
+      // temps that are never computed
+      for (Integer temp : temps)
+        if (!m_locals.containsKey(temp))
+          local(temp, INT, 0);
+    }
+
+    private void local(int symbol, int kind, int size) {
+      if (m_locals.containsKey(symbol))
+        return;
+      m_locals.put(symbol, new int[] { kind, m_slots, size });
+      m_slots += kind == REAL ? 2 : 1;
+    }
+
+    /* The kind of the value a quad computes */
+    private int resultKind(int n) {
+      switch (m_quads.getTacCode(n)) {
+        case ADD: case SUB: case MULT: case DIVIDE: case DIV: case MOD:
+          return kind(m_quads.getParam1(n)) == REAL || kind(m_quads.getParam2(n)) == REAL ? REAL : INT;
+        case UMINUS: case ASSIGN:
+          return kind(m_quads.getParam1(n)) == REAL ? REAL : INT;
+        case ARRAY_LOAD:
+          return kind(m_quads.getParam1(n)) == REAL_ARRAY ? REAL : INT;
+        case CALL:
+          Method callee = m_methodsBySymbol.get(m_quads.getParam1(n));
+          return callee != null && callee.m_returnKind == REAL ? REAL : INT;
+        default:
+          return INT;
+      }
+    }
+
+    /* The kind of a symbol as an operand: a local, a global or a constant */
+    private int kind(int symbol) {
+      int[] variable = m_locals.get(symbol);
+      if (variable == null)
+        variable = m_globals.get(symbol);
+      if (variable != null)
+        return variable[0];
+      return isRealLiteral(m_symbolTable.getLexeme(symbol)) ? REAL : INT;
+    }
+
+    private void translate(int n) {
+      TacCode code = m_quads.getTacCode(n);
+      int param1 = m_quads.getParam1(n);
+      int param2 = m_quads.getParam2(n);
+      int result = m_quads.getResult(n);
+      switch (code) {
+        case VAR: case FPARAM: case NOOP:
+          break;
+        case LABEL:
+          m_code.placeLabel(label(result));
+          break;
+        case GOTO:
+          m_code.jump(ClassFileWriter.GOTO, label(result));
+          break;
+        case ASSIGN:
+          if (kind(result) == REAL) {
+            pushReal(param1);
+            storeReal(result);
+          }
+          else {
+            pushInt(param1);
+            storeInt(result);
+          }
+          break;
+        case ADD: case SUB: case MULT: case DIVIDE: case DIV: case MOD:
+          arithmetic(code, param1, param2, result);
+          break;
+        case UMINUS:
+          if (kind(param1) == REAL) {
+            pushReal(param1);
+            m_code.op(ClassFileWriter.DNEG);
+            storeReal(result);
+          }
+          else {
+            pushInt(param1);
+            m_code.op(ClassFileWriter.INEG);
+            storeInt(result);
+          }
+          break;
+        case AND: case OR: case NOT:
+          logical(code, param1, param2, result);
+          break;
+        case LT: case LE: case GT: case GE: case EQ: case NE:
+          compare(code, param1, param2, result);
+          break;
+        case ARRAY_LOAD: {
+          int kind = pushArray(param1);
+          pushInt(param2);
+          if (kind == INT_ARRAY) {
+            m_code.op(ClassFileWriter.IALOAD);
+            storeInt(result);
+          }
+          else {
+            m_code.op(ClassFileWriter.DALOAD);
+            storeReal(result);
+          }
+          break;
+        }
+        case ARRAY_STORE: {
+          int kind = pushArray(result);
+          pushInt(param2);
+          if (kind == INT_ARRAY) {
+            pushInt(param1);
+            m_code.op(ClassFileWriter.IASTORE);
+          }
+          else {
+            pushReal(param1);
+            m_code.op(ClassFileWriter.DASTORE);
+          }
+          break;
+        }
+        case APARAM:
+          m_params.add(param1);
+          break;
+        case CALL:
+          call(param1, result);
+          break;
+        case RETURN:
+          if (param1 == QuadrupleList.NONE)
+            returnZero();
+          else if (m_method.m_returnKind == INT) {
+            pushInt(param1);
+            m_code.op(ClassFileWriter.IRETURN);
+          }
+          else if (m_method.m_returnKind == REAL) {
+            pushReal(param1);
+            m_code.op(ClassFileWriter.DRETURN);
+          }
+          else
+            m_code.op(ClassFileWriter.RETURN);
+          break;
+        default:
+          throw new IllegalStateException(m_method.m_name + ": cannot compile " + code);
+      }
+    }
+
+    private void returnZero() {
+      if (m_method.m_returnKind == INT) {
+        m_code.pushInt(0);
+        m_code.op(ClassFileWriter.IRETURN);
+      }
+      else if (m_method.m_returnKind == REAL) {
+        m_code.pushDouble(0.0);
+        m_code.op(ClassFileWriter.DRETURN);
+      }
+      else
+        m_code.op(ClassFileWriter.RETURN);
+    }
+
+    private void arithmetic(TacCode code, int param1, int param2, int result) {
+      int offset;
+      switch (code) {
+        case ADD: offset = ClassFileWriter.IADD; break;
+        case SUB: offset = ClassFileWriter.ISUB; break;
+        case MULT: offset = ClassFileWriter.IMUL; break;
+        case MOD: offset = ClassFileWriter.IREM; break;
+        default: offset = ClassFileWriter.IDIV; break;
+      }
+      if (kind(param1) == REAL || kind(param2) == REAL) {
+        pushReal(param1);
+        pushReal(param2);
+        // the double opcode of each operation comes three after the int one
+        m_code.op(offset + 3);
+        storeReal(result);
+      }
+      else {
+        pushInt(param1);
+        pushInt(param2);
+        m_code.op(offset);
+        storeInt(result);
+      }
+    }
+
+    /* AND, OR and NOT give 1 or 0 */
+    private void logical(TacCode code, int param1, int param2, int result) {
+      int other = m_code.newLabel();
+      int end = m_code.newLabel();
+      int jump = code == TacCode.OR ? ClassFileWriter.IFNE : ClassFileWriter.IFEQ;
+      pushInt(param1);
+      m_code.jump(jump, other);
+      if (code != TacCode.NOT) {
+        pushInt(param2);
+        m_code.jump(jump, other);
+      }
+      m_code.pushInt(code == TacCode.AND ? 1 : 0);
+      m_code.jump(ClassFileWriter.GOTO, end);
+      m_code.placeLabel(other);
+      m_code.pushInt(code == TacCode.AND ? 0 : 1);
+      m_code.placeLabel(end);
+      storeInt(result);
+    }
+
+    /* A comparison with NaN is false, except NE: DCMPG makes NaN greater for < and <=, DCMPL less for the others */
+    private void compare(TacCode code, int param1, int param2, int result) {
+      int offset = code.ordinal() - TacCode.LT.ordinal();
+      if (kind(param1) == REAL || kind(param2) == REAL) {
+        pushReal(param1);
+        pushReal(param2);
+        m_code.op(code == TacCode.LT || code == TacCode.LE ? ClassFileWriter.DCMPG : ClassFileWriter.DCMPL);
+        int[] jumps = { ClassFileWriter.IFLT, ClassFileWriter.IFLE, ClassFileWriter.IFGT, ClassFileWriter.IFGE,
+                        ClassFileWriter.IFEQ, ClassFileWriter.IFNE };
+        m_code.jump(jumps[offset], label(result));
+      }
+      else {
+        pushInt(param1);
+        pushInt(param2);
+        int[] jumps = { ClassFileWriter.IF_ICMPLT, ClassFileWriter.IF_ICMPLE, ClassFileWriter.IF_ICMPGT, ClassFileWriter.IF_ICMPGE,
+                        ClassFileWriter.IF_ICMPEQ, ClassFileWriter.IF_ICMPNE };
+        m_code.jump(jumps[offset], label(result));
+      }
+    }
+
+    /* APARAMs collected since the last call become the call's arguments, converted to the parameters' types */
+    private void call(int name, int result) {
+      Method callee = m_methodsBySymbol.get(name);
+      if (callee == null)
+        throw new IllegalStateException(m_method.m_name + ": call of undefined method " + m_symbolTable.getLexeme(name));
+      if (callee.m_paramKinds.length != m_params.size())
+        throw new IllegalStateException(m_method.m_name + ": " + callee.m_name + " called with " + m_params.size() + " arguments");
+      for (int k = 0; k < m_params.size(); k++) {
+        if (callee.m_paramKinds[k] == REAL)
+          pushReal(m_params.get(k));
+        else
+          pushInt(m_params.get(k));
+      }
+      m_maxArguments = Math.max(m_maxArguments, m_params.size());
+      m_params.clear();
+      m_code.invokeStatic(CLASS_NAME, callee.m_name, callee.descriptor());
+      if (callee.m_returnKind == INT) {
+        if (result != QuadrupleList.NONE)
+          storeInt(result);
+        else
+          m_code.op(ClassFileWriter.POP);
+      }
+      else if (callee.m_returnKind == REAL) {
+        if (result != QuadrupleList.NONE)
+          storeReal(result);
+        else
+          m_code.op(ClassFileWriter.POP2);
+      }
+    }
+
+    private int label(int symbol) {
+      Integer label = m_labels.get(symbol);
+      if (label == null) {
+        label = m_code.newLabel();
+        m_labels.put(symbol, label);
+      }
+      return label;
+    }
+
+    /* Pushes the value of symbol as an int: a local, a global or a constant, converted if it is a real */
+    private void pushInt(int symbol) {
+      int[] variable = m_locals.get(symbol);
+      if (variable != null && variable[0] == INT) {
+        m_code.local(ClassFileWriter.ILOAD, variable[1]);
+        return;
+      }
+      if (variable != null && variable[0] == REAL) {
+        m_code.local(ClassFileWriter.DLOAD, variable[1]);
+        m_code.op(ClassFileWriter.D2I);
+        return;
+      }
+      int[] global = m_globals.get(symbol);
+      if (variable == null && global != null && global[0] == INT) {
+        getGlobal(symbol, INT);
+        return;
+      }
+      if (variable == null && global != null && global[0] == REAL) {
+        getGlobal(symbol, REAL);
+        m_code.op(ClassFileWriter.D2I);
+        return;
+      }
+      if (variable != null || global != null)
+        throw new IllegalStateException(m_method.m_name + ": array " + m_symbolTable.getLexeme(symbol) + " used as a value");
+      String lexeme = m_symbolTable.getLexeme(symbol);
+      m_code.pushInt(isRealLiteral(lexeme) ? (int) Double.parseDouble(lexeme) : Integer.parseInt(lexeme));
+    }
+
+    private void pushReal(int symbol) {
+      int[] variable = m_locals.get(symbol);
+      if (variable != null && variable[0] == REAL) {
+        m_code.local(ClassFileWriter.DLOAD, variable[1]);
+        return;
+      }
+      if (variable != null && variable[0] == INT) {
+        m_code.local(ClassFileWriter.ILOAD, variable[1]);
+        m_code.op(ClassFileWriter.I2D);
+        return;
+      }
+      int[] global = m_globals.get(symbol);
+      if (variable == null && global != null && global[0] == REAL) {
+        getGlobal(symbol, REAL);
+        return;
+      }
+      if (variable == null && global != null && global[0] == INT) {
+        getGlobal(symbol, INT);
+        m_code.op(ClassFileWriter.I2D);
+        return;
+      }
+      if (variable != null || global != null)
+        throw new IllegalStateException(m_method.m_name + ": array " + m_symbolTable.getLexeme(symbol) + " used as a value");
+      m_code.pushDouble(Double.parseDouble(m_symbolTable.getLexeme(symbol)));
+    }
+
+    /* Stores the int on the stack into symbol, converting it if symbol is a real */
+    private void storeInt(int symbol) {
+      int[] variable = m_locals.get(symbol);
+      if (variable != null && variable[0] == INT)
+        m_code.local(ClassFileWriter.ISTORE, variable[1]);
+      else if (variable != null && variable[0] == REAL) {
+        m_code.op(ClassFileWriter.I2D);
+        m_code.local(ClassFileWriter.DSTORE, variable[1]);
+      }
+      else if (global(symbol) == INT)
+        putGlobal(symbol, INT);
+      else {
+        m_code.op(ClassFileWriter.I2D);
+        putGlobal(symbol, REAL);
+      }
+    }
+
+    private void storeReal(int symbol) {
+      int[] variable = m_locals.get(symbol);
+      if (variable != null && variable[0] == REAL)
+        m_code.local(ClassFileWriter.DSTORE, variable[1]);
+      else if (variable != null && variable[0] == INT) {
+        m_code.op(ClassFileWriter.D2I);
+        m_code.local(ClassFileWriter.ISTORE, variable[1]);
+      }
+      else if (global(symbol) == REAL)
+        putGlobal(symbol, REAL);
+      else {
+        m_code.op(ClassFileWriter.D2I);
+        putGlobal(symbol, INT);
+      }
+    }
+
+    /* The kind of a global scalar that is assigned to */
+    private int global(int symbol) {
+      int[] global = m_globals.get(symbol);
+      if (global == null || global[0] >= INT_ARRAY)
+        throw new IllegalStateException(m_method.m_name + ": cannot assign to " + m_symbolTable.getLexeme(symbol));
+      return global[0];
+    }
+
+    /* Pushes the reference of an array, local or global; returns its kind */
+    private int pushArray(int symbol) {
+      int[] variable = m_locals.get(symbol);
+      if (variable != null && variable[0] >= INT_ARRAY) {
+        m_code.local(ClassFileWriter.ALOAD, variable[1]);
+        return variable[0];
+      }
+      int[] global = m_globals.get(symbol);
+      if (variable != null || global == null || global[0] < INT_ARRAY)
+        throw new IllegalStateException(m_method.m_name + ": " + m_symbolTable.getLexeme(symbol) + " is not an array");
+      getGlobal(symbol, global[0]);
+      return global[0];
+    }
+
+    private void getGlobal(int symbol, int kind) {
+      m_code.field(ClassFileWriter.GETSTATIC, CLASS_NAME, m_symbolTable.getLexeme(symbol), DESCRIPTORS[kind]);
+    }
+
+    private void putGlobal(int symbol, int kind) {
+      m_code.field(ClassFileWriter.PUTSTATIC, CLASS_NAME, m_symbolTable.getLexeme(symbol), DESCRIPTORS[kind]);
+    }
+  }
+
+  // *** Running ***
+
+  /* Runs a method without parameters and returns its result: an Integer, a Double, or null for void */
+  public Number run(String methodName) {
+    SymbolTableEntry entry = m_symbolTable.lookup(methodName);
+    Method method = entry == null ? null : m_methodsBySymbol.get(entry.getId());
+    if (method == null)
+      throw new IllegalArgumentException("No method " + methodName);
+    if (method.m_paramKinds.length != 0)
+      throw new IllegalArgumentException(methodName + " takes parameters");
+    MethodHandle handle;
+    try {
+      handle = m_lookup.findStatic(m_lookup.lookupClass(), methodName, method.type());
+    }
+    catch (ReflectiveOperationException e) {
+      throw new IllegalStateException("Compiled class has no method " + methodName, e);
+    }
+    return (Number) invoke(handle);
+  }
+
+  /* The value of a global scalar, as an Integer or Double */
+  public Number getGlobal(String name) {
+    SymbolTableEntry entry = m_symbolTable.lookup(name);
+    int[] global = entry == null ? null : m_globals.get(entry.getId());
+    if (global == null || global[0] >= INT_ARRAY)
+      throw new IllegalArgumentException("No global variable " + name);
+    MethodHandle getter;
+    try {
+      getter = m_lookup.findStaticGetter(m_lookup.lookupClass(), name, global[0] == INT ? int.class : double.class);
+    }
+    catch (ReflectiveOperationException e) {
+      throw new IllegalStateException("Compiled class has no field " + name, e);
+    }
+    return (Number) invoke(getter);
+  }
+
+  /* Errors of the program (an ArithmeticException, an index out of bounds, a stack overflow) are thrown as they are */
+  private static Object invoke(MethodHandle handle) {
+    try {
+      return handle.invokeWithArguments();
+    }
+    catch (RuntimeException | Error e) {
+      throw e;
+    }
+    catch (Throwable e) {
+      throw new IllegalStateException(e);
+    }
+  }
+}
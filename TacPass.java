@@ -0,0 +1,12 @@
+/*
+  An optimization over the quads of one method, run by the Optimizer. A pass rewrites the list in
+  place: it marks quads removed, changes them, or queues insertions; the Optimizer compacts the
+  list between passes, so every pass starts from a list without gaps.
+*/
+public interface TacPass {
+
+  /* Short name for the optimization report */
+  String getName();
+
+  void run(QuadrupleList method, TacSymbols symbols);
+}
@@ -0,0 +1,87 @@
+import java.io.IOException;
+import java.util.*;
+
+/*
+  The in-memory TacSink: the quads of a compiled class, one QuadrupleList for the field declarations
+  and one per method, in source order.
+*/
+public class TacProgram implements TacSink {
+
+  private SymbolTable m_symbolTable;
+  private QuadrupleList m_globals;
+  private List<QuadrupleList> m_methods = new ArrayList<QuadrupleList>();
+  private QuadrupleList m_current;
+
+  public TacProgram(SymbolTable symbolTable) {
+    m_symbolTable = symbolTable;
+    m_current = new QuadrupleList(symbolTable);
+  }
+
+  public void quad(int code, int param1, int param2, int result) {
+    m_current.add(code, param1, param2, result);
+  }
+
+  public void endMethod() {
+    if (m_globals == null)
+      m_globals = m_current;
+    else
+      m_methods.add(m_current);
+    m_current = new QuadrupleList(m_symbolTable);
+  }
+
+  /* Adds a unit that was collected elsewhere, the list itself and not a copy; the first one added is the fields */
+  public void add(QuadrupleList unit) {
+    if (m_globals == null)
+      m_globals = unit;
+    else
+      m_methods.add(unit);
+  }
+
+  public void close() {
+    if (m_current.size() > 0)
+      endMethod();
+  }
+
+  public SymbolTable getSymbolTable() {
+    return m_symbolTable;
+  }
+
+  /* The VAR quads of the class's fields */
+  public QuadrupleList getGlobals() {
+    return m_globals == null ? new QuadrupleList(m_symbolTable) : m_globals;
+  }
+
+  /* One list per method; each starts with the method's LABEL */
+  public List<QuadrupleList> getMethods() {
+    return m_methods;
+  }
+
+  public int quadCount() {
+    int count = getGlobals().liveCount();
+    for (QuadrupleList method : m_methods)
+      count += method.liveCount();
+    return count;
+  }
+
+  /* Sends the program to another sink, one unit at a time as it was generated; does not close it */
+  public void writeTo(TacSink sink) throws IOException {
+    writeUnit(getGlobals(), sink);
+    for (QuadrupleList method : m_methods)
+      writeUnit(method, sink);
+  }
+
+  private static void writeUnit(QuadrupleList unit, TacSink sink) throws IOException {
+    for (int n = unit.first(); n >= 0; n = unit.next(n))
+      sink.quad(unit.getCode(n), unit.getParam1(n), unit.getParam2(n), unit.getResult(n));
+    sink.endMethod();
+  }
+
+  /* The whole program as one list: fields first, then the methods */
+  public QuadrupleList toQuadrupleList() {
+    QuadrupleList quads = new QuadrupleList(m_symbolTable, Math.max(1, quadCount()));
+    quads.addAll(getGlobals());
+    for (QuadrupleList method : m_methods)
+      quads.addAll(method);
+    return quads;
+  }
+}
@@ -0,0 +1,17 @@
+import java.io.IOException;
+
+/*
+  Where CodeGenerator sends the quads it generates. Operands are symbol table ids
+  (QuadrupleList.NONE for an unused operand).
+
+  endMethod() is called after the class's field declarations and after every method, so a sink can
+  flush or hand over one unit at a time instead of holding the whole program.
+*/
+public interface TacSink {
+
+  void quad(int code, int param1, int param2, int result) throws IOException;
+
+  void endMethod() throws IOException;
+
+  void close() throws IOException;
+}
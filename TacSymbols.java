@@ -0,0 +1,196 @@
+import java.util.Arrays;
+
+/*
+  What the optimization passes need to know about the operands of a method's quads: which symbols
+  are constants, which are the method's own variables, parameters and temps, which are fields of
+  the class, and their types. Kinds are kept in an array indexed by symbol id.
+
+  The fields are learnt once from the VAR quads of the class (declareGlobals), the locals again for
+  every method (declareMethod). A temp is a VAR without a type (see Parser.newTemp); it gets the
+  type of the first quad that computes it, the way TacVM types it. A temp computed by a CALL has
+  the callee's type, which is UNKNOWN here: the callee may not have been seen yet.
+*/
+public class TacSymbols {
+
+  public static final byte UNKNOWN = 0;
+  public static final byte INT = 1;
+  public static final byte REAL = 2;
+  public static final byte INT_ARRAY = 3;
+  public static final byte REAL_ARRAY = 4;
+
+  private static final byte LOCAL = 8;
+  private static final byte GLOBAL = 16;
+  private static final byte TEMP = 32;
+  private static final byte KIND = 7;
+
+  private SymbolTable m_symbolTable;
+  private byte[] m_kinds = new byte[256];
+  private byte[] m_localKinds = new byte[256];
+  private int[] m_locals = new int[64];
+  private int m_localCount;
+
+  public TacSymbols(SymbolTable symbolTable) {
+    m_symbolTable = symbolTable;
+  }
+
+  public SymbolTable getSymbolTable() {
+    return m_symbolTable;
+  }
+
+  /* Learns the class's fields from its VAR quads */
+  public void declareGlobals(QuadrupleList globals) {
+    for (int n = globals.first(); n >= 0; n = globals.next(n))
+      if (globals.getTacCode(n) == TacCode.VAR)
+        m_kinds = setKind(m_kinds, globals.getResult(n), (byte) (declaredKind(globals, n) | GLOBAL));
+  }
+
+  /* Forgets the previous method's locals and learns those of the given one from its FPARAM and VAR quads */
+  public void declareMethod(QuadrupleList method) {
+    for (int k = 0; k < m_localCount; k++)
+      m_localKinds[m_locals[k]] = UNKNOWN;
+    m_localCount = 0;
+    for (int n = method.first(); n >= 0; n = method.next(n)) {
+      TacCode code = method.getTacCode(n);
+      if (code != TacCode.VAR && code != TacCode.FPARAM)
+        continue;
+      int id = method.getResult(n);
+      if (id == QuadrupleList.NONE)
+        continue;
+      m_localKinds = setKind(m_localKinds, id, (byte) ((method.getParam2(n) == QuadrupleList.NONE ? TEMP : declaredKind(method, n)) | LOCAL));
+      if (m_localCount == m_locals.length)
+        m_locals = Arrays.copyOf(m_locals, m_localCount * 2);
+      m_locals[m_localCount++] = id;
+    }
+    for (int n = method.first(); n >= 0; n = method.next(n)) {
+      int id = method.getResult(n);
+      if (definesResult(method.getTacCode(n)) && isTemp(id) && (m_localKinds[id] & KIND) == UNKNOWN)
+        m_localKinds[id] |= computedKind(method, n);
+    }
+  }
+
+  /* The type of the value a quad computes, from the types of its operands */
+  private int computedKind(QuadrupleList quads, int n) {
+    switch (quads.getTacCode(n)) {
+      case ADD: case SUB: case MULT: case DIVIDE: case DIV: case MOD:
+        return kind(quads.getParam1(n)) == REAL || kind(quads.getParam2(n)) == REAL ? REAL : INT;
+      case UMINUS: case ASSIGN:
+        return kind(quads.getParam1(n)) == REAL ? REAL : INT;
+      case ARRAY_LOAD:
+        return kind(quads.getParam1(n)) == REAL_ARRAY ? REAL : INT;
+      case CALL:
+        return UNKNOWN;
+      default:
+        return INT;
+    }
+  }
+
+  private byte declaredKind(QuadrupleList quads, int n) {
+    boolean real = quads.getParam2(n) != QuadrupleList.NONE && m_symbolTable.getLexeme(quads.getParam2(n)).equals("real");
+    if (quads.getParam1(n) != QuadrupleList.NONE)
+      return real ? REAL_ARRAY : INT_ARRAY;
+    return real ? REAL : INT;
+  }
+
+  private static byte[] setKind(byte[] kinds, int id, byte kind) {
+    if (id >= kinds.length)
+      kinds = Arrays.copyOf(kinds, Math.max(id + 1, kinds.length * 2));
+    kinds[id] = kind;
+    return kinds;
+  }
+
+  /* A local hides a field of the same name */
+  private int flags(int id) {
+    if (id < 0)
+      return 0;
+    if (id < m_localKinds.length && m_localKinds[id] != UNKNOWN)
+      return m_localKinds[id];
+    return id < m_kinds.length ? m_kinds[id] : 0;
+  }
+
+  /* INT, REAL, INT_ARRAY or REAL_ARRAY for a variable or temp, INT or REAL for a constant; UNKNOWN otherwise */
+  public int kind(int id) {
+    int kind = flags(id) & KIND;
+    if (kind != UNKNOWN || !isConstant(id))
+      return kind;
+    return isRealConstant(id) ? REAL : INT;
+  }
+
+  public boolean isLocal(int id) {
+    return (flags(id) & LOCAL) != 0;
+  }
+
+  public boolean isGlobal(int id) {
+    return (flags(id) & GLOBAL) != 0;
+  }
+
+  public boolean isTemp(int id) {
+    return (flags(id) & TEMP) != 0;
+  }
+
+  /* True for a scalar variable or temp of the method, which nothing but the method's own quads can change */
+  public boolean isLocalScalar(int id) {
+    int flags = flags(id);
+    return (flags & LOCAL) != 0 && ((flags & TEMP) != 0 || (flags & KIND) == INT || (flags & KIND) == REAL);
+  }
+
+  /* A numeric literal: the lexer's, or one entered by a pass (which may start with '-') */
+  public boolean isConstant(int id) {
+    if (id < 0 || id >= m_symbolTable.size() || (flags(id) & (LOCAL | GLOBAL)) != 0)
+      return false;
+    String lexeme = m_symbolTable.getLexeme(id);
+    if (lexeme.isEmpty())
+      return false;
+    char c = lexeme.charAt(0);
+    if (c == '-' && lexeme.length() > 1)
+      c = lexeme.charAt(1);
+    return c >= '0' && c <= '9' || c == '.';
+  }
+
+  public boolean isRealConstant(int id) {
+    String lexeme = m_symbolTable.getLexeme(id);
+    return lexeme.indexOf('.') >= 0 || lexeme.indexOf('E') >= 0 || lexeme.indexOf('e') >= 0;
+  }
+
+  /* The value of a constant; a real constant is truncated the way an int variable stores it */
+  public int intValue(int id) {
+    return isRealConstant(id) ? (int) realValue(id) : Integer.parseInt(m_symbolTable.getLexeme(id));
+  }
+
+  public double realValue(int id) {
+    return Double.parseDouble(m_symbolTable.getLexeme(id));
+  }
+
+  /* The id of the constant with the given value, entering it in the symbol table if needed */
+  public int intConstant(int value) {
+    return m_symbolTable.insert(Integer.toString(value)).getId();
+  }
+
+  public int realConstant(double value) {
+    return m_symbolTable.insert(Double.toString(value)).getId();
+  }
+
+  public String getLexeme(int id) {
+    return id == QuadrupleList.NONE ? "-" : m_symbolTable.getLexeme(id);
+  }
+
+  /* LT .. NE: jump to result if param1 op param2 */
+  public static boolean isConditionalJump(TacCode code) {
+    return code.ordinal() >= TacCode.LT.ordinal() && code.ordinal() <= TacCode.NE.ordinal();
+  }
+
+  /* The LABEL that starts a method carries its return type */
+  public static boolean isMethodLabel(QuadrupleList quads, int n) {
+    return quads.getTacCode(n) == TacCode.LABEL && quads.getParam2(n) != QuadrupleList.NONE;
+  }
+
+  /* Quads that write their result operand as a scalar value */
+  public static boolean definesResult(TacCode code) {
+    switch (code) {
+      case UMINUS: case ASSIGN: case ADD: case SUB: case MULT: case DIVIDE: case DIV: case MOD:
+      case OR: case AND: case NOT: case CALL: case ARRAY_LOAD:
+        return true;
+      default:
+        return false;
+    }
+  }
+}
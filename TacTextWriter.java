@@ -0,0 +1,57 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+/*
+  Writes the human-readable quad listing: one line per quad, the TacCode and then param1, param2 and
+  result in fixed-width columns (blank where the operand is not used).
+*/
+public class TacTextWriter extends TacChannelWriter {
+
+  private static final TacCode[] TAC_CODES = TacCode.values();
+  private static final int CODE_WIDTH = 12;
+  private static final int OPERAND_WIDTH = 16;
+
+  public TacTextWriter(WritableByteChannel channel, boolean closeChannel, SymbolTable symbolTable) {
+    super(channel, closeChannel, symbolTable);
+  }
+
+  public TacTextWriter(WritableByteChannel channel, boolean closeChannel, SymbolTable symbolTable, ByteBuffer buffer) {
+    super(channel, closeChannel, symbolTable, buffer);
+  }
+
+  public void quad(int code, int param1, int param2, int result) throws IOException {
+    String name = TAC_CODES[code].name();
+    String lexeme1 = lexeme(param1);
+    String lexeme2 = lexeme(param2);
+    String lexemeResult = lexeme(result);
+    reserve(CODE_WIDTH + 2 * OPERAND_WIDTH + name.length() + lexeme1.length() + lexeme2.length() + lexemeResult.length() + 1);
+    int lineStart = m_buffer.position();
+    column(name, CODE_WIDTH);
+    column(lexeme1, OPERAND_WIDTH);
+    column(lexeme2, OPERAND_WIDTH);
+    put(lexemeResult);
+    // no padding after the last operand used
+    while (m_buffer.position() > lineStart && m_buffer.get(m_buffer.position() - 1) == ' ')
+      m_buffer.position(m_buffer.position() - 1);
+    m_buffer.put((byte) '\n');
+  }
+
+  private String lexeme(int id) {
+    return id == QuadrupleList.NONE ? "" : m_symbolTable.getLexeme(id);
+  }
+
+  private void column(String text, int width) {
+    put(text);
+    for (int n = text.length(); n < width; n++)
+      m_buffer.put((byte) ' ');
+    if (text.length() >= width)
+      m_buffer.put((byte) ' ');
+  }
+
+  /* Lexemes are plain ASCII (identifiers, numbers, generated names) */
+  private void put(String text) {
+    for (int n = 0; n < text.length(); n++)
+      m_buffer.put((byte) text.charAt(n));
+  }
+}
@@ -0,0 +1,853 @@
+import java.util.*;
+
+/*
+  A register machine that runs three-address code.
+
+  Loading translates the quads once into a flat int[] of typed instructions (op, a, b, c):
+  every variable, temp and constant of a method gets a slot in the method's int or double register
+  file, labels are resolved to instruction indexes, globals are read and written through explicit
+  load/store instructions, and int/real conversions are made explicit. Running is then a switch over
+  that array with no lookups and no boxing.
+
+  Frames live on flat register stacks (one int[], one double[] and two for array references); a
+  frame starts as a copy of its method's template, which holds the constants and the references of
+  the global arrays the method uses, so entering a method is a few array copies.
+
+  Conventions of the quads (see Parser): the method's LABEL carries its return type in param2, VAR and
+  FPARAM carry the type in param2 and an array size in param1, LT .. NE jump to result when
+  param1 op param2 holds, and the APARAMs of a call come right before its CALL.
+*/
+public class TacVM {
+
+  // Instructions: op, a, b, c. Registers are slots relative to the current frame.
+  private static final int IMOV = 0, DMOV = 1, I2D = 2, D2I = 3;
+  private static final int IADD = 4, ISUB = 5, IMUL = 6, IDIV = 7, IMOD = 8;
+  private static final int DADD = 9, DSUB = 10, DMUL = 11, DDIV = 12, DMOD = 13;
+  private static final int INEG = 14, DNEG = 15, IAND = 16, IOR = 17, INOT = 18;
+  private static final int IJLT = 19, IJLE = 20, IJGT = 21, IJGE = 22, IJEQ = 23, IJNE = 24;
+  private static final int DJLT = 25, DJLE = 26, DJGT = 27, DJGE = 28, DJEQ = 29, DJNE = 30;
+  private static final int JMP = 31;
+  private static final int GLDI = 32, GSTI = 33, GLDD = 34, GSTD = 35;
+  private static final int IALD = 36, IAST = 37, DALD = 38, DAST = 39;
+  private static final int CALL = 40, RET = 41, IRET = 42, DRET = 43;
+
+  // Kinds of variables
+  private static final int INT = 0, REAL = 1, INT_ARRAY = 2, REAL_ARRAY = 3;
+
+  // Argument conversions of a call
+  private static final int PASS_INT = 0, PASS_REAL = 1, INT_TO_REAL = 2, REAL_TO_INT = 3;
+
+  // Scratch registers per method and kind, for operands that are globals or need converting
+  private static final int SCRATCH = 4;
+
+  private static final int INITIAL_STACK = 1 << 12;
+
+  private SymbolTable m_symbolTable;
+  private int[] m_code = new int[1024];
+  private int m_codeSize;
+  private int[] m_callArgs = new int[64];
+  private int m_callArgsSize;
+
+  private List<Method> m_methods = new ArrayList<Method>();
+  private Map<Integer, Method> m_methodsBySymbol = new HashMap<Integer, Method>();
+
+  // Globals: kind and slot by symbol id
+  private Map<Integer, int[]> m_globals = new HashMap<Integer, int[]>();
+  private int[] m_globalInts = new int[0];
+  private double[] m_globalReals = new double[0];
+  private List<int[]> m_globalIntArrays = new ArrayList<int[]>();
+  private List<double[]> m_globalRealArrays = new ArrayList<double[]>();
+
+  private long m_executed;
+
+  /* What loading knows about a method */
+  private static class Method {
+    String m_name;
+    int m_index;
+    int m_returnKind = -1;       // INT, REAL or -1 for void
+    int m_entry;
+    int m_ints, m_reals, m_intArrays, m_realArrays;
+    int[] m_paramSlots;
+    int[] m_paramKinds;
+    int[] m_intTemplate;
+    double[] m_realTemplate;
+    int[][] m_intArrayTemplate;
+    double[][] m_realArrayTemplate;
+    int[] m_localIntArraySizes;  // by array slot, 0 for a global array
+    int[] m_localRealArraySizes;
+  }
+
+  public TacVM(QuadrupleList quads) {
+    m_symbolTable = quads.getSymbolTable();
+    load(quads);
+  }
+
+  public TacVM(TacProgram program) {
+    this(program.toQuadrupleList());
+  }
+
+  /* Number of instructions executed so far */
+  public long getExecutedCount() {
+    return m_executed;
+  }
+
+  /* Number of instructions the quads were translated into */
+  public int getInstructionCount() {
+    return m_codeSize / 4;
+  }
+
+  public boolean hasMethod(String name) {
+    SymbolTableEntry entry = m_symbolTable.lookup(name);
+    return entry != null && m_methodsBySymbol.containsKey(entry.getId());
+  }
+
+  // *** Loading ***
+
+  private void load(QuadrupleList quads) {
+    // Methods start at a LABEL that carries a return type, everything before the first is globals
+    List<int[]> ranges = new ArrayList<int[]>();
+    int globalsEnd = -1;
+    int start = -1;
+    for (int n = quads.first(); n >= 0; n = quads.next(n)) {
+      if (quads.getTacCode(n) == TacCode.LABEL && quads.getParam2(n) != QuadrupleList.NONE) {
+        if (start >= 0)
+          ranges.get(ranges.size() - 1)[1] = n;
+        else
+          globalsEnd = n;
+        ranges.add(new int[] { n, quads.size() });
+        start = n;
+      }
+    }
+    if (globalsEnd < 0)
+      globalsEnd = quads.size();
+
+    loadGlobals(quads, globalsEnd);
+    for (int[] range : ranges) {
+      Method method = new Method();
+      int label = range[0];
+      method.m_name = m_symbolTable.getLexeme(quads.getResult(label));
+      method.m_index = m_methods.size();
+      method.m_returnKind = typeKind(quads.getParam2(label), -1);
+      // the FPARAMs follow the LABEL; calls need their types before the callee is loaded
+      List<Integer> paramKinds = new ArrayList<Integer>();
+      for (int n = quads.next(label); n >= 0 && n < range[1] && quads.getTacCode(n) == TacCode.FPARAM; n = quads.next(n))
+        paramKinds.add(typeKind(quads.getParam2(n), INT));
+      method.m_paramKinds = toArray(paramKinds);
+      m_methods.add(method);
+      m_methodsBySymbol.put(quads.getResult(label), method);
+    }
+    for (int k = 0; k < ranges.size(); k++)
+      new MethodLoader(m_methods.get(k), quads, ranges.get(k)[0], ranges.get(k)[1]).load();
+  }
+
+  private void loadGlobals(QuadrupleList quads, int end) {
+    int ints = 0;
+    int reals = 0;
+    for (int n = quads.first(); n >= 0 && n < end; n = quads.next(n)) {
+      if (quads.getTacCode(n) != TacCode.VAR)
+        continue;
+      int kind = typeKind(quads.getParam2(n), INT);
+      int size = quads.getParam1(n) == QuadrupleList.NONE ? -1 : Integer.parseInt(m_symbolTable.getLexeme(quads.getParam1(n)));
+      int slot;
+      if (size >= 0 && kind == INT) {
+        kind = INT_ARRAY;
+        slot = m_globalIntArrays.size();
+        m_globalIntArrays.add(new int[size]);
+      }
+      else if (size >= 0) {
+        kind = REAL_ARRAY;
+        slot = m_globalRealArrays.size();
+        m_globalRealArrays.add(new double[size]);
+      }
+      else
+        slot = kind == INT ? ints++ : reals++;
+      m_globals.put(quads.getResult(n), new int[] { kind, slot });
+    }
+    m_globalInts = new int[ints];
+    m_globalReals = new double[reals];
+  }
+
+  /* INT or REAL for the type symbol "int" or "real", otherwise the given default */
+  private int typeKind(int typeSymbol, int otherwise) {
+    if (typeSymbol == QuadrupleList.NONE)
+      return otherwise;
+    String type = m_symbolTable.getLexeme(typeSymbol);
+    if (type.equals("int"))
+      return INT;
+    if (type.equals("real"))
+      return REAL;
+    return otherwise;
+  }
+
+  private int emit(int op, int a, int b, int c) {
+    if (m_codeSize + 4 > m_code.length)
+      m_code = Arrays.copyOf(m_code, m_code.length * 2);
+    int pc = m_codeSize;
+    m_code[pc] = op;
+    m_code[pc + 1] = a;
+    m_code[pc + 2] = b;
+    m_code[pc + 3] = c;
+    m_codeSize += 4;
+    return pc;
+  }
+
+  /* Translates the quads of one method */
+  private class MethodLoader {
+    private Method m_method;
+    private QuadrupleList m_quads;
+    private int m_from, m_to;
+
+    // Local variables, temps and constants: kind and slot by symbol id
+    private Map<Integer, int[]> m_locals = new HashMap<Integer, int[]>();
+    private List<Integer> m_intConstants = new ArrayList<Integer>();
+    private List<Integer> m_realConstantSlots = new ArrayList<Integer>();
+    private List<Double> m_realConstants = new ArrayList<Double>();
+    private List<Integer> m_localIntArraySizes = new ArrayList<Integer>();
+    private List<Integer> m_localRealArraySizes = new ArrayList<Integer>();
+    private List<int[]> m_intArrayGlobals = new ArrayList<int[]>();
+    private List<double[]> m_realArrayGlobals = new ArrayList<double[]>();
+    private int m_scratchInts, m_scratchReals;
+
+    private Map<Integer, Integer> m_labels = new HashMap<Integer, Integer>();
+    private List<int[]> m_jumps = new ArrayList<int[]>();   // { pc of the jump, label symbol }
+    private List<Integer> m_params = new ArrayList<Integer>();
+
+    MethodLoader(Method method, QuadrupleList quads, int from, int to) {
+      m_method = method;
+      m_quads = quads;
+      m_from = from;
+      m_to = to;
+    }
+
+    void load() {
+      declare();
+      m_scratchInts = m_method.m_ints;
+      m_scratchReals = m_method.m_reals;
+      m_method.m_ints += SCRATCH;
+      m_method.m_reals += SCRATCH;
+      m_method.m_entry = m_codeSize;
+
+      for (int n = m_quads.next(m_from); n >= 0 && n < m_to; n = m_quads.next(n))
+        translate(n);
+      emit(m_method.m_returnKind == INT ? IRET : m_method.m_returnKind == REAL ? DRET : RET,
+           constant(m_method.m_returnKind == REAL ? REAL : INT, "0"), 0, 0);
+
+      for (int[] jump : m_jumps) {
+        Integer target = m_labels.get(jump[1]);
+        if (target == null)
+          throw new IllegalStateException(m_method.m_name + ": jump to undefined label " + m_symbolTable.getLexeme(jump[1]));
+        m_code[jump[0] + 3] = target;
+      }
+      buildTemplates();
+    }
+
+    /* Gives every parameter, local and temp a slot; temps take the type of the first quad that defines them */
+    private void declare() {
+      List<Integer> params = new ArrayList<Integer>();
+      Set<Integer> temps = new HashSet<Integer>();
+      for (int n = m_quads.next(m_from); n >= 0 && n < m_to; n = m_quads.next(n)) {
+        TacCode code = m_quads.getTacCode(n);
+        int result = m_quads.getResult(n);
+        if (code == TacCode.FPARAM) {
+          params.add(local(result, typeKind(m_quads.getParam2(n), INT)));
+        }
+        else if (code == TacCode.VAR) {
+          if (m_quads.getParam2(n) == QuadrupleList.NONE)
+            temps.add(result);
+          else if (m_quads.getParam1(n) == QuadrupleList.NONE)
+            local(result, typeKind(m_quads.getParam2(n), INT));
+          else {
+            int size = Integer.parseInt(m_symbolTable.getLexeme(m_quads.getParam1(n)));
+            if (typeKind(m_quads.getParam2(n), INT) == INT) {
+              m_locals.put(result, new int[] { INT_ARRAY, m_method.m_intArrays++ });
+              m_localIntArraySizes.add(size);
+              m_intArrayGlobals.add(null);
+            }
+            else {
+              m_locals.put(result, new int[] { REAL_ARRAY, m_method.m_realArrays++ });
+              m_localRealArraySizes.add(size);
+              m_realArrayGlobals.add(null);
+            }
+          }
+        }
+        else if (result != QuadrupleList.NONE && temps.contains(result) && !m_locals.containsKey(result))
+          local(result, resultKind(n));
+      }
+      // temps that are never defined
+      for (Integer temp : temps)
+        if (!m_locals.containsKey(temp))
+          local(temp, INT);
+      m_method.m_paramSlots = toArray(params);
+    }
+
+    private int local(int symbol, int kind) {
+      int slot = kind == REAL ? m_method.m_reals++ : m_method.m_ints++;
+      m_locals.put(symbol, new int[] { kind, slot });
+      return slot;
+    }
+
+    /* The kind of the value a quad computes */
+    private int resultKind(int n) {
+      switch (m_quads.getTacCode(n)) {
+        case ADD: case SUB: case MULT: case DIVIDE: case DIV: case MOD:
+          return kind(m_quads.getParam1(n)) == REAL || kind(m_quads.getParam2(n)) == REAL ? REAL : INT;
+        case UMINUS: case ASSIGN:
+          return kind(m_quads.getParam1(n)) == REAL ? REAL : INT;
+        case ARRAY_LOAD:
+          return kind(m_quads.getParam1(n)) == REAL_ARRAY ? REAL : INT;
+        case CALL:
+          Method callee = m_methodsBySymbol.get(m_quads.getParam1(n));
+          return callee != null && callee.m_returnKind == REAL ? REAL : INT;
+        default:
+          return INT;
+      }
+    }
+
+    /* The kind of a symbol as an operand: a local, a global or a constant */
+    private int kind(int symbol) {
+      int[] variable = m_locals.get(symbol);
+      if (variable == null)
+        variable = m_globals.get(symbol);
+      if (variable != null)
+        return variable[0];
+      return isRealLiteral(m_symbolTable.getLexeme(symbol)) ? REAL : INT;
+    }
+
+    private void translate(int n) {
+      TacCode code = m_quads.getTacCode(n);
+      int param1 = m_quads.getParam1(n);
+      int param2 = m_quads.getParam2(n);
+      int result = m_quads.getResult(n);
+      switch (code) {
+        case VAR: case FPARAM: case NOOP:
+          break;
+        case LABEL:
+          m_labels.put(result, m_codeSize);
+          break;
+        case GOTO:
+          m_jumps.add(new int[] { emit(JMP, 0, 0, 0), result });
+          break;
+        case ASSIGN:
+          assign(result, param1);
+          break;
+        case ADD: case SUB: case MULT: case DIVIDE: case DIV: case MOD:
+          arithmetic(code, param1, param2, result);
+          break;
+        case UMINUS:
+          if (kind(param1) == REAL) {
+            int target = realTarget(result);
+            emit(DNEG, target, realOperand(param1, 0), 0);
+            storeReal(result, target);
+          }
+          else {
+            int target = intTarget(result);
+            emit(INEG, target, intOperand(param1, 0), 0);
+            storeInt(result, target);
+          }
+          break;
+        case AND: case OR: {
+          int target = intTarget(result);
+          emit(code == TacCode.AND ? IAND : IOR, target, intOperand(param1, 0), intOperand(param2, 1));
+          storeInt(result, target);
+          break;
+        }
+        case NOT: {
+          int target = intTarget(result);
+          emit(INOT, target, intOperand(param1, 0), 0);
+          storeInt(result, target);
+          break;
+        }
+        case LT: case LE: case GT: case GE: case EQ: case NE: {
+          int jump;
+          int offset = code.ordinal() - TacCode.LT.ordinal();
+          if (kind(param1) == REAL || kind(param2) == REAL)
+            jump = emit(DJLT + offset, realOperand(param1, 0), realOperand(param2, 1), 0);
+          else
+            jump = emit(IJLT + offset, intOperand(param1, 0), intOperand(param2, 1), 0);
+          m_jumps.add(new int[] { jump, result });
+          break;
+        }
+        case ARRAY_LOAD: {
+          int[] array = array(param1);
+          int index = intOperand(param2, 0);
+          if (array[0] == INT_ARRAY) {
+            int target = intTarget(result);
+            emit(IALD, target, array[1], index);
+            storeInt(result, target);
+          }
+          else {
+            int target = realTarget(result);
+            emit(DALD, target, array[1], index);
+            storeReal(result, target);
+          }
+          break;
+        }
+        case ARRAY_STORE: {
+          int[] array = array(result);
+          int index = intOperand(param2, 0);
+          if (array[0] == INT_ARRAY)
+            emit(IAST, array[1], index, intOperand(param1, 1));
+          else
+            emit(DAST, array[1], index, realOperand(param1, 1));
+          break;
+        }
+        case APARAM:
+          m_params.add(param1);
+          break;
+        case CALL:
+          call(param1, result);
+          break;
+        case RETURN:
+          if (m_method.m_returnKind == INT)
+            emit(IRET, param1 == QuadrupleList.NONE ? constant(INT, "0") : intOperand(param1, 0), 0, 0);
+          else if (m_method.m_returnKind == REAL)
+            emit(DRET, param1 == QuadrupleList.NONE ? constant(REAL, "0") : realOperand(param1, 0), 0, 0);
+          else
+            emit(RET, 0, 0, 0);
+          break;
+        default:
+          throw new IllegalStateException(m_method.m_name + ": cannot run " + code);
+      }
+    }
+
+    private void assign(int result, int value) {
+      int kind = kind(result);
+      if (kind == REAL) {
+        int target = realTarget(result);
+        int source = realOperand(value, 0);
+        if (source != target)
+          emit(DMOV, target, source, 0);
+        storeReal(result, target);
+      }
+      else {
+        int target = intTarget(result);
+        int source = intOperand(value, 0);
+        if (source != target)
+          emit(IMOV, target, source, 0);
+        storeInt(result, target);
+      }
+    }
+
+    private void arithmetic(TacCode code, int param1, int param2, int result) {
+      int offset;
+      switch (code) {
+        case ADD: offset = 0; break;
+        case SUB: offset = 1; break;
+        case MULT: offset = 2; break;
+        case MOD: offset = 4; break;
+        default: offset = 3; break;
+      }
+      if (kind(param1) == REAL || kind(param2) == REAL) {
+        int left = realOperand(param1, 0);
+        int right = realOperand(param2, 1);
+        if (kind(result) == REAL) {
+          int target = realTarget(result);
+          emit(DADD + offset, target, left, right);
+          storeReal(result, target);
+        }
+        else {
+          int target = m_scratchReals + 2;
+          emit(DADD + offset, target, left, right);
+          storeReal(result, target);
+        }
+      }
+      else {
+        int target = intTarget(result);
+        emit(IADD + offset, target, intOperand(param1, 0), intOperand(param2, 1));
+        storeInt(result, target);
+      }
+    }
+
+    /* APARAMs collected since the last call become the call's arguments */
+    private void call(int name, int result) {
+      Method callee = m_methodsBySymbol.get(name);
+      if (callee == null)
+        throw new IllegalStateException(m_method.m_name + ": call of undefined method " + m_symbolTable.getLexeme(name));
+      if (callee.m_paramKinds.length != m_params.size())
+        throw new IllegalStateException(m_method.m_name + ": " + callee.m_name + " called with " + m_params.size() + " arguments");
+      int descriptor = m_callArgsSize;
+      reserveCallArgs(1 + 2 * m_params.size());
+      m_callArgs[m_callArgsSize++] = m_params.size();
+      for (int k = 0; k < m_params.size(); k++) {
+        int argument = m_params.get(k);
+        int paramKind = callee.m_paramKinds[k];
+        int argumentKind = kind(argument) == REAL ? REAL : INT;
+        // Arguments are read when the call is made, so each one needs its own register
+        int register = argumentKind == REAL ? realOperand(argument, -1) : intOperand(argument, -1);
+        m_callArgs[m_callArgsSize++] = register;
+        m_callArgs[m_callArgsSize++] = paramKind == REAL ? (argumentKind == REAL ? PASS_REAL : INT_TO_REAL)
+                                                         : (argumentKind == REAL ? REAL_TO_INT : PASS_INT);
+      }
+      m_params.clear();
+      int target = -1;
+      if (result != QuadrupleList.NONE && callee.m_returnKind >= 0) {
+        int[] variable = m_locals.get(result);
+        if (variable != null && variable[0] == callee.m_returnKind)
+          target = variable[1];
+        else
+          throw new IllegalStateException(m_method.m_name + ": result of " + callee.m_name + " must go to a temp");
+      }
+      emit(CALL, callee.m_index, descriptor, target);
+    }
+
+    private void reserveCallArgs(int count) {
+      if (m_callArgsSize + count > m_callArgs.length)
+        m_callArgs = Arrays.copyOf(m_callArgs, Math.max(m_callArgs.length * 2, m_callArgsSize + count));
+    }
+
+    /*
+      The register holding the value of symbol as an int. Constants and locals are read in place;
+      globals and reals are loaded or converted into scratch register [scratch] (or, with scratch -1,
+      into a register of their own).
+    */
+    private int intOperand(int symbol, int scratch) {
+      int[] variable = m_locals.get(symbol);
+      if (variable != null && variable[0] == INT)
+        return variable[1];
+      int target = scratch >= 0 ? m_scratchInts + scratch : m_method.m_ints++;
+      if (variable != null && variable[0] == REAL) {
+        emit(D2I, target, variable[1], 0);
+        return target;
+      }
+      int[] global = m_globals.get(symbol);
+      if (global != null && global[0] == INT) {
+        emit(GLDI, target, global[1], 0);
+        return target;
+      }
+      if (global != null && global[0] == REAL) {
+        int real = m_scratchReals + 3;
+        emit(GLDD, real, global[1], 0);
+        emit(D2I, target, real, 0);
+        return target;
+      }
+      if (variable != null || global != null)
+        throw new IllegalStateException(m_method.m_name + ": array " + m_symbolTable.getLexeme(symbol) + " used as a value");
+      String lexeme = m_symbolTable.getLexeme(symbol);
+      if (isRealLiteral(lexeme)) {
+        emit(D2I, target, constant(REAL, lexeme), 0);
+        return target;
+      }
+      return constant(INT, lexeme);
+    }
+
+    private int realOperand(int symbol, int scratch) {
+      int[] variable = m_locals.get(symbol);
+      if (variable != null && variable[0] == REAL)
+        return variable[1];
+      int target = scratch >= 0 ? m_scratchReals + scratch : m_method.m_reals++;
+      if (variable != null && variable[0] == INT) {
+        emit(I2D, target, variable[1], 0);
+        return target;
+      }
+      int[] global = m_globals.get(symbol);
+      if (global != null && global[0] == REAL) {
+        emit(GLDD, target, global[1], 0);
+        return target;
+      }
+      if (global != null && global[0] == INT) {
+        int integer = m_scratchInts + 3;
+        emit(GLDI, integer, global[1], 0);
+        emit(I2D, target, integer, 0);
+        return target;
+      }
+      if (variable != null || global != null)
+        throw new IllegalStateException(m_method.m_name + ": array " + m_symbolTable.getLexeme(symbol) + " used as a value");
+      return constant(REAL, m_symbolTable.getLexeme(symbol));
+    }
+
+    /* The register an int result is computed into: the variable itself if it is a local int, scratch otherwise */
+    private int intTarget(int symbol) {
+      int[] variable = m_locals.get(symbol);
+      return variable != null && variable[0] == INT ? variable[1] : m_scratchInts + 2;
+    }
+
+    private int realTarget(int symbol) {
+      int[] variable = m_locals.get(symbol);
+      return variable != null && variable[0] == REAL ? variable[1] : m_scratchReals + 2;
+    }
+
+    /* Moves an int computed by intTarget(symbol) to where symbol lives */
+    private void storeInt(int symbol, int register) {
+      int[] variable = m_locals.get(symbol);
+      if (variable != null && variable[0] == INT)
+        return;
+      if (variable != null && variable[0] == REAL) {
+        emit(I2D, variable[1], register, 0);
+        return;
+      }
+      int[] global = global(symbol);
+      if (global[0] == INT)
+        emit(GSTI, global[1], register, 0);
+      else {
+        emit(I2D, m_scratchReals + 3, register, 0);
+        emit(GSTD, global[1], m_scratchReals + 3, 0);
+      }
+    }
+
+    private void storeReal(int symbol, int register) {
+      int[] variable = m_locals.get(symbol);
+      if (variable != null && variable[0] == REAL)
+        return;
+      if (variable != null && variable[0] == INT) {
+        emit(D2I, variable[1], register, 0);
+        return;
+      }
+      int[] global = global(symbol);
+      if (global[0] == REAL)
+        emit(GSTD, global[1], register, 0);
+      else {
+        emit(D2I, m_scratchInts + 3, register, 0);
+        emit(GSTI, global[1], m_scratchInts + 3, 0);
+      }
+    }
+
+    private int[] global(int symbol) {
+      int[] global = m_globals.get(symbol);
+      if (global == null || global[0] >= INT_ARRAY)
+        throw new IllegalStateException(m_method.m_name + ": cannot assign to " + m_symbolTable.getLexeme(symbol));
+      return global;
+    }
+
+    /* { kind, array slot } of an array; a global array gets a slot whose template holds the global's reference */
+    private int[] array(int symbol) {
+      int[] variable = m_locals.get(symbol);
+      if (variable != null && variable[0] >= INT_ARRAY)
+        return variable;
+      int[] global = m_globals.get(symbol);
+      if (global == null || global[0] < INT_ARRAY)
+        throw new IllegalStateException(m_method.m_name + ": " + m_symbolTable.getLexeme(symbol) + " is not an array");
+      if (global[0] == INT_ARRAY) {
+        variable = new int[] { INT_ARRAY, m_method.m_intArrays++ };
+        m_localIntArraySizes.add(0);
+        m_intArrayGlobals.add(m_globalIntArrays.get(global[1]));
+      }
+      else {
+        variable = new int[] { REAL_ARRAY, m_method.m_realArrays++ };
+        m_localRealArraySizes.add(0);
+        m_realArrayGlobals.add(m_globalRealArrays.get(global[1]));
+      }
+      m_locals.put(symbol, variable);
+      return variable;
+    }
+
+    /* A register holding the constant; the method's template puts the value there on every call */
+    private int constant(int kind, String lexeme) {
+      if (kind == REAL) {
+        m_realConstantSlots.add(m_method.m_reals);
+        m_realConstants.add(Double.parseDouble(lexeme));
+        return m_method.m_reals++;
+      }
+      m_intConstants.add(m_method.m_ints);
+      m_intConstants.add(isRealLiteral(lexeme) ? (int) Double.parseDouble(lexeme) : Integer.parseInt(lexeme));
+      return m_method.m_ints++;
+    }
+
+    private void buildTemplates() {
+      m_method.m_intTemplate = new int[m_method.m_ints];
+      for (int k = 0; k < m_intConstants.size(); k += 2)
+        m_method.m_intTemplate[m_intConstants.get(k)] = m_intConstants.get(k + 1);
+      m_method.m_realTemplate = new double[m_method.m_reals];
+      for (int k = 0; k < m_realConstants.size(); k++)
+        m_method.m_realTemplate[m_realConstantSlots.get(k)] = m_realConstants.get(k);
+      m_method.m_intArrayTemplate = m_intArrayGlobals.toArray(new int[m_intArrayGlobals.size()][]);
+      m_method.m_realArrayTemplate = m_realArrayGlobals.toArray(new double[m_realArrayGlobals.size()][]);
+      m_method.m_localIntArraySizes = toArray(m_localIntArraySizes);
+      m_method.m_localRealArraySizes = toArray(m_localRealArraySizes);
+    }
+  }
+
+  private static boolean isRealLiteral(String lexeme) {
+    return lexeme.indexOf('.') >= 0 || lexeme.indexOf('E') >= 0 || lexeme.indexOf('e') >= 0;
+  }
+
+  private static int[] toArray(List<Integer> values) {
+    int[] array = new int[values.size()];
+    for (int k = 0; k < array.length; k++)
+      array[k] = values.get(k);
+    return array;
+  }
+
+  // *** Running ***
+
+  /* Runs a method without parameters and returns its result: an Integer, a Double, or null for void */
+  public Number run(String methodName) {
+    SymbolTableEntry entry = m_symbolTable.lookup(methodName);
+    Method method = entry == null ? null : m_methodsBySymbol.get(entry.getId());
+    if (method == null)
+      throw new IllegalArgumentException("No method " + methodName);
+    if (method.m_paramSlots.length != 0)
+      throw new IllegalArgumentException(methodName + " takes parameters");
+
+    int[] code = m_code;
+    int[] callArgs = m_callArgs;
+    Method[] methods = m_methods.toArray(new Method[m_methods.size()]);
+    int[] globalInts = m_globalInts;
+    double[] globalReals = m_globalReals;
+
+    int[] ints = new int[Math.max(INITIAL_STACK, method.m_ints)];
+    double[] reals = new double[Math.max(INITIAL_STACK, method.m_reals)];
+    int[][] intArrays = new int[Math.max(INITIAL_STACK, method.m_intArrays)][];
+    double[][] realArrays = new double[Math.max(INITIAL_STACK, method.m_realArrays)][];
+    // Per active call: return pc, method index, result register, and the caller's four frame bases
+    int[] frames = new int[7 * 64];
+    int depth = 0;
+
+    int ib = 0, rb = 0, iab = 0, rab = 0;
+    enter(method, ints, reals, intArrays, realArrays, ib, rb, iab, rab);
+    Method current = method;
+    int pc = method.m_entry;
+    long executed = 0;
+
+    try {
+      while (true) {
+        int a = code[pc + 1];
+        int b = code[pc + 2];
+        int c = code[pc + 3];
+        int op = code[pc];
+        pc += 4;
+        executed++;
+        switch (op) {
+          case IMOV: ints[ib + a] = ints[ib + b]; break;
+          case DMOV: reals[rb + a] = reals[rb + b]; break;
+          case I2D: reals[rb + a] = ints[ib + b]; break;
+          case D2I: ints[ib + a] = (int) reals[rb + b]; break;
+          case IADD: ints[ib + a] = ints[ib + b] + ints[ib + c]; break;
+          case ISUB: ints[ib + a] = ints[ib + b] - ints[ib + c]; break;
+          case IMUL: ints[ib + a] = ints[ib + b] * ints[ib + c]; break;
+          case IDIV: ints[ib + a] = ints[ib + b] / ints[ib + c]; break;
+          case IMOD: ints[ib + a] = ints[ib + b] % ints[ib + c]; break;
+          case DADD: reals[rb + a] = reals[rb + b] + reals[rb + c]; break;
+          case DSUB: reals[rb + a] = reals[rb + b] - reals[rb + c]; break;
+          case DMUL: reals[rb + a] = reals[rb + b] * reals[rb + c]; break;
+          case DDIV: reals[rb + a] = reals[rb + b] / reals[rb + c]; break;
+          case DMOD: reals[rb + a] = reals[rb + b] % reals[rb + c]; break;
+          case INEG: ints[ib + a] = -ints[ib + b]; break;
+          case DNEG: reals[rb + a] = -reals[rb + b]; break;
+          case IAND: ints[ib + a] = ints[ib + b] != 0 && ints[ib + c] != 0 ? 1 : 0; break;
+          case IOR: ints[ib + a] = ints[ib + b] != 0 || ints[ib + c] != 0 ? 1 : 0; break;
+          case INOT: ints[ib + a] = ints[ib + b] == 0 ? 1 : 0; break;
+          case IJLT: if (ints[ib + a] < ints[ib + b]) pc = c; break;
+          case IJLE: if (ints[ib + a] <= ints[ib + b]) pc = c; break;
+          case IJGT: if (ints[ib + a] > ints[ib + b]) pc = c; break;
+          case IJGE: if (ints[ib + a] >= ints[ib + b]) pc = c; break;
+          case IJEQ: if (ints[ib + a] == ints[ib + b]) pc = c; break;
+          case IJNE: if (ints[ib + a] != ints[ib + b]) pc = c; break;
+          case DJLT: if (reals[rb + a] < reals[rb + b]) pc = c; break;
+          case DJLE: if (reals[rb + a] <= reals[rb + b]) pc = c; break;
+          case DJGT: if (reals[rb + a] > reals[rb + b]) pc = c; break;
+          case DJGE: if (reals[rb + a] >= reals[rb + b]) pc = c; break;
+          case DJEQ: if (reals[rb + a] == reals[rb + b]) pc = c; break;
+          case DJNE: if (reals[rb + a] != reals[rb + b]) pc = c; break;
+          case JMP: pc = c; break;
+          case GLDI: ints[ib + a] = globalInts[b]; break;
+          case GSTI: globalInts[a] = ints[ib + b]; break;
+          case GLDD: reals[rb + a] = globalReals[b]; break;
+          case GSTD: globalReals[a] = reals[rb + b]; break;
+          case IALD: ints[ib + a] = intArrays[iab + b][ints[ib + c]]; break;
+          case IAST: intArrays[iab + a][ints[ib + b]] = ints[ib + c]; break;
+          case DALD: reals[rb + a] = realArrays[rab + b][ints[ib + c]]; break;
+          case DAST: realArrays[rab + a][ints[ib + b]] = reals[rb + c]; break;
+          case CALL: {
+            Method callee = methods[a];
+            int nib = ib + current.m_ints;
+            int nrb = rb + current.m_reals;
+            int niab = iab + current.m_intArrays;
+            int nrab = rab + current.m_realArrays;
+            if (nib + callee.m_ints > ints.length)
+              ints = Arrays.copyOf(ints, Math.max(ints.length * 2, nib + callee.m_ints));
+            if (nrb + callee.m_reals > reals.length)
+              reals = Arrays.copyOf(reals, Math.max(reals.length * 2, nrb + callee.m_reals));
+            if (niab + callee.m_intArrays > intArrays.length)
+              intArrays = Arrays.copyOf(intArrays, Math.max(intArrays.length * 2, niab + callee.m_intArrays));
+            if (nrab + callee.m_realArrays > realArrays.length)
+              realArrays = Arrays.copyOf(realArrays, Math.max(realArrays.length * 2, nrab + callee.m_realArrays));
+            enter(callee, ints, reals, intArrays, realArrays, nib, nrb, niab, nrab);
+
+            int count = callArgs[b];
+            for (int k = 0; k < count; k++) {
+              int register = callArgs[b + 1 + 2 * k];
+              int slot = callee.m_paramSlots[k];
+              switch (callArgs[b + 2 + 2 * k]) {
+                case PASS_INT: ints[nib + slot] = ints[ib + register]; break;
+                case PASS_REAL: reals[nrb + slot] = reals[rb + register]; break;
+                case INT_TO_REAL: reals[nrb + slot] = ints[ib + register]; break;
+                default: ints[nib + slot] = (int) reals[rb + register]; break;
+              }
+            }
+
+            if (depth * 7 + 7 > frames.length)
+              frames = Arrays.copyOf(frames, frames.length * 2);
+            int f = depth++ * 7;
+            frames[f] = pc;
+            frames[f + 1] = current.m_index;
+            frames[f + 2] = c;
+            frames[f + 3] = ib;
+            frames[f + 4] = rb;
+            frames[f + 5] = iab;
+            frames[f + 6] = rab;
+            ib = nib;
+            rb = nrb;
+            iab = niab;
+            rab = nrab;
+            current = callee;
+            pc = callee.m_entry;
+            break;
+          }
+          case RET: case IRET: case DRET: {
+            int intValue = op == IRET ? ints[ib + a] : 0;
+            double realValue = op == DRET ? reals[rb + a] : 0;
+            // drop the references of the frame's arrays so they can be collected
+            Arrays.fill(intArrays, iab, iab + current.m_intArrays, null);
+            Arrays.fill(realArrays, rab, rab + current.m_realArrays, null);
+            if (depth == 0)
+              return op == IRET ? (Number) Integer.valueOf(intValue) : op == DRET ? (Number) Double.valueOf(realValue) : null;
+            int f = --depth * 7;
+            pc = frames[f];
+            current = methods[frames[f + 1]];
+            int target = frames[f + 2];
+            ib = frames[f + 3];
+            rb = frames[f + 4];
+            iab = frames[f + 5];
+            rab = frames[f + 6];
+            if (target >= 0) {
+              if (op == IRET)
+                ints[ib + target] = intValue;
+              else
+                reals[rb + target] = realValue;
+            }
+            break;
+          }
+          default:
+            throw new IllegalStateException("Bad instruction " + op + " at " + (pc - 4));
+        }
+      }
+    }
+    finally {
+      m_executed += executed;
+    }
+  }
+
+  /* Sets up a frame of method at the given bases: constants and global array references from the template, fresh local arrays */
+  private static void enter(Method method, int[] ints, double[] reals, int[][] intArrays, double[][] realArrays,
+                            int ib, int rb, int iab, int rab) {
+    System.arraycopy(method.m_intTemplate, 0, ints, ib, method.m_ints);
+    System.arraycopy(method.m_realTemplate, 0, reals, rb, method.m_reals);
+    System.arraycopy(method.m_intArrayTemplate, 0, intArrays, iab, method.m_intArrays);
+    System.arraycopy(method.m_realArrayTemplate, 0, realArrays, rab, method.m_realArrays);
+    for (int k = 0; k < method.m_localIntArraySizes.length; k++)
+      if (method.m_localIntArraySizes[k] > 0)
+        intArrays[iab + k] = new int[method.m_localIntArraySizes[k]];
+    for (int k = 0; k < method.m_localRealArraySizes.length; k++)
+      if (method.m_localRealArraySizes[k] > 0)
+        realArrays[rab + k] = new double[method.m_localRealArraySizes[k]];
+  }
+
+  /* The value of a global scalar, as an Integer or Double */
+  public Number getGlobal(String name) {
+    SymbolTableEntry entry = m_symbolTable.lookup(name);
+    int[] global = entry == null ? null : m_globals.get(entry.getId());
+    if (global == null || global[0] >= INT_ARRAY)
+      throw new IllegalArgumentException("No global variable " + name);
+    return global[0] == INT ? (Number) Integer.valueOf(m_globalInts[global[1]]) : (Number) Double.valueOf(m_globalReals[global[1]]);
+  }
+}
@@ -0,0 +1,367 @@
+import java.util.Arrays;
+
+/*
+  Temp reuse: renames a method's temps onto as few as the overlap of their live ranges allows.
+
+  Parser.newTemp gives every subexpression a temp of its own, with a VAR, while most temps are
+  read once right after they are computed. This pass finds each temp's live range and gives temps
+  whose ranges do not overlap the same name, one of their own; the VARs of the others go away, and
+  with them the registers TacVM gives every temp.
+
+  A live range is taken as the interval from the first to the last quad where the temp is live:
+  where it is read or written, and across every block (see ControlFlowGraph) it is live into or
+  out of, found by walking back from each read to the writes that reach it. Temps are then given
+  names in order of their intervals' starts (interval coloring), each the name of a temp whose
+  interval ended before, so a method needs as many as it has intervals overlapping at one point.
+
+  Ints and reals never share a name. Only temps every write of which has a type known here are
+  renamed: the callee of a CALL, and so the type of its result, may not have been seen yet (see
+  TacSymbols). A renamed temp's type comes from its first write, so the names keep the VARs that
+  come first, and each name's VAR comes before its first write. This pass should come last: the
+  types TacSymbols learnt for the temps are not updated.
+*/
+public class TempAllocator implements TacPass {
+
+  private static final int NONE = -1;
+
+  private QuadrupleList m_quads;
+  private TacSymbols m_symbols;
+
+  // By symbol id: index of the temp among the method's temps, NONE if not one; m_temps undoes it
+  private int[] m_index = new int[256];
+  private int[] m_temps = new int[64];
+  private int m_tempCount;
+
+  // The quads each temp occurs in, in order, with whether it writes the temp there
+  private int[] m_occurrenceStart;
+  private int[] m_occurrences;
+  private boolean[] m_writes;
+  private boolean[] m_renamable;
+
+  // By temp: its live interval
+  private int[] m_start;
+  private int[] m_end;
+
+  public TempAllocator() {
+    Arrays.fill(m_index, NONE);
+  }
+
+  public String getName() {
+    return "temps";
+  }
+
+  public void run(QuadrupleList quads, TacSymbols symbols) {
+    m_quads = quads;
+    m_symbols = symbols;
+    findTemps();
+    if (m_tempCount > 1) {
+      findOccurrences();
+      findIntervals();
+      rename(color());
+    }
+    for (int k = 0; k < m_tempCount; k++)
+      m_index[m_temps[k]] = NONE;
+    m_tempCount = 0;
+  }
+
+  /* The temps of the method with a scalar type */
+  private void findTemps() {
+    for (int n = m_quads.first(); n >= 0; n = m_quads.next(n)) {
+      int id = m_quads.getResult(n);
+      if (m_quads.getTacCode(n) != TacCode.VAR || !m_symbols.isTemp(id))
+        continue;
+      int kind = m_symbols.kind(id);
+      if (kind != TacSymbols.INT && kind != TacSymbols.REAL)
+        continue;
+      if (id >= m_index.length) {
+        int length = m_index.length;
+        m_index = Arrays.copyOf(m_index, Math.max(id + 1, length * 2));
+        Arrays.fill(m_index, length, m_index.length, NONE);
+      }
+      if (m_index[id] != NONE)
+        continue;
+      if (m_tempCount == m_temps.length)
+        m_temps = Arrays.copyOf(m_temps, m_tempCount * 2);
+      m_index[id] = m_tempCount;
+      m_temps[m_tempCount++] = id;
+    }
+  }
+
+  private int temp(int id) {
+    return id >= 0 && id < m_index.length ? m_index[id] : NONE;
+  }
+
+  private static boolean isDeclaration(TacCode code) {
+    return code == TacCode.VAR || code == TacCode.FPARAM || code == TacCode.LABEL;
+  }
+
+  /* Lists the reads and writes of every temp; a temp written by a quad whose type is not known here is not renamed */
+  private void findOccurrences() {
+    int[] counts = new int[m_tempCount];
+    for (int pass = 0; pass < 2; pass++) {
+      for (int n = m_quads.first(); n >= 0; n = m_quads.next(n)) {
+        TacCode code = m_quads.getTacCode(n);
+        if (isDeclaration(code))
+          continue;
+        boolean writes = TacSymbols.definesResult(code);
+        occur(pass, counts, n, m_quads.getParam1(n), false);
+        occur(pass, counts, n, m_quads.getParam2(n), false);
+        occur(pass, counts, n, m_quads.getResult(n), writes);
+        int temp = writes ? temp(m_quads.getResult(n)) : NONE;
+        if (pass == 1 && temp != NONE && !isTyped(n, code))
+          m_renamable[temp] = false;
+      }
+      if (pass == 0) {
+        m_occurrenceStart = new int[m_tempCount + 1];
+        for (int k = 0; k < m_tempCount; k++)
+          m_occurrenceStart[k + 1] = m_occurrenceStart[k] + counts[k];
+        m_occurrences = new int[m_occurrenceStart[m_tempCount]];
+        m_writes = new boolean[m_occurrences.length];
+        m_renamable = new boolean[m_tempCount];
+        Arrays.fill(m_renamable, true);
+        counts = Arrays.copyOf(m_occurrenceStart, m_tempCount);
+      }
+    }
+    // A temp never written keeps its name: TacVM gives it a register of its own
+    for (int k = 0; k < m_tempCount; k++) {
+      boolean written = false;
+      for (int o = m_occurrenceStart[k]; o < m_occurrenceStart[k + 1]; o++)
+        written |= m_writes[o];
+      m_renamable[k] &= written;
+    }
+  }
+
+  private void occur(int pass, int[] counts, int n, int id, boolean writes) {
+    int temp = temp(id);
+    if (temp == NONE)
+      return;
+    if (pass == 0) {
+      counts[temp]++;
+      return;
+    }
+    // a quad reading and writing the same temp is listed twice, the read first
+    int slot = counts[temp];
+    m_occurrences[slot] = n;
+    m_writes[slot] = writes;
+    counts[temp]++;
+  }
+
+  /* True if the type of what the quad computes is known from its operands */
+  private boolean isTyped(int n, TacCode code) {
+    switch (code) {
+      case CALL:
+        return false;
+      case ADD: case SUB: case MULT: case DIVIDE: case DIV: case MOD:
+        return m_symbols.kind(m_quads.getParam1(n)) != TacSymbols.UNKNOWN && m_symbols.kind(m_quads.getParam2(n)) != TacSymbols.UNKNOWN;
+      case UMINUS: case ASSIGN:
+        return m_symbols.kind(m_quads.getParam1(n)) != TacSymbols.UNKNOWN;
+      default:
+        return true;
+    }
+  }
+
+  /*
+    The live interval of every temp to be renamed. Most temps are written and then read within one
+    straight run of quads: their interval is from the first to the last. The graph is built only
+    for the others, see walkBack().
+  */
+  private void findIntervals() {
+    // Runs of quads no jump enters or leaves but at their ends, numbered in order
+    int[] runs = new int[m_quads.size()];
+    int run = 0;
+    for (int n = m_quads.first(); n >= 0; n = m_quads.next(n)) {
+      TacCode code = m_quads.getTacCode(n);
+      if (code == TacCode.LABEL)
+        run++;
+      runs[n] = run;
+      if (code == TacCode.GOTO || code == TacCode.RETURN || TacSymbols.isConditionalJump(code))
+        run++;
+    }
+
+    m_start = new int[m_tempCount];
+    m_end = new int[m_tempCount];
+    boolean straight = true;
+    for (int temp = 0; temp < m_tempCount; temp++) {
+      int from = m_occurrenceStart[temp];
+      int to = m_occurrenceStart[temp + 1];
+      if (!m_renamable[temp] || from == to) {
+        m_renamable[temp] = false;
+        continue;
+      }
+      m_start[temp] = m_occurrences[from];
+      m_end[temp] = m_occurrences[to - 1];
+      if (!m_writes[from] || runs[m_start[temp]] != runs[m_end[temp]])
+        straight = false;
+    }
+    if (!straight)
+      walkBack(runs);
+  }
+
+  /*
+    Widens the intervals of the temps live across blocks. A temp read in a block before any write
+    there is live into it; walking back through the predecessors, it is live out of each of them,
+    and into those that do not write it.
+  */
+  private void walkBack(int[] runs) {
+    ControlFlowGraph graph = new ControlFlowGraph(m_quads);
+    int blocks = graph.getBlockCount();
+    int[] writtenIn = new int[blocks];
+    int[] liveIn = new int[blocks];
+    Arrays.fill(writtenIn, NONE);
+    Arrays.fill(liveIn, NONE);
+    int[] work = new int[Math.max(1, blocks)];
+
+    for (int temp = 0; temp < m_tempCount; temp++) {
+      int from = m_occurrenceStart[temp];
+      int to = m_occurrenceStart[temp + 1];
+      if (!m_renamable[temp] || m_writes[from] && runs[m_start[temp]] == runs[m_end[temp]])
+        continue;
+      int start = m_start[temp];
+      int end = m_end[temp];
+      for (int o = from; o < to; o++)
+        if (m_writes[o])
+          writtenIn[graph.getBlockOf(m_occurrences[o])] = temp;
+
+      int block = NONE;
+      boolean written = false;
+      for (int o = from; o < to; o++) {
+        int b = graph.getBlockOf(m_occurrences[o]);
+        if (b != block) {
+          block = b;
+          written = false;
+        }
+        if (m_writes[o]) {
+          written = true;
+          continue;
+        }
+        if (written || liveIn[b] == temp)
+          continue;
+        // Upward exposed: walk back to the writes
+        liveIn[b] = temp;
+        int top = 0;
+        work[top++] = b;
+        while (top > 0) {
+          int live = work[--top];
+          start = Math.min(start, graph.getBlockStart(live));
+          for (int p = 0; p < graph.getPredecessorCount(live); p++) {
+            int predecessor = graph.getPredecessor(live, p);
+            end = Math.max(end, graph.getBlockEnd(predecessor) - 1);
+            if (writtenIn[predecessor] != temp && liveIn[predecessor] != temp) {
+              liveIn[predecessor] = temp;
+              work[top++] = predecessor;
+            }
+          }
+        }
+      }
+      m_start[temp] = start;
+      m_end[temp] = end;
+    }
+  }
+
+  /* Gives the renamed temps names by interval coloring; returns by temp the slot it gets, NONE if not renamed */
+  private int[] color() {
+    int size = m_quads.size();
+    int[] startsAt = new int[size + 1];
+    int[] endsAt = new int[size + 1];
+    for (int temp = 0; temp < m_tempCount; temp++) {
+      if (m_renamable[temp]) {
+        startsAt[m_start[temp] + 1]++;
+        endsAt[m_end[temp] + 1]++;
+      }
+    }
+    for (int n = 0; n < size; n++) {
+      startsAt[n + 1] += startsAt[n];
+      endsAt[n + 1] += endsAt[n];
+    }
+    int[] starting = new int[startsAt[size]];
+    int[] ending = new int[endsAt[size]];
+    int[] fillStarts = Arrays.copyOf(startsAt, size);
+    int[] fillEnds = Arrays.copyOf(endsAt, size);
+    for (int temp = 0; temp < m_tempCount; temp++) {
+      if (m_renamable[temp]) {
+        starting[fillStarts[m_start[temp]]++] = temp;
+        ending[fillEnds[m_end[temp]]++] = temp;
+      }
+    }
+
+    int[] slots = new int[m_tempCount];
+    Arrays.fill(slots, NONE);
+    int slotCount = 0;
+    // Free slots, a stack for ints and one for reals
+    int[] freeInts = new int[m_tempCount];
+    int[] freeReals = new int[m_tempCount];
+    int freeIntCount = 0;
+    int freeRealCount = 0;
+    for (int n = 0; n < size; n++) {
+      for (int k = startsAt[n]; k < startsAt[n + 1]; k++) {
+        int temp = starting[k];
+        boolean real = m_symbols.kind(m_temps[temp]) == TacSymbols.REAL;
+        if (real)
+          slots[temp] = freeRealCount > 0 ? freeReals[--freeRealCount] : slotCount++;
+        else
+          slots[temp] = freeIntCount > 0 ? freeInts[--freeIntCount] : slotCount++;
+      }
+      for (int k = endsAt[n]; k < endsAt[n + 1]; k++) {
+        int temp = ending[k];
+        if (m_symbols.kind(m_temps[temp]) == TacSymbols.REAL)
+          freeReals[freeRealCount++] = slots[temp];
+        else
+          freeInts[freeIntCount++] = slots[temp];
+      }
+    }
+    return slots;
+  }
+
+  /*
+    Renames every temp to the temp of its slot written first, and keeps the first VARs of the
+    renamed temps for the slots in that order, so each slot is declared before it is written.
+  */
+  private void rename(int[] slots) {
+    int slotCount = 0;
+    for (int temp = 0; temp < m_tempCount; temp++)
+      slotCount = Math.max(slotCount, slots[temp] + 1);
+    int[] firstWrite = new int[slotCount];
+    int[] names = new int[slotCount];
+    Arrays.fill(firstWrite, Integer.MAX_VALUE);
+    for (int temp = 0; temp < m_tempCount; temp++) {
+      if (slots[temp] == NONE)
+        continue;
+      int write = NONE;
+      for (int o = m_occurrenceStart[temp]; o < m_occurrenceStart[temp + 1] && write == NONE; o++)
+        if (m_writes[o])
+          write = m_occurrences[o];
+      if (write < firstWrite[slots[temp]]) {
+        firstWrite[slots[temp]] = write;
+        names[slots[temp]] = m_temps[temp];
+      }
+    }
+    long[] order = new long[slotCount];
+    for (int slot = 0; slot < slotCount; slot++)
+      order[slot] = (long) firstWrite[slot] << 32 | slot;
+    Arrays.sort(order);
+
+    int declared = 0;
+    for (int n = m_quads.first(); n >= 0; n = m_quads.next(n)) {
+      TacCode code = m_quads.getTacCode(n);
+      if (code == TacCode.VAR) {
+        int temp = temp(m_quads.getResult(n));
+        if (temp == NONE || slots[temp] == NONE)
+          continue;
+        if (declared < slotCount)
+          m_quads.setResult(n, names[(int) order[declared++]]);
+        else
+          m_quads.remove(n);
+      }
+      else if (!isDeclaration(code)) {
+        m_quads.setParam1(n, renamed(m_quads.getParam1(n), slots, names));
+        m_quads.setParam2(n, renamed(m_quads.getParam2(n), slots, names));
+        m_quads.setResult(n, renamed(m_quads.getResult(n), slots, names));
+      }
+    }
+  }
+
+  private int renamed(int id, int[] slots, int[] names) {
+    int temp = temp(id);
+    return temp == NONE || slots[temp] == NONE ? id : names[slots[temp]];
+  }
+}
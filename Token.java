@@ -42,7 +42,7 @@ public class Token {
     return new Token(TokenCode.NUMBER, DataType.REAL, OpType.NONE, symTabEntry);
   }
 
-  public static Token createRelOp(String lexeme) {
+  public static OpType relOpType(String lexeme) {
     OpType opType = OpType.NONE;
     if (lexeme.equals("=="))
       opType = OpType.EQUAL;
@@ -54,12 +54,16 @@ public class Token {
       opType = OpType.GT;
     else if (lexeme.equals("<="))
       opType = OpType.LTE;
-    else if (lexeme.equals("=="))
+    else if (lexeme.equals(">="))
       opType = OpType.GTE;
-    return Token.createOp(TokenCode.RELOP, opType);
+    return opType;
   }
 
-  public static Token createMulOp(String lexeme) {
+  public static Token createRelOp(String lexeme) {
+    return Token.createOp(TokenCode.RELOP, relOpType(lexeme));
+  }
+
+  public static OpType mulOpType(String lexeme) {
     OpType opType = OpType.NONE;
     if (lexeme.equals("*"))
       opType = OpType.MULT;
@@ -69,11 +73,15 @@ public class Token {
       opType = OpType.MOD;
     else if (lexeme.equals("&&"))
       opType = OpType.AND;
-    return Token.createOp(TokenCode.MULOP, opType);
+    return opType;
+  }
+
+  public static Token createMulOp(String lexeme) {
+    return Token.createOp(TokenCode.MULOP, mulOpType(lexeme));
   }
 
 
-  public static Token createAddOp(String lexeme) {
+  public static OpType addOpType(String lexeme) {
     OpType opType = OpType.NONE;
     if (lexeme.equals("+"))
       opType = OpType.PLUS;
@@ -81,7 +89,11 @@ public class Token {
       opType = OpType.MINUS;
     else if (lexeme.equals("||"))
       opType = OpType.OR;
-    return Token.createOp(TokenCode.ADDOP, opType);
+    return opType;
+  }
+
+  public static Token createAddOp(String lexeme) {
+    return Token.createOp(TokenCode.ADDOP, addOpType(lexeme));
   }
 
   public void setLineColumn(int line, int column) {
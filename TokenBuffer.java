@@ -0,0 +1,232 @@
+import java.io.IOException;
+import java.util.Arrays;
+
+/*
+  The token stream of a compilation, kept in parallel primitive arrays instead of one Token object per token.
+
+  A token is addressed by its index in the stream (0 for the first token read). In packed mode the
+  lexer appends straight into the arrays and no Token is ever allocated; otherwise each Token the
+  lexer returns is copied in, which gives the parser the same view of both.
+
+  The parser tells the buffer which tokens it no longer needs (release), and when the arrays fill up
+  those are dropped instead of growing the arrays, so the buffer stays small however long the input is.
+*/
+public class TokenBuffer {
+
+  private static final TokenCode[] TOKEN_CODES = TokenCode.values();
+  private static final DataType[] DATA_TYPES = DataType.values();
+  private static final OpType[] OP_TYPES = OpType.values();
+  private static final int INITIAL_CAPACITY = 1024;
+
+  private Lexer m_lexer;
+  private boolean m_packed;
+  private CompilerStats m_stats;
+  private Tracer m_tracer;
+
+  private byte[] m_codes = new byte[INITIAL_CAPACITY];
+  private byte[] m_dataTypes = new byte[INITIAL_CAPACITY];
+  private byte[] m_opTypes = new byte[INITIAL_CAPACITY];
+  private int[] m_symbols = new int[INITIAL_CAPACITY];
+  private int[] m_offsets = new int[INITIAL_CAPACITY];
+  private int[] m_lines = new int[INITIAL_CAPACITY];
+  private int[] m_columns = new int[INITIAL_CAPACITY];
+
+  /* Index of the token in slot 0 of the arrays, the number of tokens stored, and the first token still needed */
+  private int m_base;
+  private int m_count;
+  private int m_released;
+
+  /* In a replaying buffer, the index next() returns next; -1 if tokens come from the lexer */
+  private int m_replayed = -1;
+
+  public TokenBuffer(Lexer lexer, boolean packed) {
+    m_lexer = lexer;
+    m_packed = packed;
+  }
+
+  /*
+    A buffer that replays tokens [from, to) of another one, which must still hold them, followed by
+    an EOF where the token at to is. Its lexer is only there for the symbol table.
+  */
+  public TokenBuffer(TokenBuffer source, int from, int to) {
+    this(source.m_lexer, true);
+    for (int index = from; index < to; index++)
+      append(source.getTokenCode(index), source.getDataType(index), source.getOpType(index), source.getSymbolId(index),
+             source.getOffset(index), source.getLineNum(index) - 1, source.getColumnNum(index) - 1);
+    int end = Math.min(to, source.size() - 1);
+    append(TokenCode.EOF, DataType.NONE, OpType.NONE, -1, source.getOffset(end), source.getLineNum(end) - 1, source.getColumnNum(end) - 1);
+    m_replayed = 0;
+  }
+
+  /* Starts a replaying buffer over from its first token, so the same tokens can be parsed again */
+  public void rewind() {
+    if (m_replayed < 0)
+      throw new IllegalStateException("only a replaying buffer can be rewound");
+    m_replayed = 0;
+    m_released = 0;
+  }
+
+  public Lexer getLexer() {
+    return m_lexer;
+  }
+
+  public boolean isPacked() {
+    return m_packed;
+  }
+
+  /*
+    The compilation's CompilerStats, null if it keeps none. The parser and its ErrorHandler take
+    theirs from here, and reading tokens through next() is timed as the LEX phase
+  */
+  public CompilerStats getStats() {
+    return m_stats;
+  }
+
+  public void setStats(CompilerStats stats) {
+    m_stats = stats;
+  }
+
+  /* The compilation's Tracer, null if it is not traced; the parser and its ErrorHandler take theirs from here */
+  public Tracer getTracer() {
+    return m_tracer;
+  }
+
+  public void setTracer(Tracer tracer) {
+    m_tracer = tracer;
+  }
+
+  /* Reads the next token from the lexer and returns its index */
+  public int next() throws IOException {
+    if (m_replayed >= 0)
+      return m_replayed < m_count ? m_replayed++ : m_count - 1;
+    if (m_stats == null)
+      return lex();
+    m_stats.enter(CompilerStats.Phase.LEX);
+    try {
+      return lex();
+    }
+    finally {
+      m_stats.exit();
+    }
+  }
+
+  private int lex() throws IOException {
+    if (m_packed)
+      return m_lexer.yylex(this);
+    return add(m_lexer.yylex());
+  }
+
+  /* Copies a Token into the buffer and returns its index */
+  public int add(Token token) {
+    SymbolTableEntry entry = token.getSymTabEntry();
+    return append(token.getTokenCode(), token.getDataType(), token.getOpType(), entry == null ? -1 : entry.getId(),
+                  -1, token.getLineNum() - 1, token.getColumnNum() - 1);
+  }
+
+  /* Appends a token; line and column are 0-based as the lexer counts them. Returns the index of the token */
+  public int append(TokenCode code, DataType dataType, OpType opType, int symbol, int offset, int line, int column) {
+    if (m_count == m_codes.length)
+      makeRoom();
+    int slot = m_count++;
+    m_codes[slot] = (byte) code.ordinal();
+    m_dataTypes[slot] = (byte) dataType.ordinal();
+    m_opTypes[slot] = (byte) opType.ordinal();
+    m_symbols[slot] = symbol;
+    m_offsets[slot] = offset;
+    m_lines[slot] = line;
+    m_columns[slot] = column;
+    return m_base + slot;
+  }
+
+  /* Tokens before index will not be asked for again */
+  public void release(int index) {
+    if (index > m_released)
+      m_released = index;
+  }
+
+  /* Number of tokens read so far */
+  public int size() {
+    return m_base + m_count;
+  }
+
+  public TokenCode getTokenCode(int index) {
+    return TOKEN_CODES[m_codes[index - m_base]];
+  }
+
+  /* The TokenCode ordinal, for membership tests against FIRST/FOLLOW bit masks */
+  public int getCode(int index) {
+    return m_codes[index - m_base];
+  }
+
+  /* The TokenCode ordinal as a Tracer operand, Tracer.NONE before the first token */
+  public int getTraceCode(int index) {
+    return index < 0 ? Tracer.NONE : m_codes[index - m_base];
+  }
+
+  public DataType getDataType(int index) {
+    return DATA_TYPES[m_dataTypes[index - m_base]];
+  }
+
+  public OpType getOpType(int index) {
+    return OP_TYPES[m_opTypes[index - m_base]];
+  }
+
+  /* The symbol table id of an identifier or number, -1 for other tokens */
+  public int getSymbolId(int index) {
+    return m_symbols[index - m_base];
+  }
+
+  public SymbolTableEntry getSymTabEntry(int index) {
+    int symbol = m_symbols[index - m_base];
+    return symbol < 0 ? null : m_lexer.getSymbolTable().getEntry(symbol);
+  }
+
+  /* Character offset of the token in the source, -1 if it was not recorded */
+  public int getOffset(int index) {
+    return m_offsets[index - m_base];
+  }
+
+  public int getLineNum(int index) {
+    return m_lines[index - m_base] + 1;
+  }
+
+  public int getColumnNum(int index) {
+    return m_columns[index - m_base] + 1;
+  }
+
+  /* Builds a Token object for the token at index */
+  public Token getToken(int index) {
+    Token token = new Token(getTokenCode(index), getDataType(index), getOpType(index), getSymTabEntry(index));
+    token.setLineColumn(m_lines[index - m_base], m_columns[index - m_base]);
+    return token;
+  }
+
+  private void makeRoom() {
+    int drop = m_released - m_base;
+    if (drop >= m_codes.length / 2) {
+      int keep = m_count - drop;
+      shift(drop, keep);
+      m_base += drop;
+      m_count = keep;
+      return;
+    }
+    int capacity = m_codes.length * 2;
+    m_codes = Arrays.copyOf(m_codes, capacity);
+    m_dataTypes = Arrays.copyOf(m_dataTypes, capacity);
+    m_opTypes = Arrays.copyOf(m_opTypes, capacity);
+    m_symbols = Arrays.copyOf(m_symbols, capacity);
+    m_offsets = Arrays.copyOf(m_offsets, capacity);
+    m_lines = Arrays.copyOf(m_lines, capacity);
+    m_columns = Arrays.copyOf(m_columns, capacity);
+  }
+
+  private void shift(int from, int length) {
+    System.arraycopy(m_codes, from, m_codes, 0, length);
+    System.arraycopy(m_dataTypes, from, m_dataTypes, 0, length);
+    System.arraycopy(m_opTypes, from, m_opTypes, 0, length);
+    System.arraycopy(m_symbols, from, m_symbols, 0, length);
+    System.arraycopy(m_offsets, from, m_offsets, 0, length);
+    System.arraycopy(m_lines, from, m_lines, 0, length);
+    System.arraycopy(m_columns, from, m_columns, 0, length);
+  }
+}
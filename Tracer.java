@@ -0,0 +1,217 @@
+import java.io.*;
+import java.util.Arrays;
+
+/*
+  Trace of what the parser and its ErrorHandler do, kept as fixed-size binary events in a ring buffer.
+
+  An event is one long: its Kind, three byte-sized operands (TokenCode or NonT ordinals) and an int,
+  usually the index of the token in the TokenBuffer. Recording one is a store into a preallocated
+  array, nothing is allocated or formatted, so tracing can stay on for inputs of any size; the ring
+  keeps the last events and overwrites older ones.
+
+  The events become text only when they are read: print() decodes the ones not printed yet, in the
+  lines the parser used to print as it went, and write() saves the ring to be decoded later with
+    java Tracer file.trace
+  A compilation with CompilerOptions.getTraceEvents() prints them when a syntax error is reported
+  and when the file is done, or with CompilerOptions.isTraceFile() writes them to name.trace for name.decaf.
+  A saved trace is read back with the TokenCode and NonT of the compiler that wrote it.
+*/
+public class Tracer {
+
+  public enum Kind {
+    NEXT_TOKEN,           // a: token read
+    LINE,                 // token: line number of the token read, when it is on a new line
+    TOKEN_KEPT,           // a: token kept because the parser is in recovery
+    MATCHED,              // a: token matched
+    MATCH_FAILED,         // a: token expected, b: current token, c: previous token
+    STATEMENT,            // a: the lookahead that selected the statement alternative
+    START,                // a: nonterminal
+    START_RECOVERY,       // a: nonterminal started while in recovery
+    STOP,                 // a: nonterminal
+    STOP_RECOVERY,        // a: nonterminal started and stopped while in recovery
+    RESUME,               // a: nonterminal whose stop ends the recovery
+    RECOVERY_READ,        // a: token read while skipping to a sync token
+    MISSING_PAREN_IN_FOR, // recovery of a for without ')'
+    TOKENS,               // a: previous token, b: current token, when an error is reported
+    INSIDE,               // a: nonterminal an error is reported in
+    ERROR_INSIDE          // a: nonterminal, after the error's diagnostic is written
+  }
+
+  /* Operand for a token or nonterminal that is not there */
+  public static final int NONE = 0xff;
+  /* The most events a ring holds: 4M events, 32 MB */
+  public static final int MAX_CAPACITY = 1 << 22;
+
+  private static final byte[] MAGIC = { 'D', 'T', 'R', 'C' };
+  private static final Kind[] KINDS = Kind.values();
+  private static final TokenCode[] TOKEN_CODES = TokenCode.values();
+  private static final NonT[] NON_TS = NonT.values();
+
+  private long[] m_events;
+  private int m_mask;
+  private long m_count;
+  private long m_printed;
+  private PrintStream m_out;
+
+  /* A ring holding the last capacity events (rounded up to a power of two, at most MAX_CAPACITY); print() writes to out */
+  public Tracer(int capacity, PrintStream out) {
+    int size = Integer.highestOneBit(Math.max(1, Math.min(capacity, MAX_CAPACITY) - 1)) << 1;
+    m_events = new long[size];
+    m_mask = size - 1;
+    m_out = out;
+  }
+
+  public void record(Kind kind, int a, int token) {
+    record(kind, a, 0, 0, token);
+  }
+
+  public void record(Kind kind, int a, int b, int c, int token) {
+    m_events[(int) m_count & m_mask] = (long) kind.ordinal() << 56 | (a & 0xffL) << 48 | (b & 0xffL) << 40
+                                       | (c & 0xffL) << 32 | (token & 0xffffffffL);
+    m_count++;
+  }
+
+  /* Number of events recorded, including those the ring no longer holds */
+  public long getCount() {
+    return m_count;
+  }
+
+  public int getCapacity() {
+    return m_events.length;
+  }
+
+  /*
+    Decodes the events recorded since the last print() that the ring still holds, as one block even
+    when other compilations print to the same stream
+  */
+  public void print() {
+    if (m_out == null || m_printed == m_count)
+      return;
+    long first = Math.max(m_printed, m_count - m_events.length);
+    StringBuilder text = new StringBuilder();
+    if (first > m_printed)
+      text.append("... ").append(first - m_printed).append(" trace events dropped").append(System.lineSeparator());
+    for (long n = first; n < m_count; n++)
+      text.append(decode(m_events[(int) n & m_mask])).append(System.lineSeparator());
+    m_printed = m_count;
+    synchronized (m_out) {
+      m_out.print(text);
+      m_out.flush();
+    }
+  }
+
+  /* Saves the events the ring holds, oldest first, and how many were dropped before them */
+  public void write(OutputStream out) throws IOException {
+    DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out));
+    long first = Math.max(0, m_count - m_events.length);
+    data.write(MAGIC);
+    data.writeLong(first);
+    data.writeInt((int) (m_count - first));
+    for (long n = first; n < m_count; n++)
+      data.writeLong(m_events[(int) n & m_mask]);
+    data.flush();
+  }
+
+  /* Decodes a trace saved by write() */
+  public static void decode(InputStream in, PrintStream out) throws IOException {
+    DataInputStream data = new DataInputStream(new BufferedInputStream(in));
+    byte[] magic = new byte[MAGIC.length];
+    data.readFully(magic);
+    if (!Arrays.equals(magic, MAGIC))
+      throw new IOException("not a compiler trace");
+    long dropped = data.readLong();
+    int count = data.readInt();
+    if (dropped > 0)
+      out.println("... " + dropped + " trace events dropped");
+    for (int n = 0; n < count; n++)
+      out.println(decode(data.readLong()));
+  }
+
+  /* The line the parser printed for the event before it was traced in binary */
+  public static String decode(long event) {
+    Kind kind = KINDS[(int) (event >>> 56)];
+    int a = (int) (event >>> 48) & 0xff;
+    int b = (int) (event >>> 40) & 0xff;
+    int c = (int) (event >>> 32) & 0xff;
+    int token = (int) event;
+    switch (kind) {
+      case NEXT_TOKEN:
+        return "++ Next token read: " + tokenCode(a);
+      case LINE:
+        return "Line " + token;
+      case TOKEN_KEPT:
+        return "++ Next token skipped because of recovery: Still: " + tokenCode(a);
+      case MATCHED:
+        return "  Matched " + tokenCode(a);
+      case MATCH_FAILED:
+        return "  failed match for " + tokenCode(a) + ". current: " + tokenCode(b) + ", prev: " + tokenCode(c);
+      case STATEMENT:
+        return statement(a);
+      case START:
+        return "** Starting " + nonT(a);
+      case START_RECOVERY:
+        return "** Starting " + nonT(a) + " (RECOVERY)";
+      case STOP:
+        return "** Stopping " + nonT(a);
+      case STOP_RECOVERY:
+        return "** Stopping " + nonT(a) + " (RECOVERY)";
+      case RESUME:
+        return "** Continueing after " + nonT(a) + " after recovery";
+      case RECOVERY_READ:
+        return "Read new token: " + tokenCode(a);
+      case MISSING_PAREN_IN_FOR:
+        return "Firing exception: missing ')' in for";
+      case TOKENS:
+        return "PrevToken: " + tokenCode(a) + ", currentToken: " + tokenCode(b);
+      case INSIDE:
+        return "Inside " + nonT(a);
+      default:
+        return " inside " + nonT(a);
+    }
+  }
+
+  /* Parser.statement() traced the alternative it took by name */
+  private static String statement(int lookahead) {
+    if (lookahead == NONE)
+      return "noMatch";
+    switch (tokenCode(lookahead)) {
+      case IDENTIFIER:
+        return "idStartingStmt";
+      case IF:
+        return "if";
+      case FOR:
+        return "for";
+      case RETURN:
+        return "return";
+      case BREAK:
+        return "break";
+      case CONTINUE:
+        return "continue";
+      case RBRACE:
+        return "block";
+      default:
+        return "noMatch";
+    }
+  }
+
+  private static TokenCode tokenCode(int ordinal) {
+    return ordinal == NONE ? null : TOKEN_CODES[ordinal];
+  }
+
+  private static NonT nonT(int ordinal) {
+    return ordinal == NONE ? null : NON_TS[ordinal];
+  }
+
+  /* Usage: Tracer file.trace ... */
+  public static void main(String[] args) throws IOException {
+    for (String path : args) {
+      InputStream in = new FileInputStream(path);
+      try {
+        decode(in, System.out);
+      }
+      finally {
+        in.close();
+      }
+    }
+  }
+}
@@ -0,0 +1,292 @@
+import java.util.Arrays;
+
+/*
+  Local value numbering: common subexpression elimination within basic blocks.
+
+  Walking a block, every value gets a number: a constant or a variable read before it is written
+  gets a fresh one, a quad's result gets the number of the (code, number, number) triple it computes,
+  and an ASSIGN passes its number on. A triple seen before in the block, with its result still held
+  by some variable, is not computed again: the quad becomes an ASSIGN from that variable. The
+  operands of ADD, MULT, AND and OR are ordered by number first, so b + a finds a + b.
+
+  Operands are replaced by the first variable still holding their number (copy propagation), so the
+  temps the ASSIGNs copy into are no longer read and go away, see Optimizer.removeUnusedTemps.
+
+  ARRAY_LOAD takes part too, keyed by the array's number: an ARRAY_STORE gives the array a new one,
+  and remembers the value stored, so reading the element back right after needs no load. A CALL may
+  change any field, so fields (and their arrays) get new numbers after it.
+
+  A block starts at a LABEL and after a GOTO, a conditional jump or a RETURN. Values are only reused
+  where the types agree, so no int/real conversion is lost or added.
+*/
+public class ValueNumbering implements TacPass {
+
+  private static final int NO_NUMBER = 0;
+
+  private QuadrupleList m_quads;
+  private TacSymbols m_symbols;
+
+  // The number each symbol id has in the current block, and the ids numbered since the block began
+  private int[] m_numbers = new int[256];
+  private int[] m_numbered = new int[64];
+  private int m_numberedCount;
+
+  // By value number: its type and the symbol first seen holding it
+  private int[] m_kinds = new int[256];
+  private int[] m_holders = new int[256];
+  private int m_nextNumber;
+
+  // Open addressing table from a (code, number, number) triple to the triple's value number
+  private long[] m_keys = new long[1024];
+  private int[] m_values = new int[1024];
+  private int m_tableCount;
+
+  public String getName() {
+    return "cse";
+  }
+
+  public void run(QuadrupleList quads, TacSymbols symbols) {
+    m_quads = quads;
+    m_symbols = symbols;
+    if (m_numbers.length < symbols.getSymbolTable().size())
+      m_numbers = new int[symbols.getSymbolTable().size() * 2];
+    startBlock();
+    for (int n = quads.first(); n >= 0; n = quads.next(n)) {
+      TacCode code = quads.getTacCode(n);
+      if (code == TacCode.LABEL)
+        startBlock();
+      visit(n, code);
+      if (code == TacCode.GOTO || code == TacCode.RETURN || TacSymbols.isConditionalJump(code))
+        startBlock();
+    }
+    Optimizer.removeUnusedTemps(quads, symbols);
+  }
+
+  private void startBlock() {
+    for (int k = 0; k < m_numberedCount; k++)
+      m_numbers[m_numbered[k]] = NO_NUMBER;
+    m_numberedCount = 0;
+    m_nextNumber = 1;
+    if (m_tableCount > 0) {
+      Arrays.fill(m_keys, 0);
+      m_tableCount = 0;
+    }
+  }
+
+  private void visit(int n, TacCode code) {
+    switch (code) {
+      case ADD: case SUB: case MULT: case DIVIDE: case DIV: case MOD: case AND: case OR:
+      case LT: case LE: case GT: case GE: case EQ: case NE:
+        m_quads.setParam1(n, canonical(m_quads.getParam1(n)));
+        m_quads.setParam2(n, canonical(m_quads.getParam2(n)));
+        break;
+      case UMINUS: case NOT: case ASSIGN: case APARAM: case RETURN:
+        m_quads.setParam1(n, canonical(m_quads.getParam1(n)));
+        break;
+      case ARRAY_LOAD:
+        m_quads.setParam2(n, canonical(m_quads.getParam2(n)));
+        break;
+      case ARRAY_STORE:
+        m_quads.setParam1(n, canonical(m_quads.getParam1(n)));
+        m_quads.setParam2(n, canonical(m_quads.getParam2(n)));
+        break;
+      default:
+        break;
+    }
+
+    int param1 = m_quads.getParam1(n);
+    int param2 = m_quads.getParam2(n);
+    int result = m_quads.getResult(n);
+    switch (code) {
+      case ADD: case SUB: case MULT: case DIVIDE: case DIV: case MOD: case AND: case OR:
+      case UMINUS: case NOT: case ARRAY_LOAD: {
+        int left = number(param1);
+        int right = code == TacCode.UMINUS || code == TacCode.NOT ? NO_NUMBER : number(param2);
+        if (isCommutative(code) && left > right) {
+          int swap = left;
+          left = right;
+          right = swap;
+        }
+        long key = (long) code.ordinal() << 58 | (long) left << 29 | right;
+        int value = lookup(key);
+        if (value != NO_NUMBER) {
+          int holder = holder(value);
+          if (holder != QuadrupleList.NONE && m_symbols.kind(holder) == m_symbols.kind(result)) {
+            m_quads.set(n, TacCode.ASSIGN.ordinal(), holder, QuadrupleList.NONE, result);
+            define(result, value);
+            break;
+          }
+        }
+        int kind = computedKind(code, param1, param2);
+        value = newNumber(kind);
+        put(key, value);
+        // a result of another type holds the converted value, a different one
+        define(result, kind == m_symbols.kind(result) ? value : newNumber(m_symbols.kind(result)));
+        break;
+      }
+      case ASSIGN: {
+        int value = number(param1);
+        if (m_kinds[value] != TacSymbols.UNKNOWN && m_kinds[value] == m_symbols.kind(result))
+          define(result, value);
+        else
+          define(result, newNumber(m_symbols.kind(result)));
+        break;
+      }
+      case ARRAY_STORE: {
+        // The element now holds the stored value: the next load of it with the same index is that value
+        int array = newNumber(m_symbols.kind(result));
+        setNumber(result, array);
+        int value = number(param1);
+        int elementKind = m_symbols.kind(result) == TacSymbols.REAL_ARRAY ? TacSymbols.REAL : TacSymbols.INT;
+        if (m_kinds[value] == elementKind)
+          put((long) TacCode.ARRAY_LOAD.ordinal() << 58 | (long) array << 29 | number(param2), value);
+        break;
+      }
+      case CALL:
+        for (int k = 0; k < m_numberedCount; k++) {
+          int id = m_numbered[k];
+          if (m_symbols.isGlobal(id) && !m_symbols.isLocal(id) && m_numbers[id] != NO_NUMBER) {
+            m_numbers[id] = newNumber(m_symbols.kind(id));
+            m_holders[m_numbers[id]] = id;
+          }
+        }
+        define(result, newNumber(TacSymbols.UNKNOWN));
+        break;
+      default:
+        break;
+    }
+  }
+
+  private static boolean isCommutative(TacCode code) {
+    return code == TacCode.ADD || code == TacCode.MULT || code == TacCode.AND || code == TacCode.OR;
+  }
+
+  /* The type of the value a quad computes, UNKNOWN if an operand's type is not known */
+  private int computedKind(TacCode code, int param1, int param2) {
+    switch (code) {
+      case AND: case OR: case NOT:
+        return TacSymbols.INT;
+      case ARRAY_LOAD:
+        return m_symbols.kind(param1) == TacSymbols.REAL_ARRAY ? TacSymbols.REAL : TacSymbols.INT;
+      case UMINUS:
+        return m_symbols.kind(param1);
+      default:
+        int left = m_symbols.kind(param1);
+        int right = m_symbols.kind(param2);
+        if (left == TacSymbols.REAL || right == TacSymbols.REAL)
+          return TacSymbols.REAL;
+        return left == TacSymbols.INT && right == TacSymbols.INT ? TacSymbols.INT : TacSymbols.UNKNOWN;
+    }
+  }
+
+  /* The value number of an operand, giving it a fresh one if it has none in this block */
+  private int number(int id) {
+    if (id == QuadrupleList.NONE)
+      return NO_NUMBER;
+    if (id < m_numbers.length && m_numbers[id] != NO_NUMBER)
+      return m_numbers[id];
+    int value = newNumber(m_symbols.kind(id));
+    setNumber(id, value);
+    m_holders[value] = id;
+    return value;
+  }
+
+  /* The result now holds the value; it becomes the value's holder if the value has none left, or only a field */
+  private void define(int id, int value) {
+    if (id == QuadrupleList.NONE)
+      return;
+    setNumber(id, value);
+    int holder = holder(value);
+    if (holder == QuadrupleList.NONE || isField(holder) && !isField(id))
+      m_holders[value] = id;
+  }
+
+  private boolean isField(int id) {
+    return m_symbols.isGlobal(id) && !m_symbols.isLocal(id);
+  }
+
+  /* The symbol holding the value that operands with it are replaced by, NONE if no symbol holds it any more */
+  private int holder(int value) {
+    int holder = m_holders[value];
+    if (holder == QuadrupleList.NONE || holder >= m_numbers.length || m_numbers[holder] != value)
+      return QuadrupleList.NONE;
+    return holder;
+  }
+
+  /*
+    The operand, or the earlier symbol holding the same value when the two have the same type.
+    A field is not used in place of a local: reading it takes TacVM an extra load.
+  */
+  private int canonical(int id) {
+    if (id == QuadrupleList.NONE || id >= m_numbers.length || m_numbers[id] == NO_NUMBER)
+      return id;
+    int holder = holder(m_numbers[id]);
+    if (holder == QuadrupleList.NONE || holder == id || isField(holder))
+      return id;
+    int kind = m_symbols.kind(id);
+    if (kind == TacSymbols.UNKNOWN || kind != m_symbols.kind(holder))
+      return id;
+    return holder;
+  }
+
+  private int newNumber(int kind) {
+    int value = m_nextNumber++;
+    if (value == m_kinds.length) {
+      m_kinds = Arrays.copyOf(m_kinds, value * 2);
+      m_holders = Arrays.copyOf(m_holders, value * 2);
+    }
+    m_kinds[value] = kind;
+    m_holders[value] = QuadrupleList.NONE;
+    return value;
+  }
+
+  private void setNumber(int id, int value) {
+    if (id >= m_numbers.length)
+      m_numbers = Arrays.copyOf(m_numbers, Math.max(id + 1, m_numbers.length * 2));
+    if (m_numbers[id] == NO_NUMBER) {
+      if (m_numberedCount == m_numbered.length)
+        m_numbered = Arrays.copyOf(m_numbered, m_numberedCount * 2);
+      m_numbered[m_numberedCount++] = id;
+    }
+    m_numbers[id] = value;
+  }
+
+  // *** The triple table; 0 marks a free slot, no key is 0 since LABEL (ordinal 0) is never a key ***
+
+  private int lookup(long key) {
+    int mask = m_keys.length - 1;
+    for (int slot = hash(key) & mask; m_keys[slot] != 0; slot = (slot + 1) & mask)
+      if (m_keys[slot] == key)
+        return m_values[slot];
+    return NO_NUMBER;
+  }
+
+  private void put(long key, int value) {
+    if ((m_tableCount + 1) * 2 > m_keys.length)
+      grow();
+    int mask = m_keys.length - 1;
+    int slot = hash(key) & mask;
+    while (m_keys[slot] != 0 && m_keys[slot] != key)
+      slot = (slot + 1) & mask;
+    if (m_keys[slot] == 0)
+      m_tableCount++;
+    m_keys[slot] = key;
+    m_values[slot] = value;
+  }
+
+  private void grow() {
+    long[] keys = m_keys;
+    int[] values = m_values;
+    m_keys = new long[keys.length * 2];
+    m_values = new int[keys.length * 2];
+    m_tableCount = 0;
+    for (int k = 0; k < keys.length; k++)
+      if (keys[k] != 0)
+        put(keys[k], values[k]);
+  }
+
+  private static int hash(long key) {
+    long h = key * 0x9E3779B97F4A7C15L;
+    return (int) (h >>> 32) ^ (int) h;
+  }
+}
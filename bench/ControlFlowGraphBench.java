@@ -0,0 +1,89 @@
+import java.io.*;
+import java.util.*;
+
+/*
+  Benchmark: time to build a ControlFlowGraph (blocks, edges, dominators and loops) as methods grow.
+
+  Generates a program per size whose one method has [statements] statements at its top level (see
+  ProgramGenerator: nested if/else and for blocks, break, continue, calls), compiles it, and builds
+  the method's graph [rounds] times; reports the quads, blocks, edges and loops with the best time
+  per quad, which stays about flat when the build is linear. It checks that no more natural loops
+  are found than for loops were written (a for whose body always breaks, or that a break leaves
+  unreachable, is not one) and that each block's immediate dominator dominates it.
+
+  Build and run (from the project directory):
+    javac -d bench/classes *.java bench/*.java
+    java -Xss1g -cp bench/classes ControlFlowGraphBench [rounds] [statements ...]
+*/
+public class ControlFlowGraphBench {
+
+  /*
+    One void method of the given number of statements, so no return leaves the rest of it unreachable;
+    returns the number of for loops in it
+  */
+  static int generate(File file, int statements) throws IOException {
+    String source;
+    long seed = statements;
+    do {
+      new ProgramGenerator(seed++).setSize(0).setStatements(statements).generate(file.getPath());
+      source = new String(java.nio.file.Files.readAllBytes(file.toPath()), "ISO-8859-1");
+    } while (!source.contains("static void m0("));
+    int loops = 0;
+    for (int at = source.indexOf("for ("); at >= 0; at = source.indexOf("for (", at + 1))
+      loops++;
+    return loops;
+  }
+
+  static QuadrupleList compileMain(String source) throws IOException {
+    CompilerOptions options = new CompilerOptions();
+    options.setTacFormat(TacFormat.MEMORY);
+    Compilation compilation = new Compilation(source, options).run();
+    if (compilation.getErrorCount() > 0)
+      throw new IllegalStateException(source + " has errors:\n" + compilation.getDiagnostics());
+    List<QuadrupleList> methods = compilation.getProgram().getMethods();
+    return methods.get(methods.size() - 1);
+  }
+
+  static void check(ControlFlowGraph graph, int loops) {
+    if (graph.getLoopCount() > loops)
+      throw new IllegalStateException("found " + graph.getLoopCount() + " loops, only " + loops + " for loops written");
+    for (int block = 1; block < graph.getBlockCount(); block++) {
+      int idom = graph.getImmediateDominator(block);
+      if (graph.isReachable(block) && (idom == block || !graph.dominates(idom, block)))
+        throw new IllegalStateException("block " + block + ": bad immediate dominator " + idom);
+    }
+  }
+
+  public static void main(String[] args) throws IOException {
+    int rounds = args.length > 0 ? Integer.parseInt(args[0]) : 20;
+    int[] sizes = { 250, 1000, 4000, 16000 };
+    if (args.length > 1) {
+      sizes = new int[args.length - 1];
+      for (int k = 1; k < args.length; k++)
+        sizes[k - 1] = Integer.parseInt(args[k]);
+    }
+
+    for (int statements : sizes) {
+      File file = File.createTempFile("cfg", ".decaf");
+      file.deleteOnExit();
+      int loops = generate(file, statements);
+      QuadrupleList quads = compileMain(file.getPath());
+
+      ControlFlowGraph graph = null;
+      long best = Long.MAX_VALUE;
+      for (int round = 0; round < rounds; round++) {
+        long start = System.nanoTime();
+        graph = new ControlFlowGraph(quads);
+        best = Math.min(best, System.nanoTime() - start);
+      }
+      check(graph, loops);
+
+      int edges = 0;
+      for (int block = 0; block < graph.getBlockCount(); block++)
+        edges += graph.getSuccessorCount(block);
+      System.out.printf("%8d quads %7d blocks %7d edges %6d loops (%d for)   build %8.3f ms %7.1f ns/quad%n",
+                        quads.liveCount(), graph.getBlockCount(), edges, graph.getLoopCount(), loops,
+                        best / 1e6, (double) best / quads.liveCount());
+    }
+  }
+}
@@ -0,0 +1,90 @@
+import java.io.*;
+import java.util.*;
+
+/*
+  Benchmark: compiling a small file through CompilerDaemon against starting `java MyMain file` for it.
+
+  Starts a daemon on a temporary socket in this JVM, then compiles each program of the TacVM corpus
+  [requests] times through one CompilerClient connection and reports the round-trip latencies
+  (p50/p99), then runs a new JVM with MyMain on it [processes] times and reports the same for the
+  whole process. Diagnostics and TAC from the daemon are checked against a Compilation in this JVM.
+
+  Build and run (from the project directory):
+    javac -d bench/classes *.java bench/*.java
+    java -cp bench/classes DaemonBench [requests] [processes]
+*/
+public class DaemonBench {
+
+  public static void main(String[] args) throws Exception {
+    int requests = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+    int processes = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+
+    File socket = File.createTempFile("daemon", ".sock");
+    socket.delete();
+    final CompilerDaemon daemon = new CompilerDaemon(socket.getPath(), new CompilerOptions(), 2);
+    Thread server = new Thread(new Runnable() {
+      public void run() {
+        try {
+          daemon.serve();
+        }
+        catch (IOException e) {
+          e.printStackTrace();
+        }
+      }
+    });
+    server.start();
+    long start = System.nanoTime();
+    while (!socket.exists())
+      Thread.sleep(1);
+    System.out.printf("daemon warmed up and listening after %.0f ms%n", (System.nanoTime() - start) / 1e6);
+
+    String java = new File(System.getProperty("java.home"), "bin/java").getPath();
+    String classPath = System.getProperty("java.class.path");
+    CompilerClient client = new CompilerClient(socket.getPath());
+    for (String source : TacVMBench.CORPUS) {
+      String path = new File(source).getAbsolutePath();
+      CompilerDaemon.Latencies roundTrips = new CompilerDaemon.Latencies();
+      CompilerClient.Reply reply = null;
+      for (int n = 0; n < requests; n++) {
+        long requestStart = System.nanoTime();
+        reply = client.compile(path, n % 2 == 1, true);
+        roundTrips.add(System.nanoTime() - requestStart);
+      }
+      check(path, reply);
+
+      CompilerDaemon.Latencies runs = new CompilerDaemon.Latencies();
+      for (int n = 0; n < processes; n++) {
+        long runStart = System.nanoTime();
+        Process process = new ProcessBuilder(java, "-cp", classPath, "MyMain", path).redirectErrorStream(true)
+                          .redirectOutput(ProcessBuilder.Redirect.DISCARD).start();
+        process.waitFor();
+        runs.add(System.nanoTime() - runStart);
+      }
+      System.out.println(source + ": " + reply.getTokenCount() + " tokens");
+      System.out.println("  daemon         " + roundTrips);
+      System.out.println("  java MyMain    " + runs);
+      System.out.printf("  p50 %.0fx faster through the daemon%n", (double) runs.percentile(0.5) / roundTrips.percentile(0.5));
+    }
+    System.out.println("daemon, all requests: " + client.stats());
+    client.shutdown();
+    client.close();
+    server.join();
+  }
+
+  /* The last reply (optimized, with TAC) must match a compilation in this JVM */
+  private static void check(String path, CompilerClient.Reply reply) throws IOException {
+    if (reply.getFailure() != null)
+      throw new IllegalStateException(reply.getFailure());
+    CompilerOptions options = new CompilerOptions();
+    options.setTacFormat(TacFormat.MEMORY);
+    options.setOptimize(true);
+    Compilation compilation = new Compilation(path, options).run();
+    ByteArrayOutputStream listing = new ByteArrayOutputStream();
+    TacTextWriter writer = new TacTextWriter(java.nio.channels.Channels.newChannel(listing), true,
+                                             compilation.getProgram().getSymbolTable());
+    compilation.getProgram().writeTo(writer);
+    writer.close();
+    if (!Arrays.equals(listing.toByteArray(), reply.getTac()) || !compilation.getDiagnostics().equals(new String(reply.getDiagnostics())))
+      throw new IllegalStateException(path + ": the daemon's reply differs from a compilation");
+  }
+}
@@ -0,0 +1,122 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.regex.*;
+
+/*
+  Benchmark: recompiling a large file after a small edit with IncrementalCompiler, against compiling
+  it again from scratch with Compilation.
+
+  Generates a program of [megabytes] MB (see ProgramGenerator), then for [rounds] rounds: changes
+  one assignment in a method in the middle of the file, alternating between two versions, and recompiles it both ways (with -O when the first argument is "-O"). After each round
+  the incremental result is checked quad by quad against the full compilation. Also reports the
+  first (cold) incremental compilation and one after an edit of the comments only.
+
+  Build and run (from the project directory):
+    javac -d bench/classes *.java bench/*.java
+    java -cp bench/classes IncrementalBench [-O] [megabytes] [rounds]
+*/
+public class IncrementalBench {
+
+  public static void main(String[] args) throws IOException {
+    int first = 0;
+    boolean optimize = args.length > 0 && args[0].equals("-O");
+    if (optimize)
+      first++;
+    long megabytes = args.length > first ? Long.parseLong(args[first]) : 8;
+    int rounds = args.length > first + 1 ? Integer.parseInt(args[first + 1]) : 10;
+
+    File file = File.createTempFile("incremental", ".decaf");
+    file.deleteOnExit();
+    ProgramGenerator generator = new ProgramGenerator(1).setSize(megabytes << 20).generate(file.getPath());
+    Path path = file.toPath();
+    String source = new String(Files.readAllBytes(path), StandardCharsets.ISO_8859_1);
+    // The first scalar assignment from the middle method on: its value put in parentheses, or a comment after it
+    Matcher assignment = Pattern.compile("\n( +[A-Za-z][A-Za-z0-9]* = )([^\n]*);\n").matcher(source);
+    if (!assignment.find(source.indexOf(" m" + generator.getMethodCount() / 2 + "(")))
+      throw new IllegalStateException("no assignment to edit");
+    String before = source.substring(0, assignment.start(1)) + assignment.group(1);
+    String after = source.substring(assignment.end(2));
+    String edited = before + "(" + assignment.group(2) + ")" + after;
+    String commented = before + assignment.group(2) + "; /* a comment */" + after.substring(1);
+
+    CompilerOptions options = new CompilerOptions();
+    options.setTacFormat(TacFormat.MEMORY);
+    options.setOptimize(optimize);
+    IncrementalCompiler compiler = new IncrementalCompiler(options);
+
+    long start = System.nanoTime();
+    compiler.compile(file.getPath());
+    System.out.printf("%d MB, %d tokens: cold incremental compilation %.1f ms, %d spans compiled%n", megabytes,
+                      compiler.getTokenCount(), (System.nanoTime() - start) / 1e6, compiler.getCompiledCount());
+
+    Files.write(path, commented.getBytes(StandardCharsets.ISO_8859_1));
+    start = System.nanoTime();
+    compiler.compile(file.getPath());
+    System.out.printf("comment edited: %.1f ms, %d spans reused, %d compiled%n", (System.nanoTime() - start) / 1e6,
+                      compiler.getReusedCount(), compiler.getCompiledCount());
+
+    long bestFull = Long.MAX_VALUE;
+    long bestIncremental = Long.MAX_VALUE;
+    for (int round = 0; round < rounds; round++) {
+      Files.write(path, (round % 2 == 0 ? edited : source).getBytes(StandardCharsets.ISO_8859_1));
+
+      start = System.nanoTime();
+      Compilation compilation = new Compilation(file.getPath(), options).run();
+      bestFull = Math.min(bestFull, System.nanoTime() - start);
+
+      start = System.nanoTime();
+      compiler.compile(file.getPath());
+      bestIncremental = Math.min(bestIncremental, System.nanoTime() - start);
+
+      if (compiler.isWhole() || compiler.getCompiledCount() != 1)
+        throw new IllegalStateException("round " + round + ": " + compiler.getCompiledCount() + " spans compiled, whole "
+                                        + compiler.isWhole() + "\n" + compiler.getDiagnostics());
+      String difference = compare(compilation.getProgram(), compiler.getProgram());
+      if (difference != null)
+        throw new IllegalStateException("round " + round + ": " + difference);
+    }
+    System.out.printf("one line edited: full compilation %.1f ms, incremental %.1f ms (%.1fx faster), %d quads%n",
+                      bestFull / 1e6, bestIncremental / 1e6, (double) bestFull / bestIncremental,
+                      compiler.getProgram().quadCount());
+  }
+
+  /* The first quad where two programs differ, by lexeme since their symbol tables differ; null if none */
+  static String compare(TacProgram expected, TacProgram actual) {
+    List<QuadrupleList> expectedUnits = new ArrayList<QuadrupleList>();
+    expectedUnits.add(expected.getGlobals());
+    expectedUnits.addAll(expected.getMethods());
+    List<QuadrupleList> actualUnits = new ArrayList<QuadrupleList>();
+    actualUnits.add(actual.getGlobals());
+    actualUnits.addAll(actual.getMethods());
+    if (expectedUnits.size() != actualUnits.size())
+      return expectedUnits.size() + " units expected, " + actualUnits.size() + " found";
+    for (int k = 0; k < expectedUnits.size(); k++) {
+      QuadrupleList expectedQuads = expectedUnits.get(k);
+      QuadrupleList actualQuads = actualUnits.get(k);
+      int n = expectedQuads.first();
+      int m = actualQuads.first();
+      while (n >= 0 && m >= 0) {
+        String wanted = quad(expectedQuads, n);
+        String found = quad(actualQuads, m);
+        if (!wanted.equals(found))
+          return "unit " + k + ": " + wanted + " expected, " + found + " found";
+        n = expectedQuads.next(n);
+        m = actualQuads.next(m);
+      }
+      if (n >= 0 || m >= 0)
+        return "unit " + k + " has " + actualQuads.liveCount() + " quads, " + expectedQuads.liveCount() + " expected";
+    }
+    return null;
+  }
+
+  private static String quad(QuadrupleList quads, int n) {
+    return quads.getTacCode(n) + " " + lexeme(quads.entry(quads.getParam1(n))) + " "
+           + lexeme(quads.entry(quads.getParam2(n))) + " " + lexeme(quads.entry(quads.getResult(n)));
+  }
+
+  private static String lexeme(SymbolTableEntry entry) {
+    return entry == null ? "-" : entry.getLexeme();
+  }
+}
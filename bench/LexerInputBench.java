@@ -0,0 +1,68 @@
+import java.io.*;
+import java.util.*;
+
+/*
+  Benchmark: lexer throughput of the Reader input path against the memory-mapped byte path.
+
+  Generates a program of about [megabytes] MB (see ProgramGenerator), scans it to EOF with
+  both inputs and checks that they produce exactly the same token stream (token code, data type,
+  op type, symbol, line and column of every token). Sizes of several hundred MB show how the paths
+  scale; the mapped path takes files of up to 2 GB (one MappedByteBuffer).
+
+  Build and run (from the project directory):
+    javac -d bench/classes *.java bench/*.java
+    java -cp bench/classes LexerInputBench [megabytes] [rounds]
+*/
+public class LexerInputBench {
+
+  /* Scans the whole file; returns a hash over the token stream and the token count */
+  static long[] scan(Lexer lexer) throws IOException {
+    long hash = 17;
+    long count = 0;
+    while (true) {
+      Token token = lexer.yylex();
+      SymbolTableEntry entry = token.getSymTabEntry();
+      hash = hash * 31 + token.getTokenCode().ordinal();
+      hash = hash * 31 + token.getDataType().ordinal();
+      hash = hash * 31 + token.getOpType().ordinal();
+      hash = hash * 31 + (entry == null ? -1 : entry.getId());
+      hash = hash * 31 + token.getLineNum();
+      hash = hash * 31 + token.getColumnNum();
+      count++;
+      if (token.getTokenCode() == TokenCode.EOF)
+        break;
+    }
+    lexer.yyclose();
+    return new long[] { hash, count };
+  }
+
+  public static void main(String[] args) throws Exception {
+    long megabytes = args.length > 0 ? Long.parseLong(args[0]) : 256;
+    int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+
+    File file = File.createTempFile("lexinput", ".decaf");
+    file.deleteOnExit();
+    new ProgramGenerator(1).setSize(megabytes << 20).generate(file.getPath());
+    double size = file.length() / (1024.0 * 1024.0);
+    System.out.printf("input: %.1f MB%n", size);
+
+    long[] readerResult = null;
+    long[] mappedResult = null;
+    for (int round = 0; round < rounds; round++) {
+      long start = System.nanoTime();
+      readerResult = scan(new Lexer(new FileReader(file), new SymbolTable()));
+      long readerNanos = System.nanoTime() - start;
+
+      start = System.nanoTime();
+      mappedResult = scan(Lexer.mapFile(file.getPath(), new SymbolTable()));
+      long mappedNanos = System.nanoTime() - start;
+
+      System.out.printf("round %d: Reader %7.1f MB/s %6.2f Mtokens/s | mapped %7.1f MB/s %6.2f Mtokens/s%n",
+                        round + 1,
+                        size / (readerNanos / 1e9), readerResult[1] / (readerNanos / 1e3),
+                        size / (mappedNanos / 1e9), mappedResult[1] / (mappedNanos / 1e3));
+    }
+    System.out.println(readerResult[1] + " tokens, streams "
+                       + (Arrays.equals(readerResult, mappedResult) ? "identical" : "DIFFER"));
+  }
+}
@@ -0,0 +1,76 @@
+import java.io.*;
+import java.util.*;
+
+/*
+  Benchmark: printing diagnostics on a large, error-heavy source file.
+
+  Generates a program of about [kilobytes] KB where one statement in [every] has a syntax error
+  (see ProgramGenerator), compiles it once to find the lines that get reported, then times fetching those source lines
+  the old way (re-read the file up to the line for every error) and through SourceText.
+  Also reports the end-to-end compile time of the file.
+
+  Build and run (from the project directory):
+    javac -d bench/classes *.java bench/*.java
+    java -cp bench/classes LineIndexBench [kilobytes] [every]
+*/
+public class LineIndexBench {
+
+  /* ErrorHandler.getLineFromSource as it was before SourceText */
+  static String readLineFromSource(String sourceFile, int lineNum) throws IOException {
+    BufferedReader br = new BufferedReader(new InputStreamReader(new FileInputStream(sourceFile)));
+    try {
+      for (int n = 1; n < lineNum; n++)
+        br.readLine();
+      return br.readLine();
+    }
+    finally {
+      br.close();
+    }
+  }
+
+  static int[] reportedLines(String diagnostics) {
+    List<Integer> lines = new ArrayList<Integer>();
+    for (String line : diagnostics.split("\n")) {
+      int colon = line.indexOf(':');
+      if (colon > 0 && line.substring(0, colon).trim().matches("[0-9]+"))
+        lines.add(Integer.parseInt(line.substring(0, colon).trim()));
+    }
+    int[] result = new int[lines.size()];
+    for (int n = 0; n < result.length; n++)
+      result[n] = lines.get(n);
+    return result;
+  }
+
+  public static void main(String[] args) throws Exception {
+    long kilobytes = args.length > 0 ? Long.parseLong(args[0]) : 2048;
+    int every = args.length > 1 ? Integer.parseInt(args[1]) : 25;
+
+    File file = File.createTempFile("lineindex", ".decaf");
+    file.deleteOnExit();
+    new ProgramGenerator(1).setSize(kilobytes << 10).setErrorRate(1.0 / every).generate(file.getPath());
+
+    long start = System.nanoTime();
+    Compilation compilation = new Compilation(file.getPath()).run();
+    long compileNanos = System.nanoTime() - start;
+    int[] errorLines = reportedLines(compilation.getDiagnostics());
+    System.out.println(kilobytes + " KB, " + compilation.getErrorCount() + " errors reported");
+    System.out.printf("compile with SourceText:      %8.1f ms%n", compileNanos / 1e6);
+
+    long check = 0;
+    start = System.nanoTime();
+    SourceText source = new SourceText(file.getPath());
+    for (int line : errorLines)
+      check += source.getLine(line).length();
+    long indexedNanos = System.nanoTime() - start;
+
+    start = System.nanoTime();
+    for (int line : errorLines)
+      check -= readLineFromSource(file.getPath(), line).length();
+    long rereadNanos = System.nanoTime() - start;
+
+    System.out.printf("line lookups, SourceText:     %8.1f ms (index built included)%n", indexedNanos / 1e6);
+    System.out.printf("line lookups, re-read source: %8.1f ms%n", rereadNanos / 1e6);
+    if (check != 0)
+      System.out.println("MISMATCH between the two line lookups");
+  }
+}
@@ -0,0 +1,89 @@
+import java.io.*;
+import java.util.*;
+
+/*
+  Benchmark: what the optimization passes cost at compile time and save at run time.
+
+  For every program of the TacVM corpus it compiles with no passes, then with the first 1, 2, ...
+  passes of Optimizer.standardPasses(), and reports the compile time, the quads left, and the
+  instructions TacVM executes for main() with the time it takes (best of [rounds]).
+  A generated file of about [megabytes] MB (see ProgramGenerator) measures the compile time alone.
+
+  Build and run (from the project directory):
+    javac -d bench/classes *.java bench/*.java
+    java -Xss1g -cp bench/classes OptimizerBench [rounds] [megabytes]
+*/
+public class OptimizerBench {
+
+  /* Compiles source with the first [passes] standard passes (-1: without the Optimizer); returns the nanoseconds taken */
+  static long compile(String source, int passes, TacProgram[] program) throws IOException {
+    long start = System.nanoTime();
+    Lexer lexer = Lexer.mapFile(source, new SymbolTable());
+    SymbolTable symbolTable = lexer.getSymbolTable();
+    TacProgram output = new TacProgram(symbolTable);
+    TacSink sink = output;
+    if (passes >= 0)
+      sink = new Optimizer(output, symbolTable, Optimizer.standardPasses().subList(0, passes));
+    CodeGenerator codeGenerator = new CodeGenerator(sink);
+    Parser parser = new Parser(new TokenBuffer(lexer, true), source, System.err, codeGenerator);
+    parser.program();
+    codeGenerator.close();
+    lexer.yyclose();
+    long nanos = System.nanoTime() - start;
+    if (parser.getErrorCount() > 0)
+      throw new IllegalStateException(source + " has errors");
+    program[0] = output;
+    return nanos;
+  }
+
+  static String label(int passes) {
+    if (passes < 0)
+      return "none";
+    StringBuilder label = new StringBuilder("-O");
+    for (TacPass pass : Optimizer.standardPasses().subList(0, passes))
+      label.append(label.length() == 2 ? " " : "+").append(pass.getName());
+    return label.toString();
+  }
+
+  public static void main(String[] args) throws IOException {
+    int rounds = args.length > 0 ? Integer.parseInt(args[0]) : 5;
+    long megabytes = args.length > 1 ? Long.parseLong(args[1]) : 8;
+    int passCount = Optimizer.standardPasses().size();
+    TacProgram[] program = new TacProgram[1];
+
+    for (String source : TacVMBench.CORPUS) {
+      System.out.println(source);
+      for (int passes = -1; passes <= passCount; passes++) {
+        if (passes == 0)
+          continue;
+        long compileNanos = Long.MAX_VALUE;
+        long runNanos = Long.MAX_VALUE;
+        long executed = 0;
+        Number result = null;
+        for (int round = 0; round < rounds; round++) {
+          compileNanos = Math.min(compileNanos, compile(source, passes, program));
+          TacVM vm = new TacVM(program[0]);
+          long start = System.nanoTime();
+          result = vm.run("main");
+          runNanos = Math.min(runNanos, System.nanoTime() - start);
+          executed = vm.getExecutedCount();
+        }
+        System.out.printf("  %-28s compile %7.2f ms %6d quads   run %8.1f ms %10d instructions   main() = %s%n",
+                          label(passes), compileNanos / 1e6, program[0].quadCount(), runNanos / 1e6, executed, result);
+      }
+    }
+
+    File file = File.createTempFile("optimizer", ".decaf");
+    file.deleteOnExit();
+    new ProgramGenerator(1).setSize(megabytes << 20).generate(file.getPath());
+    System.out.printf("generated %.1f MB%n", file.length() / 1048576.0);
+    for (int passes = -1; passes <= passCount; passes++) {
+      if (passes == 0)
+        continue;
+      long compileNanos = Long.MAX_VALUE;
+      for (int round = 0; round < rounds; round++)
+        compileNanos = Math.min(compileNanos, compile(file.getPath(), passes, program));
+      System.out.printf("  %-28s compile %8.1f ms %9d quads%n", label(passes), compileNanos / 1e6, program[0].quadCount());
+    }
+  }
+}
@@ -0,0 +1,71 @@
+import java.lang.management.*;
+import java.util.*;
+
+/*
+  Benchmark: memory and scan time of three-address code kept as a List<Quadruple> against the
+  struct-of-arrays QuadrupleList.
+
+  Builds [millions] million quads shaped like expression code (t = a op b over a few thousand
+  symbols, the SymbolTableEntry objects shared as a symbol table would share them) both ways, and
+  reports the heap retained per quad after a full GC and the time to walk all quads once, summing
+  their operand ids.
+
+  Build and run (from the project directory):
+    javac -d bench/classes *.java bench/*.java
+    java -Xmx2g -cp bench/classes QuadrupleListBench [millions] [rounds]
+*/
+public class QuadrupleListBench {
+
+  static final TacCode[] CODES = { TacCode.ADD, TacCode.MULT, TacCode.ASSIGN, TacCode.SUB, TacCode.LT };
+
+  static long usedHeap() {
+    MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+    for (int n = 0; n < 3; n++)
+      System.gc();
+    return memory.getHeapMemoryUsage().getUsed();
+  }
+
+  public static void main(String[] args) {
+    int millions = args.length > 0 ? Integer.parseInt(args[0]) : 4;
+    int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+    int count = millions * 1000000;
+
+    SymbolTable table = new SymbolTable();
+    SymbolTableEntry[] symbols = new SymbolTableEntry[4096];
+    for (int n = 0; n < symbols.length; n++)
+      symbols[n] = table.insert((n % 2 == 0 ? "t" : "v") + n);
+
+    long before = usedHeap();
+    List<Quadruple> objects = new ArrayList<Quadruple>();
+    for (int n = 0; n < count; n++)
+      objects.add(new Quadruple(CODES[n % CODES.length], symbols[n & 4095], symbols[(n * 7) & 4095], symbols[(n * 13) & 4095]));
+    long objectBytes = usedHeap() - before;
+
+    before = usedHeap();
+    QuadrupleList packed = new QuadrupleList(table);
+    for (int n = 0; n < count; n++)
+      packed.add(CODES[n % CODES.length].ordinal(), n & 4095, (n * 7) & 4095, (n * 13) & 4095);
+    long packedBytes = usedHeap() - before;
+
+    System.out.printf("List<Quadruple>  %8.1f MB  %5.1f B/quad%n", objectBytes / 1048576.0, (double) objectBytes / count);
+    System.out.printf("QuadrupleList    %8.1f MB  %5.1f B/quad (bytesPerQuad() reports %.1f)%n",
+                      packedBytes / 1048576.0, (double) packedBytes / count, packed.bytesPerQuad());
+
+    for (int round = 0; round < rounds; round++) {
+      long start = System.nanoTime();
+      long sum = 0;
+      for (Quadruple quad : objects)
+        sum += quad.getTacCode().ordinal() + quad.getParam1().getId() + quad.getParam2().getId() + quad.getResult().getId();
+      long objectNanos = System.nanoTime() - start;
+
+      start = System.nanoTime();
+      long packedSum = 0;
+      for (int n = packed.first(); n >= 0; n = packed.next(n))
+        packedSum += packed.getCode(n) + packed.getParam1(n) + packed.getParam2(n) + packed.getResult(n);
+      long packedNanos = System.nanoTime() - start;
+
+      System.out.printf("scan: objects %6.1f ms, packed %6.1f ms%s%n", objectNanos / 1e6, packedNanos / 1e6,
+                        sum == packedSum ? "" : "  (sums differ!)");
+    }
+  }
+}
@@ -0,0 +1,43 @@
+import java.io.*;
+
+/*
+  Scaling test: compiles ProgramGenerator programs of 1 MB, 2 MB, 4 MB, ... up to [megabytes] MB and
+  reports the time per token at each size, which stays flat while the compiler is linear in its input.
+
+  Every size is generated with the same seed and settings ([error rate] of the statements with a
+  syntax error, 0 by default), compiled [rounds] times after a warm-up compile, and the best round
+  is reported. The number of diagnostics is checked against the errors the generator put in.
+
+  Build and run (from the project directory):
+    javac -d bench/classes *.java bench/*.java
+    java -Xss1g -cp bench/classes ScalingBench [megabytes] [error rate] [rounds] [seed]
+*/
+public class ScalingBench {
+
+  public static void main(String[] args) throws IOException {
+    long megabytes = args.length > 0 ? Long.parseLong(args[0]) : 64;
+    double errorRate = args.length > 1 ? Double.parseDouble(args[1]) : 0;
+    int rounds = args.length > 2 ? Integer.parseInt(args[2]) : 3;
+    long seed = args.length > 3 ? Long.parseLong(args[3]) : 1;
+
+    System.out.printf("%10s %12s %10s %10s %10s %12s%n", "bytes", "tokens", "errors", "ms", "ns/token", "MB/s");
+    File file = File.createTempFile("scaling", BatchCompiler.SOURCE_SUFFIX);
+    file.deleteOnExit();
+    for (long size = 1 << 20; size <= megabytes << 20; size *= 2) {
+      ProgramGenerator generator = new ProgramGenerator(seed).setSize(size).setErrorRate(errorRate).generate(file.getPath());
+      Compilation compilation = new Compilation(file.getPath()).run();
+      if (compilation.getErrorCount() != generator.getErrorCount())
+        throw new IllegalStateException(compilation.getErrorCount() + " diagnostics for " + generator.getErrorCount() + " errors");
+      long best = Long.MAX_VALUE;
+      for (int round = 0; round < rounds; round++) {
+        long start = System.nanoTime();
+        compilation = new Compilation(file.getPath()).run();
+        best = Math.min(best, System.nanoTime() - start);
+      }
+      System.out.printf("%10d %12d %10d %10.1f %10.1f %12.1f%n", generator.getWritten(), compilation.getTokenCount(),
+                        compilation.getErrorCount(), best / 1e6, (double) best / compilation.getTokenCount(),
+                        generator.getWritten() / (best / 1e9) / (1 << 20));
+    }
+    file.delete();
+  }
+}
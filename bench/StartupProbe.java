@@ -0,0 +1,28 @@
+import java.io.*;
+
+/*
+  Startup probe: how long a new JVM takes to get the first token of a file, counted from the start
+  of the process (as the OS reports it, to the millisecond), so JVM startup, class loading and the
+  lexer's static initialization are all included. Then compiles the whole file and reports that too.
+  Meant to be run in a fresh JVM each time; bench/startup.sh does so with and without AppCDS.
+
+  Build and run (from the project directory):
+    javac -d bench/classes *.java bench/*.java
+    java -cp bench/classes StartupProbe [file]
+*/
+public class StartupProbe {
+
+  public static void main(String[] args) throws IOException {
+    String file = args.length > 0 ? args[0] : "bench/programs/fib.decaf";
+    Lexer lexer = new Lexer(new FileReader(file), new SymbolTable());
+    Token token = lexer.yylex();
+    long firstToken = System.currentTimeMillis();
+    lexer.yyclose();
+    Compilation compilation = new Compilation(file).run();
+    long compiled = System.currentTimeMillis();
+
+    long start = ProcessHandle.current().info().startInstant().get().toEpochMilli();
+    System.out.println("first token (" + token.getTokenCode() + ") after " + (firstToken - start) + " ms, "
+                       + compilation.getTokenCount() + " tokens compiled after " + (compiled - start) + " ms");
+  }
+}
@@ -0,0 +1,178 @@
+import java.util.*;
+import java.util.concurrent.*;
+
+/*
+  Microbenchmark: intern table SymbolTable against the previous Hashtable-backed table
+  on an identifier-heavy token stream.
+
+  The stream is a char buffer of identifiers drawn from a skewed distribution, the way the lexer
+  sees them: the old table is fed through lookup(yytext()) + insert(yytext()), the new one through
+  intern(buffer, offset, length). A second run does lookups only, from several threads at once.
+
+  Build and run (from the project directory):
+    javac -d bench/classes *.java bench/*.java
+    java -cp bench/classes SymbolTableBench [tokens] [distinct identifiers] [threads]
+*/
+public class SymbolTableBench {
+
+  /* The symbol table as it was before the intern table: a Hashtable plus a list of all entries */
+  static class HashtableSymbolTable {
+    private Hashtable<String, String> m_lookupList = new Hashtable<String, String>();
+    private ArrayList<String> m_seqList = new ArrayList<String>();
+
+    public String lookup(String lexeme) {
+      return m_lookupList.get(lexeme);
+    }
+
+    public String insert(String lexeme) {
+      m_lookupList.put(lexeme, lexeme);
+      m_seqList.add(lexeme);
+      return lexeme;
+    }
+  }
+
+  private static final int ROUNDS = 7;
+
+  private char[] m_buffer;
+  private int[] m_offsets;
+  private int[] m_lengths;
+
+  public SymbolTableBench(int tokens, int distinct, long seed) {
+    Random random = new Random(seed);
+    String[] names = new String[distinct];
+    for (int n = 0; n < distinct; n++)
+      names[n] = randomIdentifier(random);
+
+    StringBuilder text = new StringBuilder();
+    m_offsets = new int[tokens];
+    m_lengths = new int[tokens];
+    for (int n = 0; n < tokens; n++) {
+      // Skewed: a few names (loop counters, common arrays) make up most references
+      double u = random.nextDouble();
+      String name = names[(int) (distinct * u * u * u)];
+      m_offsets[n] = text.length();
+      m_lengths[n] = name.length();
+      text.append(name).append(' ');
+    }
+    m_buffer = text.toString().toCharArray();
+  }
+
+  private static String randomIdentifier(Random random) {
+    int length = 1 + random.nextInt(12);
+    StringBuilder name = new StringBuilder();
+    name.append((char) ('a' + random.nextInt(26)));
+    for (int n = 1; n < length; n++) {
+      int c = random.nextInt(37);
+      name.append(c < 26 ? (char) ('a' + c) : c < 36 ? (char) ('0' + c - 26) : '_');
+    }
+    return name.toString();
+  }
+
+  long runHashtable() {
+    HashtableSymbolTable table = new HashtableSymbolTable();
+    long check = 0;
+    for (int n = 0; n < m_offsets.length; n++) {
+      String entry = table.lookup(new String(m_buffer, m_offsets[n], m_lengths[n]));
+      if (entry == null)
+        entry = table.insert(new String(m_buffer, m_offsets[n], m_lengths[n]));
+      check += entry.length();
+    }
+    return check + table.m_seqList.size();
+  }
+
+  long runIntern() {
+    SymbolTable table = new SymbolTable();
+    long check = 0;
+    for (int n = 0; n < m_offsets.length; n++)
+      check += table.intern(m_buffer, m_offsets[n], m_lengths[n]);
+    return check + table.size();
+  }
+
+  long readHashtable(final HashtableSymbolTable table, int threads) throws Exception {
+    return concurrently(threads, new Callable<Long>() {
+      public Long call() {
+        long check = 0;
+        for (int n = 0; n < m_offsets.length; n++)
+          check += table.lookup(new String(m_buffer, m_offsets[n], m_lengths[n])).length();
+        return check;
+      }
+    });
+  }
+
+  long readIntern(final SymbolTable table, int threads) throws Exception {
+    return concurrently(threads, new Callable<Long>() {
+      public Long call() {
+        long check = 0;
+        for (int n = 0; n < m_offsets.length; n++)
+          check += table.lookupId(m_buffer, m_offsets[n], m_lengths[n]);
+        return check;
+      }
+    });
+  }
+
+  private static long concurrently(int threads, Callable<Long> task) throws Exception {
+    ExecutorService pool = Executors.newFixedThreadPool(threads);
+    try {
+      List<Future<Long>> results = new ArrayList<Future<Long>>();
+      for (int n = 0; n < threads; n++)
+        results.add(pool.submit(task));
+      long check = 0;
+      for (Future<Long> result : results)
+        check += result.get();
+      return check;
+    }
+    finally {
+      pool.shutdown();
+    }
+  }
+
+  private void report(String name, long[] nanos, int opsPerRound) {
+    Arrays.sort(nanos);
+    long median = nanos[nanos.length / 2];
+    System.out.printf("%-32s %8.1f ns/token  %8.2f Mtokens/s%n",
+                      name, (double) median / opsPerRound, opsPerRound * 1e3 / median);
+  }
+
+  public static void main(String[] args) throws Exception {
+    int tokens = args.length > 0 ? Integer.parseInt(args[0]) : 2000000;
+    int distinct = args.length > 1 ? Integer.parseInt(args[1]) : 50000;
+    int threads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+    SymbolTableBench bench = new SymbolTableBench(tokens, distinct, 42);
+    System.out.println(tokens + " identifier tokens, " + distinct + " distinct names, " + threads + " reader threads");
+
+    long[] hashtable = new long[ROUNDS];
+    long[] intern = new long[ROUNDS];
+    long check = 0;
+    for (int round = 0; round < ROUNDS; round++) {
+      long start = System.nanoTime();
+      check += bench.runHashtable();
+      hashtable[round] = System.nanoTime() - start;
+      start = System.nanoTime();
+      check += bench.runIntern();
+      intern[round] = System.nanoTime() - start;
+    }
+    bench.report("lex pattern, Hashtable", hashtable, tokens);
+    bench.report("lex pattern, intern table", intern, tokens);
+
+    HashtableSymbolTable oldTable = new HashtableSymbolTable();
+    SymbolTable newTable = new SymbolTable();
+    for (int n = 0; n < bench.m_offsets.length; n++) {
+      String lexeme = new String(bench.m_buffer, bench.m_offsets[n], bench.m_lengths[n]);
+      if (oldTable.lookup(lexeme) == null)
+        oldTable.insert(lexeme);
+      newTable.intern(bench.m_buffer, bench.m_offsets[n], bench.m_lengths[n]);
+    }
+    for (int round = 0; round < ROUNDS; round++) {
+      long start = System.nanoTime();
+      check += bench.readHashtable(oldTable, threads);
+      hashtable[round] = System.nanoTime() - start;
+      start = System.nanoTime();
+      check += bench.readIntern(newTable, threads);
+      intern[round] = System.nanoTime() - start;
+    }
+    bench.report("concurrent reads, Hashtable", hashtable, tokens * threads);
+    bench.report("concurrent reads, intern table", intern, tokens * threads);
+    System.out.println("intern table footprint: " + newTable.footprint() / 1024 + " KB for " + newTable.size() + " symbols");
+    System.out.println("(checksum " + check + ")");
+  }
+}
@@ -0,0 +1,76 @@
+import java.io.*;
+
+/*
+  Benchmark: the bytecode backend (TacJvm) against the TacVM interpreter on the same programs.
+
+  Compiles each program of the TacVM corpus (with -O when the first argument is "-O"), then runs its
+  main() [rounds] times on a fresh TacVM and [rounds] times on one TacJvm class, checking that both
+  give the same result. Reports the time to load (TacVM) or define the class (TacJvm), the first
+  run, which on the JVM includes the JIT warming up, and the best run, with the speedup.
+
+  Build and run (from the project directory):
+    javac -d bench/classes *.java bench/*.java
+    java -cp bench/classes TacJvmBench [-O] [rounds]
+*/
+public class TacJvmBench {
+
+  static TacProgram compile(String source, boolean optimize) throws IOException {
+    CompilerOptions options = new CompilerOptions();
+    options.setTacFormat(TacFormat.MEMORY);
+    options.setOptimize(optimize);
+    Compilation compilation = new Compilation(source, options).run();
+    if (compilation.getErrorCount() > 0)
+      throw new IllegalStateException(source + " has errors:\n" + compilation.getDiagnostics());
+    return compilation.getProgram();
+  }
+
+  public static void main(String[] args) throws IOException {
+    int first = 0;
+    boolean optimize = args.length > 0 && args[0].equals("-O");
+    if (optimize)
+      first++;
+    int rounds = args.length > first ? Integer.parseInt(args[first]) : 10;
+
+    for (String source : TacVMBench.CORPUS) {
+      TacProgram program = compile(source, optimize);
+      System.out.println(source + ": " + program.quadCount() + " quads");
+
+      long vmLoad = Long.MAX_VALUE;
+      long vmFirst = 0;
+      long vmBest = Long.MAX_VALUE;
+      Number vmResult = null;
+      for (int round = 0; round < rounds; round++) {
+        long start = System.nanoTime();
+        TacVM vm = new TacVM(program);
+        long loaded = System.nanoTime();
+        vmResult = vm.run("main");
+        long nanos = System.nanoTime() - loaded;
+        vmLoad = Math.min(vmLoad, loaded - start);
+        if (round == 0)
+          vmFirst = nanos;
+        vmBest = Math.min(vmBest, nanos);
+      }
+
+      long start = System.nanoTime();
+      TacJvm jvm = new TacJvm(program);
+      long jvmLoad = System.nanoTime() - start;
+      long jvmFirst = 0;
+      long jvmBest = Long.MAX_VALUE;
+      for (int round = 0; round < rounds; round++) {
+        long runStart = System.nanoTime();
+        Number result = jvm.run("main");
+        long nanos = System.nanoTime() - runStart;
+        if (!result.equals(vmResult))
+          throw new IllegalStateException(source + ": TacJvm gives " + result + ", TacVM " + vmResult);
+        if (round == 0)
+          jvmFirst = nanos;
+        jvmBest = Math.min(jvmBest, nanos);
+      }
+
+      System.out.printf("  TacVM   load %7.2f ms   first run %8.1f ms   best %8.1f ms   main() = %s%n",
+                        vmLoad / 1e6, vmFirst / 1e6, vmBest / 1e6, vmResult);
+      System.out.printf("  TacJvm  load %7.2f ms   first run %8.1f ms   best %8.1f ms   class %d bytes   %.1fx faster%n",
+                        jvmLoad / 1e6, jvmFirst / 1e6, jvmBest / 1e6, jvm.getClassSize(), (double) vmBest / jvmBest);
+    }
+  }
+}
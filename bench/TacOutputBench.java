@@ -0,0 +1,80 @@
+import java.io.*;
+
+/*
+  Benchmark: cost of writing the generated three-address code.
+
+  Compiles a generated file of about [megabytes] MB (see ProgramGenerator) with the code discarded,
+  written through a PrintStream println per quad (how the rest of the project prints), as the
+  buffered TacTextWriter listing and as the TacBinaryWriter stream, and reports time and output size.
+
+  Build and run (from the project directory):
+    javac -d bench/classes *.java bench/*.java
+    java -Xss1g -cp bench/classes TacOutputBench [megabytes] [rounds]
+*/
+public class TacOutputBench {
+
+  /* The listing printed line by line, flushing on every line */
+  static class PrintlnSink implements TacSink {
+    private PrintStream m_out;
+    private SymbolTable m_symbolTable;
+
+    PrintlnSink(PrintStream out, SymbolTable symbolTable) {
+      m_out = out;
+      m_symbolTable = symbolTable;
+    }
+
+    public void quad(int code, int param1, int param2, int result) {
+      m_out.println(TacCode.values()[code] + " " + lexeme(param1) + " " + lexeme(param2) + " " + lexeme(result));
+    }
+
+    private String lexeme(int id) {
+      return id == QuadrupleList.NONE ? "" : m_symbolTable.getLexeme(id);
+    }
+
+    public void endMethod() {
+    }
+
+    public void close() {
+      m_out.close();
+    }
+  }
+
+  static void run(String label, String source, File output, int format) throws IOException {
+    long start = System.nanoTime();
+    Lexer lexer = Lexer.mapFile(source, new SymbolTable());
+    SymbolTable symbolTable = lexer.getSymbolTable();
+    TacSink sink = null;
+    if (format == 1)
+      sink = new PrintlnSink(new PrintStream(new FileOutputStream(output), true), symbolTable);
+    else if (format == 2)
+      sink = new TacTextWriter(new FileOutputStream(output).getChannel(), true, symbolTable);
+    else if (format == 3)
+      sink = new TacBinaryWriter(new FileOutputStream(output).getChannel(), true, symbolTable);
+    CodeGenerator codeGenerator = new CodeGenerator(sink);
+    Parser parser = new Parser(new TokenBuffer(lexer, true), source, System.err, codeGenerator);
+    parser.program();
+    codeGenerator.close();
+    lexer.yyclose();
+    long nanos = System.nanoTime() - start;
+    System.out.printf("%-9s %8.1f ms  %9d quads  %8.1f MB written%n", label, nanos / 1e6, codeGenerator.getQuadCount(),
+                      format == 0 ? 0.0 : output.length() / 1048576.0);
+  }
+
+  public static void main(String[] args) throws IOException {
+    long megabytes = args.length > 0 ? Long.parseLong(args[0]) : 16;
+    int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+
+    File source = File.createTempFile("tacoutput", ".decaf");
+    File output = File.createTempFile("tacoutput", ".tac");
+    source.deleteOnExit();
+    output.deleteOnExit();
+    new ProgramGenerator(1).setSize(megabytes << 20).generate(source.getPath());
+
+    for (int round = 0; round < rounds; round++) {
+      run("none", source.getPath(), output, 0);
+      run("println", source.getPath(), output, 1);
+      run("text", source.getPath(), output, 2);
+      run("binary", source.getPath(), output, 3);
+    }
+  }
+}
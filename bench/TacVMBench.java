@@ -0,0 +1,54 @@
+import java.io.*;
+
+/*
+  Benchmark: speed of the TacVM.
+
+  Compiles each program of the corpus in bench/programs (recursive fib, a sieve over a global array,
+  a real matrix multiply, array updates with repeated index expressions), runs its main() [rounds]
+  times on a fresh VM, and reports the result, the instructions executed and the instructions per
+  second of each round.
+
+  Build and run (from the project directory):
+    javac -d bench/classes *.java bench/*.java
+    java -cp bench/classes TacVMBench [rounds] [program.decaf ...]
+*/
+public class TacVMBench {
+
+  static final String[] CORPUS = { "bench/programs/fib.decaf", "bench/programs/sieve.decaf", "bench/programs/matmul.decaf",
+                                   "bench/programs/stencil.decaf" };
+
+  static TacProgram compile(String source) throws IOException {
+    CompilerOptions options = new CompilerOptions();
+    options.setTacFormat(TacFormat.MEMORY);
+    Compilation compilation = new Compilation(source, options).run();
+    if (compilation.getErrorCount() > 0)
+      throw new IllegalStateException(source + " has errors:\n" + compilation.getDiagnostics());
+    return compilation.getProgram();
+  }
+
+  public static void main(String[] args) throws IOException {
+    int rounds = args.length > 0 ? Integer.parseInt(args[0]) : 10;
+    String[] sources = CORPUS;
+    if (args.length > 1) {
+      sources = new String[args.length - 1];
+      System.arraycopy(args, 1, sources, 0, sources.length);
+    }
+
+    for (String source : sources) {
+      TacProgram program = compile(source);
+      System.out.println(source + ": " + program.quadCount() + " quads");
+      double best = 0;
+      for (int round = 0; round < rounds; round++) {
+        TacVM vm = new TacVM(program);
+        long start = System.nanoTime();
+        Number result = vm.run("main");
+        long nanos = System.nanoTime() - start;
+        double rate = vm.getExecutedCount() * 1e3 / nanos;
+        best = Math.max(best, rate);
+        System.out.printf("  round %2d: main() = %-12s %10d instructions %8.1f ms %8.1f M instructions/s%n",
+                          round, result, vm.getExecutedCount(), nanos / 1e6, rate);
+      }
+      System.out.printf("  best: %.1f M instructions/s%n", best);
+    }
+  }
+}
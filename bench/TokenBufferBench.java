@@ -0,0 +1,83 @@
+import java.io.*;
+import java.lang.management.*;
+
+/*
+  Benchmark: allocation and GC cost of the front end with one Token object per token against the
+  packed TokenBuffer mode.
+
+  Compiles a generated file of about [megabytes] MB (see ProgramGenerator) in both modes and reports,
+  per round, wall time, bytes allocated by the compiling thread (total and per token) and the GC
+  count and time spent while compiling. Run with a fixed heap (e.g. -Xmx512m) for comparable GC figures.
+
+  Build and run (from the project directory):
+    javac -d bench/classes *.java bench/*.java
+    java -Xmx512m -cp bench/classes TokenBufferBench [megabytes] [rounds]
+*/
+public class TokenBufferBench {
+
+  static long gcCount() {
+    long count = 0;
+    for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans())
+      count += gc.getCollectionCount();
+    return count;
+  }
+
+  static long gcMillis() {
+    long millis = 0;
+    for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans())
+      millis += gc.getCollectionTime();
+    return millis;
+  }
+
+  static void compile(String file, boolean packed) throws IOException {
+    com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    long threadId = Thread.currentThread().getId();
+    CompilerOptions options = new CompilerOptions();
+    options.setPackedTokens(packed);
+
+    System.gc();
+    long gcCountBefore = gcCount();
+    long gcMillisBefore = gcMillis();
+    long allocatedBefore = threads.getThreadAllocatedBytes(threadId);
+    long start = System.nanoTime();
+
+    Compilation compilation = new Compilation(file, options).run();
+
+    long nanos = System.nanoTime() - start;
+    long allocated = threads.getThreadAllocatedBytes(threadId) - allocatedBefore;
+    System.out.printf("%-8s %8.1f ms  %8.1f MB allocated  %6.1f B/token  %5.0f MB/s alloc rate  GC: %d collections, %d ms%n",
+                      packed ? "packed" : "objects", nanos / 1e6, allocated / 1048576.0,
+                      (double) allocated / compilation.getTokenCount(), allocated / 1048576.0 / (nanos / 1e9),
+                      gcCount() - gcCountBefore, gcMillis() - gcMillisBefore);
+    if (compilation.getErrorCount() > 0)
+      System.out.println("unexpected errors: " + compilation.getDiagnostics());
+  }
+
+  public static void main(String[] args) throws Exception {
+    long megabytes = args.length > 0 ? Long.parseLong(args[0]) : 64;
+    int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+
+    File file = File.createTempFile("tokenbuffer", ".decaf");
+    file.deleteOnExit();
+    new ProgramGenerator(1).setSize(megabytes << 20).generate(file.getPath());
+
+    // The recursive descent parser nests a call per method and per statement, so give it a deep stack
+    final String path = file.getPath();
+    final int roundCount = rounds;
+    Thread compiler = new Thread(null, new Runnable() {
+      public void run() {
+        try {
+          for (int round = 0; round < roundCount; round++) {
+            compile(path, false);
+            compile(path, true);
+          }
+        }
+        catch (IOException e) {
+          throw new UncheckedIOException(e);
+        }
+      }
+    }, "compiler", 1L << 30);
+    compiler.start();
+    compiler.join();
+  }
+}
@@ -0,0 +1,51 @@
+#!/bin/sh
+# Startup benchmark: one-shot compiles in a new JVM each, without and with an AppCDS archive.
+#
+# Builds the compiler into a jar (AppCDS only archives classes loaded from jars), records which
+# classes a compile loads into bench/decaf.jsa, then runs StartupProbe and `java MyMain file`
+# [runs] times each way and prints the time to the first token and the wall time per process.
+#
+# Run from the project directory:
+#   sh bench/startup.sh [runs] [file]
+# The archive recipe on its own:
+#   java -XX:ArchiveClassesAtExit=bench/decaf.jsa -cp bench/decaf.jar MyMain file
+#   java -XX:SharedArchiveFile=bench/decaf.jsa -cp bench/decaf.jar MyMain file
+
+RUNS=${1:-20}
+FILE=${2:-bench/programs/fib.decaf}
+CLASSES=bench/classes
+JAR=bench/decaf.jar
+ARCHIVE=bench/decaf.jsa
+
+set -e
+rm -rf $CLASSES $ARCHIVE
+mkdir -p $CLASSES
+javac -nowarn -d $CLASSES *.java bench/*.java 2>/dev/null
+jar cf $JAR -C $CLASSES .
+java -XX:ArchiveClassesAtExit=$ARCHIVE -cp $JAR MyMain $FILE >/dev/null 2>&1
+
+now() {
+  date +%s%N
+}
+
+# run <label> <java options...>: StartupProbe and MyMain [RUNS] times, with the median of each
+run() {
+  LABEL=$1
+  shift
+  PROBES=""
+  WALLS=""
+  for i in $(seq $RUNS); do
+    PROBES="$PROBES $(java "$@" -cp $JAR StartupProbe $FILE | sed 's/.*after \([0-9]*\) ms,.*/\1/')"
+    START=$(now)
+    java "$@" -cp $JAR MyMain $FILE >/dev/null
+    WALLS="$WALLS $(( ($(now) - START) / 1000000 ))"
+  done
+  PROBE=$(echo $PROBES | tr ' ' '\n' | sort -n | sed -n "$(( (RUNS + 1) / 2 ))p")
+  WALL=$(echo $WALLS | tr ' ' '\n' | sort -n | sed -n "$(( (RUNS + 1) / 2 ))p")
+  echo "$LABEL: first token after $PROBE ms, java MyMain $WALL ms (medians of $RUNS runs)"
+  eval "${LABEL}_WALL=$WALL"
+}
+
+run default -Xshare:auto
+run appcds -XX:SharedArchiveFile=$ARCHIVE
+echo "AppCDS saves $((default_WALL - appcds_WALL)) ms per compile of $FILE"
@@ -1,3 +1,3 @@
 rm *.class
-jflex-1.6.0/bin/jflex lexical.flex
+# Lexer.java is maintained by hand now, not generated from lexical.flex
 javac *.java
\ No newline at end of file
@@ -0,0 +1,175 @@
+import java.io.*;
+
+/*
+  Entry points of the compiler for the JMH benchmarks.
+
+  The compiler classes live in the unnamed package, which the benchmark classes (JMH needs a named
+  package for its generated code) cannot import. They reach the compiler through these static
+  methods, looked up reflectively once per benchmark class.
+*/
+public class BenchmarkSupport {
+
+  // Where the parser's diagnostics go when only the time to produce them counts
+  private static final PrintStream DISCARD = new PrintStream(OutputStream.nullOutputStream());
+
+  // The seed of every generated program, so each benchmark parses the same one
+  private static final long SEED = 1;
+
+  /* Writes a syntactically valid program of about the given size (see ProgramGenerator) */
+  public static void generateProgram(String path, long kilobytes) throws IOException {
+    generateProgram(path, kilobytes, 0);
+  }
+
+  /*
+    The same size of program with a syntax error in one statement in errorEvery (none if 0), so the
+    parser goes into error recovery that often
+  */
+  public static void generateProgram(String path, long kilobytes, int errorEvery) throws IOException {
+    new ProgramGenerator(SEED).setSize(kilobytes << 10).setErrorRate(errorEvery > 0 ? 1.0 / errorEvery : 0).generate(path);
+  }
+
+  /* The TokenCode ordinals of every token in the file, up to and including EOF */
+  public static int[] tokenCodes(String path) throws IOException {
+    Lexer lexer = new Lexer(new FileReader(path));
+    TokenBuffer tokens = new TokenBuffer(lexer, true);
+    int[] codes = new int[1024];
+    int count = 0;
+    try {
+      while (true) {
+        int index = tokens.next();
+        if (count == codes.length)
+          codes = java.util.Arrays.copyOf(codes, count * 2);
+        codes[count++] = tokens.getCode(index);
+        tokens.release(index);
+        if (tokens.getTokenCode(index) == TokenCode.EOF)
+          break;
+      }
+    }
+    finally {
+      lexer.yyclose();
+    }
+    return java.util.Arrays.copyOf(codes, count);
+  }
+
+  /* Lexes and parses the file; returns the number of tokens */
+  public static int parse(String path, boolean packedTokens, boolean tableDriven) throws IOException {
+    CompilerOptions options = new CompilerOptions();
+    options.setPackedTokens(packedTokens);
+    options.setTableDriven(tableDriven);
+    Compilation compilation = new Compilation(path, options).run();
+    if (compilation.getErrorCount() != 0)
+      throw new IllegalStateException(path + ": " + compilation.getDiagnostics());
+    return compilation.getTokenCount();
+  }
+
+  /* Scans the whole file, returning Tokens or (packed) into a TokenBuffer; returns the number of tokens */
+  public static int lex(String path, boolean mappedInput, boolean packedTokens) throws IOException {
+    SymbolTable symbolTable = new SymbolTable();
+    Lexer lexer = mappedInput ? Lexer.mapFile(path, symbolTable) : new Lexer(new FileReader(path), symbolTable);
+    try {
+      if (packedTokens) {
+        TokenBuffer tokens = new TokenBuffer(lexer, true);
+        while (true) {
+          int index = tokens.next();
+          tokens.release(index);
+          if (tokens.getCode(index) == TokenCode.EOF.ordinal())
+            break;
+        }
+      }
+      else {
+        while (lexer.yylex().getTokenCode() != TokenCode.EOF)
+          ;
+      }
+    }
+    finally {
+      lexer.yyclose();
+    }
+    return lexer.getTokenCount();
+  }
+
+  /* All tokens of the file in a replaying TokenBuffer, for parse(Object, ...) to parse again and again */
+  public static Object tokens(String path) throws IOException {
+    Lexer lexer = new Lexer(new FileReader(path), new SymbolTable());
+    TokenBuffer tokens = new TokenBuffer(lexer, true);
+    try {
+      while (tokens.getCode(tokens.next()) != TokenCode.EOF.ordinal())
+        ;
+    }
+    finally {
+      lexer.yyclose();
+    }
+    return new TokenBuffer(tokens, 0, tokens.size() - 1);
+  }
+
+  /*
+    Parses the tokens of tokens(path) with code generation (quads only counted) but without the lexer;
+    diagnostics are formatted and discarded. Returns the number of errors
+  */
+  public static int parse(Object tokens, String path, boolean tableDriven) {
+    TokenBuffer buffer = (TokenBuffer) tokens;
+    buffer.rewind();
+    Parser parser = tableDriven ? new TableDrivenParser(buffer, path, DISCARD)
+                                : new Parser(buffer, path, DISCARD, new CodeGenerator());
+    parser.program();
+    return parser.getErrorCount();
+  }
+
+  /* Lexes, parses and generates code into a TacProgram, optimized or not; returns the number of quads */
+  public static int compile(String path, boolean optimize) throws IOException {
+    CompilerOptions options = new CompilerOptions();
+    options.setTacFormat(TacFormat.MEMORY);
+    options.setOptimize(optimize);
+    Compilation compilation = new Compilation(path, options).run();
+    if (compilation.getErrorCount() != 0)
+      throw new IllegalStateException(path + ": " + compilation.getDiagnostics());
+    return compilation.getQuadCount();
+  }
+
+  /* The lexemes of the file's identifier tokens, in order, repeats included */
+  public static String[] identifiers(String path) throws IOException {
+    Lexer lexer = new Lexer(new FileReader(path), new SymbolTable());
+    TokenBuffer tokens = new TokenBuffer(lexer, true);
+    java.util.List<String> lexemes = new java.util.ArrayList<String>();
+    try {
+      while (true) {
+        int index = tokens.next();
+        tokens.release(index);
+        if (tokens.getTokenCode(index) == TokenCode.EOF)
+          break;
+        if (tokens.getTokenCode(index) == TokenCode.IDENTIFIER)
+          lexemes.add(lexer.getSymbolTable().getLexeme(tokens.getSymbolId(index)));
+      }
+    }
+    finally {
+      lexer.yyclose();
+    }
+    return lexemes.toArray(new String[lexemes.size()]);
+  }
+
+  /* Enters the lexemes into a new SymbolTable, as the lexer does with each identifier; returns the table */
+  public static Object insert(String[] lexemes) {
+    SymbolTable symbolTable = new SymbolTable();
+    for (String lexeme : lexemes)
+      symbolTable.insert(lexeme);
+    return symbolTable;
+  }
+
+  /* Looks the lexemes up in a table from insert(); returns how many were found */
+  public static int lookup(Object symbolTable, String[] lexemes) {
+    SymbolTable table = (SymbolTable) symbolTable;
+    int found = 0;
+    for (String lexeme : lexemes)
+      if (table.lookup(lexeme) != null)
+        found++;
+    return found;
+  }
+
+  /* FIRST(nonT) and FOLLOW(nonT) as bit masks over TokenCode ordinals */
+  public static long first(String nonT) {
+    return Grammar.first(NonT.valueOf(nonT));
+  }
+
+  public static long follow(String nonT) {
+    return Grammar.follow(NonT.valueOf(nonT));
+  }
+}
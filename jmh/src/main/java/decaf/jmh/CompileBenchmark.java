@@ -0,0 +1,55 @@
+package decaf.jmh;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/*
+  The whole compilation of a generated program, end to end: lexer, parser, symbol table and code
+  generation into a TacProgram in memory, with and without the optimizer.
+*/
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xss256m")
+public class CompileBenchmark {
+
+  @Param({ "4", "256", "16384" })
+  public long kilobytes;
+
+  @Param({ "false", "true" })
+  public boolean optimize;
+
+  private File m_source;
+
+  @Setup(Level.Trial)
+  public void setup() throws Throwable {
+    m_source = File.createTempFile("compile", ".decaf");
+    Compiler.GENERATE_PROGRAM.invokeExact(m_source.getPath(), kilobytes);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    m_source.delete();
+  }
+
+  @Benchmark
+  public int compile() throws Throwable {
+    return (int) Compiler.COMPILE.invokeExact(m_source.getPath(), optimize);
+  }
+}
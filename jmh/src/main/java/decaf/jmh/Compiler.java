@@ -0,0 +1,51 @@
+package decaf.jmh;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+
+/*
+  Method handles on BenchmarkSupport, the unnamed-package bridge to the compiler.
+*/
+final class Compiler {
+
+  static final MethodHandle GENERATE_PROGRAM;
+  static final MethodHandle GENERATE_FAULTY_PROGRAM;
+  static final MethodHandle TOKEN_CODES;
+  static final MethodHandle PARSE;
+  static final MethodHandle LEX;
+  static final MethodHandle TOKENS;
+  static final MethodHandle PARSE_TOKENS;
+  static final MethodHandle COMPILE;
+  static final MethodHandle IDENTIFIERS;
+  static final MethodHandle INSERT;
+  static final MethodHandle LOOKUP;
+  static final MethodHandle FIRST;
+  static final MethodHandle FOLLOW;
+
+  static {
+    try {
+      MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+      Class<?> support = Class.forName("BenchmarkSupport");
+      GENERATE_PROGRAM = lookup.findStatic(support, "generateProgram", MethodType.methodType(void.class, String.class, long.class));
+      GENERATE_FAULTY_PROGRAM = lookup.findStatic(support, "generateProgram", MethodType.methodType(void.class, String.class, long.class, int.class));
+      TOKEN_CODES = lookup.findStatic(support, "tokenCodes", MethodType.methodType(int[].class, String.class));
+      PARSE = lookup.findStatic(support, "parse", MethodType.methodType(int.class, String.class, boolean.class, boolean.class));
+      LEX = lookup.findStatic(support, "lex", MethodType.methodType(int.class, String.class, boolean.class, boolean.class));
+      TOKENS = lookup.findStatic(support, "tokens", MethodType.methodType(Object.class, String.class));
+      PARSE_TOKENS = lookup.findStatic(support, "parse", MethodType.methodType(int.class, Object.class, String.class, boolean.class));
+      COMPILE = lookup.findStatic(support, "compile", MethodType.methodType(int.class, String.class, boolean.class));
+      IDENTIFIERS = lookup.findStatic(support, "identifiers", MethodType.methodType(String[].class, String.class));
+      INSERT = lookup.findStatic(support, "insert", MethodType.methodType(Object.class, String[].class));
+      LOOKUP = lookup.findStatic(support, "lookup", MethodType.methodType(int.class, Object.class, String[].class));
+      FIRST = lookup.findStatic(support, "first", MethodType.methodType(long.class, String.class));
+      FOLLOW = lookup.findStatic(support, "follow", MethodType.methodType(long.class, String.class));
+    }
+    catch (ReflectiveOperationException e) {
+      throw new ExceptionInInitializerError(e);
+    }
+  }
+
+  private Compiler() {
+  }
+}
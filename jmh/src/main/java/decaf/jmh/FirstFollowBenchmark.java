@@ -0,0 +1,145 @@
+package decaf.jmh;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/*
+  FIRST/FOLLOW membership tests as the parser does them, over the token stream of a large program.
+
+  arrays: the former NonT.firstOf/followTokens, which built a new TokenCode[] on every call and
+          scanned it linearly (reproduced here over the real TokenCode constants).
+  masks:  the bit masks derived by Grammar, one shift and and per test.
+  parse:  the whole lex + parse of the program, for scale.
+*/
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xss256m")
+public class FirstFollowBenchmark {
+
+  @Param({ "2048" })
+  public long kilobytes;
+
+  private File m_source;
+  private int[] m_codes;
+
+  private Object[] m_tokenCodes;
+  private Object m_identifier, m_if, m_for, m_return, m_break, m_continue, m_lbrace, m_rbrace, m_number, m_lparen, m_not, m_addop;
+
+  private long m_firstOfStatement, m_firstOfExpression, m_firstOfSign, m_followOfStatement;
+
+  @Setup(Level.Trial)
+  public void setup() throws Throwable {
+    m_source = File.createTempFile("firstfollow", ".decaf");
+    Compiler.GENERATE_PROGRAM.invokeExact(m_source.getPath(), kilobytes);
+    m_codes = (int[]) Compiler.TOKEN_CODES.invokeExact(m_source.getPath());
+
+    m_tokenCodes = Class.forName("TokenCode").getEnumConstants();
+    m_identifier = tokenCode("IDENTIFIER");
+    m_if = tokenCode("IF");
+    m_for = tokenCode("FOR");
+    m_return = tokenCode("RETURN");
+    m_break = tokenCode("BREAK");
+    m_continue = tokenCode("CONTINUE");
+    m_lbrace = tokenCode("LBRACE");
+    m_rbrace = tokenCode("RBRACE");
+    m_number = tokenCode("NUMBER");
+    m_lparen = tokenCode("LPAREN");
+    m_not = tokenCode("NOT");
+    m_addop = tokenCode("ADDOP");
+
+    m_firstOfStatement = (long) Compiler.FIRST.invokeExact("STATEMENT");
+    m_firstOfExpression = (long) Compiler.FIRST.invokeExact("EXPRESSION");
+    m_firstOfSign = (long) Compiler.FIRST.invokeExact("SIGN");
+    m_followOfStatement = (long) Compiler.FOLLOW.invokeExact("STATEMENT");
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    m_source.delete();
+  }
+
+  private Object tokenCode(String name) {
+    for (Object code : m_tokenCodes)
+      if (((Enum<?>) code).name().equals(name))
+        return code;
+    throw new IllegalArgumentException(name);
+  }
+
+  @Benchmark
+  public int arrays() {
+    int hits = 0;
+    for (int code : m_codes) {
+      Object token = m_tokenCodes[code];
+      if (contains(firstOfStatement(), token))
+        hits++;
+      if (contains(firstOfExpression(), token))
+        hits++;
+      if (contains(firstOfSign(), token))
+        hits++;
+      if (contains(followOfStatement(), token))
+        hits++;
+    }
+    return hits;
+  }
+
+  @Benchmark
+  public int masks() {
+    int hits = 0;
+    for (int code : m_codes) {
+      if ((m_firstOfStatement >>> code & 1) != 0)
+        hits++;
+      if ((m_firstOfExpression >>> code & 1) != 0)
+        hits++;
+      if ((m_firstOfSign >>> code & 1) != 0)
+        hits++;
+      if ((m_followOfStatement >>> code & 1) != 0)
+        hits++;
+    }
+    return hits;
+  }
+
+  @Benchmark
+  public int parse() throws Throwable {
+    return (int) Compiler.PARSE.invokeExact(m_source.getPath(), true, false);
+  }
+
+  private static boolean contains(Object[] codes, Object code) {
+    for (Object c : codes)
+      if (c == code)
+        return true;
+    return false;
+  }
+
+  private Object[] firstOfStatement() {
+    return new Object[] { m_identifier, m_if, m_for, m_return, m_break, m_continue, m_lbrace };
+  }
+
+  private Object[] firstOfExpression() {
+    return new Object[] { m_identifier, m_number, m_lparen, m_not, m_addop };
+  }
+
+  private Object[] firstOfSign() {
+    return new Object[] { m_addop };
+  }
+
+  private Object[] followOfStatement() {
+    return new Object[] { m_if, m_for, m_return, m_break, m_continue, m_identifier, m_rbrace, m_lbrace };
+  }
+}
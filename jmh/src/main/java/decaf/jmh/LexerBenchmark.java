@@ -0,0 +1,63 @@
+package decaf.jmh;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/*
+  Lexer.yylex alone over a small, a medium and a huge generated program, read through a Reader or
+  memory-mapped.
+
+  tokens: yylex() returning a Token per token, as the parser gets them without packed tokens.
+  packed: yylex(TokenBuffer), appending into a TokenBuffer that releases every token at once.
+*/
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LexerBenchmark {
+
+  @Param({ "4", "256", "16384" })
+  public long kilobytes;
+
+  @Param({ "false", "true" })
+  public boolean mappedInput;
+
+  private File m_source;
+
+  @Setup(Level.Trial)
+  public void setup() throws Throwable {
+    m_source = File.createTempFile("lexer", ".decaf");
+    Compiler.GENERATE_PROGRAM.invokeExact(m_source.getPath(), kilobytes);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    m_source.delete();
+  }
+
+  @Benchmark
+  public int tokens() throws Throwable {
+    return (int) Compiler.LEX.invokeExact(m_source.getPath(), mappedInput, false);
+  }
+
+  @Benchmark
+  public int packed() throws Throwable {
+    return (int) Compiler.LEX.invokeExact(m_source.getPath(), mappedInput, true);
+  }
+}
@@ -0,0 +1,66 @@
+package decaf.jmh;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/*
+  Parser.program alone: the program is lexed once, and every invocation parses its tokens again
+  from a replaying TokenBuffer, generating code that is only counted.
+
+  With errorEvery > 0 one statement in errorEvery has a syntax error, so the time spent in
+  ErrorHandler (recover, skipping to a sync token, and formatting the diagnostic, which is
+  discarded) is the difference to the errorEvery = 0 run of the same size.
+*/
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xss256m")
+public class ParseOnlyBenchmark {
+
+  @Param({ "4", "256", "16384" })
+  public long kilobytes;
+
+  @Param({ "0", "50", "5" })
+  public int errorEvery;
+
+  private File m_source;
+  private Object m_tokens;
+
+  @Setup(Level.Trial)
+  public void setup() throws Throwable {
+    m_source = File.createTempFile("parseonly", ".decaf");
+    Compiler.GENERATE_FAULTY_PROGRAM.invokeExact(m_source.getPath(), kilobytes, errorEvery);
+    m_tokens = (Object) Compiler.TOKENS.invokeExact(m_source.getPath());
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    m_source.delete();
+  }
+
+  @Benchmark
+  public int recursiveDescent() throws Throwable {
+    return (int) Compiler.PARSE_TOKENS.invokeExact(m_tokens, m_source.getPath(), false);
+  }
+
+  @Benchmark
+  public int tableDriven() throws Throwable {
+    return (int) Compiler.PARSE_TOKENS.invokeExact(m_tokens, m_source.getPath(), true);
+  }
+}
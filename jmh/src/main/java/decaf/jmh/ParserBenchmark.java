@@ -0,0 +1,61 @@
+package decaf.jmh;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/*
+  Lex + parse of a small, a medium and a huge generated program with the recursive-descent Parser
+  and with the table-driven LL(1) engine (ParseOnlyBenchmark has the parsers without the lexer).
+  The recursive parser needs the large thread stack for the long method list.
+*/
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xss256m")
+public class ParserBenchmark {
+
+  @Param({ "4", "256", "16384" })
+  public long kilobytes;
+
+  @Param({ "false", "true" })
+  public boolean packedTokens;
+
+  private File m_source;
+
+  @Setup(Level.Trial)
+  public void setup() throws Throwable {
+    m_source = File.createTempFile("parser", ".decaf");
+    Compiler.GENERATE_PROGRAM.invokeExact(m_source.getPath(), kilobytes);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    m_source.delete();
+  }
+
+  @Benchmark
+  public int recursiveDescent() throws Throwable {
+    return (int) Compiler.PARSE.invokeExact(m_source.getPath(), packedTokens, false);
+  }
+
+  @Benchmark
+  public int tableDriven() throws Throwable {
+    return (int) Compiler.PARSE.invokeExact(m_source.getPath(), packedTokens, true);
+  }
+}
@@ -0,0 +1,81 @@
+package decaf.jmh;
+
+import java.io.File;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.infra.BenchmarkParams;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/*
+  Runs the benchmarks (all, or those matching the arguments, which are JMH's) in ops/sec with the GC profiler, then
+  puts every result per token of the program it ran over: ns/token from the score, and bytes
+  allocated per token from gc.alloc.rate.norm. The token count is that of the program the
+  benchmark's kilobytes and errorEvery parameters generate; one operation is one pass over it.
+
+  Build and run (from the jmh directory):
+    mvn -B package
+    java -cp target/benchmarks.jar decaf.jmh.PerToken [regexp ...] [JMH options, -p kilobytes=256 say]
+*/
+public class PerToken {
+
+  public static void main(String[] args) throws Throwable {
+    Options options = new OptionsBuilder().parent(new CommandLineOptions(args)).mode(Mode.Throughput)
+                      .timeUnit(TimeUnit.SECONDS).addProfiler(GCProfiler.class).build();
+    Collection<RunResult> results = new Runner(options).run();
+
+    Map<String, Integer> tokenCounts = new HashMap<String, Integer>();
+    System.out.println();
+    System.out.printf("%-40s %-32s %12s %10s %12s %10s%n", "Benchmark", "Parameters", "ops/s", "tokens", "ns/token", "B/token");
+    for (RunResult result : results) {
+      BenchmarkParams params = result.getParams();
+      String kilobytes = params.getParam("kilobytes");
+      String errorEvery = params.getParam("errorEvery") != null ? params.getParam("errorEvery") : "0";
+      String key = kilobytes + "/" + errorEvery;
+      if (kilobytes != null && !tokenCounts.containsKey(key))
+        tokenCounts.put(key, tokenCount(Long.parseLong(kilobytes), Integer.parseInt(errorEvery)));
+
+      StringBuilder parameters = new StringBuilder();
+      for (String name : params.getParamsKeys())
+        parameters.append(parameters.length() > 0 ? " " : "").append(name).append('=').append(params.getParam(name));
+      String benchmark = params.getBenchmark().replace("decaf.jmh.", "");
+      double opsPerSecond = result.getPrimaryResult().getScore();
+      Result allocated = allocation(result);
+      if (kilobytes == null) {
+        System.out.printf("%-40s %-32s %12.3f%n", benchmark, parameters, opsPerSecond);
+        continue;
+      }
+      int tokens = tokenCounts.get(key);
+      System.out.printf("%-40s %-32s %12.3f %10d %12.2f %10s%n", benchmark, parameters, opsPerSecond, tokens,
+                        1e9 / (opsPerSecond * tokens),
+                        allocated != null ? String.format("%.2f", allocated.getScore() / tokens) : "-");
+    }
+  }
+
+  /* gc.alloc.rate.norm, bytes per operation; named with a leading '·' before JMH 1.37 */
+  private static Result allocation(RunResult result) {
+    Map<String, Result> secondary = result.getSecondaryResults();
+    return secondary.containsKey("gc.alloc.rate.norm") ? secondary.get("gc.alloc.rate.norm")
+                                                       : secondary.get("·gc.alloc.rate.norm");
+  }
+
+  private static int tokenCount(long kilobytes, int errorEvery) throws Throwable {
+    File source = File.createTempFile("pertoken", ".decaf");
+    try {
+      Compiler.GENERATE_FAULTY_PROGRAM.invokeExact(source.getPath(), kilobytes, errorEvery);
+      return (int) Compiler.LEX.invokeExact(source.getPath(), false, true);
+    }
+    finally {
+      source.delete();
+    }
+  }
+}
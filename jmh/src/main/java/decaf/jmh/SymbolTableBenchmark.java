@@ -0,0 +1,64 @@
+package decaf.jmh;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/*
+  SymbolTable.insert and SymbolTable.lookup with the identifiers of a generated program, in the
+  order and with the repeats the lexer sees them.
+
+  insert: every identifier into a new table (the first occurrence adds it, the others find it).
+  lookup: every identifier in a table that holds them all.
+*/
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SymbolTableBenchmark {
+
+  @Param({ "4", "256", "16384" })
+  public long kilobytes;
+
+  private File m_source;
+  private String[] m_identifiers;
+  private Object m_symbolTable;
+
+  @Setup(Level.Trial)
+  public void setup() throws Throwable {
+    m_source = File.createTempFile("symboltable", ".decaf");
+    Compiler.GENERATE_PROGRAM.invokeExact(m_source.getPath(), kilobytes);
+    m_identifiers = (String[]) Compiler.IDENTIFIERS.invokeExact(m_source.getPath());
+    m_symbolTable = (Object) Compiler.INSERT.invokeExact(m_identifiers);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    m_source.delete();
+  }
+
+  @Benchmark
+  public Object insert() throws Throwable {
+    return (Object) Compiler.INSERT.invokeExact(m_identifiers);
+  }
+
+  @Benchmark
+  public int lookup() throws Throwable {
+    return (int) Compiler.LOOKUP.invokeExact(m_symbolTable, m_identifiers);
+  }
+}